@@ -10,7 +10,7 @@ if [ -f "sysmon" ]; then
     ./sysmon &
 else
     echo "Executable not found. Compiling and running..."
-    gcc main.c procParser.c terminator.c -o sysmon
+    gcc main.c procDetail.c procParser.c procQuery.c procTable.c selfStats.c subscription.c terminator.c wireFormat.c -o sysmon
 
     if [ -f "sysmon" ]; then
         ./sysmon &
@@ -22,6 +22,15 @@ fi
 
 cd - > /dev/null
 
+# --headless runs the collectors without the UI and serves their metrics
+# to Prometheus/OpenMetrics scrapers (see HeadlessApp).
+if [ "$1" = "--headless" ]; then
+    cd "./frontend" || { echo "Error: Cannot enter frontend directory. Exiting."; exit 1; }
+    [ -d "target" ] || mvn compile
+    mvn exec:java -Dexec.mainClass=com.sysmon.HeadlessApp
+    exit $?
+fi
+
 if [ -d "$FRONTEND_JAR_PATH" ]; then
     echo "Frontend target directory found. Running frontend..."
     cd "./frontend" || { echo "Error: Cannot enter frontend directory. Exiting."; exit 1; }
@@ -1,15 +1,83 @@
 /*
  - Main C backend server implementation.
  - Creates and binds a UNIX domain socket at /tmp/SysMon.
- - Listens for and accepts client connections.
- - Handles multiple commands (e.g., GET_PROCESSES, GET_CPU_STATS, KILL)
-   from a single client over a persistent connection loop.
+ - Serves up to MAX_CLIENTS clients at once from one poll() event loop,
+   each over a persistent connection that may carry many commands (e.g.,
+   GET_PROCESSES, GET_CPU_STATS, KILL).
+ - Client sockets are non-blocking: whatever a client's socket does not
+   take at once is queued and sent as it drains, so a slow reader never
+   holds up the others. One that lets CLIENT_OUTPUT_MAX pile up is dropped.
+ - All clients share one snapshot of every metric: a /proc scan younger
+   than PROC_SNAPSHOT_MAX_AGE_MS (with the counter groups asked for) is
+   reused instead of scanning again, the encoded delta or process list of a
+   snapshot is kept for every client asking for the same one, and host
+   metrics are collected at most once per METRIC_SNAPSHOT_MAX_AGE_MS. So N
+   clients refreshing within the same interval cost one scan and one
+   serialization, and rate metrics are not split into N shorter windows.
+ - A client may send SET_FORMAT;BINARY to receive GET_PROCESSES as a
+   binary frame (see wireFormat.h) instead of tab-separated text.
+ - GET_PROCESSES_SINCE;<gen> answers with only the processes added,
+   changed or removed since that generation (see procTable.h). Its rows
+   carry the uid and a name id rather than the user and process names;
+   the USER;<uid>;<name> and NAME;<id>;<name> lines (or PDLT entries) that
+   precede them hold just the dictionary entries new since <gen>.
+   GET_PROCESSES_SINCE;<gen>;<fields> (and a query's fields=<fields>) also
+   sends the optional I/O, context switch or page fault counters of every
+   process (see procParser.h). A counter group is only read while some
+   request asked for it in the last PROC_FIELDS_KEEP_MS.
+ - GET_PROCESSES;<query> answers with only the processes that pass the
+   query's filters, sorted and cut to its limit in the backend (see
+   procQuery.h), so a client showing the top 50 rows receives 50 rows.
+ - GET_PROCESS_DETAIL;<pid> answers with the expensive per-process stats
+   (smaps_rollup memory, I/O counters, open fds, limits...) of one process,
+   read only when asked for (see procDetail.h).
+ - GET_CORE_STATS answers with CORES;<count> and one
+   CORE;<id>;<user>;<system>;<iowait>;<steal> line per online core, each
+   share in tenths of a percent of that core.
+ - GET_INTERFACE_STATS answers with INTERFACES;<count> and one
+   IF;<name>;<rxBytes>;<txBytes>;<rxPackets>;<txPackets>;<rxErrors>;<txErrors>
+   line per network interface: rates per second, errors as running totals.
+ - GET_DISKIO_STATS answers with DISKIO;<count> and one
+   DEV;<name>;<readBytes>;<writeBytes>;<reads>;<writes>;<util> line per
+   block device: rates per second, utilization in tenths of a percent.
+ - Commands are newline-terminated and may be pipelined: every complete line
+   in the input buffer is answered in order, and a trailing partial command
+   is kept until the rest of it arrives.
+ - SUBSCRIBE;<metrics>;<interval_ms> makes the backend push the metrics on
+   its own schedule (see subscription.h), and SET_INTERVAL;<id>;<interval_ms>
+   reschedules such a subscription. The event loop polls with a timeout
+   until the next subscription of any client is due.
+ - GET_SNAPSHOT;<since>[;<query>] answers with every host metric and the
+   processes taken in one pass, so the system CPU time it carries matches
+   the processes' CPU times:
+     BEGIN_SNAPSHOT;<taken_ms>
+     the GET_CPU_STATS, GET_MEM_STATS, GET_NET_STATS, GET_DISK_STATS,
+     GET_CORE_STATS, GET_INTERFACE_STATS and GET_DISKIO_STATS responses
+     the GET_PROCESSES_SINCE;<since> delta, or the query result if <query>
+     (see procQuery.h) selects processes; fields=<groups> adds counters
+     END_SNAPSHOT
+   where <taken_ms> is the backend's monotonic clock at the pass. Clients
+   asking within PROC_SNAPSHOT_MAX_AGE_MS share one pass.
+ - GET_SELF_STATS answers with latency histograms of the backend's own
+   scans, table updates, encoding, socket writes, commands and pushes, and
+   its running counters (see selfStats.h).
  - Calls functions from procParser.h and terminator.h to get data
    or execute actions.
 */
 
+#include "procDetail.h"
 #include "procParser.h"
+#include "procQuery.h"
+#include "procTable.h"
+#include "selfStats.h"
+#include "subscription.h"
 #include "terminator.h"
+#include "wireFormat.h"
+#include <errno.h>
+#include <fcntl.h>
+#include <inttypes.h>
+#include <poll.h>
+#include <signal.h>
 #include <stdio.h>
 #include <stdlib.h>
 #include <string.h>
@@ -20,10 +88,792 @@
 #define SOCKET_PATH "/tmp/SysMon"
 #define BUFFER_SIZE 1024
 #define LISTEN_BACKLOG 10
+#define PROC_FIELDS_KEEP_MS 10000
+#define MAX_CLIENTS 64
+#define CLIENT_OUTPUT_MAX (64 * 1024 * 1024)
+#define PROC_SNAPSHOT_MAX_AGE_MS 500
+#define METRIC_SNAPSHOT_MAX_AGE_MS 100
+#define DELTA_CACHE_SIZE 8
+
+typedef struct {
+  int fd;
+  int binaryMode;
+  // Set once the client hung up or failed; it is dropped after this pass
+  // of the event loop.
+  int closed;
+  SubscriptionList subscriptions;
+  char input[BUFFER_SIZE];
+  size_t inputLength;
+  // Set after a command overflowed input; what is left of it is dropped up
+  // to the next newline.
+  int discarding;
+  // output[outputSent..outputLength) is still to be sent.
+  char *output;
+  size_t outputLength;
+  size_t outputSent;
+  size_t outputCapacity;
+} Client;
+
+// An encoded process delta, kept for every client that asks for the same
+// one: same table generation, base, counter groups and format.
+typedef struct {
+  uint64_t generation;
+  // UINT64_MAX for a full snapshot, whatever base was asked for.
+  uint64_t since;
+  unsigned fields;
+  int binary;
+  char *data;
+  size_t length;
+} EncodedDelta;
+
+// The snapshot GET_PROCESSES answers from, with its text and binary forms
+// encoded on first use.
+typedef struct {
+  uint64_t scannedMs;
+  ProcessData *processes;
+  size_t count;
+  char *text;
+  unsigned char *frame;
+  size_t frameLength;
+} ProcessListCache;
+
+static ProcTable procTable;
+static uint64_t fieldRequestedMs[PROC_FIELD_GROUPS];
+static uint64_t lastScanMs;
+static unsigned lastScanFields;
+static EncodedDelta deltaCache[DELTA_CACHE_SIZE];
+static size_t deltaCacheNext;
+static ProcessListCache listCache;
+
+static int queueOutput(Client *client, const char *data, size_t len) {
+  if (client->outputSent > 0) {
+    client->outputLength -= client->outputSent;
+    memmove(client->output, client->output + client->outputSent,
+            client->outputLength);
+    client->outputSent = 0;
+  }
+  size_t needed = client->outputLength + len;
+  if (needed > CLIENT_OUTPUT_MAX) {
+    fprintf(stderr, "Client %d is too slow, dropping it\n", client->fd);
+    return -1;
+  }
+  if (needed > client->outputCapacity) {
+    size_t capacity = client->outputCapacity ? client->outputCapacity : 4096;
+    while (capacity < needed) {
+      capacity *= 2;
+    }
+    char *output = realloc(client->output, capacity);
+    if (output == NULL) {
+      perror("Failed to grow client output");
+      return -1;
+    }
+    client->output = output;
+    client->outputCapacity = capacity;
+  }
+  memcpy(client->output + client->outputLength, data, len);
+  client->outputLength += len;
+  return 0;
+}
+
+// Writes as much of `data` as the socket takes without blocking and queues
+// the rest behind anything already queued.
+static int writeAll(Client *client, const char *data, size_t len) {
+  if (client->closed) {
+    return -1;
+  }
+  uint64_t start = selfStatsNow();
+  while (len > 0 && client->outputSent == client->outputLength) {
+    ssize_t written = write(client->fd, data, len);
+    if (written == -1) {
+      if (errno == EINTR) {
+        continue;
+      }
+      if (errno == EAGAIN || errno == EWOULDBLOCK) {
+        break;
+      }
+      perror("write failed");
+      selfStatsAdd(SELF_COUNTER_WRITE_ERRORS, 1);
+      client->closed = 1;
+      return -1;
+    }
+    data += written;
+    len -= written;
+    selfStatsAdd(SELF_COUNTER_BYTES_SENT, written);
+  }
+  if (len > 0 && queueOutput(client, data, len) == -1) {
+    client->closed = 1;
+    return -1;
+  }
+  selfStatsRecordSince(SELF_STAGE_SEND, start);
+  return 0;
+}
+
+static void writeString(Client *client, const char *data) {
+  writeAll(client, data, strlen(data));
+}
+
+// Sends queued output once the socket takes more.
+static void flushOutput(Client *client) {
+  while (client->outputSent < client->outputLength) {
+    ssize_t written = write(client->fd, client->output + client->outputSent,
+                            client->outputLength - client->outputSent);
+    if (written == -1) {
+      if (errno == EINTR) {
+        continue;
+      }
+      if (errno != EAGAIN && errno != EWOULDBLOCK) {
+        perror("write failed");
+        selfStatsAdd(SELF_COUNTER_WRITE_ERRORS, 1);
+        client->closed = 1;
+      }
+      return;
+    }
+    client->outputSent += written;
+    selfStatsAdd(SELF_COUNTER_BYTES_SENT, written);
+  }
+  client->outputLength = 0;
+  client->outputSent = 0;
+}
+
+static ProcessData *timedScan(size_t *processCount, unsigned fields) {
+  uint64_t start = selfStatsNow();
+  ProcessData *processList = scanProcDir(processCount, fields);
+  selfStatsRecordSince(SELF_STAGE_SCAN, start);
+  if (processList) {
+    selfStatsAdd(SELF_COUNTER_PROCESSES_SCANNED, *processCount);
+  }
+  return processList;
+}
+
+// Scans again only if the cached list is older than
+// PROC_SNAPSHOT_MAX_AGE_MS.
+static void refreshProcessList(void) {
+  uint64_t now = monotonicMs();
+  if (listCache.scannedMs != 0 &&
+      now - listCache.scannedMs < PROC_SNAPSHOT_MAX_AGE_MS) {
+    selfStatsAdd(SELF_COUNTER_CACHE_HITS, 1);
+    return;
+  }
+  free(listCache.processes);
+  free(listCache.text);
+  free(listCache.frame);
+  memset(&listCache, 0, sizeof(listCache));
+  listCache.processes = timedScan(&listCache.count, 0);
+  if (listCache.processes == NULL) {
+    listCache.count = 0;
+  }
+  listCache.scannedMs = now;
+}
+
+static void handleProcessListBinary(Client *client) {
+  refreshProcessList();
+  if (listCache.frame == NULL) {
+    uint64_t start = selfStatsNow();
+    listCache.frame = encodeProcessListBinary(
+        listCache.processes, listCache.count, &listCache.frameLength);
+    selfStatsRecordSince(SELF_STAGE_ENCODE, start);
+  }
+  if (listCache.frame) {
+    writeAll(client, (const char *)listCache.frame, listCache.frameLength);
+  } else {
+    static const unsigned char emptyFrame[] = {'P', 'L', 'S', 'T', 8, 0, 0, 0,
+                                               0,   0,   0,   0,   0, 0, 0, 0};
+    writeAll(client, (const char *)emptyFrame, sizeof(emptyFrame));
+  }
+}
+
+static void handleProcessListText(Client *client) {
+  refreshProcessList();
+  if (listCache.text == NULL && listCache.count > 0) {
+    uint64_t start = selfStatsNow();
+    listCache.text = formatProcessList(listCache.processes, listCache.count);
+    selfStatsRecordSince(SELF_STAGE_ENCODE, start);
+  }
+  writeString(client, listCache.text
+                          ? listCache.text
+                          : "BEGIN_PROCESS_LIST\nEND_PROCESS_LIST\n");
+}
+
+// The counter groups in `fields` and every other group a request asked for
+// recently, so requests with and without them do not keep zeroing and
+// restoring the table's counters.
+static unsigned procScanFields(unsigned fields, uint64_t now) {
+  unsigned scanFields = 0;
+  for (int g = 0; g < PROC_FIELD_GROUPS; g++) {
+    if (fields & (1u << g)) {
+      fieldRequestedMs[g] = now;
+    }
+    if (fieldRequestedMs[g] != 0 &&
+        now - fieldRequestedMs[g] < PROC_FIELDS_KEEP_MS) {
+      scanFields |= 1u << g;
+    }
+  }
+  return scanFields;
+}
+
+static void scanProcTable(unsigned scanFields, uint64_t now) {
+  size_t processCount = 0;
+  ProcessData *processList = timedScan(&processCount, scanFields);
+  if (processList) {
+    uint64_t start = selfStatsNow();
+    procTableUpdate(&procTable, processList, processCount);
+    selfStatsRecordSince(SELF_STAGE_TABLE, start);
+    free(processList);
+    lastScanMs = now;
+    lastScanFields = scanFields;
+  }
+}
+
+// Scans with procScanFields(fields). The last scan is reused if it is
+// younger than PROC_SNAPSHOT_MAX_AGE_MS and read all those groups.
+static void refreshProcTable(unsigned fields) {
+  uint64_t now = monotonicMs();
+  unsigned scanFields = procScanFields(fields, now);
+  if (lastScanMs != 0 && now - lastScanMs < PROC_SNAPSHOT_MAX_AGE_MS &&
+      (scanFields & ~lastScanFields) == 0) {
+    selfStatsAdd(SELF_COUNTER_CACHE_HITS, 1);
+    return;
+  }
+  scanProcTable(scanFields, now);
+}
+
+static const EncodedDelta *findEncodedDelta(uint64_t since, unsigned fields,
+                                            int binary) {
+  for (size_t i = 0; i < DELTA_CACHE_SIZE; i++) {
+    const EncodedDelta *entry = &deltaCache[i];
+    if (entry->data && entry->generation == procTable.generation &&
+        entry->since == since && entry->fields == fields &&
+        entry->binary == binary) {
+      return entry;
+    }
+  }
+  return NULL;
+}
+
+// Takes ownership of `data`. Entries of older generations go first.
+static void storeEncodedDelta(uint64_t since, unsigned fields, int binary,
+                              char *data, size_t length) {
+  EncodedDelta *slot = NULL;
+  for (size_t i = 0; i < DELTA_CACHE_SIZE && slot == NULL; i++) {
+    if (deltaCache[i].data == NULL ||
+        deltaCache[i].generation != procTable.generation) {
+      slot = &deltaCache[i];
+    }
+  }
+  if (slot == NULL) {
+    slot = &deltaCache[deltaCacheNext];
+    deltaCacheNext = (deltaCacheNext + 1) % DELTA_CACHE_SIZE;
+  }
+  free(slot->data);
+  *slot = (EncodedDelta){.generation = procTable.generation,
+                         .since = since,
+                         .fields = fields,
+                         .binary = binary,
+                         .data = data,
+                         .length = length};
+}
+
+// Writes the processes changed since `since` and returns the generation the
+// client is at afterwards (`since` again if the delta could not be sent).
+// Another client's identical delta is sent again without encoding it.
+static uint64_t writeProcessDelta(Client *client, uint64_t since,
+                                  unsigned fields) {
+  uint64_t key = procTableNeedsFull(&procTable, since) ? UINT64_MAX : since;
+  const EncodedDelta *cached =
+      findEncodedDelta(key, fields, client->binaryMode);
+  if (cached) {
+    selfStatsAdd(SELF_COUNTER_CACHE_HITS, 1);
+    writeAll(client, cached->data, cached->length);
+    return cached->generation;
+  }
+  ProcessDelta delta;
+  if (procTableDelta(&procTable, since, &delta) == -1) {
+    writeString(client, "ERROR;process delta\n");
+    return since;
+  }
+  uint64_t generation = delta.generation;
+  char *data;
+  size_t length = 0;
+  uint64_t start = selfStatsNow();
+  if (client->binaryMode) {
+    data = (char *)encodeProcessDeltaBinary(&delta, fields, &length);
+  } else {
+    data = formatProcessDelta(&delta, fields);
+    length = data ? strlen(data) : 0;
+  }
+  selfStatsRecordSince(SELF_STAGE_ENCODE, start);
+  processDeltaFree(&delta);
+  if (data == NULL) {
+    writeString(client, "ERROR;process delta\n");
+    return since;
+  }
+  writeAll(client, data, length);
+  storeEncodedDelta(key, fields, client->binaryMode, data, length);
+  return generation;
+}
+
+static void handleProcessDelta(Client *client, uint64_t since,
+                               unsigned fields) {
+  refreshProcTable(fields);
+  writeProcessDelta(client, since, fields);
+}
+
+static void writeProcessQuery(Client *client, const ProcessQuery *query) {
+  ProcessQueryResult result;
+  if (runProcessQuery(&procTable, query, &result) == -1) {
+    writeString(client, "ERROR;process query\n");
+    return;
+  }
+  if (client->binaryMode) {
+    size_t length = 0;
+    uint64_t start = selfStatsNow();
+    unsigned char *frame =
+        encodeProcessQueryBinary(&result, query->fields, &length);
+    selfStatsRecordSince(SELF_STAGE_ENCODE, start);
+    if (frame) {
+      writeAll(client, (const char *)frame, length);
+      free(frame);
+    } else {
+      writeString(client, "ERROR;process query\n");
+    }
+  } else {
+    uint64_t start = selfStatsNow();
+    char *formattedString = formatProcessQueryResult(&result, query->fields);
+    selfStatsRecordSince(SELF_STAGE_ENCODE, start);
+    if (formattedString) {
+      writeString(client, formattedString);
+      free(formattedString);
+    } else {
+      writeString(client, "ERROR;process query\n");
+    }
+  }
+  processQueryResultFree(&result);
+}
+
+typedef struct {
+  unsigned metric;
+  const char *command;
+  char *(*collect)(void);
+  const char *error;
+} MetricSection;
+
+static const MetricSection metricSections[] = {
+    {METRIC_CPU, "GET_CPU_STATS", getCpuUsage, "ERROR;cpu\n"},
+    {METRIC_MEM, "GET_MEM_STATS", getMemUsage, "ERROR;mem\n"},
+    {METRIC_NET, "GET_NET_STATS", getNetUsage, "ERROR;net\n"},
+    {METRIC_DISK, "GET_DISK_STATS", getDiskUsage, "ERROR;disk\n"},
+    {METRIC_CORES, "GET_CORE_STATS", getCoreUsage, "ERROR;cores\n"},
+    {METRIC_INTERFACES, "GET_INTERFACE_STATS", getInterfaceUsage,
+     "ERROR;interfaces\n"},
+    {METRIC_DISKIO, "GET_DISKIO_STATS", getDiskIoUsage, "ERROR;diskio\n"},
+};
+
+#define METRIC_SECTION_COUNT (sizeof(metricSections) / sizeof(metricSections[0]))
+#define METRIC_SECTION_CPU 0
+
+static char *metricCache[METRIC_SECTION_COUNT];
+static uint64_t metricCollectedMs[METRIC_SECTION_COUNT];
+
+// The response of metricSections[m], or its error line. Collected again
+// only once the last one is METRIC_SNAPSHOT_MAX_AGE_MS old, so clients
+// asking together share it and the rates it holds cover one full window.
+static const char *metricResponse(size_t m) {
+  uint64_t now = monotonicMs();
+  if (metricCollectedMs[m] != 0 &&
+      now - metricCollectedMs[m] < METRIC_SNAPSHOT_MAX_AGE_MS) {
+    selfStatsAdd(SELF_COUNTER_CACHE_HITS, 1);
+  } else {
+    free(metricCache[m]);
+    metricCache[m] = metricSections[m].collect();
+    metricCollectedMs[m] = now;
+  }
+  return metricCache[m] ? metricCache[m] : metricSections[m].error;
+}
+
+// refreshProcTable() with a CPU sample collected right before the scan, so
+// the system time that a push of cpu and processes carries is the one to
+// divide the processes' CPU times by. The last scan is only reused if its
+// CPU sample is still the cached one.
+static void refreshProcTableWithCpu(unsigned fields) {
+  uint64_t now = monotonicMs();
+  unsigned scanFields = procScanFields(fields, now);
+  if (lastScanMs != 0 && now - lastScanMs < PROC_SNAPSHOT_MAX_AGE_MS &&
+      metricCollectedMs[METRIC_SECTION_CPU] == lastScanMs &&
+      (scanFields & ~lastScanFields) == 0) {
+    selfStatsAdd(SELF_COUNTER_CACHE_HITS, 1);
+    return;
+  }
+  free(metricCache[METRIC_SECTION_CPU]);
+  metricCache[METRIC_SECTION_CPU] =
+      metricSections[METRIC_SECTION_CPU].collect();
+  metricCollectedMs[METRIC_SECTION_CPU] = now;
+  scanProcTable(scanFields, now);
+}
+
+// The host metrics of the last GET_SNAPSHOT pass, every section in
+// metricSections order, and when the pass took them. The process table was
+// scanned in the same pass for as long as lastScanMs == takenMs.
+typedef struct {
+  uint64_t takenMs;
+  char *metrics;
+  size_t length;
+} HostSnapshot;
+
+static HostSnapshot hostSnapshot;
+
+// Collects every metric and scans the processes in one pass, unless the last
+// pass is younger than PROC_SNAPSHOT_MAX_AGE_MS, nothing has scanned since
+// and it read the counter groups asked for. CPU goes last, right before the
+// scan, so the system time it carries is as close to the processes' times
+// as it can be.
+static void refreshHostSnapshot(unsigned fields) {
+  uint64_t now = monotonicMs();
+  unsigned scanFields = procScanFields(fields, now);
+  if (hostSnapshot.takenMs != 0 &&
+      now - hostSnapshot.takenMs < PROC_SNAPSHOT_MAX_AGE_MS &&
+      lastScanMs == hostSnapshot.takenMs &&
+      (scanFields & ~lastScanFields) == 0) {
+    selfStatsAdd(SELF_COUNTER_CACHE_HITS, 1);
+    return;
+  }
+  const char *responses[METRIC_SECTION_COUNT];
+  size_t length = 0;
+  for (size_t i = METRIC_SECTION_COUNT; i-- > 0;) {
+    free(metricCache[i]);
+    metricCache[i] = metricSections[i].collect();
+    metricCollectedMs[i] = now;
+    responses[i] = metricCache[i] ? metricCache[i] : metricSections[i].error;
+    length += strlen(responses[i]);
+  }
+  scanProcTable(scanFields, now);
+  char *metrics = malloc(length + 1);
+  if (metrics == NULL) {
+    perror("Failed to allocate snapshot");
+    return;
+  }
+  length = 0;
+  for (size_t m = 0; m < METRIC_SECTION_COUNT; m++) {
+    size_t sectionLength = strlen(responses[m]);
+    memcpy(metrics + length, responses[m], sectionLength);
+    length += sectionLength;
+  }
+  free(hostSnapshot.metrics);
+  hostSnapshot.metrics = metrics;
+  hostSnapshot.length = length;
+  hostSnapshot.takenMs = now;
+}
+
+// Answers GET_SNAPSHOT;<since>[;<query>] with the host metrics and the
+// processes of one pass.
+static void handleSnapshot(Client *client, const char *args) {
+  uint64_t since;
+  ProcessQuery query = {0};
+  const char *queryArgs = strchr(args, ';');
+  if (sscanf(args, "%" SCNu64, &since) != 1 ||
+      (queryArgs && parseProcessQuery(queryArgs + 1, &query) == -1)) {
+    writeString(client, "ERROR;invalid snapshot\n");
+    return;
+  }
+  refreshHostSnapshot(query.fields);
+  if (hostSnapshot.metrics == NULL) {
+    writeString(client, "ERROR;snapshot\n");
+    return;
+  }
+  char header[48];
+  snprintf(header, sizeof(header), "BEGIN_SNAPSHOT;%" PRIu64 "\n",
+           hostSnapshot.takenMs);
+  writeString(client, header);
+  writeAll(client, hostSnapshot.metrics, hostSnapshot.length);
+  if (query.hasSelection) {
+    writeProcessQuery(client, &query);
+  } else {
+    writeProcessDelta(client, since, query.fields);
+  }
+  writeString(client, "END_SNAPSHOT\n");
+}
+
+// Sends a push to every subscription that is due. Metrics and the process
+// table come from the shared snapshot, however many subscriptions want them.
+static void pushDueSubscriptions(Client *client) {
+  uint64_t now = monotonicMs();
+  int processesRefreshed = 0;
+  int pairCpu = 0;
+  unsigned processFields = 0;
+  for (size_t i = 0; i < client->subscriptions.count; i++) {
+    const Subscription *subscription = &client->subscriptions.items[i];
+    if (subscription->nextDueMs <= now) {
+      processFields |= subscription->fields;
+      if ((subscription->metrics & METRIC_CPU) &&
+          (subscription->metrics & METRIC_PROCESSES)) {
+        pairCpu = 1;
+      }
+    }
+  }
+  for (size_t i = 0; i < client->subscriptions.count; i++) {
+    Subscription *subscription = &client->subscriptions.items[i];
+    if (subscription->nextDueMs > now) {
+      continue;
+    }
+    uint64_t start = selfStatsNow();
+    char header[48];
+    snprintf(header, sizeof(header), ">PUSH;%d\n", subscription->id);
+    writeString(client, header);
+    // The scan goes first, so that a CPU section sent with the processes is
+    // the sample taken with them; it is sent as cached, not collected anew.
+    int withProcesses = (subscription->metrics & METRIC_PROCESSES) != 0;
+    if (withProcesses && pairCpu) {
+      refreshProcTableWithCpu(processFields);
+    } else if (withProcesses && !processesRefreshed) {
+      refreshProcTable(processFields);
+    }
+    processesRefreshed |= withProcesses;
+    for (size_t m = 0; m < METRIC_SECTION_COUNT; m++) {
+      const MetricSection *section = &metricSections[m];
+      if (!(subscription->metrics & section->metric)) {
+        continue;
+      }
+      if (m == METRIC_SECTION_CPU && withProcesses) {
+        writeString(client, metricCache[m] ? metricCache[m] : section->error);
+      } else {
+        writeString(client, metricResponse(m));
+      }
+    }
+    if (subscription->metrics & METRIC_PROCESSES) {
+      if (subscription->hasQuery) {
+        writeProcessQuery(client, &subscription->query);
+      } else {
+        subscription->generation = writeProcessDelta(
+            client, subscription->generation, subscription->fields);
+      }
+    }
+    subscription->nextDueMs += subscription->intervalMs;
+    if (subscription->nextDueMs <= now) {
+      subscription->nextDueMs = now + subscription->intervalMs;
+    }
+    selfStatsRecordSince(SELF_STAGE_PUSH, start);
+    selfStatsAdd(SELF_COUNTER_PUSHES, 1);
+  }
+}
+
+static void handleCommand(Client *client, const char *command) {
+  printf("Received command: '%s'\n", command);
+  if (strncmp(command, "SET_FORMAT;", 11) == 0) {
+    if (strcmp(command + 11, "BINARY") == 0) {
+      client->binaryMode = 1;
+      writeString(client, "OK;BINARY\n");
+    } else if (strcmp(command + 11, "TEXT") == 0) {
+      client->binaryMode = 0;
+      writeString(client, "OK;TEXT\n");
+    } else {
+      writeString(client, "ERROR;unknown format\n");
+    }
+  } else if (strncmp(command, "SUBSCRIBE;", 10) == 0) {
+    unsigned metrics;
+    uint64_t intervalMs;
+    const char *queryArgs;
+    ProcessQuery query;
+    if (parseSubscribe(command + 10, &metrics, &intervalMs, &queryArgs) == -1 ||
+        (queryArgs && parseProcessQuery(queryArgs, &query) == -1)) {
+      writeString(client, "ERROR;invalid subscription\n");
+      return;
+    }
+    Subscription *subscription =
+        subscriptionAdd(&client->subscriptions, metrics, intervalMs);
+    if (subscription) {
+      if (queryArgs) {
+        subscription->hasQuery = query.hasSelection;
+        subscription->query = query;
+        subscription->fields = query.fields;
+      }
+      char reply[48];
+      snprintf(reply, sizeof(reply), "OK;SUBSCRIBED;%d\n", subscription->id);
+      writeString(client, reply);
+    } else {
+      writeString(client, "ERROR;too many subscriptions\n");
+    }
+  } else if (strncmp(command, "UNSUBSCRIBE;", 12) == 0) {
+    if (subscriptionRemove(&client->subscriptions, atoi(command + 12)) == 0) {
+      writeString(client, "OK\n");
+    } else {
+      writeString(client, "ERROR;unknown subscription\n");
+    }
+  } else if (strncmp(command, "SET_INTERVAL;", 13) == 0) {
+    int id;
+    uint64_t intervalMs;
+    if (parseSetInterval(command + 13, &id, &intervalMs) == -1) {
+      writeString(client, "ERROR;invalid interval\n");
+    } else if (subscriptionSetInterval(&client->subscriptions, id,
+                                       intervalMs) == 0) {
+      writeString(client, "OK\n");
+    } else {
+      writeString(client, "ERROR;unknown subscription\n");
+    }
+  } else if (strncmp(command, "GET_PROCESSES_SINCE;", 20) == 0) {
+    uint64_t since;
+    unsigned fields = 0;
+    const char *fieldArgs = strchr(command + 20, ';');
+    if (sscanf(command + 20, "%" SCNu64, &since) == 1 &&
+        (!fieldArgs ||
+         parseProcessFields(fieldArgs + 1, strlen(fieldArgs + 1), &fields) ==
+             0)) {
+      handleProcessDelta(client, since, fields);
+    } else {
+      writeString(client, "ERROR;invalid generation\n");
+    }
+  } else if (strncmp(command, "GET_PROCESSES;", 14) == 0) {
+    ProcessQuery query;
+    if (parseProcessQuery(command + 14, &query) == 0) {
+      refreshProcTable(query.fields);
+      writeProcessQuery(client, &query);
+    } else {
+      writeString(client, "ERROR;invalid query\n");
+    }
+  } else if (strncmp(command, "GET_SNAPSHOT;", 13) == 0) {
+    handleSnapshot(client, command + 13);
+  } else if (strncmp(command, "GET_PROCESS_DETAIL;", 19) == 0) {
+    int pid;
+    char *detail =
+        sscanf(command + 19, "%d", &pid) == 1 ? getProcessDetail(pid) : NULL;
+    if (detail) {
+      writeString(client, detail);
+      free(detail);
+    } else {
+      writeString(client, "ERROR;no such process\n");
+    }
+  } else if (strcmp(command, "GET_PROCESSES") == 0 && client->binaryMode) {
+    printf("Processing GET_PROCESSES command (binary)...\n");
+    handleProcessListBinary(client);
+  } else if (strcmp(command, "GET_PROCESSES") == 0) {
+    printf("Processing GET_PROCESSES command...\n");
+    handleProcessListText(client);
+  } else if (strncmp(command, "KILL", 4) == 0) {
+    printf("Processing KILL command: %s\n", command);
+    int pid, signal;
+    if (sscanf(command, "KILL;%d;%d", &pid, &signal) == 2) {
+      if (terminateProcess(pid, signal) == 0) {
+        writeString(client, "OK\n");
+      } else {
+        writeString(client, "ERROR;kill failed\n");
+      }
+    } else {
+      writeString(client, "ERROR;invalid kill format\n");
+    }
+  } else if (strcmp(command, "GET_SELF_STATS") == 0) {
+    char *selfStats = formatSelfStats();
+    if (selfStats) {
+      writeString(client, selfStats);
+      free(selfStats);
+    } else {
+      writeString(client, "ERROR;self stats\n");
+    }
+  } else {
+    for (size_t m = 0; m < METRIC_SECTION_COUNT; m++) {
+      if (strcmp(command, metricSections[m].command) == 0) {
+        writeString(client, metricResponse(m));
+        return;
+      }
+    }
+    writeString(client, "ERROR;unknown command\n");
+  }
+}
+
+static void setNonBlocking(int fd) {
+  int flags = fcntl(fd, F_GETFL);
+  if (flags == -1 || fcntl(fd, F_SETFL, flags | O_NONBLOCK) == -1) {
+    perror("fcntl failed");
+  }
+}
+
+// Reads once and answers every complete command line the client sent so
+// far; a trailing partial command is kept until the rest of it arrives.
+// Reading once per pass keeps a client that pipelines a lot from starving
+// the others.
+static void readCommands(Client *client) {
+  for (;;) {
+    ssize_t bytesRead =
+        read(client->fd, client->input + client->inputLength,
+             sizeof(client->input) - 1 - client->inputLength);
+    if (bytesRead == 0) {
+      printf("Client closed connection\n");
+      client->closed = 1;
+      return;
+    }
+    if (bytesRead == -1) {
+      if (errno == EINTR) {
+        continue;
+      }
+      if (errno != EAGAIN && errno != EWOULDBLOCK) {
+        perror("read error");
+        client->closed = 1;
+      }
+      return;
+    }
+    client->inputLength += bytesRead;
+    client->input[client->inputLength] = '\0';
+    char *line = client->input;
+    if (client->discarding) {
+      char *end = strchr(line, '\n');
+      if (!end) {
+        client->inputLength = 0;
+        return;
+      }
+      client->discarding = 0;
+      line = end + 1;
+    }
+    char *newline;
+    while ((newline = strchr(line, '\n')) != NULL && !client->closed) {
+      *newline = '\0';
+      line[strcspn(line, "\r")] = 0;
+      if (*line) {
+        uint64_t start = selfStatsNow();
+        handleCommand(client, line);
+        selfStatsRecordSince(SELF_STAGE_COMMAND, start);
+        selfStatsAdd(SELF_COUNTER_COMMANDS, 1);
+      }
+      line = newline + 1;
+    }
+    client->inputLength -= line - client->input;
+    memmove(client->input, line, client->inputLength);
+    if (client->inputLength == sizeof(client->input) - 1) {
+      writeString(client, "ERROR;command too long\n");
+      client->inputLength = 0;
+      client->discarding = 1;
+    }
+    return;
+  }
+}
+
+static void acceptClient(int sfd, Client **clients, size_t *clientCount) {
+  int cfd = accept(sfd, NULL, NULL);
+  if (cfd == -1) {
+    if (errno != EAGAIN && errno != EWOULDBLOCK && errno != EINTR) {
+      perror("accept failed");
+    }
+    return;
+  }
+  Client *client = calloc(1, sizeof(Client));
+  if (client == NULL) {
+    perror("Failed to allocate client");
+    close(cfd);
+    return;
+  }
+  setNonBlocking(cfd);
+  client->fd = cfd;
+  clients[(*clientCount)++] = client;
+  selfStatsAdd(SELF_COUNTER_CLIENTS_ACCEPTED, 1);
+  printf("Client connected.\n");
+}
 
 int main(void) {
-  int sfd, cfd;
+  int sfd;
   struct sockaddr_un address;
+  Client *clients[MAX_CLIENTS];
+  size_t clientCount = 0;
+  struct pollfd pfds[MAX_CLIENTS + 1];
+
+  signal(SIGPIPE, SIG_IGN);
+  selfStatsInit();
+  procTableInit(&procTable);
 
   sfd = socket(AF_UNIX, SOCK_STREAM, 0);
   if (sfd == -1) {
@@ -49,97 +899,65 @@ int main(void) {
     close(sfd);
     exit(EXIT_FAILURE);
   }
+  setNonBlocking(sfd);
 
   printf("Server is listening on %s\n", SOCKET_PATH);
 
   for (;;) {
-    cfd = accept(sfd, NULL, NULL);
-    if (cfd == -1) {
-      perror("accept failed");
+    uint64_t now = monotonicMs();
+    int timeout = -1;
+    // While full, the listening socket is left out so pending connections
+    // wait in its backlog instead of waking the loop.
+    pfds[0] = (struct pollfd){.fd = clientCount < MAX_CLIENTS ? sfd : -1,
+                              .events = POLLIN};
+    for (size_t i = 0; i < clientCount; i++) {
+      Client *client = clients[i];
+      pfds[i + 1] = (struct pollfd){.fd = client->fd, .events = POLLIN};
+      if (client->outputSent < client->outputLength) {
+        pfds[i + 1].events |= POLLOUT;
+      }
+      int clientTimeout = subscriptionTimeout(&client->subscriptions, now);
+      if (clientTimeout >= 0 && (timeout < 0 || clientTimeout < timeout)) {
+        timeout = clientTimeout;
+      }
+    }
+    if (poll(pfds, clientCount + 1, timeout) == -1 && errno != EINTR) {
+      perror("poll failed");
       continue;
     }
-    printf("Client connected.\n");
-    while (1) {
-      char buffer[BUFFER_SIZE];
-      ssize_t bytesRead = read(cfd, buffer, sizeof(buffer) - 1);
-      if (bytesRead > 0) {
-        buffer[bytesRead] = '\0';
-        buffer[strcspn(buffer, "\r\n")] = 0;
-        printf("Received command: '%s'\n", buffer);
-        if (strcmp(buffer, "GET_PROCESSES") == 0) {
-          printf("Processing GET_PROCESSES command...\n");
-          size_t processCount;
-          ProcessData *processList = scanProcDir(&processCount);
-          if (processList && processCount > 0) {
-            char *formattedString =
-                formatProcessList(processList, processCount);
-            if (formattedString) {
-              write(cfd, formattedString, strlen(formattedString));
-              free(formattedString);
-            }
-            free(processList);
-          } else {
-            const char *errorMsg = "BEGIN_PROCESS_LIST\nEND_PROCESS_LIST\n";
-            write(cfd, errorMsg, strlen(errorMsg));
-          }
-        } else if (strncmp(buffer, "KILL", 4) == 0) {
-          printf("Processing KILL command: %s\n", buffer);
-          int pid, signal;
-          if (sscanf(buffer, "KILL;%d;%d", &pid, &signal) == 2) {
-            if (terminateProcess(pid, signal) == 0) {
-              write(cfd, "OK\n", 3);
-            } else {
-              write(cfd, "ERROR;kill failed\n", 18);
-            }
-          } else {
-            write(cfd, "ERROR;invalid kill format\n", 26);
-          }
-        } else if (strcmp(buffer, "GET_CPU_STATS") == 0) {
-          char *cpuData = getCpuUsage();
-          if (cpuData) {
-            write(cfd, cpuData, strlen(cpuData));
-            free(cpuData);
-          } else {
-            write(cfd, "ERROR;cpu\n", 10);
-          }
-        } else if (strcmp(buffer, "GET_MEM_STATS") == 0) {
-          char *memData = getMemUsage();
-          if (memData) {
-            write(cfd, memData, strlen(memData));
-            free(memData);
-          } else {
-            write(cfd, "ERROR;mem\n", 10);
-          }
-        } else if (strcmp(buffer, "GET_NET_STATS") == 0) {
-          char *netData = getNetUsage();
-          if (netData) {
-            write(cfd, netData, strlen(netData));
-            free(netData);
-          } else {
-            write(cfd, "ERROR;net\n", 10);
-          }
-        } else if (strcmp(buffer, "GET_DISK_STATS") == 0) {
-          char *diskData = getDiskUsage();
-          if (diskData) {
-            write(cfd, diskData, strlen(diskData));
-            free(diskData);
-          } else {
-            write(cfd, "ERROR;disk\n", 11);
-          }
-        } else {
-          write(cfd, "ERROR;unknown command\n", 22);
-        }
-      } else if (bytesRead == 0) {
-        printf("Client closed connection\n");
-        break;
-      } else {
-        perror("read error");
-        break;
+
+    for (size_t i = 0; i < clientCount; i++) {
+      Client *client = clients[i];
+      short revents = pfds[i + 1].revents;
+      if (revents & POLLOUT) {
+        flushOutput(client);
+      }
+      if (!client->closed && (revents & (POLLIN | POLLHUP | POLLERR))) {
+        readCommands(client);
+      }
+    }
+    if (pfds[0].revents & POLLIN) {
+      acceptClient(sfd, clients, &clientCount);
+    }
+    for (size_t i = 0; i < clientCount; i++) {
+      if (!clients[i]->closed) {
+        pushDueSubscriptions(clients[i]);
       }
     }
 
-    close(cfd);
-    printf("Client disconnected.\n\n");
+    size_t kept = 0;
+    for (size_t i = 0; i < clientCount; i++) {
+      Client *client = clients[i];
+      if (client->closed) {
+        close(client->fd);
+        free(client->output);
+        free(client);
+        printf("Client disconnected.\n\n");
+      } else {
+        clients[kept++] = client;
+      }
+    }
+    clientCount = kept;
   }
 
   close(sfd);
@@ -0,0 +1,278 @@
+/*
+ - Reads the detail of a single process for GET_PROCESS_DETAIL (see
+   procDetail.h).
+ - `getProcessDetail`: Collects the command line, cgroup, thread and fd
+   counts, smaps_rollup memory (PSS, USS = private clean + dirty, swap),
+   I/O counters and resource limits of one pid.
+*/
+
+#include "procDetail.h"
+#include <dirent.h>
+#include <inttypes.h>
+#include <stdarg.h>
+#include <stdint.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <sys/stat.h>
+
+#define CMDLINE_MAX 4096
+
+typedef struct {
+  char *data;
+  size_t length;
+  size_t capacity;
+  int failed;
+} Text;
+
+static void appendf(Text *text, const char *format, ...) {
+  if (text->failed) {
+    return;
+  }
+  for (;;) {
+    va_list args;
+    va_start(args, format);
+    int written = vsnprintf(text->data + text->length,
+                            text->capacity - text->length, format, args);
+    va_end(args);
+    if (written < 0) {
+      text->failed = 1;
+      return;
+    }
+    if (text->length + written < text->capacity) {
+      text->length += written;
+      return;
+    }
+    size_t capacity = (text->capacity + written) * 2;
+    char *data = realloc(text->data, capacity);
+    if (data == NULL) {
+      text->failed = 1;
+      return;
+    }
+    text->data = data;
+    text->capacity = capacity;
+  }
+}
+
+// Arguments are NUL separated; they are joined with spaces, and line
+// breaks inside them would end the protocol line, so they become spaces too.
+static void appendCmdline(Text *text, int pid) {
+  char path[64];
+  snprintf(path, sizeof(path), "/proc/%d/cmdline", pid);
+  FILE *file = fopen(path, "r");
+  if (file == NULL) {
+    return;
+  }
+  char cmdline[CMDLINE_MAX];
+  size_t length = fread(cmdline, 1, sizeof(cmdline) - 1, file);
+  fclose(file);
+  while (length > 0 && cmdline[length - 1] == '\0') {
+    length--;
+  }
+  for (size_t i = 0; i < length; i++) {
+    if (cmdline[i] == '\0' || cmdline[i] == '\n' || cmdline[i] == '\r') {
+      cmdline[i] = ' ';
+    }
+  }
+  cmdline[length] = '\0';
+  appendf(text, "CMDLINE;%s\n", cmdline);
+}
+
+// The unified (v2) hierarchy's path, or the first hierarchy's on v1.
+static void appendCgroup(Text *text, int pid) {
+  char path[64];
+  snprintf(path, sizeof(path), "/proc/%d/cgroup", pid);
+  FILE *file = fopen(path, "r");
+  if (file == NULL) {
+    return;
+  }
+  char line[1024];
+  char cgroup[1024] = "";
+  while (fgets(line, sizeof(line), file)) {
+    char *separator = strchr(line, ':');
+    separator = separator ? strchr(separator + 1, ':') : NULL;
+    if (separator == NULL) {
+      continue;
+    }
+    line[strcspn(line, "\n")] = '\0';
+    if (cgroup[0] == '\0' || strncmp(line, "0::", 3) == 0) {
+      snprintf(cgroup, sizeof(cgroup), "%s", separator + 1);
+    }
+    if (strncmp(line, "0::", 3) == 0) {
+      break;
+    }
+  }
+  fclose(file);
+  if (cgroup[0]) {
+    appendf(text, "CGROUP;%s\n", cgroup);
+  }
+}
+
+static void appendThreads(Text *text, int pid) {
+  char path[64];
+  snprintf(path, sizeof(path), "/proc/%d/status", pid);
+  FILE *file = fopen(path, "r");
+  if (file == NULL) {
+    return;
+  }
+  char line[256];
+  unsigned threads;
+  while (fgets(line, sizeof(line), file)) {
+    if (sscanf(line, "Threads: %u", &threads) == 1) {
+      appendf(text, "THREADS;%u\n", threads);
+      break;
+    }
+  }
+  fclose(file);
+}
+
+static void appendFds(Text *text, int pid) {
+  char path[64];
+  snprintf(path, sizeof(path), "/proc/%d/fd", pid);
+  DIR *fdDir = opendir(path);
+  if (fdDir == NULL) {
+    return;
+  }
+  unsigned count = 0;
+  struct dirent *entry;
+  while ((entry = readdir(fdDir)) != NULL) {
+    if (entry->d_name[0] != '.') {
+      count++;
+    }
+  }
+  closedir(fdDir);
+  appendf(text, "FDS;%u\n", count);
+}
+
+static void appendMemory(Text *text, int pid) {
+  char path[64];
+  snprintf(path, sizeof(path), "/proc/%d/smaps_rollup", pid);
+  FILE *file = fopen(path, "r");
+  if (file == NULL) {
+    return;
+  }
+  char line[256];
+  uint64_t value;
+  uint64_t pss = 0;
+  uint64_t privateKb = 0;
+  uint64_t swap = 0;
+  int found = 0;
+  while (fgets(line, sizeof(line), file)) {
+    if (sscanf(line, "Pss: %" SCNu64 " kB", &value) == 1) {
+      pss = value;
+      found = 1;
+    } else if (sscanf(line, "Private_Clean: %" SCNu64 " kB", &value) == 1 ||
+               sscanf(line, "Private_Dirty: %" SCNu64 " kB", &value) == 1) {
+      privateKb += value;
+    } else if (sscanf(line, "Swap: %" SCNu64 " kB", &value) == 1) {
+      swap = value;
+    }
+  }
+  fclose(file);
+  // Kernel threads have an empty rollup.
+  if (found) {
+    appendf(text, "PSS;%" PRIu64 "\nUSS;%" PRIu64 "\nSWAP;%" PRIu64 "\n", pss,
+            privateKb, swap);
+  }
+}
+
+static void appendIo(Text *text, int pid) {
+  char path[64];
+  snprintf(path, sizeof(path), "/proc/%d/io", pid);
+  FILE *file = fopen(path, "r");
+  if (file == NULL) {
+    return;
+  }
+  char line[128];
+  uint64_t value;
+  uint64_t readBytes = 0;
+  uint64_t writeBytes = 0;
+  uint64_t rchar = 0;
+  uint64_t wchar = 0;
+  int found = 0;
+  while (fgets(line, sizeof(line), file)) {
+    if (sscanf(line, "rchar: %" SCNu64, &value) == 1) {
+      rchar = value;
+      found++;
+    } else if (sscanf(line, "wchar: %" SCNu64, &value) == 1) {
+      wchar = value;
+      found++;
+    } else if (sscanf(line, "read_bytes: %" SCNu64, &value) == 1) {
+      readBytes = value;
+      found++;
+    } else if (sscanf(line, "write_bytes: %" SCNu64, &value) == 1) {
+      writeBytes = value;
+      found++;
+    }
+  }
+  fclose(file);
+  if (found == 4) {
+    appendf(text, "IO;%" PRIu64 ";%" PRIu64 ";%" PRIu64 ";%" PRIu64 "\n",
+            readBytes, writeBytes, rchar, wchar);
+  }
+}
+
+static long long parseLimit(const char *value) {
+  return strcmp(value, "unlimited") == 0 ? -1 : atoll(value);
+}
+
+// /proc/<pid>/limits has fixed-width columns: a 26 character name, then
+// the soft and hard limits (and units).
+static void appendLimits(Text *text, int pid) {
+  char path[64];
+  snprintf(path, sizeof(path), "/proc/%d/limits", pid);
+  FILE *file = fopen(path, "r");
+  if (file == NULL) {
+    return;
+  }
+  char line[256];
+  if (!fgets(line, sizeof(line), file)) {
+    fclose(file);
+    return;
+  }
+  while (fgets(line, sizeof(line), file)) {
+    if (strlen(line) <= 26) {
+      continue;
+    }
+    char soft[32];
+    char hard[32];
+    if (sscanf(line + 26, "%31s %31s", soft, hard) != 2) {
+      continue;
+    }
+    size_t nameLength = 26;
+    while (nameLength > 0 && line[nameLength - 1] == ' ') {
+      nameLength--;
+    }
+    appendf(text, "LIMIT;%.*s;%lld;%lld\n", (int)nameLength, line,
+            parseLimit(soft), parseLimit(hard));
+  }
+  fclose(file);
+}
+
+char *getProcessDetail(int pid) {
+  char path[64];
+  struct stat info;
+  snprintf(path, sizeof(path), "/proc/%d", pid);
+  if (pid <= 0 || stat(path, &info) == -1) {
+    return NULL;
+  }
+  Text text = {.data = malloc(2048), .length = 0, .capacity = 2048};
+  if (text.data == NULL) {
+    return NULL;
+  }
+  text.data[0] = '\0';
+  appendf(&text, "BEGIN_PROCESS_DETAIL;%d\n", pid);
+  appendCmdline(&text, pid);
+  appendCgroup(&text, pid);
+  appendThreads(&text, pid);
+  appendFds(&text, pid);
+  appendMemory(&text, pid);
+  appendIo(&text, pid);
+  appendLimits(&text, pid);
+  appendf(&text, "END_PROCESS_DETAIL\n");
+  if (text.failed) {
+    free(text.data);
+    return NULL;
+  }
+  return text.data;
+}
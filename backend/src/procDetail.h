@@ -0,0 +1,21 @@
+#pragma once
+
+/*
+ On-demand detail of a single process, for GET_PROCESS_DETAIL;<pid>. These
+ files are far too expensive to read for every process on every scan
+ (smaps_rollup walks the whole address space), so they are only read for
+ the one process a client asks about. The answer is
+   BEGIN_PROCESS_DETAIL;<pid>
+   CMDLINE;<arguments, space separated>
+   CGROUP;<cgroup path>
+   THREADS;<count>
+   FDS;<open file descriptors>
+   PSS;<kB>  USS;<kB>  SWAP;<kB>              one line each, from smaps_rollup
+   IO;<readBytes>;<writeBytes>;<rchar>;<wchar>
+   LIMIT;<name>;<soft>;<hard>                 one per resource, -1: unlimited
+   END_PROCESS_DETAIL
+ with every line the backend could not read (usually for lack of
+ permission) left out, or ERROR;no such process.
+*/
+
+char *getProcessDetail(int pid);
@@ -2,30 +2,79 @@
  - Implements all data-gathering functions for the backend.
  - `readProcStat`: Reads /proc/[pid]/stat for PID, name, state, PPID,
    and total CPU time (utime + stime).
- - `readProcStatus`: Reads /proc/[pid]/status for username (from UID)
-   and RSS memory (VmRSS).
- - `scanProcDir`: Scans /proc, calling stat/status for each process.
+ - `readProcStatus`: Reads /proc/[pid]/status for the UID and RSS memory
+   (VmRSS), and looks up the username through a small uid cache so that
+   getpwuid() (a network round trip on LDAP or NIS hosts) runs once per
+   user every USER_CACHE_TTL_SECONDS rather than once per process per scan.
+ - `readProcIo`: Reads /proc/[pid]/io for the bytes read from and written to
+   storage, only when the io counters were asked for.
+ - `scanProcDir`: Scans /proc, calling stat/status (and io) for each
+   process; the optional counter groups not in `fields` stay zero.
  - `formatProcessList`: Formats all 7 process fields into a tab-delimited
    string for the client.
+ - `parseProcessFields` / `formatProcessCounters`: Parse a request's
+   optional counter groups and append those counters to a process line.
  - `getCpuUsage`: Calculates aggregate CPU % and returns raw total system
    time from /proc/stat.
+ - `getCoreUsage`: Calculates each core's user/system/iowait/steal share
+   (in tenths of a percent, over the time since the previous call) from the
+   cpuN lines of /proc/stat.
  - `getMemUsage`: Parses /proc/meminfo for memory/swap statistics.
- - `getNetUsage`: Calculates network speed deltas from /proc/net/dev.
+ - `getNetUsage`: Calculates network speeds (bytes per second, over the
+   time since the previous call) from /proc/net/dev.
  - `getDiskUsage`: Uses statvfs to get root filesystem usage.
+ - `getInterfaceUsage`: Per-interface receive/transmit rates (bytes and
+   packets per second) and error counts from /proc/net/dev.
+ - `getDiskIoUsage`: Per-block-device read/write rates (bytes and
+   operations per second) and utilization from /proc/diskstats.
 */
 
 #include "procParser.h"
 #include <ctype.h>
 #include <dirent.h>
+#include <inttypes.h>
 #include <pwd.h>
 #include <stdint.h>
 #include <stdio.h>
 #include <stdlib.h>
 #include <string.h>
 #include <sys/statvfs.h>
+#include <unistd.h>
 #include <sys/types.h>
+#include <time.h>
+
+#define USER_CACHE_SIZE 128
+#define USER_CACHE_TTL_SECONDS 300
+
+typedef struct {
+  uid_t uid;
+  time_t expires;
+  char name[64];
+} UserCacheEntry;
+
+// Direct-mapped: a uid that collides with a cached one simply evicts it.
+static UserCacheEntry userCache[USER_CACHE_SIZE];
+
+static void lookupUserName(uid_t uid, char *name, size_t size) {
+  time_t now = time(NULL);
+  UserCacheEntry *entry =
+      &userCache[((uint32_t)uid * 2654435761u) % USER_CACHE_SIZE];
+  if (entry->expires <= now || entry->uid != uid) {
+    // Renamed users show up once their entry expires.
+    struct passwd *userInfo = getpwuid(uid);
+    if (userInfo != NULL) {
+      snprintf(entry->name, sizeof(entry->name), "%s", userInfo->pw_name);
+    } else {
+      snprintf(entry->name, sizeof(entry->name), "%u", uid);
+    }
+    entry->uid = uid;
+    entry->expires = now + USER_CACHE_TTL_SECONDS;
+  }
+  snprintf(name, size, "%s", entry->name);
+}
 
-static void readProcStat(const char *filepath, ProcessData *p) {
+static void readProcStat(const char *filepath, ProcessData *p,
+                         unsigned fields) {
   p->pid = 0;
   p->totalTime = 0;
   FILE *file = fopen(filepath, "r");
@@ -58,13 +107,24 @@ static void readProcStat(const char *filepath, ProcessData *p) {
   char *stats = rightParen + 2;
   uint64_t utime = 0;
   uint64_t stime = 0;
-  sscanf(stats, "%c %d %*s %*s %*s %*s %*s %*s %*s %*s %*s %lu %lu", &p->state,
-         &p->ppid, &utime, &stime);
+  uint64_t minorFaults = 0;
+  uint64_t majorFaults = 0;
+  sscanf(stats,
+         "%c %d %*s %*s %*s %*s %*s %" SCNu64 " %*s %" SCNu64 " %*s %" SCNu64
+         " %" SCNu64,
+         &p->state, &p->ppid, &minorFaults, &majorFaults, &utime, &stime);
 
   p->totalTime = utime + stime;
+  if (fields & PROC_FIELD_FAULTS) {
+    p->counters[4] = minorFaults;
+    p->counters[5] = majorFaults;
+  }
 }
 
-static void readProcStatus(const char *filepath, ProcessData *p) {
+// The context switch counts are the last lines of the file, so it is only
+// read past VmRSS when they were asked for.
+static void readProcStatus(const char *filepath, ProcessData *p,
+                           unsigned fields) {
   uid_t uid = -1;
   p->memRssKb = 0;
   FILE *file = fopen(filepath, "r");
@@ -74,27 +134,50 @@ static void readProcStatus(const char *filepath, ProcessData *p) {
 
   char buffer[256];
   int found = 0;
+  int wanted = (fields & PROC_FIELD_CTXSW) ? 4 : 2;
 
-  while (found < 2 && fgets(buffer, sizeof(buffer), file)) {
+  while (found < wanted && fgets(buffer, sizeof(buffer), file)) {
     if (strncmp(buffer, "Uid:", 4) == 0) {
       sscanf(buffer, "Uid:\t%u", &uid);
       found++;
     } else if (strncmp(buffer, "VmRSS:", 6) == 0) {
-      sscanf(buffer, "VmRSS:\t%lu kB", &p->memRssKb);
+      sscanf(buffer, "VmRSS:\t%" SCNu64 " kB", &p->memRssKb);
+      found++;
+    } else if (wanted > 2 &&
+               sscanf(buffer, "voluntary_ctxt_switches: %" SCNu64,
+                      &p->counters[2]) == 1) {
+      found++;
+    } else if (wanted > 2 &&
+               sscanf(buffer, "nonvoluntary_ctxt_switches: %" SCNu64,
+                      &p->counters[3]) == 1) {
       found++;
     }
   }
   fclose(file);
 
-  struct passwd *userInfo = getpwuid(uid);
-  if (userInfo != NULL) {
-    strcpy(p->userName, userInfo->pw_name);
-  } else {
-    snprintf(p->userName, sizeof(p->userName), "%u", uid);
+  p->uid = uid;
+  lookupUserName(uid, p->userName, sizeof(p->userName));
+}
+
+// Usually readable only for the user's own processes (or as root); the
+// counters of the others stay zero.
+static void readProcIo(const char *filepath, ProcessData *p) {
+  FILE *file = fopen(filepath, "r");
+  if (file == NULL) {
+    return;
   }
+  char buffer[128];
+  int found = 0;
+  while (found < 2 && fgets(buffer, sizeof(buffer), file)) {
+    if (sscanf(buffer, "read_bytes: %" SCNu64, &p->counters[0]) == 1 ||
+        sscanf(buffer, "write_bytes: %" SCNu64, &p->counters[1]) == 1) {
+      found++;
+    }
+  }
+  fclose(file);
 }
 
-ProcessData *scanProcDir(size_t *processCount) {
+ProcessData *scanProcDir(size_t *processCount, unsigned fields) {
   size_t capacity = 256;
   *processCount = 0;
 
@@ -128,16 +211,23 @@ ProcessData *scanProcDir(size_t *processCount) {
       }
 
       ProcessData *p = &processList[*processCount];
+      memset(p->counters, 0, sizeof(p->counters));
       char statFilepath[512];
       snprintf(statFilepath, sizeof(statFilepath), "/proc/%s/stat",
                entry->d_name);
-      readProcStat(statFilepath, p);
+      readProcStat(statFilepath, p, fields);
 
       if (p->pid > 0) {
         char statusFilepath[512];
         snprintf(statusFilepath, sizeof(statusFilepath), "/proc/%s/status",
                  entry->d_name);
-        readProcStatus(statusFilepath, p);
+        readProcStatus(statusFilepath, p, fields);
+        if (fields & PROC_FIELD_IO) {
+          char ioFilepath[512];
+          snprintf(ioFilepath, sizeof(ioFilepath), "/proc/%s/io",
+                   entry->d_name);
+          readProcIo(ioFilepath, p);
+        }
         (*processCount)++;
       }
     }
@@ -163,8 +253,9 @@ char *formatProcessList(ProcessData *processList, size_t processCount) {
 
     int lineLen =
         snprintf(lineBuffer, sizeof(lineBuffer),
-                 "%d\t%d\t%s\t%c\t%s\t%lu\t%lu\n", p->pid, p->ppid, p->userName,
-                 p->state, p->processName, p->totalTime, p->memRssKb);
+                 "%d\t%d\t%s\t%c\t%s\t%" PRIu64 "\t%" PRIu64 "\n", p->pid,
+                 p->ppid, p->userName, p->state, p->processName,
+                 p->totalTime, p->memRssKb);
 
     if (currentLen + lineLen >= capacity) {
       capacity *= 2;
@@ -176,7 +267,7 @@ char *formatProcessList(ProcessData *processList, size_t processCount) {
       response = newResponse;
     }
 
-    strcat(response, lineBuffer);
+    memcpy(response + currentLen, lineBuffer, lineLen + 1);
     currentLen += lineLen;
   }
 
@@ -190,11 +281,55 @@ char *formatProcessList(ProcessData *processList, size_t processCount) {
     }
     response = newResponse;
   }
-  strcat(response, footer);
+  memcpy(response + currentLen, footer, strlen(footer) + 1);
 
   return response;
 }
 
+// A comma separated list of group names (io, ctxsw, faults); -1 for an
+// unknown one.
+int parseProcessFields(const char *value, size_t length, unsigned *fields) {
+  static const char *const names[PROC_FIELD_GROUPS] = {"io", "ctxsw",
+                                                       "faults"};
+  *fields = 0;
+  while (length > 0) {
+    const char *comma = memchr(value, ',', length);
+    size_t nameLength = comma ? (size_t)(comma - value) : length;
+    int known = 0;
+    for (int g = 0; g < PROC_FIELD_GROUPS; g++) {
+      if (strlen(names[g]) == nameLength &&
+          strncmp(names[g], value, nameLength) == 0) {
+        *fields |= 1u << g;
+        known = 1;
+      }
+    }
+    if (!known) {
+      return -1;
+    }
+    if (!comma) {
+      break;
+    }
+    length -= nameLength + 1;
+    value = comma + 1;
+  }
+  return 0;
+}
+
+// Appends "\t<a>\t<b>" for every group in `fields` to a process line,
+// returning the characters written (not counting the terminator).
+int formatProcessCounters(char *buffer, size_t size, const ProcessData *p,
+                          unsigned fields) {
+  int written = 0;
+  for (int g = 0; g < PROC_FIELD_GROUPS; g++) {
+    if ((fields & (1u << g)) && (size_t)written < size) {
+      written += snprintf(buffer + written, size - written,
+                          "\t%" PRIu64 "\t%" PRIu64, p->counters[2 * g],
+                          p->counters[2 * g + 1]);
+    }
+  }
+  return written;
+}
+
 static uint64_t prevTotal = 0;
 static uint64_t prevIdle = 0;
 
@@ -213,15 +348,17 @@ char *getCpuUsage(void) {
   uint64_t iowait = 0;
   uint64_t irq = 0;
   uint64_t softirq = 0;
-  sscanf(line, "cpu %lu %lu %lu %lu %lu %lu %lu", &user, &nice, &system,
-         &currentIdle, &iowait, &irq, &softirq);
+  sscanf(line,
+         "cpu %" SCNu64 " %" SCNu64 " %" SCNu64 " %" SCNu64 " %" SCNu64
+         " %" SCNu64 " %" SCNu64,
+         &user, &nice, &system, &currentIdle, &iowait, &irq, &softirq);
   uint64_t currentTotal =
       user + nice + system + currentIdle + iowait + irq + softirq;
   char *out = malloc(50 * sizeof(char));
   if (!prevTotal) {
     prevTotal = currentTotal;
     prevIdle = currentIdle;
-    snprintf(out, 50, "CPU;0.0;%lu\n", currentTotal);
+    snprintf(out, 50, "CPU;0.0;%" PRIu64 "\n", currentTotal);
   } else {
     uint64_t deltaTotal = currentTotal - prevTotal;
     uint64_t deltaIdle = currentIdle - prevIdle;
@@ -232,12 +369,120 @@ char *getCpuUsage(void) {
 
     prevTotal = currentTotal;
     prevIdle = currentIdle;
-    snprintf(out, 50, "CPU;%.1f;%lu\n", usagePercent, currentTotal);
+    snprintf(out, 50, "CPU;%.1f;%" PRIu64 "\n", usagePercent, currentTotal);
   }
   fclose(file);
   return out;
 }
 
+typedef struct {
+  int id;
+  uint64_t user;
+  uint64_t system;
+  uint64_t iowait;
+  uint64_t steal;
+  uint64_t total;
+} CoreTimes;
+
+static CoreTimes *prevCores = NULL;
+static size_t prevCoreCount = 0;
+
+// Tenths of a percent of the core's time that passed.
+static unsigned coreShare(uint64_t current, uint64_t previous,
+                          uint64_t deltaTotal) {
+  if (deltaTotal == 0 || current < previous) {
+    return 0;
+  }
+  uint64_t share = ((current - previous) * 1000 + deltaTotal / 2) / deltaTotal;
+  return share > 1000 ? 1000 : (unsigned)share;
+}
+
+char *getCoreUsage(void) {
+  FILE *file = fopen("/proc/stat", "r");
+  if (!file) {
+    perror("Failed to open /proc/stat");
+    return NULL;
+  }
+  size_t capacity = 64;
+  size_t count = 0;
+  CoreTimes *cores = malloc(capacity * sizeof(CoreTimes));
+  if (!cores) {
+    fclose(file);
+    return NULL;
+  }
+  // The cpuN lines come first, right after the aggregate cpu line.
+  char line[512];
+  while (fgets(line, sizeof(line), file) && strncmp(line, "cpu", 3) == 0) {
+    if (!isdigit((unsigned char)line[3])) {
+      continue;
+    }
+    int id = 0;
+    uint64_t user = 0, nice = 0, system = 0, idle = 0, iowait = 0, irq = 0,
+             softirq = 0, steal = 0;
+    if (sscanf(line,
+               "cpu%d %" SCNu64 " %" SCNu64 " %" SCNu64 " %" SCNu64 " %" SCNu64
+               " %" SCNu64 " %" SCNu64 " %" SCNu64,
+               &id, &user, &nice, &system, &idle, &iowait, &irq, &softirq,
+               &steal) < 5) {
+      continue;
+    }
+    if (count == capacity) {
+      capacity *= 2;
+      CoreTimes *grown = realloc(cores, capacity * sizeof(CoreTimes));
+      if (!grown) {
+        free(cores);
+        fclose(file);
+        return NULL;
+      }
+      cores = grown;
+    }
+    CoreTimes *core = &cores[count++];
+    core->id = id;
+    core->user = user + nice;
+    core->system = system + irq + softirq;
+    core->iowait = iowait;
+    core->steal = steal;
+    core->total = user + nice + system + idle + iowait + irq + softirq + steal;
+  }
+  fclose(file);
+
+  char *out = malloc(32 + count * 48);
+  if (!out) {
+    free(cores);
+    return NULL;
+  }
+  size_t length = sprintf(out, "CORES;%zu\n", count);
+  for (size_t i = 0; i < count; i++) {
+    const CoreTimes *core = &cores[i];
+    // Cores can go offline and come back, so match them up by id.
+    const CoreTimes *prev = NULL;
+    if (i < prevCoreCount && prevCores[i].id == core->id) {
+      prev = &prevCores[i];
+    } else {
+      for (size_t j = 0; j < prevCoreCount; j++) {
+        if (prevCores[j].id == core->id) {
+          prev = &prevCores[j];
+          break;
+        }
+      }
+    }
+    unsigned user = 0, system = 0, iowait = 0, steal = 0;
+    if (prev && core->total > prev->total) {
+      uint64_t deltaTotal = core->total - prev->total;
+      user = coreShare(core->user, prev->user, deltaTotal);
+      system = coreShare(core->system, prev->system, deltaTotal);
+      iowait = coreShare(core->iowait, prev->iowait, deltaTotal);
+      steal = coreShare(core->steal, prev->steal, deltaTotal);
+    }
+    length += sprintf(out + length, "CORE;%d;%u;%u;%u;%u\n", core->id, user,
+                      system, iowait, steal);
+  }
+  free(prevCores);
+  prevCores = cores;
+  prevCoreCount = count;
+  return out;
+}
+
 char *getMemUsage(void) {
   FILE *file = fopen("/proc/meminfo", "r");
   if (!file) {
@@ -254,18 +499,19 @@ char *getMemUsage(void) {
   uint64_t swapFree = 0;
   int found = 0;
   while ((fgets(line, sizeof(line), file)) && found < 7) {
-    found += (sscanf(line, "MemTotal: %lu kB", &memTotal) == 1);
-    found += (sscanf(line, "MemFree: %lu kB", &memFree) == 1);
-    found += (sscanf(line, "MemAvailable: %lu kB", &memAvail) == 1);
-    found += (sscanf(line, "Buffers: %lu kB", &buffers) == 1);
-    found += (sscanf(line, "Cached: %lu kB", &cached) == 1);
-    found += (sscanf(line, "SwapTotal: %lu kB", &swapTotal) == 1);
-    found += (sscanf(line, "SwapFree: %lu kB", &swapFree) == 1);
+    found += (sscanf(line, "MemTotal: %" SCNu64 " kB", &memTotal) == 1);
+    found += (sscanf(line, "MemFree: %" SCNu64 " kB", &memFree) == 1);
+    found += (sscanf(line, "MemAvailable: %" SCNu64 " kB", &memAvail) == 1);
+    found += (sscanf(line, "Buffers: %" SCNu64 " kB", &buffers) == 1);
+    found += (sscanf(line, "Cached: %" SCNu64 " kB", &cached) == 1);
+    found += (sscanf(line, "SwapTotal: %" SCNu64 " kB", &swapTotal) == 1);
+    found += (sscanf(line, "SwapFree: %" SCNu64 " kB", &swapFree) == 1);
   }
   char *out = malloc(512 * sizeof(char));
   snprintf(out, 512,
-           "MEM_TOTAL;%lu\nMEM_FREE;%lu\nMEM_AVAIL;%lu\nBUFFERS;%lu\nCACHED;%"
-           "lu\nSWAP_TOTAL;%lu\nSWAP_FREE;%lu\n",
+           "MEM_TOTAL;%" PRIu64 "\nMEM_FREE;%" PRIu64 "\nMEM_AVAIL;%" PRIu64
+           "\nBUFFERS;%" PRIu64 "\nCACHED;%" PRIu64 "\nSWAP_TOTAL;%" PRIu64
+           "\nSWAP_FREE;%" PRIu64 "\n",
            memTotal, memFree, memAvail, buffers, cached, swapTotal, swapFree);
   fclose(file);
   return out;
@@ -273,6 +519,11 @@ char *getMemUsage(void) {
 
 static uint64_t prevRecBytes = 0;
 static uint64_t prevTxBytes = 0;
+static struct timespec prevNetTime;
+
+static uint64_t perSecond(uint64_t bytes, double elapsed) {
+  return elapsed > 0 ? (uint64_t)(bytes / elapsed) : 0;
+}
 
 char *getNetUsage(void) {
   FILE *file = fopen("/proc/net/dev", "r");
@@ -293,26 +544,35 @@ char *getNetUsage(void) {
     }
     uint64_t recBytes = 0;
     uint64_t txBytes = 0;
-    sscanf(line, "%*s %lu %*s %*s %*s %*s %*s %*s %*s %lu", &recBytes,
-           &txBytes);
+    sscanf(line, "%*s %" SCNu64 " %*s %*s %*s %*s %*s %*s %*s %" SCNu64,
+           &recBytes, &txBytes);
 
     currentTotalRecv += recBytes;
     currentTotalTx += txBytes;
   }
+  struct timespec now;
+  clock_gettime(CLOCK_MONOTONIC, &now);
   if (!prevRecBytes) {
     prevRecBytes = currentTotalRecv;
     prevTxBytes = currentTotalTx;
+    prevNetTime = now;
     fclose(file);
     char *out = malloc(50 * sizeof(char));
     snprintf(out, 50, "NET;0;0;\n");
     return out;
   }
-  uint64_t downSpeedBytes = currentTotalRecv - prevRecBytes;
-  uint64_t upSpeedBytes = currentTotalTx - prevTxBytes;
+  // Callers poll at different rates, so report a rate rather than the raw
+  // byte count since the previous call.
+  double elapsed = (now.tv_sec - prevNetTime.tv_sec) +
+                   (now.tv_nsec - prevNetTime.tv_nsec) / 1e9;
+  uint64_t downSpeedBytes = perSecond(currentTotalRecv - prevRecBytes, elapsed);
+  uint64_t upSpeedBytes = perSecond(currentTotalTx - prevTxBytes, elapsed);
   prevRecBytes = currentTotalRecv;
   prevTxBytes = currentTotalTx;
+  prevNetTime = now;
   char *out = malloc(50 * sizeof(char));
-  snprintf(out, 50, "NET;%lu;%lu;\n", downSpeedBytes, upSpeedBytes);
+  snprintf(out, 50, "NET;%" PRIu64 ";%" PRIu64 ";\n", downSpeedBytes,
+           upSpeedBytes);
   fclose(file);
   return out;
 }
@@ -327,10 +587,252 @@ char *getDiskUsage(void) {
     uint64_t availSpace = freeBlockForUser * blockSize;
     uint64_t usedSpace = totalSpace - availSpace;
     char *out = malloc(50 * sizeof(char));
-    snprintf(out, 50, "DISK;%lu;%lu\n", usedSpace, totalSpace);
+    snprintf(out, 50, "DISK;%" PRIu64 ";%" PRIu64 "\n", usedSpace, totalSpace);
     return out;
   } else {
     perror("Failed to call statvfs");
     return NULL;
   }
 }
+
+static double secondsSince(const struct timespec *then,
+                           const struct timespec *now) {
+  return (now->tv_sec - then->tv_sec) + (now->tv_nsec - then->tv_nsec) / 1e9;
+}
+
+// Counters that went backwards (a device that was replaced, or a wrapped
+// 32-bit counter) count as no change.
+static uint64_t counterRate(uint64_t current, uint64_t previous,
+                            double elapsed) {
+  return current >= previous ? perSecond(current - previous, elapsed) : 0;
+}
+
+// Output buffers are sized from the widest line each function can print: a
+// full-width uint64_t in every numeric field and a name that fills
+// DEVICE_NAME_SIZE. The header holds the longest prefix plus a size_t count.
+#define DEVICE_NAME_SIZE 32
+#define UINT64_DIGITS 20
+#define RATE_HEADER_MAX (sizeof("INTERFACES;\n") + UINT64_DIGITS)
+#define INTERFACE_LINE_MAX                                                     \
+  (sizeof("IF;\n") - 1 + DEVICE_NAME_SIZE - 1 + 6 * (1 + UINT64_DIGITS))
+#define DISK_LINE_MAX                                                          \
+  (sizeof("DEV;\n") - 1 + DEVICE_NAME_SIZE - 1 + 4 * (1 + UINT64_DIGITS) +    \
+   sizeof(";1000") - 1)
+
+typedef struct {
+  char name[DEVICE_NAME_SIZE];
+  uint64_t rxBytes;
+  uint64_t rxPackets;
+  uint64_t rxErrors;
+  uint64_t txBytes;
+  uint64_t txPackets;
+  uint64_t txErrors;
+} InterfaceCounters;
+
+static InterfaceCounters *prevInterfaces = NULL;
+static size_t prevInterfaceCount = 0;
+static struct timespec prevInterfaceTime;
+
+char *getInterfaceUsage(void) {
+  FILE *file = fopen("/proc/net/dev", "r");
+  if (!file) {
+    perror("Failed to open /proc/net/dev");
+    return NULL;
+  }
+  struct timespec now;
+  clock_gettime(CLOCK_MONOTONIC, &now);
+  size_t capacity = 16;
+  size_t count = 0;
+  InterfaceCounters *interfaces = malloc(capacity * sizeof(InterfaceCounters));
+  if (!interfaces) {
+    fclose(file);
+    return NULL;
+  }
+  char line[512];
+  while (fgets(line, sizeof(line), file) != NULL) {
+    // The two header lines have no colon before the counters.
+    char *colon = strchr(line, ':');
+    if (!colon) {
+      continue;
+    }
+    *colon = '\0';
+    char *name = line;
+    while (isspace((unsigned char)*name)) {
+      name++;
+    }
+    InterfaceCounters current;
+    memset(&current, 0, sizeof(current));
+    if (sscanf(colon + 1,
+               "%" SCNu64 " %" SCNu64 " %" SCNu64 " %*u %*u %*u %*u %*u"
+               " %" SCNu64 " %" SCNu64 " %" SCNu64,
+               &current.rxBytes, &current.rxPackets, &current.rxErrors,
+               &current.txBytes, &current.txPackets,
+               &current.txErrors) != 6) {
+      continue;
+    }
+    snprintf(current.name, sizeof(current.name), "%.31s", name);
+    if (count == capacity) {
+      capacity *= 2;
+      InterfaceCounters *grown =
+          realloc(interfaces, capacity * sizeof(InterfaceCounters));
+      if (!grown) {
+        free(interfaces);
+        fclose(file);
+        return NULL;
+      }
+      interfaces = grown;
+    }
+    interfaces[count++] = current;
+  }
+  fclose(file);
+
+  double elapsed = prevInterfaces ? secondsSince(&prevInterfaceTime, &now) : 0;
+  size_t outCapacity = RATE_HEADER_MAX + count * INTERFACE_LINE_MAX;
+  char *out = malloc(outCapacity);
+  if (!out) {
+    free(interfaces);
+    return NULL;
+  }
+  size_t length = snprintf(out, outCapacity, "INTERFACES;%zu\n", count);
+  for (size_t i = 0; i < count; i++) {
+    const InterfaceCounters *current = &interfaces[i];
+    const InterfaceCounters *prev = NULL;
+    for (size_t j = 0; j < prevInterfaceCount; j++) {
+      size_t k = (i + j) % prevInterfaceCount;
+      if (strcmp(prevInterfaces[k].name, current->name) == 0) {
+        prev = &prevInterfaces[k];
+        break;
+      }
+    }
+    uint64_t rxBytes = 0, txBytes = 0, rxPackets = 0, txPackets = 0;
+    if (prev) {
+      rxBytes = counterRate(current->rxBytes, prev->rxBytes, elapsed);
+      txBytes = counterRate(current->txBytes, prev->txBytes, elapsed);
+      rxPackets = counterRate(current->rxPackets, prev->rxPackets, elapsed);
+      txPackets = counterRate(current->txPackets, prev->txPackets, elapsed);
+    }
+    length += snprintf(out + length, outCapacity - length,
+                       "IF;%s;%" PRIu64 ";%" PRIu64 ";%" PRIu64 ";%" PRIu64
+                       ";%" PRIu64 ";%" PRIu64 "\n",
+                       current->name, rxBytes, txBytes, rxPackets, txPackets,
+                       current->rxErrors, current->txErrors);
+  }
+  free(prevInterfaces);
+  prevInterfaces = interfaces;
+  prevInterfaceCount = count;
+  prevInterfaceTime = now;
+  return out;
+}
+
+typedef struct {
+  char name[DEVICE_NAME_SIZE];
+  uint64_t reads;
+  uint64_t readSectors;
+  uint64_t writes;
+  uint64_t writeSectors;
+  uint64_t ioMillis;
+} DiskCounters;
+
+static DiskCounters *prevDisks = NULL;
+static size_t prevDiskCount = 0;
+static struct timespec prevDiskTime;
+
+// Whole disks only: partitions have no /sys/block entry of their own, and
+// loop and RAM disks are left out.
+static int isReportedDisk(const char *name) {
+  if (strncmp(name, "loop", 4) == 0 || strncmp(name, "ram", 3) == 0) {
+    return 0;
+  }
+  char path[64];
+  snprintf(path, sizeof(path), "/sys/block/%s", name);
+  return access(path, F_OK) == 0;
+}
+
+char *getDiskIoUsage(void) {
+  FILE *file = fopen("/proc/diskstats", "r");
+  if (!file) {
+    perror("Failed to open /proc/diskstats");
+    return NULL;
+  }
+  struct timespec now;
+  clock_gettime(CLOCK_MONOTONIC, &now);
+  size_t capacity = 16;
+  size_t count = 0;
+  DiskCounters *disks = malloc(capacity * sizeof(DiskCounters));
+  if (!disks) {
+    fclose(file);
+    return NULL;
+  }
+  char line[512];
+  while (fgets(line, sizeof(line), file) != NULL) {
+    DiskCounters current;
+    memset(&current, 0, sizeof(current));
+    if (sscanf(line,
+               "%*u %*u %31s %" SCNu64 " %*u %" SCNu64 " %*u %" SCNu64
+               " %*u %" SCNu64 " %*u %*u %" SCNu64,
+               current.name, &current.reads, &current.readSectors,
+               &current.writes, &current.writeSectors,
+               &current.ioMillis) != 6 ||
+        !isReportedDisk(current.name)) {
+      continue;
+    }
+    if (count == capacity) {
+      capacity *= 2;
+      DiskCounters *grown = realloc(disks, capacity * sizeof(DiskCounters));
+      if (!grown) {
+        free(disks);
+        fclose(file);
+        return NULL;
+      }
+      disks = grown;
+    }
+    disks[count++] = current;
+  }
+  fclose(file);
+
+  double elapsed = prevDisks ? secondsSince(&prevDiskTime, &now) : 0;
+  size_t outCapacity = RATE_HEADER_MAX + count * DISK_LINE_MAX;
+  char *out = malloc(outCapacity);
+  if (!out) {
+    free(disks);
+    return NULL;
+  }
+  size_t length = snprintf(out, outCapacity, "DISKIO;%zu\n", count);
+  for (size_t i = 0; i < count; i++) {
+    const DiskCounters *current = &disks[i];
+    const DiskCounters *prev = NULL;
+    for (size_t j = 0; j < prevDiskCount; j++) {
+      size_t k = (i + j) % prevDiskCount;
+      if (strcmp(prevDisks[k].name, current->name) == 0) {
+        prev = &prevDisks[k];
+        break;
+      }
+    }
+    uint64_t readBytes = 0, writeBytes = 0, reads = 0, writes = 0;
+    unsigned utilization = 0;
+    if (prev && elapsed > 0) {
+      // /proc/diskstats counts 512-byte sectors whatever the device uses.
+      readBytes =
+          counterRate(current->readSectors, prev->readSectors, elapsed) * 512;
+      writeBytes =
+          counterRate(current->writeSectors, prev->writeSectors, elapsed) *
+          512;
+      reads = counterRate(current->reads, prev->reads, elapsed);
+      writes = counterRate(current->writes, prev->writes, elapsed);
+      // Tenths of a percent of the elapsed time the device was busy.
+      uint64_t busy =
+          counterRate(current->ioMillis, prev->ioMillis, elapsed);
+      utilization = busy >= 1000 ? 1000 : (unsigned)busy;
+    }
+    length += snprintf(out + length, outCapacity - length,
+                       "DEV;%s;%" PRIu64 ";%" PRIu64 ";%" PRIu64 ";%" PRIu64
+                       ";%u\n",
+                       current->name, readBytes, writeBytes, reads, writes,
+                       utilization);
+  }
+  free(prevDisks);
+  prevDisks = disks;
+  prevDiskCount = count;
+  prevDiskTime = now;
+  return out;
+}
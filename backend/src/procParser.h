@@ -3,6 +3,22 @@
 #include <stdint.h>
 #include <stdlib.h>
 
+/*
+ Optional per-process counters, read only for the groups a request asks
+ for ("fields", a comma separated list of the group names) since each costs
+ extra parsing or an extra file per process. Every group is two running
+ totals, appended in group order to a process's line or record:
+   io       read_bytes, write_bytes          /proc/<pid>/io
+   ctxsw    voluntary, involuntary switches  /proc/<pid>/status
+   faults   minor, major page faults         /proc/<pid>/stat
+*/
+
+#define PROC_FIELD_IO (1u << 0)
+#define PROC_FIELD_CTXSW (1u << 1)
+#define PROC_FIELD_FAULTS (1u << 2)
+#define PROC_FIELD_GROUPS 3
+#define PROC_COUNTER_COUNT (PROC_FIELD_GROUPS * 2)
+
 typedef struct {
   int pid;
   uint64_t totalTime;
@@ -10,13 +26,26 @@ typedef struct {
   char processName[256];
   char state;
   int ppid;
-  char userName[256];
+  uint32_t uid;
+  char userName[64];
+  // The process name's id in the procTable name dictionary; set by
+  // procTableUpdate() (see procTable.h).
+  uint32_t nameId;
+  // Group g's totals are counters[2g] and counters[2g + 1]; zero for the
+  // groups that were not read.
+  uint64_t counters[PROC_COUNTER_COUNT];
 } ProcessData;
 
-ProcessData *scanProcDir(size_t *processCount);
+ProcessData *scanProcDir(size_t *processCount, unsigned fields);
 char *formatProcessList(ProcessData *processList, size_t processCount);
+int parseProcessFields(const char *value, size_t length, unsigned *fields);
+int formatProcessCounters(char *buffer, size_t size, const ProcessData *p,
+                          unsigned fields);
 
 char *getCpuUsage(void);
+char *getCoreUsage(void);
 char *getMemUsage(void);
 char *getNetUsage(void);
 char *getDiskUsage(void);
+char *getInterfaceUsage(void);
+char *getDiskIoUsage(void);
@@ -0,0 +1,299 @@
+/*
+ - Process queries: filter, sort and top-K over the process table (see
+   procQuery.h).
+ - `parseProcessQuery`: Parses the key=value arguments of a query.
+ - `runProcessQuery`: Collects the live processes that pass the filters and
+   keeps the best `limit` of them in a bounded max-heap, so a query costs
+   O(processes x log limit) rather than sorting the whole table; the kept
+   rows are then heap-sorted into order.
+ - `formatProcessQueryResult`: Formats a result as text for clients that
+   did not negotiate the binary format.
+*/
+
+#include "procQuery.h"
+#include <inttypes.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+
+static int copyValue(char *target, const char *value, size_t length) {
+  if (length >= PROCESS_QUERY_FIELD_SIZE) {
+    return -1;
+  }
+  memcpy(target, value, length);
+  target[length] = '\0';
+  return 0;
+}
+
+static int parseCount(const char *value, size_t length, uint64_t *count) {
+  char digits[24];
+  if (length == 0 || length >= sizeof(digits)) {
+    return -1;
+  }
+  memcpy(digits, value, length);
+  digits[length] = '\0';
+  char *rest;
+  unsigned long long parsed = strtoull(digits, &rest, 10);
+  if (*rest != '\0' || digits[0] == '-') {
+    return -1;
+  }
+  *count = parsed;
+  return 0;
+}
+
+static int parseSortKey(const char *value, size_t length, QuerySortKey *key) {
+  static const struct {
+    const char *name;
+    QuerySortKey key;
+  } keys[] = {{"pid", QUERY_SORT_PID},     {"ppid", QUERY_SORT_PPID},
+              {"user", QUERY_SORT_USER},   {"state", QUERY_SORT_STATE},
+              {"name", QUERY_SORT_NAME},   {"cpu", QUERY_SORT_CPU},
+              {"rss", QUERY_SORT_RSS}};
+  for (size_t i = 0; i < sizeof(keys) / sizeof(keys[0]); i++) {
+    if (strlen(keys[i].name) == length &&
+        strncmp(keys[i].name, value, length) == 0) {
+      *key = keys[i].key;
+      return 0;
+    }
+  }
+  return -1;
+}
+
+static int parsePair(const char *pair, size_t length, ProcessQuery *query) {
+  const char *equals = memchr(pair, '=', length);
+  if (!equals) {
+    return -1;
+  }
+  size_t keyLength = equals - pair;
+  const char *value = equals + 1;
+  size_t valueLength = length - keyLength - 1;
+  uint64_t count;
+  if (keyLength == 6 && strncmp(pair, "fields", 6) == 0) {
+    return parseProcessFields(value, valueLength, &query->fields);
+  }
+  query->hasSelection = 1;
+  if (keyLength == 4 && strncmp(pair, "user", 4) == 0) {
+    return copyValue(query->user, value, valueLength);
+  } else if (keyLength == 5 && strncmp(pair, "state", 5) == 0) {
+    return copyValue(query->states, value, valueLength);
+  } else if (keyLength == 4 && strncmp(pair, "name", 4) == 0) {
+    return copyValue(query->namePrefix, value, valueLength);
+  } else if (keyLength == 6 && strncmp(pair, "minrss", 6) == 0) {
+    return parseCount(value, valueLength, &query->minRssKb);
+  } else if (keyLength == 4 && strncmp(pair, "sort", 4) == 0) {
+    return parseSortKey(value, valueLength, &query->sortKey);
+  } else if (keyLength == 5 && strncmp(pair, "order", 5) == 0) {
+    if (valueLength == 3 && strncmp(value, "asc", 3) == 0) {
+      query->descending = 0;
+    } else if (valueLength == 4 && strncmp(value, "desc", 4) == 0) {
+      query->descending = 1;
+    } else {
+      return -1;
+    }
+    return 0;
+  } else if (keyLength == 5 && strncmp(pair, "limit", 5) == 0) {
+    if (parseCount(value, valueLength, &count) == -1) {
+      return -1;
+    }
+    query->limit = (size_t)count;
+    return 0;
+  }
+  return -1;
+}
+
+int parseProcessQuery(const char *args, ProcessQuery *query) {
+  memset(query, 0, sizeof(*query));
+  query->sortKey = QUERY_SORT_PID;
+  const char *pair = args;
+  while (*pair) {
+    const char *end = strchr(pair, ';');
+    size_t length = end ? (size_t)(end - pair) : strlen(pair);
+    if (length > 0 && parsePair(pair, length, query) == -1) {
+      return -1;
+    }
+    pair += length;
+    if (*pair == ';') {
+      pair++;
+    }
+  }
+  return 0;
+}
+
+static int matches(const ProcessQuery *query, const ProcessData *p) {
+  if (query->user[0] && strcmp(query->user, p->userName) != 0) {
+    return 0;
+  }
+  if (query->states[0] && (p->state == '\0' ||
+                           strchr(query->states, p->state) == NULL)) {
+    return 0;
+  }
+  if (query->namePrefix[0] &&
+      strncmp(query->namePrefix, p->processName,
+              strlen(query->namePrefix)) != 0) {
+    return 0;
+  }
+  return p->memRssKb >= query->minRssKb;
+}
+
+static int compareValues(uint64_t a, uint64_t b) {
+  return a < b ? -1 : a > b;
+}
+
+// Negative if `a` comes before `b` in the requested order; ties are broken
+// by pid so the order (and what a limit cuts off) is stable.
+static int compareRows(const ProcessQuery *query, const ProcTableEntry *a,
+                       const ProcTableEntry *b) {
+  int result = 0;
+  switch (query->sortKey) {
+  case QUERY_SORT_PID:
+    break;
+  case QUERY_SORT_PPID:
+    result = compareValues((uint32_t)a->data.ppid, (uint32_t)b->data.ppid);
+    break;
+  case QUERY_SORT_USER:
+    result = strcmp(a->data.userName, b->data.userName);
+    break;
+  case QUERY_SORT_STATE:
+    result = compareValues((unsigned char)a->data.state,
+                           (unsigned char)b->data.state);
+    break;
+  case QUERY_SORT_NAME:
+    result = strcmp(a->data.processName, b->data.processName);
+    break;
+  case QUERY_SORT_CPU:
+    result = compareValues(a->cpuCentiPercent, b->cpuCentiPercent);
+    break;
+  case QUERY_SORT_RSS:
+    result = compareValues(a->data.memRssKb, b->data.memRssKb);
+    break;
+  }
+  if (result == 0) {
+    result = compareValues((uint32_t)a->data.pid, (uint32_t)b->data.pid);
+  }
+  return query->descending ? -result : result;
+}
+
+// Max-heap on the requested order: the root is the row that comes last.
+static void siftDown(const ProcessQuery *query, const ProcTableEntry **heap,
+                     size_t count, size_t i) {
+  for (;;) {
+    size_t last = i;
+    size_t left = 2 * i + 1;
+    size_t right = left + 1;
+    if (left < count && compareRows(query, heap[left], heap[last]) > 0) {
+      last = left;
+    }
+    if (right < count && compareRows(query, heap[right], heap[last]) > 0) {
+      last = right;
+    }
+    if (last == i) {
+      return;
+    }
+    const ProcTableEntry *swap = heap[i];
+    heap[i] = heap[last];
+    heap[last] = swap;
+    i = last;
+  }
+}
+
+static void siftUp(const ProcessQuery *query, const ProcTableEntry **heap,
+                   size_t i) {
+  while (i > 0) {
+    size_t parent = (i - 1) / 2;
+    if (compareRows(query, heap[i], heap[parent]) <= 0) {
+      return;
+    }
+    const ProcTableEntry *swap = heap[i];
+    heap[i] = heap[parent];
+    heap[parent] = swap;
+    i = parent;
+  }
+}
+
+int runProcessQuery(const ProcTable *table, const ProcessQuery *query,
+                    ProcessQueryResult *result) {
+  memset(result, 0, sizeof(*result));
+  size_t limit = query->limit;
+  if (limit == 0 || limit > table->entryCount) {
+    limit = table->entryCount;
+  }
+  result->rows = malloc((limit + 1) * sizeof(ProcTableEntry *));
+  if (result->rows == NULL) {
+    perror("Failed to allocate process query result");
+    return -1;
+  }
+
+  const ProcTableEntry **heap = result->rows;
+  size_t count = 0;
+  for (size_t i = 0; i < table->entryCount; i++) {
+    const ProcTableEntry *entry = &table->entries[i];
+    if (entry->removedGen != 0 || !matches(query, &entry->data)) {
+      continue;
+    }
+    result->matchedCount++;
+    if (count < limit) {
+      heap[count] = entry;
+      siftUp(query, heap, count++);
+    } else if (limit > 0 && compareRows(query, entry, heap[0]) < 0) {
+      heap[0] = entry;
+      siftDown(query, heap, count, 0);
+    }
+  }
+
+  // Heap sort: moving the root (the last row) to the end each time leaves
+  // the rows in the requested order.
+  for (size_t end = count; end > 1; end--) {
+    const ProcTableEntry *swap = heap[0];
+    heap[0] = heap[end - 1];
+    heap[end - 1] = swap;
+    siftDown(query, heap, end - 1, 0);
+  }
+  result->rowCount = count;
+  return 0;
+}
+
+void processQueryResultFree(ProcessQueryResult *result) {
+  free(result->rows);
+  result->rows = NULL;
+  result->rowCount = 0;
+}
+
+char *formatProcessQueryResult(const ProcessQueryResult *result,
+                               unsigned fields) {
+  size_t capacity = 128 + result->rowCount * 104;
+  char *response = malloc(capacity);
+  if (response == NULL) {
+    return NULL;
+  }
+  size_t currentLen = snprintf(response, capacity, "BEGIN_PROCESS_QUERY;%zu\n",
+                               result->matchedCount);
+
+  for (size_t i = 0; i < result->rowCount; i++) {
+    const ProcTableEntry *entry = result->rows[i];
+    const ProcessData *p = &entry->data;
+    char lineBuffer[1024];
+    int lineLen = snprintf(lineBuffer, sizeof(lineBuffer),
+                           "%d\t%d\t%s\t%c\t%s\t%" PRIu64 "\t%" PRIu64 "\t%u",
+                           p->pid, p->ppid, p->userName, p->state,
+                           p->processName, p->totalTime, p->memRssKb,
+                           entry->cpuCentiPercent);
+    lineLen += formatProcessCounters(lineBuffer + lineLen,
+                                     sizeof(lineBuffer) - lineLen, p, fields);
+    lineBuffer[lineLen++] = '\n';
+
+    if (currentLen + lineLen + 32 >= capacity) {
+      capacity = (capacity + lineLen) * 2;
+      char *newResponse = realloc(response, capacity);
+      if (newResponse == NULL) {
+        free(response);
+        return NULL;
+      }
+      response = newResponse;
+    }
+    memcpy(response + currentLen, lineBuffer, lineLen);
+    currentLen += lineLen;
+  }
+
+  memcpy(response + currentLen, "END_PROCESS_QUERY\n", 19);
+  return response;
+}
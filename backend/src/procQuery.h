@@ -0,0 +1,69 @@
+#pragma once
+
+#include "procTable.h"
+#include <stddef.h>
+#include <stdint.h>
+
+/*
+ Server-side filtering, sorting and top-K selection of the process table.
+ GET_PROCESSES;<query> (and SUBSCRIBE;processes;<interval_ms>;<query>)
+ answers with only the processes a client can show, instead of all of them.
+ <query> is a ';' separated list of key=value pairs, all optional:
+   user=<name>       only processes of this user
+   state=<states>    only processes in one of these states, e.g. RD
+   name=<prefix>     only processes whose name starts with this
+   minrss=<kb>       only processes with at least this RSS
+   sort=<key>        pid (default), ppid, user, state, name, cpu or rss
+   order=<order>     asc (default) or desc
+   limit=<count>     at most this many processes (0, the default: all)
+   fields=<groups>   also send these optional counters (see procParser.h)
+ Values cannot contain ';'. The answer is
+   BEGIN_PROCESS_QUERY;<matched>
+   <pid>\t<ppid>\t<user>\t<state>\t<name>\t<totalTime>\t<rssKb>\t<cpu>
+   ...
+   END_PROCESS_QUERY
+ in the requested order, where <matched> counts every process that passed
+ the filters (before the limit) and <cpu> is the process's CPU usage in
+ hundredths of a percent of one core (see procTable.h), followed by the
+ counters of the requested groups. Binary clients get a PQRY frame instead
+ (see wireFormat.h).
+ A query of nothing but fields selects nothing: `hasSelection` tells a
+ subscription whether to push query results or plain deltas.
+*/
+
+#define PROCESS_QUERY_FIELD_SIZE 256
+
+typedef enum {
+  QUERY_SORT_PID,
+  QUERY_SORT_PPID,
+  QUERY_SORT_USER,
+  QUERY_SORT_STATE,
+  QUERY_SORT_NAME,
+  QUERY_SORT_CPU,
+  QUERY_SORT_RSS,
+} QuerySortKey;
+
+typedef struct {
+  char user[PROCESS_QUERY_FIELD_SIZE];
+  char states[PROCESS_QUERY_FIELD_SIZE];
+  char namePrefix[PROCESS_QUERY_FIELD_SIZE];
+  uint64_t minRssKb;
+  QuerySortKey sortKey;
+  int descending;
+  size_t limit;
+  unsigned fields;
+  int hasSelection;
+} ProcessQuery;
+
+typedef struct {
+  size_t matchedCount;
+  const ProcTableEntry **rows;
+  size_t rowCount;
+} ProcessQueryResult;
+
+int parseProcessQuery(const char *args, ProcessQuery *query);
+int runProcessQuery(const ProcTable *table, const ProcessQuery *query,
+                    ProcessQueryResult *result);
+void processQueryResultFree(ProcessQueryResult *result);
+char *formatProcessQueryResult(const ProcessQueryResult *result,
+                               unsigned fields);
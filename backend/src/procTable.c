@@ -0,0 +1,482 @@
+/*
+ - Generation-tracked process table behind GET_PROCESSES_SINCE.
+ - `procTableUpdate`: Merges a fresh scanProcDir() result into the table,
+   stamping new or changed processes with the new generation and turning
+   vanished ones into tombstones. Every PROC_TABLE_RATE_MIN_MS or more it
+   also turns the CPU time each live process used since the previous rate
+   sample into its CPU %.
+ - `procTableDelta`: Collects everything changed after a given generation,
+   or every live process when that generation can no longer be answered,
+   along with the user and name dictionary entries stamped after it.
+ - `formatProcessDelta`: Formats a delta as text for clients that did not
+   negotiate the binary format.
+ - The dictionaries are small open-addressed hash tables like the pid
+   index: users hashed by uid, process names by their text.
+*/
+
+#include "procTable.h"
+#include <inttypes.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <time.h>
+#include <unistd.h>
+
+static size_t slotFor(const ProcTable *table, int pid) {
+  return ((uint32_t)pid * 2654435761u) & (table->indexCapacity - 1);
+}
+
+static ProcTableEntry *findEntry(ProcTable *table, int pid) {
+  if (table->indexCapacity == 0) {
+    return NULL;
+  }
+  size_t slot = slotFor(table, pid);
+  while (table->index[slot] != -1) {
+    ProcTableEntry *entry = &table->entries[table->index[slot]];
+    if (entry->data.pid == pid) {
+      return entry;
+    }
+    slot = (slot + 1) & (table->indexCapacity - 1);
+  }
+  return NULL;
+}
+
+static int rebuildIndex(ProcTable *table, size_t minEntries) {
+  size_t capacity = table->indexCapacity ? table->indexCapacity : 1024;
+  while (capacity < minEntries * 2) {
+    capacity *= 2;
+  }
+  if (capacity != table->indexCapacity) {
+    int32_t *index = realloc(table->index, capacity * sizeof(int32_t));
+    if (index == NULL) {
+      perror("Failed to grow process index");
+      return -1;
+    }
+    table->index = index;
+    table->indexCapacity = capacity;
+  }
+  memset(table->index, 0xff, table->indexCapacity * sizeof(int32_t));
+  for (size_t i = 0; i < table->entryCount; i++) {
+    size_t slot = slotFor(table, table->entries[i].data.pid);
+    while (table->index[slot] != -1) {
+      slot = (slot + 1) & (table->indexCapacity - 1);
+    }
+    table->index[slot] = (int32_t)i;
+  }
+  return 0;
+}
+
+static ProcTableEntry *addEntry(ProcTable *table, const ProcessData *p) {
+  if (table->entryCount == table->entryCapacity) {
+    size_t capacity = table->entryCapacity ? table->entryCapacity * 2 : 256;
+    ProcTableEntry *entries =
+        realloc(table->entries, capacity * sizeof(ProcTableEntry));
+    if (entries == NULL) {
+      perror("Failed to grow process table");
+      return NULL;
+    }
+    table->entries = entries;
+    table->entryCapacity = capacity;
+  }
+  if ((table->entryCount + 1) * 2 > table->indexCapacity &&
+      rebuildIndex(table, table->entryCount + 1) == -1) {
+    return NULL;
+  }
+  ProcTableEntry *entry = &table->entries[table->entryCount];
+  entry->data = *p;
+  size_t slot = slotFor(table, p->pid);
+  while (table->index[slot] != -1) {
+    slot = (slot + 1) & (table->indexCapacity - 1);
+  }
+  table->index[slot] = (int32_t)table->entryCount;
+  table->entryCount++;
+  return entry;
+}
+
+static uint32_t hashText(const char *text) {
+  uint32_t hash = 2166136261u;
+  for (; *text; text++) {
+    hash = (hash ^ (unsigned char)*text) * 16777619u;
+  }
+  return hash;
+}
+
+static uint32_t userHash(const ProcNameEntry *entry) { return entry->id; }
+
+static uint32_t textHash(const ProcNameEntry *entry) {
+  return hashText(entry->text);
+}
+
+static size_t nameSlot(const ProcNames *names, uint32_t hash) {
+  return (hash * 2654435761u) & (names->indexCapacity - 1);
+}
+
+static int rebuildNameIndex(ProcNames *names,
+                            uint32_t (*hash)(const ProcNameEntry *)) {
+  size_t capacity = names->indexCapacity ? names->indexCapacity : 256;
+  while (capacity < names->count * 2) {
+    capacity *= 2;
+  }
+  if (capacity != names->indexCapacity) {
+    int32_t *index = realloc(names->index, capacity * sizeof(int32_t));
+    if (index == NULL) {
+      perror("Failed to grow name index");
+      return -1;
+    }
+    names->index = index;
+    names->indexCapacity = capacity;
+  }
+  memset(names->index, 0xff, names->indexCapacity * sizeof(int32_t));
+  for (size_t i = 0; i < names->count; i++) {
+    size_t slot = nameSlot(names, hash(&names->entries[i]));
+    while (names->index[slot] != -1) {
+      slot = (slot + 1) & (names->indexCapacity - 1);
+    }
+    names->index[slot] = (int32_t)i;
+  }
+  return 0;
+}
+
+static ProcNameEntry *addName(ProcNames *names, uint32_t id, const char *text,
+                              uint64_t gen,
+                              uint32_t (*hash)(const ProcNameEntry *)) {
+  if (names->count == names->capacity) {
+    size_t capacity = names->capacity ? names->capacity * 2 : 64;
+    ProcNameEntry *entries =
+        realloc(names->entries, capacity * sizeof(ProcNameEntry));
+    if (entries == NULL) {
+      perror("Failed to grow name dictionary");
+      return NULL;
+    }
+    names->entries = entries;
+    names->capacity = capacity;
+  }
+  char *copy = strdup(text);
+  if (copy == NULL) {
+    perror("Failed to copy name");
+    return NULL;
+  }
+  ProcNameEntry *entry = &names->entries[names->count++];
+  entry->id = id;
+  entry->addedGen = gen;
+  entry->text = copy;
+  if (names->count * 2 > names->indexCapacity) {
+    if (rebuildNameIndex(names, hash) == -1) {
+      names->count--;
+      free(copy);
+      return NULL;
+    }
+    return entry;
+  }
+  size_t slot = nameSlot(names, hash(entry));
+  while (names->index[slot] != -1) {
+    slot = (slot + 1) & (names->indexCapacity - 1);
+  }
+  names->index[slot] = (int32_t)(names->count - 1);
+  return entry;
+}
+
+static void clearNames(ProcNames *names) {
+  for (size_t i = 0; i < names->count; i++) {
+    free(names->entries[i].text);
+  }
+  names->count = 0;
+  if (names->indexCapacity) {
+    memset(names->index, 0xff, names->indexCapacity * sizeof(int32_t));
+  }
+}
+
+// Adds the process's user, or restamps it if the uid's name changed.
+static int internUser(ProcTable *table, const ProcessData *p, uint64_t gen) {
+  ProcNames *users = &table->users;
+  if (users->indexCapacity) {
+    size_t slot = nameSlot(users, p->uid);
+    while (users->index[slot] != -1) {
+      ProcNameEntry *entry = &users->entries[users->index[slot]];
+      if (entry->id == p->uid) {
+        if (strcmp(entry->text, p->userName) == 0) {
+          return 0;
+        }
+        char *copy = strdup(p->userName);
+        if (copy == NULL) {
+          perror("Failed to copy name");
+          return -1;
+        }
+        free(entry->text);
+        entry->text = copy;
+        entry->addedGen = gen;
+        return 0;
+      }
+      slot = (slot + 1) & (users->indexCapacity - 1);
+    }
+  }
+  return addName(users, p->uid, p->userName, gen, userHash) ? 0 : -1;
+}
+
+// Sets the process's nameId, adding its name if it is new.
+static int internName(ProcTable *table, ProcessData *p, uint64_t gen) {
+  ProcNames *names = &table->names;
+  uint32_t hash = hashText(p->processName);
+  if (names->indexCapacity) {
+    size_t slot = nameSlot(names, hash);
+    while (names->index[slot] != -1) {
+      ProcNameEntry *entry = &names->entries[names->index[slot]];
+      if (strcmp(entry->text, p->processName) == 0) {
+        p->nameId = entry->id;
+        return 0;
+      }
+      slot = (slot + 1) & (names->indexCapacity - 1);
+    }
+  }
+  ProcNameEntry *entry =
+      addName(names, (uint32_t)names->count, p->processName, gen, textHash);
+  if (entry == NULL) {
+    return -1;
+  }
+  p->nameId = entry->id;
+  return 0;
+}
+
+static int sameProcess(const ProcessData *a, const ProcessData *b) {
+  return a->ppid == b->ppid && a->state == b->state && a->uid == b->uid &&
+         a->totalTime == b->totalTime && a->memRssKb == b->memRssKb &&
+         memcmp(a->counters, b->counters, sizeof(a->counters)) == 0 &&
+         strcmp(a->processName, b->processName) == 0 &&
+         strcmp(a->userName, b->userName) == 0;
+}
+
+static uint64_t monotonicMillis(void) {
+  struct timespec now;
+  clock_gettime(CLOCK_MONOTONIC, &now);
+  return (uint64_t)now.tv_sec * 1000 + now.tv_nsec / 1000000;
+}
+
+// Scans closer together than PROC_TABLE_RATE_MIN_MS (several clients
+// refreshing at once) keep the previous rates rather than measuring a
+// window too short to be meaningful.
+static void updateRates(ProcTable *table) {
+  uint64_t now = monotonicMillis();
+  if (table->rateSampleMs != 0 &&
+      now - table->rateSampleMs < PROC_TABLE_RATE_MIN_MS) {
+    return;
+  }
+  uint64_t elapsedMs = now - table->rateSampleMs;
+  long ticksPerSecond = sysconf(_SC_CLK_TCK);
+  for (size_t i = 0; i < table->entryCount; i++) {
+    ProcTableEntry *entry = &table->entries[i];
+    if (entry->removedGen != 0) {
+      continue;
+    }
+    uint64_t used = entry->data.totalTime > entry->rateBaseTime
+                        ? entry->data.totalTime - entry->rateBaseTime
+                        : 0;
+    uint64_t centiPercent = 0;
+    if (table->rateSampleMs != 0 && ticksPerSecond > 0) {
+      centiPercent = used * 1000 * 10000 / ((uint64_t)ticksPerSecond * elapsedMs);
+    }
+    entry->cpuCentiPercent =
+        centiPercent > UINT32_MAX ? UINT32_MAX : (uint32_t)centiPercent;
+    entry->rateBaseTime = entry->data.totalTime;
+  }
+  table->rateSampleMs = now;
+}
+
+void procTableInit(ProcTable *table) {
+  memset(table, 0, sizeof(*table));
+  // Start from the wall clock so generations from an earlier backend run
+  // are always older than validSince and get a full snapshot.
+  table->generation = (uint64_t)time(NULL) << 24;
+  table->validSince = table->generation;
+}
+
+int procTableUpdate(ProcTable *table, ProcessData *processList,
+                    size_t processCount) {
+  uint64_t gen = ++table->generation;
+  int namesReset = 0;
+  if (table->names.count >= PROC_TABLE_NAME_LIMIT) {
+    // Clients only know the ids of the old dictionary.
+    clearNames(&table->names);
+    table->validSince = gen;
+    namesReset = 1;
+  }
+
+  for (size_t i = 0; i < processCount; i++) {
+    ProcessData *p = &processList[i];
+    ProcTableEntry *entry = findEntry(table, p->pid);
+    // Most processes keep their name and user from one scan to the next,
+    // so the dictionaries are only consulted for the ones that did not.
+    int known = entry != NULL && entry->removedGen == 0;
+    if (known && !namesReset &&
+        strcmp(entry->data.processName, p->processName) == 0) {
+      p->nameId = entry->data.nameId;
+    } else if (internName(table, p, gen) == -1) {
+      return -1;
+    }
+    if ((!known || entry->data.uid != p->uid ||
+         strcmp(entry->data.userName, p->userName) != 0) &&
+        internUser(table, p, gen) == -1) {
+      return -1;
+    }
+    if (entry == NULL) {
+      entry = addEntry(table, p);
+      if (entry == NULL) {
+        return -1;
+      }
+      entry->changedGen = gen;
+      entry->removedGen = 0;
+      entry->rateBaseTime = p->totalTime;
+      entry->cpuCentiPercent = 0;
+    } else if (entry->removedGen != 0 || !sameProcess(&entry->data, p)) {
+      if (entry->removedGen != 0) {
+        // The pid was reused by a new process.
+        entry->rateBaseTime = p->totalTime;
+        entry->cpuCentiPercent = 0;
+      }
+      entry->data = *p;
+      entry->changedGen = gen;
+      entry->removedGen = 0;
+    }
+    entry->data.nameId = p->nameId;
+    entry->seenGen = gen;
+  }
+
+  uint64_t expireBefore =
+      gen > PROC_TABLE_HISTORY ? gen - PROC_TABLE_HISTORY : 0;
+  size_t kept = 0;
+  for (size_t i = 0; i < table->entryCount; i++) {
+    ProcTableEntry *entry = &table->entries[i];
+    if (entry->removedGen == 0 && entry->seenGen != gen) {
+      entry->removedGen = gen;
+    }
+    if (entry->removedGen != 0 && entry->removedGen <= expireBefore) {
+      if (entry->removedGen > table->validSince) {
+        table->validSince = entry->removedGen;
+      }
+      continue;
+    }
+    if (kept != i) {
+      table->entries[kept] = *entry;
+    }
+    kept++;
+  }
+  updateRates(table);
+  if (kept != table->entryCount) {
+    table->entryCount = kept;
+    return rebuildIndex(table, kept);
+  }
+  return 0;
+}
+
+int procTableNeedsFull(const ProcTable *table, uint64_t since) {
+  return since < table->validSince || since > table->generation;
+}
+
+int procTableDelta(const ProcTable *table, uint64_t since,
+                   ProcessDelta *delta) {
+  memset(delta, 0, sizeof(*delta));
+  delta->generation = table->generation;
+  delta->full = procTableNeedsFull(table, since);
+
+  delta->upserts = malloc((table->entryCount + 1) * sizeof(ProcessData *));
+  delta->removed = malloc((table->entryCount + 1) * sizeof(int));
+  delta->users =
+      malloc((table->users.count + 1) * sizeof(const ProcNameEntry *));
+  delta->names =
+      malloc((table->names.count + 1) * sizeof(const ProcNameEntry *));
+  if (delta->upserts == NULL || delta->removed == NULL ||
+      delta->users == NULL || delta->names == NULL) {
+    perror("Failed to allocate process delta");
+    processDeltaFree(delta);
+    return -1;
+  }
+
+  for (size_t i = 0; i < table->entryCount; i++) {
+    const ProcTableEntry *entry = &table->entries[i];
+    if (entry->removedGen != 0) {
+      if (!delta->full && entry->removedGen > since) {
+        delta->removed[delta->removedCount++] = entry->data.pid;
+      }
+    } else if (delta->full || entry->changedGen > since) {
+      delta->upserts[delta->upsertCount++] = &entry->data;
+    }
+  }
+  for (size_t i = 0; i < table->users.count; i++) {
+    if (delta->full || table->users.entries[i].addedGen > since) {
+      delta->users[delta->userCount++] = &table->users.entries[i];
+    }
+  }
+  for (size_t i = 0; i < table->names.count; i++) {
+    if (delta->full || table->names.entries[i].addedGen > since) {
+      delta->names[delta->nameCount++] = &table->names.entries[i];
+    }
+  }
+  return 0;
+}
+
+void processDeltaFree(ProcessDelta *delta) {
+  free(delta->upserts);
+  free(delta->removed);
+  free(delta->users);
+  free(delta->names);
+  delta->upserts = NULL;
+  delta->removed = NULL;
+  delta->users = NULL;
+  delta->names = NULL;
+}
+
+char *formatProcessDelta(const ProcessDelta *delta, unsigned fields) {
+  size_t capacity = 128 + delta->upsertCount * 64 + delta->removedCount * 24 +
+                    (delta->userCount + delta->nameCount) * 32;
+  char *response = malloc(capacity);
+  if (response == NULL) {
+    return NULL;
+  }
+  size_t currentLen =
+      snprintf(response, capacity, "BEGIN_PROCESS_DELTA;%" PRIu64 ";%s\n",
+               delta->generation, delta->full ? "FULL" : "DELTA");
+
+  size_t dictionaryCount = delta->userCount + delta->nameCount;
+  size_t lineCount =
+      dictionaryCount + delta->upsertCount + delta->removedCount;
+  for (size_t line = 0; line < lineCount; line++) {
+    char lineBuffer[1024];
+    int lineLen;
+    size_t i = line - dictionaryCount;
+    if (line < delta->userCount) {
+      const ProcNameEntry *user = delta->users[line];
+      lineLen = snprintf(lineBuffer, sizeof(lineBuffer), "USER;%u;%s\n",
+                         user->id, user->text);
+    } else if (line < dictionaryCount) {
+      const ProcNameEntry *name = delta->names[line - delta->userCount];
+      lineLen = snprintf(lineBuffer, sizeof(lineBuffer), "NAME;%u;%s\n",
+                         name->id, name->text);
+    } else if (i < delta->upsertCount) {
+      const ProcessData *p = delta->upserts[i];
+      lineLen = snprintf(lineBuffer, sizeof(lineBuffer),
+                         "%d\t%d\t%u\t%c\t%u\t%" PRIu64 "\t%" PRIu64,
+                         p->pid, p->ppid, p->uid, p->state, p->nameId,
+                         p->totalTime, p->memRssKb);
+      lineLen += formatProcessCounters(
+          lineBuffer + lineLen, sizeof(lineBuffer) - lineLen, p, fields);
+      lineBuffer[lineLen++] = '\n';
+    } else {
+      lineLen = snprintf(lineBuffer, sizeof(lineBuffer), "REMOVED\t%d\n",
+                         delta->removed[i - delta->upsertCount]);
+    }
+
+    if (currentLen + lineLen + 32 >= capacity) {
+      capacity = (capacity + lineLen) * 2;
+      char *newResponse = realloc(response, capacity);
+      if (newResponse == NULL) {
+        free(response);
+        return NULL;
+      }
+      response = newResponse;
+    }
+    memcpy(response + currentLen, lineBuffer, lineLen);
+    currentLen += lineLen;
+  }
+
+  memcpy(response + currentLen, "END_PROCESS_DELTA\n", 19);
+  return response;
+}
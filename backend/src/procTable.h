@@ -0,0 +1,89 @@
+#pragma once
+
+#include "procParser.h"
+#include <stddef.h>
+#include <stdint.h>
+
+/*
+ Keeps the last scanned state of every process so GET_PROCESSES_SINCE can
+ answer with only what was added, changed or removed after a generation.
+ Every update bumps the generation; removed processes are kept as
+ tombstones for PROC_TABLE_HISTORY generations, and a request for anything
+ older (or from another backend run) gets a full snapshot instead.
+ It also keeps every process's CPU usage, from the change in its CPU time
+ between two scans at least PROC_TABLE_RATE_MIN_MS apart, so process
+ queries (see procQuery.h) can sort by it without client-side state.
+
+ Deltas identify a process's user by uid and its name by an id into a
+ name dictionary, instead of repeating both strings on every row. The
+ table keeps two dictionaries, uid -> user name and id -> process name,
+ each entry stamped with the generation it was added (or, for a renamed
+ user, changed) in; a delta carries just the entries stamped after the
+ requested generation, and a full one all of them. Ids are never reused
+ while the dictionary lives. Once it holds PROC_TABLE_NAME_LIMIT names
+ it is started over, and every older generation gets a full snapshot.
+*/
+
+#define PROC_TABLE_HISTORY 64
+#define PROC_TABLE_RATE_MIN_MS 500
+#define PROC_TABLE_NAME_LIMIT 16384
+
+typedef struct {
+  // The uid for users, the entry's position for process names.
+  uint32_t id;
+  uint64_t addedGen;
+  char *text;
+} ProcNameEntry;
+
+typedef struct {
+  ProcNameEntry *entries;
+  size_t count;
+  size_t capacity;
+  int32_t *index;
+  size_t indexCapacity;
+} ProcNames;
+
+typedef struct {
+  ProcessData data;
+  uint64_t changedGen;
+  uint64_t removedGen;
+  uint64_t seenGen;
+  uint64_t rateBaseTime;
+  // Hundredths of a percent of one core, as in top.
+  uint32_t cpuCentiPercent;
+} ProcTableEntry;
+
+typedef struct {
+  ProcTableEntry *entries;
+  size_t entryCount;
+  size_t entryCapacity;
+  int32_t *index;
+  size_t indexCapacity;
+  uint64_t generation;
+  uint64_t validSince;
+  uint64_t rateSampleMs;
+  ProcNames users;
+  ProcNames names;
+} ProcTable;
+
+typedef struct {
+  uint64_t generation;
+  int full;
+  const ProcessData **upserts;
+  size_t upsertCount;
+  int *removed;
+  size_t removedCount;
+  const ProcNameEntry **users;
+  size_t userCount;
+  const ProcNameEntry **names;
+  size_t nameCount;
+} ProcessDelta;
+
+void procTableInit(ProcTable *table);
+int procTableUpdate(ProcTable *table, ProcessData *processList,
+                    size_t processCount);
+int procTableDelta(const ProcTable *table, uint64_t since, ProcessDelta *delta);
+// Whether a delta since `since` would be a full snapshot.
+int procTableNeedsFull(const ProcTable *table, uint64_t since);
+void processDeltaFree(ProcessDelta *delta);
+char *formatProcessDelta(const ProcessDelta *delta, unsigned fields);
@@ -0,0 +1,111 @@
+/*
+ - Latency histograms and counters of the backend's own work (see
+   selfStats.h).
+ - `selfStatsRecord` / `selfStatsAdd`: Lock-free updates with relaxed
+   atomic adds; the maximum is raised with a compare-and-swap loop.
+ - `formatSelfStats`: The GET_SELF_STATS response. Its reads are relaxed
+   too, so a stage's count, sum and buckets may be a record apart.
+*/
+
+#include "selfStats.h"
+#include <inttypes.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <time.h>
+
+typedef struct {
+  uint64_t count;
+  uint64_t sum;
+  uint64_t max;
+  uint64_t buckets[SELF_STATS_BUCKETS];
+} StageStats;
+
+static const char *const stageNames[SELF_STAGE_COUNT] = {
+    "scan", "table", "encode", "send", "command", "push"};
+static const char *const counterNames[SELF_COUNTER_COUNT] = {
+    "commands",   "pushes",           "processes_scanned", "bytes_sent",
+    "write_errors", "clients_accepted", "cache_hits"};
+
+static StageStats stages[SELF_STAGE_COUNT];
+static uint64_t counters[SELF_COUNTER_COUNT];
+static uint64_t startNs;
+
+uint64_t selfStatsNow(void) {
+  struct timespec now;
+  clock_gettime(CLOCK_MONOTONIC, &now);
+  return (uint64_t)now.tv_sec * 1000000000 + now.tv_nsec;
+}
+
+void selfStatsInit(void) { startNs = selfStatsNow(); }
+
+static size_t bucketIndex(uint64_t nanos) {
+  if (nanos < SELF_STATS_SUB_BUCKETS) {
+    return nanos;
+  }
+  int exponent = 63 - __builtin_clzll(nanos);
+  int shift = exponent - SELF_STATS_SUB_BITS;
+  return (size_t)(shift + 1) * SELF_STATS_SUB_BUCKETS +
+         ((nanos >> shift) & (SELF_STATS_SUB_BUCKETS - 1));
+}
+
+void selfStatsRecord(SelfStage stage, uint64_t nanos) {
+  StageStats *stats = &stages[stage];
+  __atomic_add_fetch(&stats->count, 1, __ATOMIC_RELAXED);
+  __atomic_add_fetch(&stats->sum, nanos, __ATOMIC_RELAXED);
+  __atomic_add_fetch(&stats->buckets[bucketIndex(nanos)], 1, __ATOMIC_RELAXED);
+  uint64_t max = __atomic_load_n(&stats->max, __ATOMIC_RELAXED);
+  while (nanos > max &&
+         !__atomic_compare_exchange_n(&stats->max, &max, nanos, 1,
+                                      __ATOMIC_RELAXED, __ATOMIC_RELAXED)) {
+  }
+}
+
+void selfStatsRecordSince(SelfStage stage, uint64_t start) {
+  selfStatsRecord(stage, selfStatsNow() - start);
+}
+
+void selfStatsAdd(SelfCounter counter, uint64_t amount) {
+  __atomic_add_fetch(&counters[counter], amount, __ATOMIC_RELAXED);
+}
+
+// Sized for every bucket of every stage being non-empty, so the response
+// can be written with plain snprintf calls.
+#define STAGE_LINE_MAX (128 + SELF_STATS_BUCKETS * 28)
+#define COUNTER_LINE_MAX 96
+
+char *formatSelfStats(void) {
+  size_t capacity = 64 + SELF_STAGE_COUNT * STAGE_LINE_MAX +
+                    SELF_COUNTER_COUNT * COUNTER_LINE_MAX;
+  char *out = malloc(capacity);
+  if (out == NULL) {
+    return NULL;
+  }
+  size_t length = snprintf(out, capacity, "BEGIN_SELF_STATS;%" PRIu64 "\n",
+                           (selfStatsNow() - startNs) / 1000000);
+  for (int s = 0; s < SELF_STAGE_COUNT; s++) {
+    StageStats *stats = &stages[s];
+    length += snprintf(out + length, capacity - length,
+                       "STAGE;%s;%" PRIu64 ";%" PRIu64 ";%" PRIu64 ";",
+                       stageNames[s],
+                       __atomic_load_n(&stats->count, __ATOMIC_RELAXED),
+                       __atomic_load_n(&stats->sum, __ATOMIC_RELAXED),
+                       __atomic_load_n(&stats->max, __ATOMIC_RELAXED));
+    const char *separator = "";
+    for (size_t b = 0; b < SELF_STATS_BUCKETS; b++) {
+      uint64_t count = __atomic_load_n(&stats->buckets[b], __ATOMIC_RELAXED);
+      if (count > 0) {
+        length += snprintf(out + length, capacity - length, "%s%zu:%" PRIu64,
+                           separator, b, count);
+        separator = ",";
+      }
+    }
+    out[length++] = '\n';
+  }
+  for (int c = 0; c < SELF_COUNTER_COUNT; c++) {
+    length += snprintf(out + length, capacity - length,
+                       "COUNTER;%s;%" PRIu64 "\n", counterNames[c],
+                       __atomic_load_n(&counters[c], __ATOMIC_RELAXED));
+  }
+  snprintf(out + length, capacity - length, "END_SELF_STATS\n");
+  return out;
+}
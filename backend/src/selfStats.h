@@ -0,0 +1,65 @@
+#pragma once
+
+#include <stddef.h>
+#include <stdint.h>
+
+/*
+ The backend's own timings, so a slow refresh can be pinned on a stage:
+ scanning /proc, updating the process table, encoding a response, writing
+ it to the socket, a whole command or a whole subscription push. Every
+ stage keeps a latency histogram and a few running counters, all updated
+ with relaxed atomic adds and never reset, so recording costs two clock
+ reads and a handful of adds and never takes a lock.
+
+ Histogram buckets are log-linear over nanoseconds, SELF_STATS_SUB_BUCKETS
+ per power of two: values below SELF_STATS_SUB_BUCKETS have a bucket each,
+ and a larger value v with highest set bit e goes to bucket
+   (e - SELF_STATS_SUB_BITS + 1) * SELF_STATS_SUB_BUCKETS
+     + ((v >> (e - SELF_STATS_SUB_BITS)) & (SELF_STATS_SUB_BUCKETS - 1))
+ so a bucket is at most 1/SELF_STATS_SUB_BUCKETS of its lower bound wide.
+ (The client's LatencyHistogram uses the same buckets.)
+
+ GET_SELF_STATS answers with
+   BEGIN_SELF_STATS;<uptime_ms>
+   STAGE;<name>;<count>;<sum_ns>;<max_ns>;<bucket>:<count>,...
+   COUNTER;<name>;<value>
+   END_SELF_STATS
+ with one STAGE line per stage, listing only its non-empty buckets, and one
+ COUNTER line per counter.
+*/
+
+#define SELF_STATS_SUB_BITS 3
+#define SELF_STATS_SUB_BUCKETS (1 << SELF_STATS_SUB_BITS)
+#define SELF_STATS_BUCKETS                                                     \
+  ((64 - SELF_STATS_SUB_BITS + 1) * SELF_STATS_SUB_BUCKETS)
+
+typedef enum {
+  SELF_STAGE_SCAN,
+  SELF_STAGE_TABLE,
+  SELF_STAGE_ENCODE,
+  SELF_STAGE_SEND,
+  SELF_STAGE_COMMAND,
+  SELF_STAGE_PUSH,
+  SELF_STAGE_COUNT
+} SelfStage;
+
+typedef enum {
+  SELF_COUNTER_COMMANDS,
+  SELF_COUNTER_PUSHES,
+  SELF_COUNTER_PROCESSES_SCANNED,
+  SELF_COUNTER_BYTES_SENT,
+  SELF_COUNTER_WRITE_ERRORS,
+  SELF_COUNTER_CLIENTS_ACCEPTED,
+  SELF_COUNTER_CACHE_HITS,
+  SELF_COUNTER_COUNT
+} SelfCounter;
+
+// Monotonic nanoseconds, the start and end of every recorded stage.
+uint64_t selfStatsNow(void);
+void selfStatsRecord(SelfStage stage, uint64_t nanos);
+// Records the time from `start` (a selfStatsNow()) to now.
+void selfStatsRecordSince(SelfStage stage, uint64_t start);
+void selfStatsAdd(SelfCounter counter, uint64_t amount);
+// Starts the uptime GET_SELF_STATS reports.
+void selfStatsInit(void);
+char *formatSelfStats(void);
@@ -0,0 +1,167 @@
+/*
+ - Bookkeeping for server-push subscriptions (see subscription.h).
+ - `parseSubscribe`: Parses the <metrics>;<interval_ms>[;<query>] arguments
+   of a SUBSCRIBE command into a metric mask, an interval and the process
+   query's arguments, if any.
+ - `parseSetInterval`: Parses the <id>;<interval_ms> arguments of a
+   SET_INTERVAL command.
+ - `subscriptionAdd` / `subscriptionRemove` / `subscriptionSetInterval`:
+   Manage a client's subscriptions.
+ - `subscriptionTimeout`: Milliseconds until the next subscription is due,
+   for use as a poll() timeout (-1 when there are none).
+*/
+
+#include "subscription.h"
+#include <limits.h>
+#include <stdlib.h>
+#include <string.h>
+#include <time.h>
+
+uint64_t monotonicMs(void) {
+  struct timespec now;
+  clock_gettime(CLOCK_MONOTONIC, &now);
+  return (uint64_t)now.tv_sec * 1000 + now.tv_nsec / 1000000;
+}
+
+// The maximum keeps nextDueMs + intervalMs from wrapping around.
+static uint64_t clampInterval(unsigned long long interval) {
+  if (interval < SUBSCRIPTION_MIN_INTERVAL_MS) {
+    return SUBSCRIPTION_MIN_INTERVAL_MS;
+  }
+  return interval > SUBSCRIPTION_MAX_INTERVAL_MS ? SUBSCRIPTION_MAX_INTERVAL_MS
+                                                 : interval;
+}
+
+static unsigned metricFromName(const char *name, size_t length) {
+  static const struct {
+    const char *name;
+    unsigned metric;
+  } names[] = {{"cpu", METRIC_CPU},
+               {"mem", METRIC_MEM},
+               {"net", METRIC_NET},
+               {"disk", METRIC_DISK},
+               {"cores", METRIC_CORES},
+               {"interfaces", METRIC_INTERFACES},
+               {"diskio", METRIC_DISKIO},
+               {"processes", METRIC_PROCESSES}};
+  for (size_t i = 0; i < sizeof(names) / sizeof(names[0]); i++) {
+    if (strlen(names[i].name) == length &&
+        strncmp(names[i].name, name, length) == 0) {
+      return names[i].metric;
+    }
+  }
+  return 0;
+}
+
+int parseSubscribe(const char *args, unsigned *metrics, uint64_t *intervalMs,
+                   const char **query) {
+  const char *separator = strchr(args, ';');
+  if (!separator) {
+    return -1;
+  }
+  unsigned mask = 0;
+  const char *name = args;
+  while (name < separator) {
+    const char *end = memchr(name, ',', separator - name);
+    if (!end) {
+      end = separator;
+    }
+    unsigned metric = metricFromName(name, end - name);
+    if (!metric) {
+      return -1;
+    }
+    mask |= metric;
+    name = end + 1;
+  }
+  char *rest;
+  unsigned long long interval = strtoull(separator + 1, &rest, 10);
+  if (!mask || rest == separator + 1 || (*rest != '\0' && *rest != ';')) {
+    return -1;
+  }
+  // A query only makes sense for a subscription of the processes, alone or
+  // with the CPU sample taken with them.
+  *query = *rest == ';' ? rest + 1 : NULL;
+  if (*query && (mask & ~METRIC_CPU) != METRIC_PROCESSES) {
+    return -1;
+  }
+  *metrics = mask;
+  *intervalMs = clampInterval(interval);
+  return 0;
+}
+
+int parseSetInterval(const char *args, int *id, uint64_t *intervalMs) {
+  char *rest;
+  long value = strtol(args, &rest, 10);
+  if (rest == args || *rest != ';' || value <= 0 || value > INT_MAX) {
+    return -1;
+  }
+  const char *interval = rest + 1;
+  unsigned long long ms = strtoull(interval, &rest, 10);
+  if (rest == interval || *rest != '\0') {
+    return -1;
+  }
+  *id = (int)value;
+  *intervalMs = clampInterval(ms);
+  return 0;
+}
+
+Subscription *subscriptionAdd(SubscriptionList *list, unsigned metrics,
+                              uint64_t intervalMs) {
+  if (list->count == SUBSCRIPTION_MAX) {
+    return NULL;
+  }
+  Subscription *subscription = &list->items[list->count++];
+  subscription->id = ++list->nextId;
+  subscription->metrics = metrics;
+  subscription->intervalMs = intervalMs;
+  subscription->nextDueMs = monotonicMs();
+  subscription->generation = 0;
+  subscription->hasQuery = 0;
+  subscription->fields = 0;
+  return subscription;
+}
+
+int subscriptionRemove(SubscriptionList *list, int id) {
+  for (size_t i = 0; i < list->count; i++) {
+    if (list->items[i].id == id) {
+      list->items[i] = list->items[--list->count];
+      return 0;
+    }
+  }
+  return -1;
+}
+
+// A shorter interval brings the next push forward; a longer one takes
+// effect after it. Either way the subscription keeps its generation, so the
+// client is not sent the whole process table again.
+int subscriptionSetInterval(SubscriptionList *list, int id,
+                            uint64_t intervalMs) {
+  for (size_t i = 0; i < list->count; i++) {
+    Subscription *subscription = &list->items[i];
+    if (subscription->id != id) {
+      continue;
+    }
+    if (intervalMs < subscription->intervalMs) {
+      uint64_t earlier = subscription->intervalMs - intervalMs;
+      subscription->nextDueMs = subscription->nextDueMs > earlier
+                                    ? subscription->nextDueMs - earlier
+                                    : 0;
+    }
+    subscription->intervalMs = intervalMs;
+    return 0;
+  }
+  return -1;
+}
+
+int subscriptionTimeout(const SubscriptionList *list, uint64_t now) {
+  if (list->count == 0) {
+    return -1;
+  }
+  uint64_t next = list->items[0].nextDueMs;
+  for (size_t i = 1; i < list->count; i++) {
+    if (list->items[i].nextDueMs < next) {
+      next = list->items[i].nextDueMs;
+    }
+  }
+  return next <= now ? 0 : (int)(next - now);
+}
@@ -0,0 +1,77 @@
+#pragma once
+
+#include "procQuery.h"
+#include <stddef.h>
+#include <stdint.h>
+
+/*
+ Server-push subscriptions. SUBSCRIBE;<metrics>;<interval_ms> asks the
+ backend to send the listed metrics every interval without being polled;
+ <metrics> is a comma separated list of cpu, mem, net, disk, cores,
+ interfaces, diskio and processes.
+ Intervals are clamped to SUBSCRIPTION_MIN_INTERVAL_MS and
+ SUBSCRIPTION_MAX_INTERVAL_MS.
+ The reply is OK;SUBSCRIBED;<id>, and UNSUBSCRIBE;<id> ends it again.
+ SET_INTERVAL;<id>;<interval_ms> moves a subscription to a new interval in
+ place (reply OK), so a process subscription goes on sending deltas rather
+ than starting over with the full table.
+
+ Each push is written between command responses, never inside one:
+   >PUSH;<id>\n
+ followed by one section per subscribed metric, always in the order cpu,
+ mem, net, disk, cores, interfaces, diskio, processes. Every section is
+ exactly the response of the matching GET_* command; processes is the delta
+ since the previous push of that subscription (a full snapshot on the first
+ one), as a PDLT frame or text depending on the client's format. Command
+ responses never start with '>', so a client can tell a push from the next
+ response by its first byte.
+ SUBSCRIBE;processes;<interval_ms>;<query> pushes the result of that process
+ query (see procQuery.h) every interval instead of deltas; a query of only
+ fields=<groups> keeps the deltas and adds those counters to them.
+ With cpu,processes the CPU section is sampled in the same pass as the
+ process scan, so its system time is the one to divide the processes' CPU
+ times by; such a subscription takes a query as well.
+*/
+
+#define SUBSCRIPTION_MAX 8
+#define SUBSCRIPTION_MIN_INTERVAL_MS 100
+#define SUBSCRIPTION_MAX_INTERVAL_MS (60 * 60 * 1000)
+
+enum {
+  METRIC_CPU = 1 << 0,
+  METRIC_MEM = 1 << 1,
+  METRIC_NET = 1 << 2,
+  METRIC_DISK = 1 << 3,
+  METRIC_PROCESSES = 1 << 4,
+  METRIC_CORES = 1 << 5,
+  METRIC_INTERFACES = 1 << 6,
+  METRIC_DISKIO = 1 << 7,
+};
+
+typedef struct {
+  int id;
+  unsigned metrics;
+  uint64_t intervalMs;
+  uint64_t nextDueMs;
+  uint64_t generation;
+  int hasQuery;
+  ProcessQuery query;
+  unsigned fields;
+} Subscription;
+
+typedef struct {
+  Subscription items[SUBSCRIPTION_MAX];
+  size_t count;
+  int nextId;
+} SubscriptionList;
+
+uint64_t monotonicMs(void);
+int parseSubscribe(const char *args, unsigned *metrics, uint64_t *intervalMs,
+                   const char **query);
+Subscription *subscriptionAdd(SubscriptionList *list, unsigned metrics,
+                              uint64_t intervalMs);
+int subscriptionRemove(SubscriptionList *list, int id);
+int parseSetInterval(const char *args, int *id, uint64_t *intervalMs);
+int subscriptionSetInterval(SubscriptionList *list, int id,
+                            uint64_t intervalMs);
+int subscriptionTimeout(const SubscriptionList *list, uint64_t now);
@@ -0,0 +1,264 @@
+/*
+ - Binary wire format used by clients that negotiated SET_FORMAT;BINARY.
+ - `WireBuffer`: A growable byte buffer with explicit little-endian writers,
+   so the encoded frames do not depend on the host's struct layout.
+ - `encodeProcessListBinary`: Encodes a process list as a PLST frame of
+   fixed-width records followed by a string table holding the user and
+   process names (see wireFormat.h for the layout).
+ - `encodeProcessDeltaBinary`: Encodes a GET_PROCESSES_SINCE answer as a
+   PDLT frame: the new user and name dictionary entries, then compact
+   records that refer to them by uid and name id, then the removed pids.
+ - `encodeProcessQueryBinary`: Encodes a process query result as a PQRY
+   frame: the same records again, followed by each one's CPU usage.
+ - Delta and query frames carry the optional counters the request asked
+   for right after the records.
+*/
+
+#include "wireFormat.h"
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+
+void wireInit(WireBuffer *buffer, size_t capacity) {
+  buffer->length = 0;
+  buffer->failed = 0;
+  buffer->capacity = capacity;
+  buffer->data = malloc(capacity);
+  if (buffer->data == NULL) {
+    perror("Failed to allocate wire buffer");
+    buffer->capacity = 0;
+    buffer->failed = 1;
+  }
+}
+
+void wireFree(WireBuffer *buffer) {
+  free(buffer->data);
+  buffer->data = NULL;
+  buffer->length = 0;
+  buffer->capacity = 0;
+}
+
+static int wireReserve(WireBuffer *buffer, size_t extra) {
+  if (buffer->failed) {
+    return -1;
+  }
+  if (buffer->length + extra <= buffer->capacity) {
+    return 0;
+  }
+  size_t capacity = buffer->capacity ? buffer->capacity : 4096;
+  while (buffer->length + extra > capacity) {
+    capacity *= 2;
+  }
+  unsigned char *data = realloc(buffer->data, capacity);
+  if (data == NULL) {
+    perror("Failed to grow wire buffer");
+    buffer->failed = 1;
+    return -1;
+  }
+  buffer->data = data;
+  buffer->capacity = capacity;
+  return 0;
+}
+
+void wirePutU8(WireBuffer *buffer, uint8_t value) {
+  if (wireReserve(buffer, 1) == 0) {
+    buffer->data[buffer->length++] = value;
+  }
+}
+
+void wirePutU16(WireBuffer *buffer, uint16_t value) {
+  if (wireReserve(buffer, 2) == 0) {
+    unsigned char *out = buffer->data + buffer->length;
+    out[0] = value & 0xff;
+    out[1] = (value >> 8) & 0xff;
+    buffer->length += 2;
+  }
+}
+
+void wirePutU32(WireBuffer *buffer, uint32_t value) {
+  if (wireReserve(buffer, 4) == 0) {
+    wirePatchU32(buffer, buffer->length, value);
+    buffer->length += 4;
+  }
+}
+
+void wirePutU64(WireBuffer *buffer, uint64_t value) {
+  wirePutU32(buffer, (uint32_t)value);
+  wirePutU32(buffer, (uint32_t)(value >> 32));
+}
+
+void wirePutBytes(WireBuffer *buffer, const void *data, size_t length) {
+  if (wireReserve(buffer, length) == 0) {
+    memcpy(buffer->data + buffer->length, data, length);
+    buffer->length += length;
+  }
+}
+
+void wirePatchU32(WireBuffer *buffer, size_t offset, uint32_t value) {
+  if (buffer->failed) {
+    return;
+  }
+  unsigned char *out = buffer->data + offset;
+  out[0] = value & 0xff;
+  out[1] = (value >> 8) & 0xff;
+  out[2] = (value >> 16) & 0xff;
+  out[3] = (value >> 24) & 0xff;
+}
+
+static void putProcessRecord(WireBuffer *records, WireBuffer *strings,
+                             const ProcessData *p) {
+  size_t userLen = strlen(p->userName);
+  size_t nameLen = strlen(p->processName);
+  uint32_t userOffset = (uint32_t)strings->length;
+  wirePutBytes(strings, p->userName, userLen);
+  uint32_t nameOffset = (uint32_t)strings->length;
+  wirePutBytes(strings, p->processName, nameLen);
+
+  wirePutU32(records, (uint32_t)p->pid);
+  wirePutU32(records, (uint32_t)p->ppid);
+  wirePutU64(records, p->totalTime);
+  wirePutU64(records, p->memRssKb);
+  wirePutU32(records, userOffset);
+  wirePutU32(records, nameOffset);
+  wirePutU16(records, (uint16_t)userLen);
+  wirePutU16(records, (uint16_t)nameLen);
+  wirePutU8(records, (uint8_t)p->state);
+  wirePutBytes(records, "\0\0\0", 3);
+}
+
+static void putNameEntry(WireBuffer *records, WireBuffer *strings,
+                         const ProcNameEntry *entry) {
+  size_t length = strlen(entry->text);
+  wirePutU32(records, entry->id);
+  wirePutU32(records, (uint32_t)strings->length);
+  wirePutU32(records, (uint32_t)length);
+  wirePutBytes(strings, entry->text, length);
+}
+
+// The counters of the groups in `fields`, in group order.
+static void putProcessCounters(WireBuffer *records, const ProcessData *p,
+                               unsigned fields) {
+  for (int g = 0; g < PROC_FIELD_GROUPS; g++) {
+    if (fields & (1u << g)) {
+      wirePutU64(records, p->counters[2 * g]);
+      wirePutU64(records, p->counters[2 * g + 1]);
+    }
+  }
+}
+
+static unsigned char *finishFrame(WireBuffer *frame, WireBuffer *strings,
+                                  WireBuffer *records,
+                                  size_t stringTableLengthOffset,
+                                  size_t *length) {
+  wirePatchU32(frame, stringTableLengthOffset, (uint32_t)strings->length);
+  wirePutBytes(frame, strings->data, strings->length);
+  wirePutBytes(frame, records->data, records->length);
+  wirePatchU32(frame, 4, (uint32_t)(frame->length - WIRE_HEADER_SIZE));
+  int failed = frame->failed || strings->failed || records->failed;
+  wireFree(strings);
+  wireFree(records);
+  if (failed) {
+    wireFree(frame);
+    return NULL;
+  }
+  *length = frame->length;
+  return frame->data;
+}
+
+unsigned char *encodeProcessListBinary(ProcessData *processList,
+                                       size_t processCount, size_t *length) {
+  WireBuffer frame;
+  WireBuffer strings;
+  WireBuffer records;
+  wireInit(&strings, processCount * 24 + 64);
+  wireInit(&records, processCount * WIRE_PROCESS_RECORD_SIZE + 64);
+
+  for (size_t i = 0; i < processCount; i++) {
+    putProcessRecord(&records, &strings, &processList[i]);
+  }
+
+  wireInit(&frame, WIRE_HEADER_SIZE + 8 + strings.length + records.length);
+  wirePutBytes(&frame, WIRE_MAGIC_PROCESS_LIST, 4);
+  wirePutU32(&frame, 0);
+  wirePutU32(&frame, (uint32_t)processCount);
+  wirePutU32(&frame, 0);
+  return finishFrame(&frame, &strings, &records, WIRE_HEADER_SIZE + 4,
+                     length);
+}
+
+unsigned char *encodeProcessDeltaBinary(const ProcessDelta *delta,
+                                        unsigned fields, size_t *length) {
+  WireBuffer frame;
+  WireBuffer strings;
+  WireBuffer records;
+  size_t dictionaryCount = delta->userCount + delta->nameCount;
+  wireInit(&strings, dictionaryCount * 16 + 64);
+  wireInit(&records, dictionaryCount * WIRE_NAME_ENTRY_SIZE +
+                         delta->upsertCount * WIRE_DELTA_RECORD_SIZE +
+                         delta->removedCount * 4 + 64);
+
+  for (size_t i = 0; i < delta->userCount; i++) {
+    putNameEntry(&records, &strings, delta->users[i]);
+  }
+  for (size_t i = 0; i < delta->nameCount; i++) {
+    putNameEntry(&records, &strings, delta->names[i]);
+  }
+  for (size_t i = 0; i < delta->upsertCount; i++) {
+    const ProcessData *p = delta->upserts[i];
+    wirePutU32(&records, (uint32_t)p->pid);
+    wirePutU32(&records, (uint32_t)p->ppid);
+    wirePutU64(&records, p->totalTime);
+    wirePutU64(&records, p->memRssKb);
+    wirePutU32(&records, p->uid);
+    wirePutU32(&records, p->nameId);
+    wirePutU8(&records, (uint8_t)p->state);
+    wirePutBytes(&records, "\0\0\0", 3);
+  }
+  for (size_t i = 0; fields && i < delta->upsertCount; i++) {
+    putProcessCounters(&records, delta->upserts[i], fields);
+  }
+  for (size_t i = 0; i < delta->removedCount; i++) {
+    wirePutU32(&records, (uint32_t)delta->removed[i]);
+  }
+
+  wireInit(&frame, WIRE_HEADER_SIZE + 32 + strings.length + records.length);
+  wirePutBytes(&frame, WIRE_MAGIC_PROCESS_DELTA, 4);
+  wirePutU32(&frame, 0);
+  wirePutU64(&frame, delta->generation);
+  wirePutU32(&frame, delta->full ? WIRE_DELTA_FLAG_FULL : 0);
+  wirePutU32(&frame, (uint32_t)delta->upsertCount);
+  wirePutU32(&frame, (uint32_t)delta->removedCount);
+  wirePutU32(&frame, (uint32_t)delta->userCount);
+  wirePutU32(&frame, (uint32_t)delta->nameCount);
+  wirePutU32(&frame, 0);
+  return finishFrame(&frame, &strings, &records, WIRE_HEADER_SIZE + 28,
+                     length);
+}
+
+unsigned char *encodeProcessQueryBinary(const ProcessQueryResult *result,
+                                        unsigned fields, size_t *length) {
+  WireBuffer frame;
+  WireBuffer strings;
+  WireBuffer records;
+  wireInit(&strings, result->rowCount * 24 + 64);
+  wireInit(&records, result->rowCount * (WIRE_PROCESS_RECORD_SIZE + 4) + 64);
+
+  for (size_t i = 0; i < result->rowCount; i++) {
+    putProcessRecord(&records, &strings, &result->rows[i]->data);
+  }
+  for (size_t i = 0; fields && i < result->rowCount; i++) {
+    putProcessCounters(&records, &result->rows[i]->data, fields);
+  }
+  for (size_t i = 0; i < result->rowCount; i++) {
+    wirePutU32(&records, result->rows[i]->cpuCentiPercent);
+  }
+
+  wireInit(&frame, WIRE_HEADER_SIZE + 12 + strings.length + records.length);
+  wirePutBytes(&frame, WIRE_MAGIC_PROCESS_QUERY, 4);
+  wirePutU32(&frame, 0);
+  wirePutU32(&frame, (uint32_t)result->matchedCount);
+  wirePutU32(&frame, (uint32_t)result->rowCount);
+  wirePutU32(&frame, 0);
+  return finishFrame(&frame, &strings, &records, WIRE_HEADER_SIZE + 8,
+                     length);
+}
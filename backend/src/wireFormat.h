@@ -0,0 +1,110 @@
+#pragma once
+
+#include "procParser.h"
+#include "procQuery.h"
+#include "procTable.h"
+#include <stddef.h>
+#include <stdint.h>
+
+/*
+ Binary frames are sent instead of text once a client has negotiated
+ SET_FORMAT;BINARY. Every frame starts with an 8 byte header:
+   char     magic[4]        frame type, e.g. "PLST"
+   uint32_t payloadLength   bytes that follow the header
+ All integers are little-endian.
+
+ PLST (GET_PROCESSES) payload:
+   uint32_t recordCount
+   uint32_t stringTableLength
+   char     stringTable[stringTableLength]
+   record   records[recordCount]       WIRE_PROCESS_RECORD_SIZE bytes each
+
+ The string table comes first so a client can decode each record as soon as
+ it arrives instead of waiting for the end of the frame.
+
+ record:
+   int32_t  pid
+   int32_t  ppid
+   uint64_t totalTime
+   uint64_t memRssKb
+   uint32_t userNameOffset   into the string table
+   uint32_t processNameOffset
+   uint16_t userNameLength
+   uint16_t processNameLength
+   uint8_t  state
+   uint8_t  padding[3]
+
+ PDLT (GET_PROCESSES_SINCE) payload:
+   uint64_t generation
+   uint32_t flags                     WIRE_DELTA_FLAG_FULL: replace everything
+   uint32_t recordCount               added or changed processes
+   uint32_t removedCount
+   uint32_t userCount                 dictionary entries new since the
+   uint32_t nameCount                 requested generation (see procTable.h)
+   uint32_t stringTableLength
+   char     stringTable[stringTableLength]
+   entry    users[userCount]          id is the uid
+   entry    names[nameCount]          id is the name id
+   delta record records[recordCount]
+   counters counters[recordCount]
+   int32_t  removedPids[removedCount]
+
+ entry (WIRE_NAME_ENTRY_SIZE bytes):
+   uint32_t id
+   uint32_t offset                    into the string table
+   uint32_t length
+
+ delta record (WIRE_DELTA_RECORD_SIZE bytes):
+   int32_t  pid
+   int32_t  ppid
+   uint64_t totalTime
+   uint64_t memRssKb
+   uint32_t uid                       resolved through the user entries
+   uint32_t nameId                    and the name entries received so far
+   uint8_t  state
+   uint8_t  padding[3]
+
+ PQRY (GET_PROCESSES;<query>, see procQuery.h) payload:
+   uint32_t matchedCount              processes that passed the filters
+   uint32_t recordCount               processes sent, in the requested order
+   uint32_t stringTableLength
+   char     stringTable[stringTableLength]
+   record   records[recordCount]
+   counters counters[recordCount]
+   uint32_t cpuCentiPercent[recordCount]
+
+ counters, only in answers to requests with fields (see procParser.h):
+   uint64_t counters[2 per requested group]   in group order
+*/
+
+#define WIRE_HEADER_SIZE 8
+#define WIRE_PROCESS_RECORD_SIZE 40
+#define WIRE_DELTA_RECORD_SIZE 36
+#define WIRE_NAME_ENTRY_SIZE 12
+#define WIRE_MAGIC_PROCESS_LIST "PLST"
+#define WIRE_MAGIC_PROCESS_DELTA "PDLT"
+#define WIRE_MAGIC_PROCESS_QUERY "PQRY"
+#define WIRE_DELTA_FLAG_FULL 1
+
+typedef struct {
+  unsigned char *data;
+  size_t length;
+  size_t capacity;
+  int failed;
+} WireBuffer;
+
+void wireInit(WireBuffer *buffer, size_t capacity);
+void wireFree(WireBuffer *buffer);
+void wirePutU8(WireBuffer *buffer, uint8_t value);
+void wirePutU16(WireBuffer *buffer, uint16_t value);
+void wirePutU32(WireBuffer *buffer, uint32_t value);
+void wirePutU64(WireBuffer *buffer, uint64_t value);
+void wirePutBytes(WireBuffer *buffer, const void *data, size_t length);
+void wirePatchU32(WireBuffer *buffer, size_t offset, uint32_t value);
+
+unsigned char *encodeProcessListBinary(ProcessData *processList,
+                                       size_t processCount, size_t *length);
+unsigned char *encodeProcessDeltaBinary(const ProcessDelta *delta,
+                                        unsigned fields, size_t *length);
+unsigned char *encodeProcessQueryBinary(const ProcessQueryResult *result,
+                                        unsigned fields, size_t *length);
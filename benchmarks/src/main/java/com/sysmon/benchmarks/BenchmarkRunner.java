@@ -0,0 +1,23 @@
+/*
+ - BENCHMARK RUNNER:
+ - Entry point of benchmarks.jar. Takes the usual JMH command line (which
+   benchmarks, -p parameter overrides, -f/-wi/-i, ...) and always adds the
+   gc profiler, so every result reports the allocation rate per operation
+   next to the throughput.
+*/
+
+package com.sysmon.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public class BenchmarkRunner {
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions commandLine = new CommandLineOptions(args);
+    Options options = new OptionsBuilder().parent(commandLine).addProfiler(GCProfiler.class).build();
+    new Runner(options).run();
+  }
+}
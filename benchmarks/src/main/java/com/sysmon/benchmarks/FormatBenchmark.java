@@ -0,0 +1,54 @@
+/*
+ - FORMAT BENCHMARK:
+ - The label and RSS column formatting (Formats.formatRss/formatSpeed) over
+   values spread across the B/KB, MB and GB ranges, since formatRss runs for
+   every changed row on every refresh.
+*/
+
+package com.sysmon.benchmarks;
+
+import com.sysmon.util.Formats;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormatBenchmark {
+  private static final int VALUES = 1024;
+
+  private final long[] values = new long[VALUES];
+  private int next;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(42);
+    for (int i = 0; i < VALUES; i++) {
+      // Uniform over the number of digits, so every unit branch is taken.
+      values[i] = (long) Math.pow(10, random.nextDouble() * 10);
+    }
+  }
+
+  @Benchmark
+  public String formatRss() {
+    return Formats.formatRss(values[next++ & (VALUES - 1)]);
+  }
+
+  @Benchmark
+  public String formatSpeed() {
+    return Formats.formatSpeed(values[next++ & (VALUES - 1)]);
+  }
+}
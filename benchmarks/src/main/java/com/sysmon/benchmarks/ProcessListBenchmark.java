@@ -0,0 +1,66 @@
+/*
+ - PROCESS LIST BENCHMARK:
+ - A full process list round trip through IPCClient against the
+   SyntheticBackend: GET_PROCESSES into ProcessInfo rows (getProcessList)
+   and the full snapshot the dashboard starts from (getProcessDelta(0)),
+   in both the binary and the text wire format.
+*/
+
+package com.sysmon.benchmarks;
+
+import com.sysmon.model.ProcessDelta;
+import com.sysmon.model.ProcessInfo;
+import com.sysmon.service.IPCClient;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javafx.collections.ObservableList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessListBenchmark {
+  @Param({"1000", "10000", "100000"})
+  public int processes;
+
+  @Param({"binary", "text"})
+  public String format;
+
+  private SyntheticBackend backend;
+  private IPCClient client;
+
+  @Setup
+  public void setup() throws IOException {
+    backend = SyntheticBackend.start(processes, "binary".equals(format));
+    client = new IPCClient(backend.socketPath());
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    backend.close();
+  }
+
+  @Benchmark
+  public ObservableList<ProcessInfo> getProcessList() {
+    return client.getProcessList();
+  }
+
+  @Benchmark
+  public ProcessDelta getProcessDelta() {
+    return client.getProcessDelta(0);
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ - PROCESS TABLE UPDATE BENCHMARK:
+ - The per-refresh work of the process table (ProcessTableUpdater: applying
+   the delta to the ProcessModel, CPU % / memory % and RSS formatting) for
+   a table of `processes` rows, where `changedPercent` of the rows changed
+   since the last refresh. A rotating set of pre-built deltas is applied, so
+   the measurement excludes building them.
+ - applyFullSnapshot applies alternating full snapshots instead, as after a
+   reconnect.
+*/
+
+package com.sysmon.benchmarks;
+
+import com.sysmon.controller.ProcessTableUpdater;
+import com.sysmon.model.ProcessDelta;
+import com.sysmon.model.ProcessModel;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessTableUpdateBenchmark {
+  private static final int DELTAS = 16;
+  private static final String[] USERS = {"root", "www-data", "postgres", "alice"};
+
+  @Param({"1000", "10000", "100000"})
+  public int processes;
+
+  @Param({"1", "10"})
+  public int changedPercent;
+
+  private ProcessTableUpdater updater;
+  private ProcessDelta[] deltas;
+  private ProcessDelta[] snapshots;
+  private long systemTotalTime;
+  private int next;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(42);
+    long[] totalTimes = new long[processes];
+    snapshots = new ProcessDelta[] {snapshot(totalTimes, 1), snapshot(totalTimes, 2)};
+    deltas = new ProcessDelta[DELTAS];
+    int changed = Math.max(1, processes * changedPercent / 100);
+    for (int d = 0; d < DELTAS; d++) {
+      ProcessDelta delta = new ProcessDelta(d + 3, false, changed);
+      for (int c = 0; c < changed; c++) {
+        int index = random.nextInt(processes);
+        totalTimes[index] += 1 + random.nextInt(50);
+        addProcess(delta, index, totalTimes[index]);
+      }
+      deltas[d] = delta;
+    }
+    updater = new ProcessTableUpdater(new ProcessModel(), 8);
+    updater.setMemTotalKb(64L * 1024 * 1024);
+    updater.apply(snapshots[0]);
+  }
+
+  private ProcessDelta snapshot(long[] totalTimes, long generation) {
+    ProcessDelta snapshot = new ProcessDelta(generation, true, processes);
+    for (int i = 0; i < processes; i++) {
+      addProcess(snapshot, i, totalTimes[i] + generation);
+    }
+    return snapshot;
+  }
+
+  private static void addProcess(ProcessDelta delta, int index, long totalTime) {
+    delta.addProcess(index + 1, 1, USERS[index % USERS.length], "S", "process-" + index, totalTime,
+        1024 + (index * 37L + totalTime) % (8 * 1024 * 1024));
+  }
+
+  @Benchmark
+  public void applyDelta() {
+    systemTotalTime += 800;
+    updater.setSystemTotalTime(systemTotalTime);
+    updater.apply(deltas[next++ % DELTAS]);
+  }
+
+  @Benchmark
+  public void applyFullSnapshot() {
+    systemTotalTime += 800;
+    updater.setSystemTotalTime(systemTotalTime);
+    updater.apply(snapshots[next++ & 1]);
+  }
+}
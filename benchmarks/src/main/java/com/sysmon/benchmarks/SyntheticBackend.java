@@ -0,0 +1,259 @@
+/*
+ - SYNTHETIC BACKEND:
+ - A stand-in for the C backend on a temporary UNIX socket, so IPCClient can
+   be benchmarked end to end (socket, framing and parsing) without /proc.
+ - It serves a fixed synthetic process table of any size; every response is
+   encoded once up front (as PLST/PDLT frames, or as text when binary is
+   disabled and SET_FORMAT;BINARY is refused), so the measurements are
+   dominated by the client rather than by the server.
+ - The delta is a full one, so it carries every user and name dictionary
+   entry its rows refer to (see backend/src/procTable.h).
+*/
+
+package com.sysmon.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+final class SyntheticBackend implements AutoCloseable {
+  private static final String[] USERS = {"root", "www-data", "postgres", "systemd-resolve", "alice"};
+  private static final int[] UIDS = {0, 33, 108, 101, 1000};
+  private static final String[] NAMES = {"java", "postgres", "nginx", "bash", "kworker/0:1", "python3", "sshd"};
+  private static final byte[] STATES = {'S', 'S', 'S', 'R', 'I', 'D'};
+
+  private final Path socketPath;
+  private final ServerSocketChannel server;
+  private final boolean binary;
+  private final byte[] processList;
+  private final byte[] processDelta;
+  private volatile boolean closed;
+
+  private SyntheticBackend(int processCount, boolean binary) throws IOException {
+    this.binary = binary;
+    Random random = new Random(42);
+    int[] pids = new int[processCount];
+    int[] ppids = new int[processCount];
+    int[] users = new int[processCount];
+    String[] names = new String[processCount];
+    byte[] states = new byte[processCount];
+    long[] totalTimes = new long[processCount];
+    long[] memRssKb = new long[processCount];
+    for (int i = 0; i < processCount; i++) {
+      pids[i] = i + 1;
+      ppids[i] = i == 0 ? 0 : 1 + random.nextInt(i);
+      users[i] = random.nextInt(USERS.length);
+      names[i] = NAMES[random.nextInt(NAMES.length)] + "-" + (i % 512);
+      states[i] = STATES[random.nextInt(STATES.length)];
+      totalTimes[i] = random.nextInt(1_000_000);
+      memRssKb[i] = random.nextInt(4 * 1024 * 1024);
+    }
+    if (binary) {
+      processList = encodeProcessList(pids, ppids, users, names, states, totalTimes, memRssKb);
+      processDelta = encodeDelta(pids, ppids, users, names, states, totalTimes, memRssKb);
+    } else {
+      processList = encodeText("BEGIN_PROCESS_LIST\n", "END_PROCESS_LIST\n", pids, ppids, users, names, states,
+          totalTimes, memRssKb);
+      processDelta = encodeTextDelta(pids, ppids, users, names, states, totalTimes, memRssKb);
+    }
+    this.socketPath = Files.createTempDirectory("sysmon-bench").resolve("SysMon");
+    this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+    server.bind(UnixDomainSocketAddress.of(socketPath));
+    Thread.ofPlatform().daemon().name("synthetic-backend").start(this::accept);
+  }
+
+  static SyntheticBackend start(int processCount, boolean binary) throws IOException {
+    return new SyntheticBackend(processCount, binary);
+  }
+
+  String socketPath() {
+    return socketPath.toString();
+  }
+
+  private void accept() {
+    while (!closed) {
+      try {
+        SocketChannel client = server.accept();
+        Thread.ofPlatform().daemon().name("synthetic-backend-client").start(() -> serve(client));
+      } catch (IOException e) {
+        if (!closed) {
+          System.err.println("SyntheticBackend: accept failed: " + e.getMessage());
+        }
+        return;
+      }
+    }
+  }
+
+  private void serve(SocketChannel client) {
+    ByteBuffer input = ByteBuffer.allocate(4096);
+    StringBuilder line = new StringBuilder();
+    try (client) {
+      while (client.read(input) >= 0) {
+        input.flip();
+        while (input.hasRemaining()) {
+          char c = (char) input.get();
+          if (c == '\n') {
+            write(client, respond(line.toString()));
+            line.setLength(0);
+          } else {
+            line.append(c);
+          }
+        }
+        input.clear();
+      }
+    } catch (IOException e) {
+      // The client went away.
+    }
+  }
+
+  private byte[] respond(String command) {
+    if (command.equals("SET_FORMAT;BINARY")) {
+      return ascii(binary ? "OK;BINARY\n" : "ERROR;unsupported format\n");
+    } else if (command.equals("GET_PROCESSES")) {
+      return processList;
+    } else if (command.startsWith("GET_PROCESSES_SINCE;")) {
+      return processDelta;
+    } else if (command.equals("GET_CPU_STATS")) {
+      return ascii("CPU;12.5;987654321\n");
+    } else if (command.equals("GET_MEM_STATS")) {
+      return ascii("MEM_TOTAL;16318480\nMEM_FREE;8123456\nMEM_AVAIL;12123456\nBUFFERS;123456\n"
+          + "CACHED;3456789\nSWAP_TOTAL;2097148\nSWAP_FREE;2097148\n");
+    } else if (command.equals("GET_NET_STATS")) {
+      return ascii("NET;123456;65432\n");
+    } else if (command.equals("GET_DISK_STATS")) {
+      return ascii("DISK;123456789012;512110190592\n");
+    }
+    return ascii("ERROR;Unknown command\n");
+  }
+
+  private static void write(SocketChannel client, byte[] response) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(response);
+    while (buffer.hasRemaining()) {
+      client.write(buffer);
+    }
+  }
+
+  private static byte[] ascii(String text) {
+    return text.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  // Same layouts as backend/src/wireFormat.h.
+  private static byte[] encodeProcessList(int[] pids, int[] ppids, int[] users, String[] names, byte[] states,
+      long[] totalTimes, long[] memRssKb) {
+    int count = pids.length;
+    ByteArrayOutputStream strings = new ByteArrayOutputStream();
+    int[] userOffsets = new int[count];
+    int[] nameOffsets = new int[count];
+    byte[][] userBytes = new byte[count][];
+    byte[][] nameBytes = new byte[count][];
+    for (int i = 0; i < count; i++) {
+      userBytes[i] = USERS[users[i]].getBytes(StandardCharsets.UTF_8);
+      userOffsets[i] = strings.size();
+      strings.writeBytes(userBytes[i]);
+      nameBytes[i] = names[i].getBytes(StandardCharsets.UTF_8);
+      nameOffsets[i] = strings.size();
+      strings.writeBytes(nameBytes[i]);
+    }
+    int payload = 8 + strings.size() + count * 40;
+    ByteBuffer frame = ByteBuffer.allocate(8 + payload).order(ByteOrder.LITTLE_ENDIAN);
+    frame.put(ascii("PLST")).putInt(payload);
+    frame.putInt(count).putInt(strings.size());
+    frame.put(strings.toByteArray());
+    for (int i = 0; i < count; i++) {
+      frame.putInt(pids[i]).putInt(ppids[i]).putLong(totalTimes[i]).putLong(memRssKb[i]);
+      frame.putInt(userOffsets[i]).putInt(nameOffsets[i]);
+      frame.putShort((short) userBytes[i].length).putShort((short) nameBytes[i].length);
+      frame.put(states[i]).put((byte) 0).put((byte) 0).put((byte) 0);
+    }
+    return frame.array();
+  }
+
+  private static byte[] encodeDelta(int[] pids, int[] ppids, int[] users, String[] names, byte[] states,
+      long[] totalTimes, long[] memRssKb) {
+    int count = pids.length;
+    Map<String, Integer> nameIds = nameIds(names);
+    ByteArrayOutputStream strings = new ByteArrayOutputStream();
+    ByteBuffer entries = ByteBuffer.allocate((USERS.length + nameIds.size()) * 12).order(ByteOrder.LITTLE_ENDIAN);
+    for (int i = 0; i < USERS.length; i++) {
+      byte[] bytes = USERS[i].getBytes(StandardCharsets.UTF_8);
+      entries.putInt(UIDS[i]).putInt(strings.size()).putInt(bytes.length);
+      strings.writeBytes(bytes);
+    }
+    for (Map.Entry<String, Integer> name : nameIds.entrySet()) {
+      byte[] bytes = name.getKey().getBytes(StandardCharsets.UTF_8);
+      entries.putInt(name.getValue()).putInt(strings.size()).putInt(bytes.length);
+      strings.writeBytes(bytes);
+    }
+    int payload = 32 + strings.size() + entries.capacity() + count * 36;
+    ByteBuffer frame = ByteBuffer.allocate(8 + payload).order(ByteOrder.LITTLE_ENDIAN);
+    frame.put(ascii("PDLT")).putInt(payload);
+    frame.putLong(1).putInt(1).putInt(count).putInt(0).putInt(USERS.length).putInt(nameIds.size())
+        .putInt(strings.size());
+    frame.put(strings.toByteArray()).put(entries.array());
+    for (int i = 0; i < count; i++) {
+      frame.putInt(pids[i]).putInt(ppids[i]).putLong(totalTimes[i]).putLong(memRssKb[i]);
+      frame.putInt(UIDS[users[i]]).putInt(nameIds.get(names[i]));
+      frame.put(states[i]).put((byte) 0).put((byte) 0).put((byte) 0);
+    }
+    return frame.array();
+  }
+
+  // Ids in order of first appearance, as the backend assigns them.
+  private static Map<String, Integer> nameIds(String[] names) {
+    Map<String, Integer> ids = new LinkedHashMap<>();
+    for (String name : names) {
+      ids.putIfAbsent(name, ids.size());
+    }
+    return ids;
+  }
+
+  private static byte[] encodeTextDelta(int[] pids, int[] ppids, int[] users, String[] names, byte[] states,
+      long[] totalTimes, long[] memRssKb) {
+    Map<String, Integer> nameIds = nameIds(names);
+    StringBuilder text = new StringBuilder("BEGIN_PROCESS_DELTA;1;FULL\n");
+    for (int i = 0; i < USERS.length; i++) {
+      text.append("USER;").append(UIDS[i]).append(';').append(USERS[i]).append('\n');
+    }
+    for (Map.Entry<String, Integer> name : nameIds.entrySet()) {
+      text.append("NAME;").append(name.getValue()).append(';').append(name.getKey()).append('\n');
+    }
+    for (int i = 0; i < pids.length; i++) {
+      text.append(pids[i]).append('\t').append(ppids[i]).append('\t').append(UIDS[users[i]]).append('\t')
+          .append((char) states[i]).append('\t').append(nameIds.get(names[i])).append('\t').append(totalTimes[i])
+          .append('\t').append(memRssKb[i]).append('\n');
+    }
+    text.append("END_PROCESS_DELTA\n");
+    return text.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] encodeText(String header, String footer, int[] pids, int[] ppids, int[] users,
+      String[] names, byte[] states, long[] totalTimes, long[] memRssKb) {
+    StringBuilder text = new StringBuilder(header);
+    for (int i = 0; i < pids.length; i++) {
+      text.append(pids[i]).append('\t').append(ppids[i]).append('\t').append(USERS[users[i]]).append('\t')
+          .append((char) states[i]).append('\t').append(names[i]).append('\t').append(totalTimes[i]).append('\t')
+          .append(memRssKb[i]).append('\n');
+    }
+    text.append(footer);
+    return text.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    server.close();
+    Files.deleteIfExists(socketPath);
+    Files.deleteIfExists(socketPath.getParent());
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ - SYSTEM UPDATE BENCHMARK:
+ - Command round trips through IPCClient against the SyntheticBackend:
+   getSystemUpdate() pipelines the four system metric commands on the
+   shared connection, getCpuStats() is a single command.
+*/
+
+package com.sysmon.benchmarks;
+
+import com.sysmon.model.SystemUpdate;
+import com.sysmon.service.IPCClient;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SystemUpdateBenchmark {
+  private SyntheticBackend backend;
+  private IPCClient client;
+
+  @Setup
+  public void setup() throws IOException {
+    backend = SyntheticBackend.start(100, true);
+    client = new IPCClient(backend.socketPath());
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    backend.close();
+  }
+
+  @Benchmark
+  public SystemUpdate getSystemUpdate() {
+    return client.getSystemUpdate();
+  }
+
+  @Benchmark
+  public SystemUpdate getCpuStats() {
+    return client.getCpuStats();
+  }
+}
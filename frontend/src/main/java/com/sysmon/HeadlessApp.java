@@ -0,0 +1,33 @@
+/*
+ - HEADLESS ENTRY POINT:
+ - Runs the metric collectors without JavaFX and serves their latest results
+   to Prometheus/OpenMetrics scrapers (see MetricsExporter).
+ - The port is -Dsysmon.exporter.port (default 9464, localhost only);
+   -Dsysmon.record=<dir> also records everything that is collected.
+*/
+
+package com.sysmon;
+
+import com.sysmon.exporter.HeadlessCollector;
+import com.sysmon.exporter.MetricsExporter;
+import com.sysmon.recording.SnapshotRecorder;
+import java.io.IOException;
+import java.nio.file.Path;
+
+public class HeadlessApp {
+  public static void main(String[] args) throws IOException {
+    int port = Integer.getInteger("sysmon.exporter.port", 9464);
+    String recordDirectory = System.getProperty("sysmon.record");
+    SnapshotRecorder recorder = recordDirectory != null ? new SnapshotRecorder(Path.of(recordDirectory)) : null;
+
+    HeadlessCollector collector = new HeadlessCollector(recorder);
+    MetricsExporter exporter = new MetricsExporter(collector, port);
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      exporter.close();
+      collector.close();
+    }));
+    collector.start();
+    exporter.start();
+    System.out.println("SysMon exporter listening on http://localhost:" + exporter.getPort() + "/metrics");
+  }
+}
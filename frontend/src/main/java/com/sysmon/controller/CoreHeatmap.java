@@ -0,0 +1,104 @@
+/*
+ - CORE HEATMAP:
+ - Draws the busy share of every core of the monitored host as one cell of
+   a heatmap, from idle (dark) through green and yellow to saturated (red).
+ - Everything is painted onto a single Canvas that fills the host pane, so
+   a box with hundreds of cores costs one Node rather than one per core.
+   The grid is laid out so the cells stay roughly square at any pane size.
+ - Hovering over a cell shows that core's user/system/iowait/steal split.
+*/
+
+package com.sysmon.controller;
+
+import com.sysmon.model.SystemUpdate;
+import java.util.Locale;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Tooltip;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.util.Duration;
+
+class CoreHeatmap {
+  private static final Color BACKGROUND = Color.web("#2b2d2e");
+  private static final Color[] PALETTE = new Color[101];
+
+  static {
+    Color idle = Color.web("#30363d");
+    Color green = Color.web("#3fb950");
+    Color yellow = Color.web("#d29922");
+    Color red = Color.web("#f85149");
+    for (int percent = 0; percent <= 100; percent++) {
+      if (percent <= 50) {
+        PALETTE[percent] = idle.interpolate(green, percent / 50.0);
+      } else if (percent <= 80) {
+        PALETTE[percent] = green.interpolate(yellow, (percent - 50) / 30.0);
+      } else {
+        PALETTE[percent] = yellow.interpolate(red, (percent - 80) / 20.0);
+      }
+    }
+  }
+
+  private final Canvas canvas = new Canvas();
+  private final Tooltip tooltip = new Tooltip();
+  private SystemUpdate stats;
+  private int columns = 1;
+  private double cellSize;
+
+  CoreHeatmap(Pane host) {
+    // Unmanaged, so the canvas follows the pane's size without feeding back
+    // into it.
+    canvas.setManaged(false);
+    host.getChildren().add(canvas);
+    canvas.widthProperty().bind(host.widthProperty());
+    canvas.heightProperty().bind(host.heightProperty());
+    canvas.widthProperty().addListener(_ -> draw());
+    canvas.heightProperty().addListener(_ -> draw());
+    tooltip.setShowDelay(Duration.millis(100));
+    Tooltip.install(canvas, tooltip);
+    canvas.addEventHandler(MouseEvent.MOUSE_MOVED, this::updateTooltip);
+  }
+
+  void update(SystemUpdate stats) {
+    this.stats = stats;
+    draw();
+  }
+
+  private void draw() {
+    GraphicsContext g = canvas.getGraphicsContext2D();
+    double width = canvas.getWidth();
+    double height = canvas.getHeight();
+    g.setFill(BACKGROUND);
+    g.fillRect(0, 0, width, height);
+    int count = stats != null ? stats.getCoreCount() : 0;
+    if (count == 0 || width <= 0 || height <= 0) {
+      return;
+    }
+    columns = Math.max(1, Math.min(count, (int) Math.ceil(Math.sqrt(count * width / height))));
+    int rows = (count + columns - 1) / columns;
+    cellSize = Math.min(width / columns, height / rows);
+    double gap = cellSize >= 6 ? 1 : 0;
+    for (int i = 0; i < count; i++) {
+      int percent = (int) Math.round(Math.clamp(stats.getCoreBusy(i), 0.0, 100.0));
+      g.setFill(PALETTE[percent]);
+      g.fillRect((i % columns) * cellSize, (i / columns) * cellSize, cellSize - gap, cellSize - gap);
+    }
+  }
+
+  private void updateTooltip(MouseEvent event) {
+    int count = stats != null ? stats.getCoreCount() : 0;
+    int index = -1;
+    if (cellSize > 0 && event.getX() < columns * cellSize) {
+      index = (int) (event.getY() / cellSize) * columns + (int) (event.getX() / cellSize);
+    }
+    if (index < 0 || index >= count) {
+      tooltip.setText(count + " cores");
+      return;
+    }
+    tooltip.setText(String.format(Locale.ROOT,
+        "cpu%d: %.1f%% busy%nuser %.1f%%  system %.1f%%%niowait %.1f%%  steal %.1f%%", stats.getCoreId(index),
+        stats.getCoreBusy(index), stats.getCoreUser(index), stats.getCoreSystem(index), stats.getCoreIowait(index),
+        stats.getCoreSteal(index)));
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ - DEVICE TABLES:
+ - Fills the Devices tab: one row per network interface (receive/transmit
+   rates, packet rates and error counts) and one per block device
+   (read/write throughput, IOPS and utilization).
+ - The rows are just indexes into the latest SystemUpdate's per-device
+   arrays, and every column reads its value from there, so an update only
+   swaps the SystemUpdate, adds or drops indexes when the device count
+   changes and redraws the visible cells.
+*/
+
+package com.sysmon.controller;
+
+import com.sysmon.model.SystemUpdate;
+import com.sysmon.util.Formats;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Pos;
+import javafx.scene.control.TableCell;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+
+class DeviceTables {
+  private final TableView<Integer> interfaceTable;
+  private final TableView<Integer> diskTable;
+  private SystemUpdate interfaces = new SystemUpdate();
+  private SystemUpdate disks = new SystemUpdate();
+
+  DeviceTables(TableView<Integer> interfaceTable, TableView<Integer> diskTable) {
+    this.interfaceTable = interfaceTable;
+    this.diskTable = diskTable;
+    interfaceTable.getColumns().setAll(List.of(
+        column("Interface", i -> interfaces.getInterfaceName(i), Function.identity()),
+        column("Receive", i -> interfaces.getInterfaceRxBytes(i), Formats::formatSpeed),
+        column("Transmit", i -> interfaces.getInterfaceTxBytes(i), Formats::formatSpeed),
+        column("Packets in", i -> interfaces.getInterfaceRxPackets(i), DeviceTables::formatRate),
+        column("Packets out", i -> interfaces.getInterfaceTxPackets(i), DeviceTables::formatRate),
+        column("Errors in", i -> interfaces.getInterfaceRxErrors(i), String::valueOf),
+        column("Errors out", i -> interfaces.getInterfaceTxErrors(i), String::valueOf)));
+    diskTable.getColumns().setAll(List.of(
+        column("Device", i -> disks.getDiskDeviceName(i), Function.identity()),
+        column("Read", i -> disks.getDiskReadBytes(i), Formats::formatSpeed),
+        column("Write", i -> disks.getDiskWriteBytes(i), Formats::formatSpeed),
+        column("Reads", i -> disks.getDiskReads(i), DeviceTables::formatRate),
+        column("Writes", i -> disks.getDiskWrites(i), DeviceTables::formatRate),
+        column("Utilization", i -> disks.getDiskUtilization(i),
+            utilization -> String.format(Locale.ROOT, "%.1f%%", utilization))));
+    for (TableView<Integer> table : List.of(interfaceTable, diskTable)) {
+      table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_ALL_COLUMNS);
+      table.setItems(FXCollections.observableArrayList());
+    }
+  }
+
+  void updateInterfaces(SystemUpdate stats) {
+    interfaces = stats;
+    show(interfaceTable, stats.getInterfaceCount());
+  }
+
+  void updateDisks(SystemUpdate stats) {
+    disks = stats;
+    show(diskTable, stats.getDiskDeviceCount());
+  }
+
+  private static void show(TableView<Integer> table, int count) {
+    ObservableList<Integer> rows = table.getItems();
+    if (rows.size() != count) {
+      Integer[] indexes = new Integer[count];
+      for (int i = 0; i < count; i++) {
+        indexes[i] = i;
+      }
+      rows.setAll(indexes);
+    }
+    table.sort();
+    table.refresh();
+  }
+
+  private static <T extends Comparable<T>> TableColumn<Integer, T> column(String title, IntFunction<T> value,
+      Function<T, String> format) {
+    TableColumn<Integer, T> column = new TableColumn<>(title);
+    column.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(value.apply(cell.getValue())));
+    column.setCellFactory(_ -> new TableCell<>() {
+      @Override
+      protected void updateItem(T item, boolean empty) {
+        super.updateItem(item, empty);
+        setText(empty || item == null ? null : format.apply(item));
+        setAlignment(item instanceof String ? Pos.CENTER_LEFT : Pos.CENTER_RIGHT);
+      }
+    });
+    return column;
+  }
+
+  private static String formatRate(long perSecond) {
+    return perSecond + "/s";
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ - DIAGNOSTICS PANEL:
+ - Fills the Diagnostics tab with SysMon's own latency histograms, one row
+   per stage of a refresh on either side of the socket: the backend's scan,
+   table update, encoding, socket writes, commands and pushes
+   (GET_SELF_STATS) and the dashboard's IPC wait, transfer, parsing and FX
+   rendering (SelfStats).
+   Each row shows the count, mean, p50, p90, p99 and maximum in
+   milliseconds, followed by both sides' counters.
+ - It only refreshes while the tab is showing, at most once a
+   second; the backend's half is fetched off the FX thread, one
+   fetch at a time.
+ - "Export..." saves the same table, with the backend's and the dashboard's
+   uptime, as plain text.
+*/
+
+package com.sysmon.controller;
+
+import com.sysmon.diagnostics.LatencyHistogram;
+import com.sysmon.diagnostics.SelfStats;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.geometry.Pos;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TableCell;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.stage.FileChooser;
+
+class DiagnosticsPanel {
+  private static final long REFRESH_INTERVAL_NANOS = Duration.ofSeconds(1).toNanos();
+
+  private final Tab tab;
+  private final TableView<Row> table;
+  // Null when there is no backend to ask (replay).
+  private final Supplier<SelfStats.Report> backendStats;
+  private SelfStats.Report backend = SelfStats.Report.EMPTY;
+  private long lastRefresh;
+  private boolean fetching;
+
+  // A stage (with its histogram) or a counter (histogram null).
+  record Row(String side, String name, long count, LatencyHistogram.Snapshot latency) {
+  }
+
+  DiagnosticsPanel(Tab tab, TableView<Row> table, Button export, Supplier<SelfStats.Report> backendStats) {
+    this.tab = tab;
+    this.table = table;
+    this.backendStats = backendStats;
+    table.getColumns().setAll(List.of(
+        column("Side", Row::side),
+        column("Stage", Row::name),
+        column("Count", Row::count),
+        latencyColumn("Mean (ms)", LatencyHistogram.Snapshot::meanNanos),
+        latencyColumn("p50 (ms)", latency -> latency.percentileNanos(0.5)),
+        latencyColumn("p90 (ms)", latency -> latency.percentileNanos(0.9)),
+        latencyColumn("p99 (ms)", latency -> latency.percentileNanos(0.99)),
+        latencyColumn("Max (ms)", LatencyHistogram.Snapshot::maxNanos)));
+    table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_ALL_COLUMNS);
+    tab.selectedProperty().addListener((_, _, selected) -> {
+      if (selected) {
+        refresh();
+      }
+    });
+    export.setOnAction(_ -> export());
+  }
+
+  void refreshIfDue() {
+    if (tab.isSelected() && System.nanoTime() - lastRefresh >= REFRESH_INTERVAL_NANOS) {
+      refresh();
+    }
+  }
+
+  private void refresh() {
+    lastRefresh = System.nanoTime();
+    if (backendStats == null || fetching) {
+      show();
+      return;
+    }
+    fetching = true;
+    Thread.ofVirtual().name("sysmon-self-stats").start(() -> {
+      SelfStats.Report report = backendStats.get();
+      Platform.runLater(() -> {
+        fetching = false;
+        if (report != null) {
+          backend = report;
+        }
+        show();
+      });
+    });
+  }
+
+  private void show() {
+    List<Row> rows = new ArrayList<>();
+    addRows(rows, "backend", backend);
+    addRows(rows, "client", SelfStats.report());
+    table.getItems().setAll(rows);
+  }
+
+  private static void addRows(List<Row> rows, String side, SelfStats.Report report) {
+    for (Map.Entry<String, LatencyHistogram.Snapshot> stage : report.stages().entrySet()) {
+      rows.add(new Row(side, stage.getKey(), stage.getValue().count(), stage.getValue()));
+    }
+    for (Map.Entry<String, Long> counter : report.counters().entrySet()) {
+      rows.add(new Row(side, counter.getKey(), counter.getValue(), null));
+    }
+  }
+
+  private void export() {
+    FileChooser chooser = new FileChooser();
+    chooser.setTitle("Export diagnostics");
+    chooser.setInitialFileName("sysmon-diagnostics.txt");
+    File file = chooser.showSaveDialog(table.getScene().getWindow());
+    if (file == null) {
+      return;
+    }
+    SelfStats.Report client = SelfStats.report();
+    StringBuilder out = new StringBuilder();
+    out.append("# SysMon diagnostics, ").append(Instant.now()).append('\n');
+    out.append("# backend uptime ").append(backend.uptimeMillis()).append(" ms, client uptime ")
+        .append(client.uptimeMillis()).append(" ms\n");
+    out.append(SelfStats.Report.textHeader());
+    backend.appendText(out, "backend");
+    client.appendText(out, "client");
+    try {
+      Files.writeString(file.toPath(), out, StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      System.err.println("Failed to export diagnostics to " + file + ": " + e.getMessage());
+      e.printStackTrace();
+      Alert alert = new Alert(Alert.AlertType.ERROR);
+      alert.setTitle("Export Failed");
+      alert.setHeaderText(null);
+      alert.setContentText("Could not write " + file + ": " + e.getMessage());
+      alert.showAndWait();
+    }
+  }
+
+  private static <T> TableColumn<Row, T> column(String title, Function<Row, T> value) {
+    TableColumn<Row, T> column = new TableColumn<>(title);
+    column.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(value.apply(cell.getValue())));
+    return column;
+  }
+
+  // Empty on counter rows.
+  private static TableColumn<Row, Row> latencyColumn(String title,
+      Function<LatencyHistogram.Snapshot, Number> nanos) {
+    TableColumn<Row, Row> column = new TableColumn<>(title);
+    column.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue()));
+    column.setSortable(false);
+    column.setCellFactory(_ -> new TableCell<>() {
+      @Override
+      protected void updateItem(Row item, boolean empty) {
+        super.updateItem(item, empty);
+        if (empty || item == null || item.latency() == null) {
+          setText(null);
+        } else {
+          setText(String.format(Locale.ROOT, "%.3f", nanos.apply(item.latency()).doubleValue() / 1e6));
+        }
+        setAlignment(Pos.CENTER_RIGHT);
+      }
+    });
+    return column;
+  }
+}
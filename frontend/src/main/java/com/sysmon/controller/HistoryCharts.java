@@ -0,0 +1,141 @@
+/*
+ - HISTORY CHARTS:
+ - Draws the CPU, memory, swap and network line charts of the History tab
+   from the MetricHistory store.
+ - The selected range picks the finest tier that still covers it (raw
+   samples for the last minutes, minute or hour rollups further back) and
+   is drawn with at most MAX_POINTS points per series.
+ - Chart points (and the nodes the chart keeps for them) are reused between
+   refreshes and only moved in place; points are only added or removed
+   when the number of samples in the range changes.
+*/
+
+package com.sysmon.controller;
+
+import com.sysmon.history.HistoryRange;
+import com.sysmon.history.MetricHistory;
+import com.sysmon.history.MetricHistory.Metric;
+import com.sysmon.history.MetricHistory.Resolution;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.NumberAxis;
+import javafx.scene.chart.XYChart;
+import javafx.scene.control.ChoiceBox;
+
+class HistoryCharts {
+  private static final int MAX_POINTS = 300;
+  private static final long REFRESH_INTERVAL_MS = 1_000;
+  private static final double KIB_PER_GIB = 1024.0 * 1024.0;
+
+  enum Range {
+    FIVE_MINUTES("Last 5 minutes", Duration.ofMinutes(5)),
+    HOUR("Last hour", Duration.ofHours(1)),
+    DAY("Last 24 hours", Duration.ofDays(1)),
+    WEEK("Last 7 days", Duration.ofDays(7));
+
+    private final String label;
+    private final Duration length;
+
+    Range(String label, Duration length) {
+      this.label = label;
+      this.length = length;
+    }
+
+    // Minutes ago for short ranges, hours ago for the long ones.
+    long axisUnitMillis() {
+      return length.compareTo(Duration.ofHours(1)) <= 0 ? 60_000 : 3_600_000;
+    }
+
+    @Override
+    public String toString() {
+      return label;
+    }
+  }
+
+  private enum Value {
+    AVG,
+    MAX
+  }
+
+  private record Line(XYChart.Series<Number, Number> series, Metric metric, Value value, double scale) {
+  }
+
+  private final MetricHistory history;
+  private final ChoiceBox<Range> rangeChoice;
+  private final List<LineChart<Number, Number>> charts;
+  private final List<Line> lines = new ArrayList<>();
+  private final HistoryRange range = new HistoryRange(MAX_POINTS);
+  private long lastRefresh;
+
+  HistoryCharts(MetricHistory history, ChoiceBox<Range> rangeChoice, LineChart<Number, Number> cpuChart,
+      LineChart<Number, Number> memChart, LineChart<Number, Number> swapChart, LineChart<Number, Number> netChart) {
+    this.history = history;
+    this.rangeChoice = rangeChoice;
+    this.charts = List.of(cpuChart, memChart, swapChart, netChart);
+    addLine(cpuChart, "Average", Metric.CPU_USAGE, Value.AVG, 1.0);
+    addLine(cpuChart, "Peak", Metric.CPU_USAGE, Value.MAX, 1.0);
+    addLine(memChart, "Used", Metric.MEM_USED, Value.AVG, 1.0 / KIB_PER_GIB);
+    addLine(swapChart, "Used", Metric.SWAP_USED, Value.AVG, 1.0 / KIB_PER_GIB);
+    addLine(netChart, "Download", Metric.NET_DOWN, Value.AVG, 1.0 / 1024.0);
+    addLine(netChart, "Upload", Metric.NET_UP, Value.AVG, 1.0 / 1024.0);
+
+    rangeChoice.setItems(FXCollections.observableArrayList(Range.values()));
+    rangeChoice.setValue(Range.FIVE_MINUTES);
+    rangeChoice.valueProperty().addListener((_, _, _) -> refresh());
+  }
+
+  private void addLine(LineChart<Number, Number> chart, String name, Metric metric, Value value, double scale) {
+    XYChart.Series<Number, Number> series = new XYChart.Series<>();
+    series.setName(name);
+    chart.getData().add(series);
+    lines.add(new Line(series, metric, value, scale));
+  }
+
+  // Called on every sample; redraws at most once per REFRESH_INTERVAL_MS.
+  void refreshIfDue() {
+    if (System.currentTimeMillis() - lastRefresh >= REFRESH_INTERVAL_MS) {
+      refresh();
+    }
+  }
+
+  void refresh() {
+    lastRefresh = System.currentTimeMillis();
+    // Anchored at the newest sample rather than the clock, so a replayed
+    // recording is charted around its own time.
+    long now = history.getLatestTime() > 0 ? history.getLatestTime() : lastRefresh;
+    Range selected = rangeChoice.getValue();
+    long from = now - selected.length.toMillis();
+    double unit = selected.axisUnitMillis();
+    for (LineChart<Number, Number> chart : charts) {
+      NumberAxis xAxis = (NumberAxis) chart.getXAxis();
+      xAxis.setLabel(unit == 60_000 ? "minutes ago" : "hours ago");
+      xAxis.setAutoRanging(false);
+      xAxis.setLowerBound(-selected.length.toMillis() / unit);
+      xAxis.setUpperBound(0);
+      xAxis.setTickUnit(xAxis.getLowerBound() / -10);
+    }
+    for (Line line : lines) {
+      Resolution resolution = history.resolutionFor(line.metric(), from);
+      int count = history.query(line.metric(), resolution, from, now, range);
+      ObservableList<XYChart.Data<Number, Number>> data = line.series().getData();
+      if (data.size() > count) {
+        data.remove(count, data.size());
+      }
+      for (int i = 0; i < count; i++) {
+        double x = -(now - range.getTime(i)) / unit;
+        double y = (line.value() == Value.MAX ? range.getMax(i) : range.getAvg(i)) * line.scale();
+        if (i < data.size()) {
+          XYChart.Data<Number, Number> point = data.get(i);
+          point.setXValue(x);
+          point.setYValue(y);
+        } else {
+          data.add(new XYChart.Data<>(x, y));
+        }
+      }
+    }
+  }
+}
@@ -2,34 +2,104 @@
  - CONTROLLER:
  - The main UI controller for the SysMon application.
  - This class connects the FXML view (MainView.fxml) to the application logic.
- - It manages the background services (ProcessService, SystemUpdateService) and
-   the refresh Timeline.
- - It contains all logic for calculating deltas (e.g., per-process CPU %)
-   and formatting data to display in the dashboard charts, labels, and table.
+ - It subscribes to the backend's metric pushes (or, with
+   -Dsysmon.refresh=poll, registers collectors with the MetricScheduler),
+   each metric on its own interval, and applies the results on the FX
+   thread. The processes come with the CPU sample the backend took in the
+   same pass (a cpu,processes push, or a polled GET_SNAPSHOT), so each
+   process's CPU % is measured against the system CPU time of that sample,
+   never against the dashboard's.
+ - Unless -Dsysmon.refresh.adaptive=false, every interval is stretched by a
+   RefreshPolicy factor while the window is iconified or hidden, the host
+   stays idle or a process refresh costs too much of its interval; a click,
+   key press or scroll, or a burst of activity, brings it back up. Pushes
+   are rescheduled in place (see PushSubscription), so the process table is
+   not sent again in full; polling just reschedules.
+ - It formats data to display in the dashboard charts and labels; applying
+   process deltas and deriving the per-process CPU % / memory columns is
+   delegated to ProcessTableUpdater.
+ - While the flat table is sorted, only its first -Dsysmon.processes.limit
+   rows (default 200, 0 for all) are fetched: the table's sort order goes to
+   the backend as a ProcessQuery, which sorts and cuts the list there. The
+   tree view needs every process and always gets plain deltas.
+ - Optional columns (off by default, switched on from the table's column
+   menu) show each process's disk I/O, context switch and page fault rates.
+   The backend only collects the counters of the columns that are shown
+   (see ProcessField).
+ - The search box filters the flat table as you type, by command name,
+   user:<name> and state:<states>, through the indexes ProcessModel keeps
+   (see ProcessFilter). While it filters, every process is fetched.
+ - The "Tree view" toggle swaps the flat process table for a TreeTableView
+   of the same processes nested by parent, with CPU %, RSS and process
+   count rolled up over each subtree (see ProcessTree).
+ - The collapsible "Process details" pane shows the deep stats of the
+   selected process, fetched on demand and cached for a few seconds (see
+   ProcessDetailPanel).
+ - The per-core CPU shares of the host are drawn by a CoreHeatmap under the
+   CPU chart.
+ - Per-interface network and per-device disk I/O rates fill the tables of
+   the Devices tab (see DeviceTables).
+ - Every system sample is also recorded in a MetricHistory that drives the
+   line charts of the History tab (see HistoryCharts).
+ - Applying each result is timed into SelfStats (fx.processes, fx.dashboard,
+   fx.devices, and fx.queue for the wait for the FX thread); the
+   Diagnostics tab shows those next to the backend's own timings (see
+   DiagnosticsPanel).
+ - With -Dsysmon.record=<dir> everything it applies is also appended to a
+   SnapshotRecorder; with -Dsysmon.replay=<dir> it plays such a recording
+   back through the same update methods instead of talking to the backend
+   (-Dsysmon.replay.speed, -Dsysmon.replay.from=<ISO-8601 instant>).
  - It also handles all user interactions (e.g., the "Kill Selected Process" button).
 */
 
 package com.sysmon.controller;
 
+import com.sysmon.diagnostics.LatencyHistogram;
+import com.sysmon.diagnostics.SelfStats;
+import com.sysmon.history.MetricHistory;
+import com.sysmon.model.ProcessDelta;
+import com.sysmon.model.ProcessField;
 import com.sysmon.model.ProcessInfo;
+import com.sysmon.model.ProcessModel;
+import com.sysmon.model.SystemSnapshot;
 import com.sysmon.model.SystemUpdate;
+import com.sysmon.recording.SnapshotRecorder;
+import com.sysmon.recording.SnapshotReplay;
 import com.sysmon.service.IPCClient;
-import com.sysmon.service.ProcessService;
-import com.sysmon.service.SystemUpdateService;
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
+import com.sysmon.service.MetricScheduler;
+import com.sysmon.service.ProcessDetailCache;
+import com.sysmon.service.ProcessQuery;
+import com.sysmon.service.PushSubscription;
+import com.sysmon.service.RefreshPolicy;
+import com.sysmon.util.Formats;
 import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
 import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import javafx.collections.transformation.SortedList;
 import javafx.fxml.FXML;
+import javafx.scene.chart.LineChart;
 import javafx.scene.chart.PieChart;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
-import javafx.util.Duration;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Pane;
+import javafx.stage.Stage;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.text.DecimalFormat;
-import java.util.HashMap;
-import java.util.Map;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
 
 public class MainController {
   @FXML
@@ -57,6 +127,8 @@ public class MainController {
   @FXML
   private Label lblCpuCores;
   @FXML
+  private Pane coreHeatmapPane;
+  @FXML
   private Label lblTotalProcesses;
   @FXML
   private Label lblCached;
@@ -73,39 +145,147 @@ public class MainController {
   @FXML
   private CheckBox chkAutoRefresh;
   @FXML
+  private Label lblRefreshRate;
+  @FXML
   private TableColumn<ProcessInfo, Double> cpuPercentColumn;
   @FXML
   private TableColumn<ProcessInfo, Double> memPercentColumn;
   @FXML
   private TableColumn<ProcessInfo, String> memRssColumn;
   @FXML
+  private TableColumn<ProcessInfo, Number> readRateColumn;
+  @FXML
+  private TableColumn<ProcessInfo, Number> writeRateColumn;
+  @FXML
+  private TableColumn<ProcessInfo, Number> voluntarySwitchRateColumn;
+  @FXML
+  private TableColumn<ProcessInfo, Number> involuntarySwitchRateColumn;
+  @FXML
+  private TableColumn<ProcessInfo, Number> minorFaultRateColumn;
+  @FXML
+  private TableColumn<ProcessInfo, Number> majorFaultRateColumn;
+  @FXML
   private Button btnEndTask;
+  @FXML
+  private CheckBox chkTreeView;
+  @FXML
+  private TextField txtSearch;
+  @FXML
+  private TitledPane detailPane;
+  @FXML
+  private TreeTableView<ProcessTree.Node> processTreeTable;
+  @FXML
+  private TreeTableColumn<ProcessTree.Node, String> treeCommandColumn;
+  @FXML
+  private TreeTableColumn<ProcessTree.Node, Number> treePidColumn;
+  @FXML
+  private TreeTableColumn<ProcessTree.Node, String> treeUserColumn;
+  @FXML
+  private TreeTableColumn<ProcessTree.Node, String> treeStateColumn;
+  @FXML
+  private TreeTableColumn<ProcessTree.Node, Number> treeCpuPercentColumn;
+  @FXML
+  private TreeTableColumn<ProcessTree.Node, String> treeMemRssColumn;
+  @FXML
+  private TreeTableColumn<ProcessTree.Node, Number> subtreeCpuPercentColumn;
+  @FXML
+  private TreeTableColumn<ProcessTree.Node, Number> subtreeMemRssColumn;
+  @FXML
+  private TreeTableColumn<ProcessTree.Node, Number> subtreeProcessesColumn;
+  @FXML
+  private Tab historyTab;
+  @FXML
+  private ChoiceBox<HistoryCharts.Range> historyRange;
+  @FXML
+  private LineChart<Number, Number> cpuHistoryChart;
+  @FXML
+  private LineChart<Number, Number> memHistoryChart;
+  @FXML
+  private LineChart<Number, Number> swapHistoryChart;
+  @FXML
+  private LineChart<Number, Number> netHistoryChart;
+  @FXML
+  private TableView<Integer> interfaceTable;
+  @FXML
+  private TableView<Integer> diskTable;
+  @FXML
+  private Tab diagnosticsTab;
+  @FXML
+  private TableView<DiagnosticsPanel.Row> diagnosticsTable;
+  @FXML
+  private Button btnExportDiagnostics;
 
-  private final ProcessService processService = new ProcessService();
-  private final SystemUpdateService systemUpdateService = new SystemUpdateService();
   private final IPCClient ipcClient = new IPCClient();
-  private final ObservableList<ProcessInfo> processData = FXCollections.observableArrayList();
-  private Timeline timeline;
+  // -Dsysmon.refresh=poll polls every metric instead of subscribing to
+  // backend pushes.
+  private static final boolean PUSH_REFRESH = !"poll".equals(System.getProperty("sysmon.refresh"));
+  private static final int PROCESS_LIMIT = Integer.getInteger("sysmon.processes.limit", 200);
+  private static final int DETAIL_CACHE_SIZE = 64;
+  private static final Duration DETAIL_TIME_TO_LIVE = Duration.ofSeconds(5);
+  private static final String RECORD_DIRECTORY = System.getProperty("sysmon.record");
+  private static final String REPLAY_DIRECTORY = System.getProperty("sysmon.replay");
+  private static final boolean ADAPTIVE_REFRESH = REPLAY_DIRECTORY == null
+      && Boolean.parseBoolean(System.getProperty("sysmon.refresh.adaptive", "true"));
+  private static final Duration PROCESS_INTERVAL = Duration.ofSeconds(2);
+  private static final LatencyHistogram RENDER_PROCESSES = SelfStats.stage("fx.processes");
+  private static final LatencyHistogram RENDER_DASHBOARD = SelfStats.stage("fx.dashboard");
+  private static final LatencyHistogram RENDER_DEVICES = SelfStats.stage("fx.devices");
+  private static final LatencyHistogram FX_QUEUE = SelfStats.stage("fx.queue");
 
-  private long prevSystemTotalTime = 0;
-  private long systemTimeDelta = 0;
-  private long memTotalKb = 1;
-  private final Map<Integer, Long> prevProcessTimes = new HashMap<>();
+  private final MetricScheduler scheduler = new MetricScheduler(Platform::runLater);
+  private final RefreshPolicy refreshPolicy = new RefreshPolicy(this::refreshFactorChanged);
+  private final List<FxSubscriber<?>> pushSubscribers = new ArrayList<>();
+  private FxSubscriber<SystemSnapshot> processSubscriber;
+  private final ProcessModel processModel = new ProcessModel();
+  private final ProcessTableUpdater processTableUpdater = new ProcessTableUpdater(processModel);
+  private final ProcessTree processTree = new ProcessTree();
+  private final MetricHistory metricHistory = new MetricHistory();
+  private HistoryCharts historyCharts;
+  private CoreHeatmap coreHeatmap;
+  private DeviceTables deviceTables;
+  private ProcessDetailPanel processDetailPanel;
+  private DiagnosticsPanel diagnosticsPanel;
+  private SnapshotRecorder recorder;
+  private SnapshotReplay replay;
+
+  private volatile long processGeneration = 0;
+  // How long the last polled process fetch took (0 with pushes).
+  private volatile long processFetchNanos;
+  private volatile ProcessQuery processQuery;
+  private volatile Set<ProcessField> processFields = Set.of();
   private final DecimalFormat percentFormat = new DecimalFormat("0.00'%'");
   private final DecimalFormat memFormat = new DecimalFormat("#,##0.00");
 
   @FXML
   public void initialize() {
     setupProcessTable();
+    setupProcessTree();
     setupDashboardCharts();
-    setupServices();
+    setupHistoryCharts();
+    deviceTables = new DeviceTables(interfaceTable, diskTable);
+    processDetailPanel = new ProcessDetailPanel(detailPane,
+        new ProcessDetailCache(ipcClient::getProcessDetail, DETAIL_CACHE_SIZE, DETAIL_TIME_TO_LIVE));
+    diagnosticsPanel = new DiagnosticsPanel(diagnosticsTab, diagnosticsTable, btnExportDiagnostics,
+        REPLAY_DIRECTORY == null ? ipcClient::getSelfStats : null);
+    if (REPLAY_DIRECTORY == null && !PUSH_REFRESH) {
+      setupScheduler();
+    }
     setupToolbar();
+    if (ADAPTIVE_REFRESH) {
+      setupAdaptiveRefresh();
+    }
 
-    processTable.getSelectionModel().selectedItemProperty().addListener(
-        (obs, oldSelection, newSelection) -> btnEndTask.setDisable(newSelection == null));
+    processTable.getSelectionModel().selectedItemProperty().addListener(_ -> updateSelection());
+    processTreeTable.getSelectionModel().selectedItemProperty().addListener(_ -> updateSelection());
 
-    startAllServices();
-    timeline.play();
+    if (REPLAY_DIRECTORY != null) {
+      // A recorded process can neither be killed nor inspected.
+      detailPane.setDisable(true);
+      startReplay();
+    } else {
+      openRecorder();
+      startRefresh();
+    }
   }
 
   private void setupProcessTable() {
@@ -119,8 +299,163 @@ public class MainController {
 
     cpuPercentColumn.setCellFactory(col -> createPercentCell());
     memPercentColumn.setCellFactory(col -> createPercentCell());
+    setupCounterColumn(readRateColumn, ProcessField.READ_BYTES, true);
+    setupCounterColumn(writeRateColumn, ProcessField.WRITE_BYTES, true);
+    setupCounterColumn(voluntarySwitchRateColumn, ProcessField.VOLUNTARY_SWITCHES, false);
+    setupCounterColumn(involuntarySwitchRateColumn, ProcessField.INVOLUNTARY_SWITCHES, false);
+    setupCounterColumn(minorFaultRateColumn, ProcessField.MINOR_FAULTS, false);
+    setupCounterColumn(majorFaultRateColumn, ProcessField.MAJOR_FAULTS, false);
     processTable.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_ALL_COLUMNS);
-    processTable.setItems(processData);
+    SortedList<ProcessInfo> sortedProcesses = new SortedList<>(processModel.getRows());
+    sortedProcesses.comparatorProperty().bind(processTable.comparatorProperty());
+    processTable.setItems(sortedProcesses);
+    processTable.comparatorProperty().addListener(_ -> updateProcessQuery());
+    txtSearch.textProperty().addListener((_, _, text) -> {
+      processModel.setFilter(text);
+      updateProcessQuery();
+    });
+  }
+
+  // A rate column of one of ProcessField's counters; showing or hiding it
+  // changes which counters are fetched.
+  private void setupCounterColumn(TableColumn<ProcessInfo, Number> column, int counter, boolean bytes) {
+    column.setCellValueFactory(cell -> cell.getValue().counterRateProperty(counter));
+    column.setCellFactory(_ -> new TableCell<>() {
+      @Override
+      protected void updateItem(Number item, boolean empty) {
+        super.updateItem(item, empty);
+        if (empty || item == null) {
+          setText(null);
+        } else {
+          setText(bytes ? Formats.formatSpeed(item.longValue())
+              : String.format(Locale.ROOT, "%.1f", item.doubleValue()));
+        }
+        setAlignment(javafx.geometry.Pos.CENTER_RIGHT);
+      }
+    });
+    column.visibleProperty().addListener(_ -> updateProcessFields());
+  }
+
+  private void updateProcessFields() {
+    Set<ProcessField> fields = EnumSet.noneOf(ProcessField.class);
+    if (readRateColumn.isVisible() || writeRateColumn.isVisible()) {
+      fields.add(ProcessField.IO);
+    }
+    if (voluntarySwitchRateColumn.isVisible() || involuntarySwitchRateColumn.isVisible()) {
+      fields.add(ProcessField.CONTEXT_SWITCHES);
+    }
+    if (minorFaultRateColumn.isVisible() || majorFaultRateColumn.isVisible()) {
+      fields.add(ProcessField.PAGE_FAULTS);
+    }
+    if (fields.equals(processFields)) {
+      return;
+    }
+    processFields = Set.copyOf(fields);
+    // The rows fetched so far carry none of the new counters.
+    processGeneration = 0;
+    processQuery = currentProcessQuery();
+    resubscribeProcesses();
+  }
+
+  // The query for the flat table's current sort order, or null if every
+  // process has to be fetched.
+  private ProcessQuery currentProcessQuery() {
+    if (chkTreeView.isSelected() || PROCESS_LIMIT <= 0 || processTable.getSortOrder().isEmpty()
+        || !txtSearch.getText().isBlank()) {
+      return null;
+    }
+    TableColumn<ProcessInfo, ?> column = processTable.getSortOrder().get(0);
+    if (isCounterColumn(column)) {
+      // The backend cannot rank by rates it does not compute.
+      return null;
+    }
+    ProcessQuery.SortKey sortKey;
+    if (column == userColumn) {
+      sortKey = ProcessQuery.SortKey.USER;
+    } else if (column == stateColumn) {
+      sortKey = ProcessQuery.SortKey.STATE;
+    } else if (column == commandColumn) {
+      sortKey = ProcessQuery.SortKey.NAME;
+    } else if (column == cpuPercentColumn) {
+      sortKey = ProcessQuery.SortKey.CPU;
+    } else if (column == memPercentColumn || column == memRssColumn) {
+      sortKey = ProcessQuery.SortKey.RSS;
+    } else {
+      sortKey = ProcessQuery.SortKey.PID;
+    }
+    return ProcessQuery.sorted(sortKey, column.getSortType() == TableColumn.SortType.DESCENDING, PROCESS_LIMIT)
+        .withFields(processFields);
+  }
+
+  private boolean isCounterColumn(TableColumn<ProcessInfo, ?> column) {
+    return column == readRateColumn || column == writeRateColumn || column == voluntarySwitchRateColumn
+        || column == involuntarySwitchRateColumn || column == minorFaultRateColumn || column == majorFaultRateColumn;
+  }
+
+  // Polling picks a new query up on its next fetch; a push subscription is
+  // replaced by one for the new query.
+  private void updateProcessQuery() {
+    ProcessQuery query = currentProcessQuery();
+    if (Objects.equals(query, processQuery)) {
+      return;
+    }
+    processQuery = query;
+    resubscribeProcesses();
+  }
+
+  private void resubscribeProcesses() {
+    if (processSubscriber != null) {
+      processSubscriber.cancel();
+      pushSubscribers.remove(processSubscriber);
+      processSubscriber = subscribeProcesses();
+      pushSubscribers.add(processSubscriber);
+    }
+  }
+
+  private void setupProcessTree() {
+    processTableUpdater.setProcessTree(processTree);
+    treeCommandColumn.setCellValueFactory(cell -> cell.getValue().getValue().getInfo().processNameProperty());
+    treePidColumn.setCellValueFactory(cell -> cell.getValue().getValue().getInfo().pidProperty());
+    treeUserColumn.setCellValueFactory(cell -> cell.getValue().getValue().getInfo().userNameProperty());
+    treeStateColumn.setCellValueFactory(cell -> cell.getValue().getValue().getInfo().stateProperty());
+    treeCpuPercentColumn.setCellValueFactory(cell -> cell.getValue().getValue().getInfo().cpuPercentProperty());
+    treeMemRssColumn.setCellValueFactory(cell -> cell.getValue().getValue().getInfo().memRssStringProperty());
+    subtreeCpuPercentColumn.setCellValueFactory(cell -> cell.getValue().getValue().subtreeCpuPercentProperty());
+    subtreeMemRssColumn.setCellValueFactory(cell -> cell.getValue().getValue().subtreeMemRssKbProperty());
+    subtreeProcessesColumn.setCellValueFactory(cell -> cell.getValue().getValue().subtreeProcessesProperty());
+
+    treeCpuPercentColumn.setCellFactory(col -> createTreePercentCell());
+    subtreeCpuPercentColumn.setCellFactory(col -> createTreePercentCell());
+    subtreeMemRssColumn.setCellFactory(col -> new TreeTableCell<>() {
+      @Override
+      protected void updateItem(Number item, boolean empty) {
+        super.updateItem(item, empty);
+        setText(empty || item == null ? null : Formats.formatRss(item.longValue()));
+        setAlignment(javafx.geometry.Pos.CENTER_RIGHT);
+      }
+    });
+    processTreeTable.setColumnResizePolicy(TreeTableView.CONSTRAINED_RESIZE_POLICY_ALL_COLUMNS);
+    processTreeTable.setRoot(processTree.getRoot());
+    chkTreeView.setOnAction(_ -> {
+      boolean tree = chkTreeView.isSelected();
+      processTable.setVisible(!tree);
+      processTreeTable.setVisible(tree);
+      // The tree always shows every process.
+      txtSearch.setDisable(tree);
+      updateSelection();
+      updateProcessQuery();
+    });
+  }
+
+  private TreeTableCell<ProcessTree.Node, Number> createTreePercentCell() {
+    return new TreeTableCell<>() {
+      @Override
+      protected void updateItem(Number item, boolean empty) {
+        super.updateItem(item, empty);
+        setText(empty || item == null ? null : percentFormat.format(item.doubleValue()));
+        setAlignment(javafx.geometry.Pos.CENTER_RIGHT);
+      }
+    };
   }
 
   private TableCell<ProcessInfo, Double> createPercentCell() {
@@ -144,6 +479,7 @@ public class MainController {
     PieChart.Data cpuIdleSlice = new PieChart.Data("Idle", 100);
     cpuChart.setData(FXCollections.observableArrayList(cpuActiveSlice, cpuIdleSlice));
     cpuChart.setTitle("CPU");
+    coreHeatmap = new CoreHeatmap(coreHeatmapPane);
     PieChart.Data memUsedSlice = new PieChart.Data("Used", 0);
     PieChart.Data memFreeSlice = new PieChart.Data("Free", 0);
     PieChart.Data memCachedSlice = new PieChart.Data("Cached", 0);
@@ -151,101 +487,300 @@ public class MainController {
     memChart.setTitle("Memory");
   }
 
-  private void setupServices() {
-    processService.setOnSucceeded(_ -> {
-      ObservableList<ProcessInfo> newData = processService.getValue();
-      if (newData != null) {
-        Platform.runLater(() -> updateProcessTable(newData));
+  private void setupHistoryCharts() {
+    historyCharts = new HistoryCharts(metricHistory, historyRange, cpuHistoryChart, memHistoryChart,
+        swapHistoryChart, netHistoryChart);
+    historyTab.selectedProperty().addListener((_, _, selected) -> {
+      if (selected) {
+        historyCharts.refresh();
       }
     });
-    systemUpdateService.setOnSucceeded(_ -> {
-      SystemUpdate stats = systemUpdateService.getValue();
-      if (stats != null) {
-        Platform.runLater(() -> updateDashboard(stats));
+  }
+
+  private void refreshHistoryCharts() {
+    if (historyTab.isSelected()) {
+      historyCharts.refreshIfDue();
+    }
+  }
+
+  // Each metric refreshes at its own rate; see MetricScheduler for the
+  // -Dsysmon.interval.<name> overrides. The processes are fetched as a
+  // snapshot at their own rate, next to the cheaper collectors.
+  private void setupScheduler() {
+    scheduler.register("cpu", Duration.ofMillis(500), ipcClient::getCpuStats, this::updateCpu);
+    scheduler.register("cores", Duration.ofSeconds(1), ipcClient::getCoreStats, this::updateCores);
+    scheduler.register("net", Duration.ofMillis(500), ipcClient::getNetStats, this::updateNetwork);
+    scheduler.register("mem", Duration.ofSeconds(1), ipcClient::getMemStats, this::updateMemory);
+    scheduler.register("processes", PROCESS_INTERVAL, this::fetchSnapshot, this::updateSnapshot);
+    scheduler.register("disk", Duration.ofSeconds(30), ipcClient::getDiskStats, this::updateDisk);
+    scheduler.register("interfaces", Duration.ofSeconds(1), ipcClient::getInterfaceStats, this::updateInterfaces);
+    scheduler.register("diskio", Duration.ofSeconds(1), ipcClient::getDiskIoStats, this::updateDiskIo);
+  }
+
+  // Falls back to deltas of every process if the backend cannot run the
+  // query.
+  private SystemSnapshot fetchSnapshot() {
+    long start = System.nanoTime();
+    ProcessQuery query = processQuery;
+    SystemSnapshot snapshot = query != null ? ipcClient.getSnapshot(query) : null;
+    if (snapshot == null) {
+      snapshot = ipcClient.getSnapshot(processGeneration, processFields);
+    }
+    processFetchNanos = System.nanoTime() - start;
+    return snapshot;
+  }
+
+  // The dashboard keeps its own collectors and pushes; only the snapshot's
+  // core count (when it has one) and system CPU time go with the
+  // processes, so the process table divides by the host time of the same
+  // pass rather than the latest CPU sample.
+  private void updateSnapshot(SystemSnapshot snapshot) {
+    SystemUpdate stats = snapshot.system();
+    processTableUpdater.setCores(stats.getCoreCount());
+    processTableUpdater.setSystemTotalTime(stats.getSystemTotalTime());
+    updateProcessTable(snapshot.processes());
+  }
+
+  // Slows the refresh down while the window is iconified or not showing,
+  // and lets any click, key press or scroll in it speed it back up.
+  private void setupAdaptiveRefresh() {
+    processTable.sceneProperty().addListener((_, _, scene) -> {
+      if (scene == null) {
+        return;
       }
+      scene.addEventFilter(MouseEvent.MOUSE_PRESSED, _ -> refreshPolicy.userActive());
+      scene.addEventFilter(KeyEvent.KEY_PRESSED, _ -> refreshPolicy.userActive());
+      scene.addEventFilter(ScrollEvent.SCROLL, _ -> refreshPolicy.userActive());
+      scene.windowProperty().addListener((_, _, window) -> {
+        if (window instanceof Stage stage) {
+          InvalidationListener visibility = _ -> refreshPolicy.setHidden(stage.isIconified() || !stage.isShowing());
+          stage.iconifiedProperty().addListener(visibility);
+          stage.showingProperty().addListener(visibility);
+        }
+      });
     });
-    processService.setOnFailed(_ -> processService.getException().printStackTrace());
-    systemUpdateService.setOnFailed(_ -> systemUpdateService.getException().printStackTrace());
+  }
+
+  private void refreshFactorChanged(int factor) {
+    String reason = refreshPolicy.reason();
+    lblRefreshRate.setText(reason == null ? "" : "(" + factor + "x slower: " + reason + ")");
+    if (!PUSH_REFRESH) {
+      scheduler.setIntervalScale(factor);
+    } else {
+      for (FxSubscriber<?> subscriber : pushSubscribers) {
+        subscriber.setIntervalScale(factor);
+      }
+    }
+  }
+
+  // An interval stretched by the adaptive refresh factor.
+  private Duration scaled(Duration interval) {
+    return interval.multipliedBy(refreshPolicy.factor());
+  }
+
+  private FxSubscriber<SystemSnapshot> subscribeProcesses() {
+    Duration interval = MetricScheduler.interval("processes", PROCESS_INTERVAL);
+    ProcessQuery query = processQuery;
+    return FxSubscriber.subscribe(query != null ? ipcClient.subscribeProcessSnapshots(scaled(interval), query)
+        : ipcClient.subscribeProcessSnapshots(scaled(interval), processFields), interval, this::updateSnapshot);
+  }
+
+  // Push mode: the backend streams every metric on the same intervals the
+  // scheduler would poll them at (see MetricScheduler.interval).
+  private void subscribeAll() {
+    Duration cpuInterval = MetricScheduler.interval("cpu", Duration.ofMillis(500));
+    Duration coreInterval = MetricScheduler.interval("cores", Duration.ofSeconds(1));
+    Duration memInterval = MetricScheduler.interval("mem", Duration.ofSeconds(1));
+    Duration diskInterval = MetricScheduler.interval("disk", Duration.ofSeconds(30));
+    Duration interfaceInterval = MetricScheduler.interval("interfaces", Duration.ofSeconds(1));
+    Duration diskIoInterval = MetricScheduler.interval("diskio", Duration.ofSeconds(1));
+    pushSubscribers.add(FxSubscriber.subscribe(ipcClient.subscribeSystemUpdates("cpu,net", scaled(cpuInterval)),
+        cpuInterval, stats -> {
+          updateCpu(stats);
+          updateNetwork(stats);
+        }));
+    pushSubscribers.add(FxSubscriber.subscribe(ipcClient.subscribeSystemUpdates("cores", scaled(coreInterval)),
+        coreInterval, this::updateCores));
+    pushSubscribers.add(FxSubscriber.subscribe(ipcClient.subscribeSystemUpdates("mem", scaled(memInterval)),
+        memInterval, this::updateMemory));
+    pushSubscribers.add(FxSubscriber.subscribe(ipcClient.subscribeSystemUpdates("disk", scaled(diskInterval)),
+        diskInterval, this::updateDisk));
+    processSubscriber = subscribeProcesses();
+    pushSubscribers.add(processSubscriber);
+    pushSubscribers.add(FxSubscriber.subscribe(
+        ipcClient.subscribeSystemUpdates("interfaces", scaled(interfaceInterval)), interfaceInterval,
+        this::updateInterfaces));
+    pushSubscribers.add(FxSubscriber.subscribe(ipcClient.subscribeSystemUpdates("diskio", scaled(diskIoInterval)),
+        diskIoInterval, this::updateDiskIo));
+  }
+
+  private void unsubscribeAll() {
+    for (FxSubscriber<?> subscriber : pushSubscribers) {
+      subscriber.cancel();
+    }
+    pushSubscribers.clear();
+    processSubscriber = null;
+  }
+
+  private void startRefresh() {
+    if (PUSH_REFRESH) {
+      subscribeAll();
+    } else {
+      scheduler.start();
+    }
+  }
+
+  private void openRecorder() {
+    if (RECORD_DIRECTORY == null) {
+      return;
+    }
+    try {
+      recorder = new SnapshotRecorder(Path.of(RECORD_DIRECTORY));
+    } catch (IOException e) {
+      System.err.println("Failed to start recording to " + RECORD_DIRECTORY + ": " + e.getMessage());
+      e.printStackTrace();
+    }
+  }
+
+  private void startReplay() {
+    double speed = Double.parseDouble(System.getProperty("sysmon.replay.speed", "1"));
+    String from = System.getProperty("sysmon.replay.from");
+    replay = new SnapshotReplay(Path.of(REPLAY_DIRECTORY), speed, from != null ? Instant.parse(from) : null,
+        Platform::runLater, new SnapshotReplay.Listener() {
+          @Override
+          public void onCpu(SystemUpdate stats) {
+            // A recording keeps no CPU sample paired with its processes, so
+            // the last one recorded before them is the closest there is.
+            processTableUpdater.setSystemTotalTime(stats.getSystemTotalTime());
+            updateCpu(stats);
+          }
 
-    timeline = new Timeline(
-        new KeyFrame(
-            Duration.seconds(3),
-            _ -> {
-              if (chkAutoRefresh.isSelected()) {
-                startAllServices();
-              }
-            }));
-    timeline.setCycleCount(Timeline.INDEFINITE);
+          @Override
+          public void onCores(SystemUpdate stats) {
+            updateCores(stats);
+          }
+
+          @Override
+          public void onMemory(SystemUpdate stats) {
+            updateMemory(stats);
+          }
+
+          @Override
+          public void onNetwork(SystemUpdate stats) {
+            updateNetwork(stats);
+          }
+
+          @Override
+          public void onDisk(SystemUpdate stats) {
+            updateDisk(stats);
+          }
+
+          @Override
+          public void onInterfaces(SystemUpdate stats) {
+            updateInterfaces(stats);
+          }
+
+          @Override
+          public void onDiskIo(SystemUpdate stats) {
+            updateDiskIo(stats);
+          }
+
+          @Override
+          public void onProcesses(ProcessDelta delta) {
+            updateProcessTable(delta);
+          }
+
+          @Override
+          public void onFinished() {
+            System.out.println("Replay of " + REPLAY_DIRECTORY + " finished.");
+          }
+        });
+    replay.start();
   }
 
   private void setupToolbar() {
     chkAutoRefresh.setOnAction(_ -> {
       if (chkAutoRefresh.isSelected()) {
-        timeline.play();
+        if (replay != null) {
+          replay.resume();
+        } else if (PUSH_REFRESH) {
+          subscribeAll();
+        } else {
+          scheduler.resume();
+        }
       } else {
-        timeline.pause();
+        if (replay != null) {
+          replay.pause();
+        } else if (PUSH_REFRESH) {
+          unsubscribeAll();
+        } else {
+          scheduler.pause();
+        }
       }
     });
     btnEndTask.setOnAction(_ -> handleEndTask());
   }
 
-  private void startAllServices() {
-    if (!processService.isRunning()) {
-      processService.restart();
+  private void updateProcessTable(ProcessDelta delta) {
+    long start = System.nanoTime();
+    if (recorder != null) {
+      recorder.recordProcesses(delta);
     }
-    if (!systemUpdateService.isRunning()) {
-      systemUpdateService.restart();
-    }
-  }
-
-  private void updateProcessTable(ObservableList<ProcessInfo> newData) {
-    ProcessInfo selectedItem = processTable.getSelectionModel().getSelectedItem();
-    int cores = Runtime.getRuntime().availableProcessors();
-    Map<Integer, Long> newProcessTimes = new HashMap<>();
-    for (ProcessInfo process : newData) {
-      int pid = process.getPid();
-      long currentProcessTime = process.getTotalTime();
-      long memRssKb = process.getMemRssKb();
-      long prevProcessTime = prevProcessTimes.getOrDefault(pid, 0L);
-      long processTimeDelta = currentProcessTime - prevProcessTime;
-      double cpuPercent = 0.0;
-      if (systemTimeDelta > 0) {
-        cpuPercent = ((double) processTimeDelta / (double) systemTimeDelta) * 100.0 * cores;
+    // Advanced only once the delta is applied: if a newer fetch overtakes
+    // this one it still covers everything since the model's generation.
+    processGeneration = delta.getGeneration();
+    processTableUpdater.apply(delta);
+    processDetailPanel.processesChanged(delta);
+    // A query result counts every process that matched, not just its rows.
+    lblTotalProcesses.setText(String.valueOf(delta.isFull() ? delta.getMatchedCount() : processModel.size()));
+    RENDER_PROCESSES.recordSince(start);
+    if (ADAPTIVE_REFRESH) {
+      // A full snapshot or query result says nothing about what changed.
+      if (!delta.isFull()) {
+        refreshPolicy.processesChanged(delta.size() + delta.getRemovedCount(), processModel.size());
       }
-      process.setCpuPercent(cpuPercent);
-      double memPercent = (memTotalKb > 0) ? ((double) memRssKb / (double) this.memTotalKb) * 100.0 : 0.0;
-      process.setMemPercent(memPercent);
-      process.setMemRssString(formatRss(memRssKb));
-      newProcessTimes.put(pid, currentProcessTime);
-    }
-    processData.setAll(newData);
-    if (selectedItem != null) {
-      for (ProcessInfo process : processData) {
-        if (process.getPid() == selectedItem.getPid()) {
-          processTable.getSelectionModel().select(process);
-          break;
-        }
-      }
-    } else {
-      processTable.getSelectionModel().clearSelection();
+      refreshPolicy.refreshCost(processFetchNanos + System.nanoTime() - start,
+          MetricScheduler.interval("processes", PROCESS_INTERVAL));
     }
-    lblTotalProcesses.setText(String.valueOf(newData.size()));
-    prevProcessTimes.clear();
-    prevProcessTimes.putAll(newProcessTimes);
   }
 
-  private void updateDashboard(SystemUpdate stats) {
-    long currentSystemTime = stats.getSystemTotalTime();
-    if (prevSystemTotalTime > 0) {
-      this.systemTimeDelta = currentSystemTime - prevSystemTotalTime;
+  private void updateCpu(SystemUpdate stats) {
+    long start = System.nanoTime();
+    metricHistory.recordCpu(stats.getSampleTime(), stats);
+    if (recorder != null) {
+      recorder.recordCpu(stats);
     }
-    this.prevSystemTotalTime = currentSystemTime;
-    this.memTotalKb = stats.getMemTotal();
+    refreshHistoryCharts();
     double cpuUsage = stats.getCpuUsage();
     cpuChart.getData().get(0).setPieValue(cpuUsage);
     cpuChart.getData().get(1).setPieValue(100.0 - cpuUsage);
     lblCpuUsage.setText(String.format("%.1f%%", cpuUsage));
-    lblCpuCores.setText(String.valueOf(Runtime.getRuntime().availableProcessors()));
+    RENDER_DASHBOARD.recordSince(start);
+    if (ADAPTIVE_REFRESH) {
+      refreshPolicy.sampleCpu(cpuUsage);
+    }
+    diagnosticsPanel.refreshIfDue();
+  }
+
+  private void updateCores(SystemUpdate stats) {
+    long start = System.nanoTime();
+    if (recorder != null) {
+      recorder.recordCores(stats);
+    }
+    // The monitored host's cores, not this JVM's.
+    processTableUpdater.setCores(stats.getCoreCount());
+    lblCpuCores.setText(String.valueOf(stats.getCoreCount()));
+    coreHeatmap.update(stats);
+    RENDER_DASHBOARD.recordSince(start);
+  }
+
+  private void updateMemory(SystemUpdate stats) {
+    long start = System.nanoTime();
+    metricHistory.recordMemory(stats.getSampleTime(), stats);
+    if (recorder != null) {
+      recorder.recordMemory(stats);
+    }
+    processTableUpdater.setMemTotalKb(stats.getMemTotal());
     double gibFactor = 1024.0 * 1024.0;
     double memTotalGiB = stats.getMemTotal() / gibFactor;
     double memAvailGiB = stats.getMemAvailable() / gibFactor;
@@ -263,36 +798,65 @@ public class MainController {
     lblBuffers.setText(memFormat.format(stats.getBuffers() / gibFactor) + " GiB");
     lblSwapTotal.setText(memFormat.format(stats.getSwapTotal() / gibFactor) + " GiB");
     lblSwapFree.setText(memFormat.format(stats.getSwapFree() / gibFactor) + " GiB");
-    lblNetDown.setText(formatSpeed(stats.getNetDownSpeed()));
-    lblNetUp.setText(formatSpeed(stats.getNetUpSpeed()));
+    RENDER_DASHBOARD.recordSince(start);
   }
 
-  private String formatSpeed(long bytesPerSecond) {
-    if (bytesPerSecond < 1024) {
-      return bytesPerSecond + " B/s";
+  private void updateNetwork(SystemUpdate stats) {
+    long start = System.nanoTime();
+    metricHistory.recordNetwork(stats.getSampleTime(), stats);
+    if (recorder != null) {
+      recorder.recordNetwork(stats);
     }
-    double kib = bytesPerSecond / 1024.0;
-    if (kib < 1024) {
-      return String.format("%.1f KiB/s", kib);
+    lblNetDown.setText(Formats.formatSpeed(stats.getNetDownSpeed()));
+    lblNetUp.setText(Formats.formatSpeed(stats.getNetUpSpeed()));
+    RENDER_DASHBOARD.recordSince(start);
+  }
+
+  private void updateDisk(SystemUpdate stats) {
+    metricHistory.recordDisk(stats.getSampleTime(), stats);
+    if (recorder != null) {
+      recorder.recordDisk(stats);
     }
-    double mib = kib / 1024.0;
-    return String.format("%.1f MiB/s", mib);
   }
 
-  private String formatRss(long rssKb) {
-    if (rssKb < 1024) {
-      return rssKb + " KB";
+  private void updateInterfaces(SystemUpdate stats) {
+    long start = System.nanoTime();
+    if (recorder != null) {
+      recorder.recordInterfaces(stats);
     }
-    double mib = rssKb / 1024.0;
-    if (mib < 1024) {
-      return String.format("%.2f MB", mib);
+    deviceTables.updateInterfaces(stats);
+    RENDER_DEVICES.recordSince(start);
+  }
+
+  private void updateDiskIo(SystemUpdate stats) {
+    long start = System.nanoTime();
+    if (recorder != null) {
+      recorder.recordDiskIo(stats);
     }
-    double gib = mib / 1024.0;
-    return String.format("%.2f GB", gib);
+    deviceTables.updateDisks(stats);
+    RENDER_DEVICES.recordSince(start);
+  }
+
+  // The row selected in whichever view (flat or tree) is showing.
+  private ProcessInfo getSelectedProcess() {
+    if (chkTreeView.isSelected()) {
+      TreeItem<ProcessTree.Node> item = processTreeTable.getSelectionModel().getSelectedItem();
+      return item != null ? item.getValue().getInfo() : null;
+    }
+    return processTable.getSelectionModel().getSelectedItem();
+  }
+
+  private void updateSelection() {
+    updateEndTaskButton();
+    processDetailPanel.select(getSelectedProcess());
+  }
+
+  private void updateEndTaskButton() {
+    btnEndTask.setDisable(getSelectedProcess() == null || replay != null);
   }
 
   private void handleEndTask() {
-    ProcessInfo selectedProcess = processTable.getSelectionModel().getSelectedItem();
+    ProcessInfo selectedProcess = getSelectedProcess();
     if (selectedProcess == null) {
       Alert alert = new Alert(Alert.AlertType.WARNING);
       alert.setTitle("No Process Selected");
@@ -319,12 +883,76 @@ public class MainController {
                 : "Failed to terminate process " + selectedProcess.getPid() + ".";
             resultAlert.setContentText(message);
             resultAlert.showAndWait();
-            if (success) {
-              startAllServices();
+            if (success && !PUSH_REFRESH) {
+              scheduler.runNow();
             }
           });
         }).start();
       }
     });
   }
+
+  // Takes one pushed item at a time and applies it on the FX thread before
+  // asking for the next, so the publisher's buffer absorbs any backlog.
+  // `interval` is the push interval before the adaptive refresh factor.
+  private static final class FxSubscriber<T> implements Flow.Subscriber<T> {
+    private final Duration interval;
+    private final Consumer<T> apply;
+    private Flow.Subscription subscription;
+    private volatile boolean cancelled;
+
+    private FxSubscriber(Duration interval, Consumer<T> apply) {
+      this.interval = interval;
+      this.apply = apply;
+    }
+
+    static <T> FxSubscriber<T> subscribe(Flow.Publisher<T> publisher, Duration interval, Consumer<T> apply) {
+      FxSubscriber<T> subscriber = new FxSubscriber<>(interval, apply);
+      publisher.subscribe(subscriber);
+      return subscriber;
+    }
+
+    @Override
+    public synchronized void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+      subscription.request(1);
+    }
+
+    @Override
+    public void onNext(T item) {
+      long ready = System.nanoTime();
+      Platform.runLater(() -> {
+        FX_QUEUE.recordSince(ready);
+        // An item already queued when the subscription was replaced would
+        // undo its successor's first snapshot.
+        if (!cancelled) {
+          apply.accept(item);
+          subscription.request(1);
+        }
+      });
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      System.err.println("Push subscription failed: " + throwable.getMessage());
+      throwable.printStackTrace();
+    }
+
+    @Override
+    public void onComplete() {
+    }
+
+    synchronized void cancel() {
+      cancelled = true;
+      subscription.cancel();
+    }
+
+    // Reschedules the backend's subscription in place, so a process
+    // subscription keeps its generation instead of resending the table.
+    synchronized void setIntervalScale(int factor) {
+      if (!cancelled && subscription instanceof PushSubscription push) {
+        push.setInterval(interval.multipliedBy(factor));
+      }
+    }
+  }
 }
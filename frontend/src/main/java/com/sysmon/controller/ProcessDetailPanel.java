@@ -0,0 +1,168 @@
+/*
+ - PROCESS DETAIL PANEL:
+ - Fills the "Process details" pane under the process table with the deep
+   stats of the selected process: command line, cgroup, threads, open
+   files, PSS/USS/swap, I/O totals and resource limits.
+ - Nothing is fetched while the pane is collapsed or no row is selected,
+   and then only for the selected process, through a ProcessDetailCache so
+   refresh ticks re-read its stats at most once per time-to-live.
+ - Fetches run off the FX thread, one at a time; a selection change or tick
+   during a fetch is caught up with once it returns, and a result is only
+   shown if its process is still the selected one.
+*/
+
+package com.sysmon.controller;
+
+import com.sysmon.model.ProcessDelta;
+import com.sysmon.model.ProcessDetail;
+import com.sysmon.model.ProcessInfo;
+import com.sysmon.service.ProcessDetailCache;
+import com.sysmon.util.Formats;
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.scene.control.Label;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.control.TitledPane;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+
+class ProcessDetailPanel {
+  private static final String[] STAT_NAMES = {"Command line:", "Cgroup:", "Threads:", "Open files:",
+      "PSS:", "USS:", "Swap:", "Disk read:", "Disk written:", "Read (all):", "Written (all):"};
+  private static final String UNAVAILABLE = "-";
+
+  private final TitledPane pane;
+  private final ProcessDetailCache cache;
+  private final Label[] statValues = new Label[STAT_NAMES.length];
+  private final GridPane limitGrid = new GridPane();
+  private ProcessInfo selected;
+  private boolean fetching;
+  private boolean stale;
+
+  ProcessDetailPanel(TitledPane pane, ProcessDetailCache cache) {
+    this.pane = pane;
+    this.cache = cache;
+    GridPane statGrid = new GridPane();
+    statGrid.setHgap(10);
+    statGrid.setVgap(4);
+    for (int i = 0; i < STAT_NAMES.length; i++) {
+      statValues[i] = new Label(UNAVAILABLE);
+      statValues[i].getStyleClass().add("info-label-value");
+      statGrid.addRow(i, keyLabel(STAT_NAMES[i]), statValues[i]);
+    }
+    statValues[0].setWrapText(true);
+    limitGrid.setHgap(10);
+    limitGrid.setVgap(4);
+    ScrollPane limitScroll = new ScrollPane(limitGrid);
+    limitScroll.setFitToWidth(true);
+    HBox.setHgrow(statGrid, Priority.ALWAYS);
+    HBox content = new HBox(20, statGrid, limitScroll);
+    content.setPadding(new Insets(8));
+    content.setPrefHeight(240);
+    pane.setContent(content);
+    pane.expandedProperty().addListener((_, _, expanded) -> {
+      if (expanded) {
+        fetch();
+      }
+    });
+  }
+
+  // Shows the process selected in the table, or nothing for null.
+  void select(ProcessInfo process) {
+    selected = process;
+    if (process == null) {
+      pane.setText("Process details");
+      show(null);
+      return;
+    }
+    pane.setText("Process details: " + process.getPid() + " (" + process.getProcessName() + ")");
+    fetch();
+  }
+
+  // Drops the cached detail of every process the delta removed and
+  // re-reads the selected one's if its entry has expired.
+  void processesChanged(ProcessDelta delta) {
+    for (int i = 0; i < delta.getRemovedCount(); i++) {
+      cache.invalidate(delta.getRemovedPid(i));
+    }
+    fetch();
+  }
+
+  private void fetch() {
+    if (selected == null || !pane.isExpanded()) {
+      return;
+    }
+    if (fetching) {
+      stale = true;
+      return;
+    }
+    fetching = true;
+    stale = false;
+    int pid = selected.getPid();
+    Thread.ofVirtual().name("sysmon-process-detail").start(() -> {
+      ProcessDetail detail = cache.get(pid);
+      Platform.runLater(() -> {
+        fetching = false;
+        if (selected != null && selected.getPid() == pid) {
+          show(detail);
+        }
+        if (stale) {
+          fetch();
+        }
+      });
+    });
+  }
+
+  private void show(ProcessDetail detail) {
+    limitGrid.getChildren().clear();
+    if (detail == null) {
+      for (Label value : statValues) {
+        value.setText(UNAVAILABLE);
+      }
+      return;
+    }
+    statValues[0].setText(text(detail.commandLine()));
+    statValues[1].setText(text(detail.cgroup()));
+    statValues[2].setText(count(detail.threads()));
+    statValues[3].setText(count(detail.openFiles()));
+    statValues[4].setText(kilobytes(detail.pssKb()));
+    statValues[5].setText(kilobytes(detail.ussKb()));
+    statValues[6].setText(kilobytes(detail.swapKb()));
+    statValues[7].setText(bytes(detail.readBytes()));
+    statValues[8].setText(bytes(detail.writeBytes()));
+    statValues[9].setText(bytes(detail.readChars()));
+    statValues[10].setText(bytes(detail.writeChars()));
+    limitGrid.addRow(0, keyLabel("Limit"), keyLabel("Soft"), keyLabel("Hard"));
+    int row = 1;
+    for (ProcessDetail.Limit limit : detail.limits()) {
+      limitGrid.addRow(row++, new Label(limit.name()), new Label(limit(limit.soft())), new Label(limit(limit.hard())));
+    }
+  }
+
+  private static Label keyLabel(String text) {
+    Label label = new Label(text);
+    label.getStyleClass().add("info-label-key");
+    return label;
+  }
+
+  private static String text(String value) {
+    return value == null || value.isEmpty() ? UNAVAILABLE : value;
+  }
+
+  private static String count(long value) {
+    return value < 0 ? UNAVAILABLE : String.valueOf(value);
+  }
+
+  private static String kilobytes(long kb) {
+    return kb < 0 ? UNAVAILABLE : Formats.formatRss(kb);
+  }
+
+  private static String bytes(long bytes) {
+    return bytes < 0 ? UNAVAILABLE : Formats.formatRss(bytes / 1024);
+  }
+
+  private static String limit(long value) {
+    return value < 0 ? "unlimited" : String.valueOf(value);
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ - PROCESS TABLE UPDATER:
+ - Applies a process delta to the ProcessModel and derives the columns the
+   table shows: per-process CPU % (from the change in each process's CPU time
+   against the change in total system time) and memory % / formatted RSS.
+ - Split out of MainController so the per-refresh work can be measured (and
+   exercised) without a running UI; the controller only feeds it the latest
+   system totals.
+ - Deltas that carry optional counters (see ProcessField) get per-second
+   rates for them the same way, from the change in each counter over the
+   wall time the system CPU time says has passed.
+ - Query results (see ProcessQuery) come with the CPU % the backend measured,
+   which is used as is: a row that just entered the top rows has no earlier
+   CPU time on this side to compare against.
+ - With a ProcessTree set, the tree and its subtree rollups are updated
+   from the same changes.
+ - It sticks to primitive maps and reused lists and allocates nothing once
+   the tables have grown. Not thread-safe; it runs on the FX thread.
+*/
+
+package com.sysmon.controller;
+
+import com.sysmon.model.ProcessDelta;
+import com.sysmon.model.ProcessField;
+import com.sysmon.model.ProcessInfo;
+import com.sysmon.model.ProcessModel;
+import com.sysmon.util.Formats;
+import com.sysmon.util.IntLongMap;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ProcessTableUpdater {
+  // /proc/stat counts CPU time in USER_HZ, which is 100 on every Linux.
+  private static final double TICKS_PER_SECOND = 100.0;
+  private final ProcessModel processModel;
+  private int cores;
+  private List<ProcessInfo> busyProcesses = new ArrayList<>();
+  private List<ProcessInfo> nextBusyProcesses = new ArrayList<>();
+  private final IntLongMap prevProcessTimes = new IntLongMap();
+  private final IntLongMap nextProcessTimes = new IntLongMap();
+  private final IntLongMap[] prevCounters = new IntLongMap[ProcessField.COUNTER_COUNT];
+  private final IntLongMap[] nextCounters = new IntLongMap[ProcessField.COUNTER_COUNT];
+  private ProcessTree processTree;
+  private long systemTotalTime = 0;
+  private long processSystemTotalTime = 0;
+  private long memTotalKb = 1;
+
+  // Until setCores() is called, assumes the host has as many cores as this
+  // JVM sees.
+  public ProcessTableUpdater(ProcessModel processModel) {
+    this(processModel, Runtime.getRuntime().availableProcessors());
+  }
+
+  public ProcessTableUpdater(ProcessModel processModel, int cores) {
+    this.processModel = processModel;
+    this.cores = cores;
+    for (int counter = 0; counter < ProcessField.COUNTER_COUNT; counter++) {
+      prevCounters[counter] = new IntLongMap();
+      nextCounters[counter] = new IntLongMap();
+    }
+  }
+
+  // The total CPU time of the CPU sample taken with the next processes.
+  public void setSystemTotalTime(long systemTotalTime) {
+    this.systemTotalTime = systemTotalTime;
+  }
+
+  // The core count of the monitored host, from the latest core sample.
+  public void setCores(int cores) {
+    if (cores > 0) {
+      this.cores = cores;
+    }
+  }
+
+  public void setMemTotalKb(long memTotalKb) {
+    this.memTotalKb = memTotalKb;
+  }
+
+  // Keeps `processTree` in step with the model from the next apply() on;
+  // it must start out empty, like the model.
+  public void setProcessTree(ProcessTree processTree) {
+    this.processTree = processTree;
+  }
+
+  public void apply(ProcessDelta delta) {
+    // The CPU collector runs on its own schedule, so the system time that
+    // passed is measured between process refreshes rather than CPU samples.
+    long systemTimeDelta = processSystemTotalTime > 0 ? systemTotalTime - processSystemTotalTime : 0L;
+    processSystemTotalTime = systemTotalTime;
+    List<ProcessInfo> changed = processModel.apply(delta);
+    // A full snapshot lists every live pid: its times go into the scratch map,
+    // which then replaces the live one and drops the exited pids with it.
+    IntLongMap processTimes = prevProcessTimes;
+    IntLongMap[] counters = prevCounters;
+    if (delta.isFull()) {
+      processTimes = nextProcessTimes;
+      counters = nextCounters;
+    } else {
+      for (int i = 0; i < delta.getRemovedCount(); i++) {
+        prevProcessTimes.remove(delta.getRemovedPid(i));
+        for (IntLongMap counter : prevCounters) {
+          counter.remove(delta.getRemovedPid(i));
+        }
+      }
+    }
+    if (!delta.hasCounters()) {
+      // Counters that stop coming would give a bogus rate when they return.
+      for (IntLongMap counter : prevCounters) {
+        counter.clear();
+      }
+    }
+    double elapsedSeconds = systemTimeDelta / (TICKS_PER_SECOND * cores);
+    // Rows missing from a delta did not use any CPU time (nor change any
+    // counter) since the last one.
+    for (int i = 0; i < busyProcesses.size(); i++) {
+      ProcessInfo process = busyProcesses.get(i);
+      process.setCpuPercent(0.0);
+      for (int counter = 0; counter < ProcessField.COUNTER_COUNT; counter++) {
+        process.setCounterRate(counter, 0.0);
+      }
+    }
+    List<ProcessInfo> busy = nextBusyProcesses;
+    busy.clear();
+    for (int i = 0; i < changed.size(); i++) {
+      ProcessInfo process = changed.get(i);
+      int pid = process.getPid();
+      long currentProcessTime = process.getTotalTime();
+      long memRssKb = process.getMemRssKb();
+      long prevProcessTime = prevProcessTimes.get(pid, currentProcessTime);
+      processTimes.put(pid, currentProcessTime, 0L);
+      long processTimeDelta = currentProcessTime - prevProcessTime;
+      double cpuPercent = 0.0;
+      if (delta.hasCpuPercents()) {
+        cpuPercent = delta.getCpuPercent(i);
+      } else if (systemTimeDelta > 0) {
+        cpuPercent = ((double) processTimeDelta / (double) systemTimeDelta) * 100.0 * cores;
+      }
+      process.setCpuPercent(cpuPercent);
+      boolean counting = delta.hasCounters() && applyCounterRates(delta, i, process, counters, elapsedSeconds);
+      if (cpuPercent > 0 || counting) {
+        busy.add(process);
+      }
+      double memPercent = (memTotalKb > 0) ? ((double) memRssKb / (double) this.memTotalKb) * 100.0 : 0.0;
+      process.setMemPercent(memPercent);
+      process.setMemRssString(Formats.formatRss(memRssKb));
+    }
+    if (delta.isFull()) {
+      prevProcessTimes.swap(nextProcessTimes);
+      nextProcessTimes.clear();
+      for (int counter = 0; counter < ProcessField.COUNTER_COUNT; counter++) {
+        prevCounters[counter].swap(nextCounters[counter]);
+        nextCounters[counter].clear();
+      }
+    }
+    processModel.rowsUpdated(busyProcesses);
+    if (processTree != null) {
+      processTree.apply(processModel, changed, busyProcesses);
+    }
+    nextBusyProcesses = busyProcesses;
+    busyProcesses = busy;
+  }
+
+  // Sets the rates of the process at `index` of the delta and records its
+  // counters in `counters`. Returns true if any rate is above zero.
+  private boolean applyCounterRates(ProcessDelta delta, int index, ProcessInfo process, IntLongMap[] counters,
+      double elapsedSeconds) {
+    int pid = process.getPid();
+    boolean counting = false;
+    for (int counter = 0; counter < ProcessField.COUNTER_COUNT; counter++) {
+      long current = delta.getCounter(index, counter);
+      long previous = prevCounters[counter].get(pid, current);
+      counters[counter].put(pid, current, 0L);
+      double rate = elapsedSeconds > 0 && current > previous ? (current - previous) / elapsedSeconds : 0.0;
+      process.setCounterRate(counter, rate);
+      counting |= rate > 0;
+    }
+    return counting;
+  }
+}
@@ -0,0 +1,269 @@
+/*
+ - PROCESS TREE:
+ - Parent/child view of the process table for the tree mode of the
+   Processes tab: one TreeItem per pid, nested under the TreeItem of its
+   ppid, plus rollups of CPU %, RSS and process count over each subtree.
+ - It is kept up to date from what each refresh changed rather than rebuilt:
+   removed pids unlink their node (their children move to the top level
+   until a later refresh reports their new parent), new or re-parented pids
+   are linked under their ppid, and a change of a process's own CPU % or RSS
+   is added to every ancestor's rollup. A refresh therefore costs
+   O(changed processes x tree depth), plus one pass over the child list of
+   each parent that lost children.
+ - TreeItem child lists are only touched once per parent and refresh: all
+   moves are collected first, then removed from and added to each list in
+   one batch.
+ - CPU % rollups are summed in thousandths of a percent, so adding and
+   removing the same values over many refreshes never drifts. Not
+   thread-safe; it runs on the FX thread.
+*/
+
+package com.sysmon.controller;
+
+import com.sysmon.model.ProcessInfo;
+import com.sysmon.model.ProcessModel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.LongProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.beans.property.SimpleIntegerProperty;
+import javafx.beans.property.SimpleLongProperty;
+import javafx.scene.control.TreeItem;
+
+public class ProcessTree {
+  public static final class Node {
+    private final ProcessInfo info;
+    private final TreeItem<Node> item;
+    private Node parent;
+    private boolean removed;
+    private long ownCpuMillis;
+    private long ownMemRssKb;
+    private long subtreeCpuMillis;
+    private long subtreeMemRssKb;
+    private int subtreeSize = 1;
+    private long movedStamp;
+    private long dirtyStamp;
+    private final DoubleProperty subtreeCpuPercent = new SimpleDoubleProperty(0.0);
+    private final LongProperty subtreeMemRssKbProperty = new SimpleLongProperty(0);
+    private final IntegerProperty subtreeProcesses = new SimpleIntegerProperty(1);
+
+    private Node(ProcessInfo info) {
+      this.info = info;
+      this.item = new TreeItem<>(this);
+    }
+
+    public ProcessInfo getInfo() {
+      return info;
+    }
+
+    public DoubleProperty subtreeCpuPercentProperty() {
+      return subtreeCpuPercent;
+    }
+
+    // In KB, formatted by the cells: only the visible rows pay for it.
+    public LongProperty subtreeMemRssKbProperty() {
+      return subtreeMemRssKbProperty;
+    }
+
+    public IntegerProperty subtreeProcessesProperty() {
+      return subtreeProcesses;
+    }
+
+    public double getSubtreeCpuPercent() {
+      return subtreeCpuMillis / 1000.0;
+    }
+
+    public long getSubtreeMemRssKb() {
+      return subtreeMemRssKb;
+    }
+
+    public int getSubtreeSize() {
+      return subtreeSize;
+    }
+  }
+
+  private final TreeItem<Node> root = new TreeItem<>();
+  private final Map<Integer, Node> byPid = new HashMap<>();
+  private long stamp;
+  // Scratch collections reused by every apply() call.
+  private final List<Node> moved = new ArrayList<>();
+  private final List<Node> removedNodes = new ArrayList<>();
+  private final List<Node> dirty = new ArrayList<>();
+  private final Map<TreeItem<Node>, Set<TreeItem<Node>>> detach = new IdentityHashMap<>();
+  private final Map<TreeItem<Node>, List<TreeItem<Node>>> attach = new IdentityHashMap<>();
+
+  public ProcessTree() {
+    root.setExpanded(true);
+  }
+
+  // The hidden root; top-level processes (and orphans) are its children.
+  public TreeItem<Node> getRoot() {
+    return root;
+  }
+
+  public Node get(int pid) {
+    return byPid.get(pid);
+  }
+
+  public int size() {
+    return byPid.size();
+  }
+
+  // Called after `model` applied a delta and the derived columns were set:
+  // `changed` are the rows the delta added or updated, `idle` any other rows
+  // whose CPU % may have changed.
+  public void apply(ProcessModel model, List<ProcessInfo> changed, List<ProcessInfo> idle) {
+    stamp++;
+    for (int i = 0; i < model.getRemovedCount(); i++) {
+      remove(model.getRemovedPid(i));
+    }
+    for (int i = 0; i < changed.size(); i++) {
+      ProcessInfo info = changed.get(i);
+      Node node = byPid.get(info.getPid());
+      if (node == null || node.info != info) {
+        // A pid that came back as a new row without being removed first.
+        remove(info.getPid());
+        node = new Node(info);
+        byPid.put(info.getPid(), node);
+        markMoved(node);
+      }
+    }
+    // Parents are linked only once every new pid of the refresh has a node,
+    // so the order of the rows does not matter.
+    for (int i = 0; i < changed.size(); i++) {
+      Node node = byPid.get(changed.get(i).getPid());
+      Node parent = parentOf(node);
+      if (parent != node.parent || node.movedStamp == stamp) {
+        link(node, parent);
+      }
+    }
+    flushMoves();
+    for (int i = 0; i < changed.size(); i++) {
+      updateOwnValues(changed.get(i));
+    }
+    for (int i = 0; i < idle.size(); i++) {
+      updateOwnValues(idle.get(i));
+    }
+    for (int i = 0; i < dirty.size(); i++) {
+      Node node = dirty.get(i);
+      if (!node.removed) {
+        node.subtreeCpuPercent.set(node.subtreeCpuMillis / 1000.0);
+        node.subtreeMemRssKbProperty.set(node.subtreeMemRssKb);
+        node.subtreeProcesses.set(node.subtreeSize);
+      }
+    }
+    dirty.clear();
+  }
+
+  private void remove(int pid) {
+    Node node = byPid.remove(pid);
+    if (node == null) {
+      return;
+    }
+    node.removed = true;
+    addToAncestors(node.parent, -node.subtreeCpuMillis, -node.subtreeMemRssKb, -node.subtreeSize);
+    markMoved(node);
+    removedNodes.add(node);
+    // The children are re-parented by the kernel; until a refresh says to
+    // whom, they are shown at the top level.
+    for (TreeItem<Node> child : node.item.getChildren()) {
+      Node orphan = child.getValue();
+      if (orphan.parent == node) {
+        orphan.parent = null;
+        markMoved(orphan);
+      }
+    }
+  }
+
+  // The node of the process's ppid, or null (the top level) if there is
+  // none or linking there would make a cycle.
+  private Node parentOf(Node node) {
+    Node parent = byPid.get(node.info.getPpid());
+    for (Node ancestor = parent; ancestor != null; ancestor = ancestor.parent) {
+      if (ancestor == node) {
+        return null;
+      }
+    }
+    return parent;
+  }
+
+  private void link(Node node, Node parent) {
+    addToAncestors(node.parent, -node.subtreeCpuMillis, -node.subtreeMemRssKb, -node.subtreeSize);
+    node.parent = parent;
+    addToAncestors(parent, node.subtreeCpuMillis, node.subtreeMemRssKb, node.subtreeSize);
+    markMoved(node);
+  }
+
+  private void updateOwnValues(ProcessInfo info) {
+    Node node = byPid.get(info.getPid());
+    if (node == null || node.info != info) {
+      return;
+    }
+    long cpuMillis = Math.round(info.getCpuPercent() * 1000.0);
+    long memRssKb = info.getMemRssKb();
+    if (cpuMillis != node.ownCpuMillis || memRssKb != node.ownMemRssKb) {
+      addToAncestors(node, cpuMillis - node.ownCpuMillis, memRssKb - node.ownMemRssKb, 0);
+      node.ownCpuMillis = cpuMillis;
+      node.ownMemRssKb = memRssKb;
+    }
+  }
+
+  private void addToAncestors(Node from, long cpuMillis, long memRssKb, int size) {
+    for (Node node = from; node != null; node = node.parent) {
+      node.subtreeCpuMillis += cpuMillis;
+      node.subtreeMemRssKb += memRssKb;
+      node.subtreeSize += size;
+      if (node.dirtyStamp != stamp) {
+        node.dirtyStamp = stamp;
+        dirty.add(node);
+      }
+    }
+  }
+
+  private void markMoved(Node node) {
+    if (node.movedStamp != stamp) {
+      node.movedStamp = stamp;
+      moved.add(node);
+    }
+  }
+
+  // Applies the collected moves to the TreeItems: first every removal, one
+  // batch per old parent list, then every addition, one batch per new one.
+  private void flushMoves() {
+    for (int i = 0; i < moved.size(); i++) {
+      TreeItem<Node> item = moved.get(i).item;
+      TreeItem<Node> current = item.getParent();
+      if (current != null) {
+        detach.computeIfAbsent(current, _ -> Collections.newSetFromMap(new IdentityHashMap<>())).add(item);
+      }
+    }
+    for (Map.Entry<TreeItem<Node>, Set<TreeItem<Node>>> entry : detach.entrySet()) {
+      entry.getKey().getChildren().removeAll(entry.getValue());
+    }
+    for (int i = 0; i < moved.size(); i++) {
+      Node node = moved.get(i);
+      if (!node.removed) {
+        TreeItem<Node> parent = node.parent != null ? node.parent.item : root;
+        attach.computeIfAbsent(parent, _ -> new ArrayList<>()).add(node.item);
+      }
+    }
+    for (Map.Entry<TreeItem<Node>, List<TreeItem<Node>>> entry : attach.entrySet()) {
+      entry.getKey().getChildren().addAll(entry.getValue());
+    }
+    // Whatever is left under a removed node has moved on already.
+    for (int i = 0; i < removedNodes.size(); i++) {
+      removedNodes.get(i).item.getChildren().clear();
+    }
+    detach.clear();
+    attach.clear();
+    moved.clear();
+    removedNodes.clear();
+  }
+}
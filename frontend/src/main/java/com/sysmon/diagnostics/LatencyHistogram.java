@@ -0,0 +1,104 @@
+/*
+ - LATENCY HISTOGRAM:
+ - Counts how long one stage of a refresh takes, in log-linear nanosecond
+   buckets: SUB_BUCKETS per power of two, so a bucket is at most an eighth
+   of its lower bound wide and any percentile is off by at most 12.5%.
+ - The buckets are the backend's (see backend/src/selfStats.h), so the
+   histograms GET_SELF_STATS reports are read into the same Snapshot.
+ - record() is lock-free (a few atomic adds) and safe from any thread;
+   snapshot() copies the counts without stopping writers, so a snapshot
+   taken mid-record may be one record apart between count and buckets.
+ - Never reset: every snapshot covers everything since the histogram was
+   created.
+*/
+
+package com.sysmon.diagnostics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class LatencyHistogram {
+  static final int SUB_BITS = 3;
+  static final int SUB_BUCKETS = 1 << SUB_BITS;
+  public static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    buckets.incrementAndGet(bucketIndex(nanos));
+    count.increment();
+    sum.add(nanos);
+    long current = max.get();
+    while (nanos > current && !max.compareAndSet(current, nanos)) {
+      current = max.get();
+    }
+  }
+
+  // Records the time since `startNanos`, a System.nanoTime().
+  public void recordSince(long startNanos) {
+    record(System.nanoTime() - startNanos);
+  }
+
+  public Snapshot snapshot() {
+    long[] counts = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = buckets.get(i);
+    }
+    return new Snapshot(count.sum(), sum.sum(), max.get(), counts);
+  }
+
+  static int bucketIndex(long nanos) {
+    if (nanos < SUB_BUCKETS) {
+      return (int) nanos;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int) ((nanos >>> shift) & (SUB_BUCKETS - 1));
+  }
+
+  // The smallest value that falls into the bucket.
+  static long bucketLowerBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+  }
+
+  // Counts per bucket; `buckets` has BUCKETS entries and is not copied.
+  public record Snapshot(long count, long sumNanos, long maxNanos, long[] buckets) {
+    public static final Snapshot EMPTY = new Snapshot(0, 0, 0, new long[BUCKETS]);
+
+    public double meanNanos() {
+      return count > 0 ? (double) sumNanos / count : 0;
+    }
+
+    // The upper bound of the bucket the quantile (0..1) falls into, capped
+    // at the largest value recorded; 0 if nothing was.
+    public long percentileNanos(double quantile) {
+      long total = 0;
+      for (long bucketCount : buckets) {
+        total += bucketCount;
+      }
+      if (total == 0) {
+        return 0;
+      }
+      long rank = Math.max(1, (long) Math.ceil(quantile * total));
+      long seen = 0;
+      for (int i = 0; i < buckets.length; i++) {
+        seen += buckets[i];
+        if (seen >= rank) {
+          long upper = i + 1 < BUCKETS ? bucketLowerBound(i + 1) - 1 : Long.MAX_VALUE;
+          return Math.min(upper, maxNanos);
+        }
+      }
+      return maxNanos;
+    }
+  }
+}
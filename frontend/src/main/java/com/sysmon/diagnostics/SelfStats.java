@@ -0,0 +1,80 @@
+/*
+ - SELF STATS:
+ - The dashboard's own timings: one LatencyHistogram per stage a refresh
+   goes through on this side of the socket, and running counters, all
+   named with a dotted prefix for the part they belong to:
+     ipc.wait       from sending a command until its response starts
+     ipc.transfer   time spent blocked on the socket inside a response
+     ipc.parse      the rest of reading a response or push
+     fx.queue       from a result being ready until the FX thread runs it
+     fx.<view>      applying a result to the view on the FX thread
+     refresh.<name> a polled collector, from its deadline until applied
+ - Stages and counters are created on first use and live for the whole
+   run; the hot path is a map lookup that callers hoist into a constant.
+ - Report is what the diagnostics panel and the exporter show, for either
+   side: the client's comes from report(), the backend's from
+   IPCClient.getSelfStats() (GET_SELF_STATS).
+*/
+
+package com.sysmon.diagnostics;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class SelfStats {
+  private static final long START_NANOS = System.nanoTime();
+  private static final Map<String, LatencyHistogram> STAGES = new ConcurrentSkipListMap<>();
+  private static final Map<String, LongAdder> COUNTERS = new ConcurrentSkipListMap<>();
+
+  private SelfStats() {
+  }
+
+  public static LatencyHistogram stage(String name) {
+    return STAGES.computeIfAbsent(name, _ -> new LatencyHistogram());
+  }
+
+  public static LongAdder counter(String name) {
+    return COUNTERS.computeIfAbsent(name, _ -> new LongAdder());
+  }
+
+  public static Report report() {
+    Map<String, LatencyHistogram.Snapshot> stages = new TreeMap<>();
+    STAGES.forEach((name, histogram) -> stages.put(name, histogram.snapshot()));
+    Map<String, Long> counters = new TreeMap<>();
+    COUNTERS.forEach((name, counter) -> counters.put(name, counter.sum()));
+    return new Report((System.nanoTime() - START_NANOS) / 1_000_000, stages, counters);
+  }
+
+  // Stages and counters in name order.
+  public record Report(long uptimeMillis, Map<String, LatencyHistogram.Snapshot> stages, Map<String, Long> counters) {
+    public static final Report EMPTY = new Report(0, Map.of(), Map.of());
+
+    public Report {
+      stages = Collections.unmodifiableMap(stages);
+      counters = Collections.unmodifiableMap(counters);
+    }
+
+    // A plain-text table, one line per stage (times in milliseconds) and
+    // per counter, every line starting with `side`.
+    public void appendText(StringBuilder out, String side) {
+      for (Map.Entry<String, LatencyHistogram.Snapshot> entry : stages.entrySet()) {
+        LatencyHistogram.Snapshot stage = entry.getValue();
+        out.append(String.format(Locale.ROOT, "%-8s %-22s %10d %10.3f %10.3f %10.3f %10.3f %10.3f%n", side,
+            entry.getKey(), stage.count(), stage.meanNanos() / 1e6, stage.percentileNanos(0.5) / 1e6,
+            stage.percentileNanos(0.9) / 1e6, stage.percentileNanos(0.99) / 1e6, stage.maxNanos() / 1e6));
+      }
+      for (Map.Entry<String, Long> entry : counters.entrySet()) {
+        out.append(String.format(Locale.ROOT, "%-8s %-22s %10d%n", side, entry.getKey(), entry.getValue()));
+      }
+    }
+
+    public static String textHeader() {
+      return String.format(Locale.ROOT, "%-8s %-22s %10s %10s %10s %10s %10s %10s%n", "side", "stage", "count",
+          "mean_ms", "p50_ms", "p90_ms", "p99_ms", "max_ms");
+    }
+  }
+}
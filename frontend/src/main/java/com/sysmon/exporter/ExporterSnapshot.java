@@ -0,0 +1,372 @@
+/*
+ - EXPORTER SNAPSHOT:
+ - Immutable view of the latest host and process metrics the headless
+   collector has applied, as served to scrapes.
+ - Every collector result produces a new snapshot (with*() methods); the
+   process table is kept as one full ProcessDelta that each incoming delta
+   is merged into.
+ - The backend's self stats (GET_SELF_STATS) and the exporter's own
+   (SelfStats) are exported as summaries of each stage's latency, with
+   p50/p90/p99 quantiles, and counters, labelled with the side they were
+   measured on.
+ - The OpenMetrics text is rendered at most once per snapshot, on the first
+   scrape that asks for it, and the same bytes (and their gzip form) are
+   then served to every other scrape of that snapshot.
+*/
+
+package com.sysmon.exporter;
+
+import com.sysmon.diagnostics.LatencyHistogram;
+import com.sysmon.diagnostics.SelfStats;
+import com.sysmon.model.ProcessDelta;
+import com.sysmon.model.SystemUpdate;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+final class ExporterSnapshot {
+  static final ExporterSnapshot EMPTY = new ExporterSnapshot(null, null, null, null, null, null, null, null, null, 0);
+
+  // Process times are reported in clock ticks (USER_HZ, 100 on Linux).
+  private static final double TICKS_PER_SECOND = 100.0;
+  private static final int BYTES_PER_PROCESS = 256;
+  private static final int BYTES_PER_CORE = 256;
+  private static final int BYTES_PER_DEVICE = 384;
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+  private final SystemUpdate cpu;
+  private final SystemUpdate memory;
+  private final SystemUpdate network;
+  private final SystemUpdate disk;
+  private final SystemUpdate cores;
+  private final SystemUpdate interfaces;
+  private final SystemUpdate diskIo;
+  private final ProcessDelta processes;
+  private final SelfStats.Report backendStats;
+  private final long updateTime;
+  private byte[] text;
+  private byte[] gzipText;
+
+  private ExporterSnapshot(SystemUpdate cpu, SystemUpdate memory, SystemUpdate network, SystemUpdate disk,
+      SystemUpdate cores, SystemUpdate interfaces, SystemUpdate diskIo, ProcessDelta processes,
+      SelfStats.Report backendStats, long updateTime) {
+    this.cpu = cpu;
+    this.memory = memory;
+    this.network = network;
+    this.disk = disk;
+    this.cores = cores;
+    this.interfaces = interfaces;
+    this.diskIo = diskIo;
+    this.processes = processes;
+    this.backendStats = backendStats;
+    this.updateTime = updateTime;
+  }
+
+  ExporterSnapshot withCpu(SystemUpdate stats) {
+    return new ExporterSnapshot(stats, memory, network, disk, cores, interfaces, diskIo, processes, backendStats,
+        stats.getSampleTime());
+  }
+
+  ExporterSnapshot withMemory(SystemUpdate stats) {
+    return new ExporterSnapshot(cpu, stats, network, disk, cores, interfaces, diskIo, processes, backendStats,
+        stats.getSampleTime());
+  }
+
+  ExporterSnapshot withNetwork(SystemUpdate stats) {
+    return new ExporterSnapshot(cpu, memory, stats, disk, cores, interfaces, diskIo, processes, backendStats,
+        stats.getSampleTime());
+  }
+
+  ExporterSnapshot withDisk(SystemUpdate stats) {
+    return new ExporterSnapshot(cpu, memory, network, stats, cores, interfaces, diskIo, processes, backendStats,
+        stats.getSampleTime());
+  }
+
+  ExporterSnapshot withCores(SystemUpdate stats) {
+    return new ExporterSnapshot(cpu, memory, network, disk, stats, interfaces, diskIo, processes, backendStats,
+        stats.getSampleTime());
+  }
+
+  ExporterSnapshot withInterfaces(SystemUpdate stats) {
+    return new ExporterSnapshot(cpu, memory, network, disk, cores, stats, diskIo, processes, backendStats,
+        stats.getSampleTime());
+  }
+
+  ExporterSnapshot withDiskIo(SystemUpdate stats) {
+    return new ExporterSnapshot(cpu, memory, network, disk, cores, interfaces, stats, processes, backendStats,
+        stats.getSampleTime());
+  }
+
+  ExporterSnapshot withProcesses(ProcessDelta delta) {
+    ProcessDelta table = processes == null || delta.isFull() ? delta : ProcessDelta.merge(processes, delta);
+    return new ExporterSnapshot(cpu, memory, network, disk, cores, interfaces, diskIo, table, backendStats,
+        System.currentTimeMillis());
+  }
+
+  ExporterSnapshot withBackendStats(SelfStats.Report stats) {
+    return new ExporterSnapshot(cpu, memory, network, disk, cores, interfaces, diskIo, processes, stats, updateTime);
+  }
+
+  synchronized byte[] text() {
+    if (text == null) {
+      text = render().getBytes(StandardCharsets.UTF_8);
+    }
+    return text;
+  }
+
+  synchronized byte[] gzipText() {
+    if (gzipText == null) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(text().length / 4);
+      try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+        gzip.write(text());
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      gzipText = bytes.toByteArray();
+    }
+    return gzipText;
+  }
+
+  private String render() {
+    int processCount = processes != null ? processes.size() : 0;
+    int coreCount = cores != null ? cores.getCoreCount() : 0;
+    int deviceCount = (interfaces != null ? interfaces.getInterfaceCount() : 0)
+        + (diskIo != null ? diskIo.getDiskDeviceCount() : 0);
+    StringBuilder out = new StringBuilder(4096 + processCount * BYTES_PER_PROCESS + coreCount * BYTES_PER_CORE
+        + deviceCount * BYTES_PER_DEVICE);
+    if (cpu != null) {
+      family(out, "sysmon_cpu_usage_ratio", "gauge", "ratio", "Share of CPU time spent busy since the last sample.");
+      sample(out, "sysmon_cpu_usage_ratio", cpu.getCpuUsage() / 100.0);
+    }
+    if (cores != null) {
+      family(out, "sysmon_cpu_cores", "gauge", null, "Number of online CPU cores.");
+      sample(out, "sysmon_cpu_cores", coreCount);
+      family(out, "sysmon_cpu_core_usage_ratio", "gauge", "ratio",
+          "Share of the core's time spent in each mode since the last sample.");
+      for (int i = 0; i < coreCount; i++) {
+        coreSample(out, i, "user", cores.getCoreUser(i));
+        coreSample(out, i, "system", cores.getCoreSystem(i));
+        coreSample(out, i, "iowait", cores.getCoreIowait(i));
+        coreSample(out, i, "steal", cores.getCoreSteal(i));
+      }
+    }
+    if (memory != null) {
+      bytesGauge(out, "sysmon_memory_total_bytes", "Total usable RAM.", memory.getMemTotal());
+      bytesGauge(out, "sysmon_memory_free_bytes", "Unused RAM.", memory.getMemFree());
+      bytesGauge(out, "sysmon_memory_available_bytes", "RAM available to new programs.", memory.getMemAvailable());
+      bytesGauge(out, "sysmon_memory_buffers_bytes", "RAM used for block device buffers.", memory.getBuffers());
+      bytesGauge(out, "sysmon_memory_cached_bytes", "RAM used by the page cache.", memory.getCached());
+      bytesGauge(out, "sysmon_swap_total_bytes", "Total swap space.", memory.getSwapTotal());
+      bytesGauge(out, "sysmon_swap_free_bytes", "Unused swap space.", memory.getSwapFree());
+    }
+    if (network != null) {
+      family(out, "sysmon_network_receive_rate_bytes", "gauge", "bytes", "Bytes received per second.");
+      sample(out, "sysmon_network_receive_rate_bytes", network.getNetDownSpeed());
+      family(out, "sysmon_network_transmit_rate_bytes", "gauge", "bytes", "Bytes sent per second.");
+      sample(out, "sysmon_network_transmit_rate_bytes", network.getNetUpSpeed());
+    }
+    if (interfaces != null) {
+      int count = interfaces.getInterfaceCount();
+      family(out, "sysmon_network_interface_receive_rate_bytes", "gauge", "bytes",
+          "Bytes received per second on the interface.");
+      for (int i = 0; i < count; i++) {
+        deviceSample(out, "sysmon_network_interface_receive_rate_bytes", "interface", interfaces.getInterfaceName(i));
+        out.append(interfaces.getInterfaceRxBytes(i)).append('\n');
+      }
+      family(out, "sysmon_network_interface_transmit_rate_bytes", "gauge", "bytes",
+          "Bytes sent per second on the interface.");
+      for (int i = 0; i < count; i++) {
+        deviceSample(out, "sysmon_network_interface_transmit_rate_bytes", "interface", interfaces.getInterfaceName(i));
+        out.append(interfaces.getInterfaceTxBytes(i)).append('\n');
+      }
+      family(out, "sysmon_network_interface_receive_packets_rate", "gauge", null,
+          "Packets received per second on the interface.");
+      for (int i = 0; i < count; i++) {
+        deviceSample(out, "sysmon_network_interface_receive_packets_rate", "interface", interfaces.getInterfaceName(i));
+        out.append(interfaces.getInterfaceRxPackets(i)).append('\n');
+      }
+      family(out, "sysmon_network_interface_transmit_packets_rate", "gauge", null,
+          "Packets sent per second on the interface.");
+      for (int i = 0; i < count; i++) {
+        deviceSample(out, "sysmon_network_interface_transmit_packets_rate", "interface",
+            interfaces.getInterfaceName(i));
+        out.append(interfaces.getInterfaceTxPackets(i)).append('\n');
+      }
+      family(out, "sysmon_network_interface_receive_errors", "counter", null, "Receive errors on the interface.");
+      for (int i = 0; i < count; i++) {
+        deviceSample(out, "sysmon_network_interface_receive_errors_total", "interface", interfaces.getInterfaceName(i));
+        out.append(interfaces.getInterfaceRxErrors(i)).append('\n');
+      }
+      family(out, "sysmon_network_interface_transmit_errors", "counter", null, "Transmit errors on the interface.");
+      for (int i = 0; i < count; i++) {
+        deviceSample(out, "sysmon_network_interface_transmit_errors_total", "interface",
+            interfaces.getInterfaceName(i));
+        out.append(interfaces.getInterfaceTxErrors(i)).append('\n');
+      }
+    }
+    if (diskIo != null) {
+      int count = diskIo.getDiskDeviceCount();
+      family(out, "sysmon_disk_read_rate_bytes", "gauge", "bytes", "Bytes read per second from the device.");
+      for (int i = 0; i < count; i++) {
+        deviceSample(out, "sysmon_disk_read_rate_bytes", "device", diskIo.getDiskDeviceName(i));
+        out.append(diskIo.getDiskReadBytes(i)).append('\n');
+      }
+      family(out, "sysmon_disk_write_rate_bytes", "gauge", "bytes", "Bytes written per second to the device.");
+      for (int i = 0; i < count; i++) {
+        deviceSample(out, "sysmon_disk_write_rate_bytes", "device", diskIo.getDiskDeviceName(i));
+        out.append(diskIo.getDiskWriteBytes(i)).append('\n');
+      }
+      family(out, "sysmon_disk_reads_rate", "gauge", null, "Read operations per second completed by the device.");
+      for (int i = 0; i < count; i++) {
+        deviceSample(out, "sysmon_disk_reads_rate", "device", diskIo.getDiskDeviceName(i));
+        out.append(diskIo.getDiskReads(i)).append('\n');
+      }
+      family(out, "sysmon_disk_writes_rate", "gauge", null, "Write operations per second completed by the device.");
+      for (int i = 0; i < count; i++) {
+        deviceSample(out, "sysmon_disk_writes_rate", "device", diskIo.getDiskDeviceName(i));
+        out.append(diskIo.getDiskWrites(i)).append('\n');
+      }
+      family(out, "sysmon_disk_utilization_ratio", "gauge", "ratio",
+          "Share of the time the device was busy since the last sample.");
+      for (int i = 0; i < count; i++) {
+        deviceSample(out, "sysmon_disk_utilization_ratio", "device", diskIo.getDiskDeviceName(i));
+        out.append(diskIo.getDiskUtilization(i) / 100.0).append('\n');
+      }
+    }
+    if (disk != null) {
+      family(out, "sysmon_filesystem_used_bytes", "gauge", "bytes", "Used space on the root filesystem.");
+      sample(out, "sysmon_filesystem_used_bytes", disk.getDiskUsed());
+      family(out, "sysmon_filesystem_size_bytes", "gauge", "bytes", "Size of the root filesystem.");
+      sample(out, "sysmon_filesystem_size_bytes", disk.getDiskTotal());
+    }
+    if (processes != null) {
+      family(out, "sysmon_processes", "gauge", null, "Number of processes.");
+      sample(out, "sysmon_processes", processCount);
+      family(out, "sysmon_process_cpu_seconds", "counter", "seconds", "User and system CPU time of the process.");
+      for (int i = 0; i < processCount; i++) {
+        processSample(out, "sysmon_process_cpu_seconds_total", i);
+        out.append(processes.getTotalTime(i) / TICKS_PER_SECOND).append('\n');
+      }
+      family(out, "sysmon_process_resident_memory_bytes", "gauge", "bytes", "Resident set size of the process.");
+      for (int i = 0; i < processCount; i++) {
+        processSample(out, "sysmon_process_resident_memory_bytes", i);
+        out.append(processes.getMemRssKb(i) * 1024).append('\n');
+      }
+    }
+    selfStats(out, backendStats, SelfStats.report());
+    if (updateTime > 0) {
+      family(out, "sysmon_last_update_timestamp_seconds", "gauge", "seconds",
+          "When the collector last applied new data.");
+      sample(out, "sysmon_last_update_timestamp_seconds", updateTime / 1000.0);
+    }
+    out.append("# EOF\n");
+    return out.toString();
+  }
+
+  private static void selfStats(StringBuilder out, SelfStats.Report backend, SelfStats.Report exporter) {
+    family(out, "sysmon_self_latency_seconds", "summary", "seconds",
+        "Time SysMon itself spent in each stage of a refresh.");
+    if (backend != null) {
+      latencySamples(out, "backend", backend);
+    }
+    latencySamples(out, "exporter", exporter);
+    family(out, "sysmon_self_events", "counter", null, "Work SysMon itself has done.");
+    if (backend != null) {
+      counterSamples(out, "backend", backend);
+    }
+    counterSamples(out, "exporter", exporter);
+  }
+
+  private static void latencySamples(StringBuilder out, String side, SelfStats.Report report) {
+    for (Map.Entry<String, LatencyHistogram.Snapshot> stage : report.stages().entrySet()) {
+      LatencyHistogram.Snapshot latency = stage.getValue();
+      for (double quantile : QUANTILES) {
+        selfLabels(out, "sysmon_self_latency_seconds", side, "stage", stage.getKey());
+        out.append("\",quantile=\"").append(quantile).append("\"} ")
+            .append(latency.percentileNanos(quantile) / 1e9).append('\n');
+      }
+      selfLabels(out, "sysmon_self_latency_seconds_sum", side, "stage", stage.getKey());
+      out.append("\"} ").append(latency.sumNanos() / 1e9).append('\n');
+      selfLabels(out, "sysmon_self_latency_seconds_count", side, "stage", stage.getKey());
+      out.append("\"} ").append(latency.count()).append('\n');
+    }
+  }
+
+  private static void counterSamples(StringBuilder out, String side, SelfStats.Report report) {
+    for (Map.Entry<String, Long> counter : report.counters().entrySet()) {
+      selfLabels(out, "sysmon_self_events_total", side, "event", counter.getKey());
+      out.append("\"} ").append(counter.getValue()).append('\n');
+    }
+  }
+
+  // Writes the sample name and its side and stage/event labels up to the
+  // closing quote of the last label, so a quantile label can follow.
+  private static void selfLabels(StringBuilder out, String name, String side, String label, String value) {
+    out.append(name).append("{side=\"").append(side).append("\",").append(label).append("=\"");
+    escapeLabel(out, value);
+  }
+
+  private static void family(StringBuilder out, String name, String type, String unit, String help) {
+    out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    if (unit != null) {
+      out.append("# UNIT ").append(name).append(' ').append(unit).append('\n');
+    }
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+  }
+
+  private static void bytesGauge(StringBuilder out, String name, String help, long kilobytes) {
+    family(out, name, "gauge", "bytes", help);
+    sample(out, name, kilobytes * 1024);
+  }
+
+  private static void sample(StringBuilder out, String name, long value) {
+    out.append(name).append(' ').append(value).append('\n');
+  }
+
+  private static void sample(StringBuilder out, String name, double value) {
+    out.append(name).append(' ').append(value).append('\n');
+  }
+
+  private void coreSample(StringBuilder out, int index, String mode, double percent) {
+    out.append("sysmon_cpu_core_usage_ratio{core=\"").append(cores.getCoreId(index)).append("\",mode=\"")
+        .append(mode).append("\"} ").append(percent / 100.0).append('\n');
+  }
+
+  // Writes the sample name and its device label up to the value.
+  private static void deviceSample(StringBuilder out, String name, String label, String device) {
+    out.append(name).append('{').append(label).append("=\"");
+    escapeLabel(out, device);
+    out.append("\"} ");
+  }
+
+  // Writes the sample name and labels up to the value.
+  private void processSample(StringBuilder out, String name, int index) {
+    out.append(name).append("{pid=\"").append(processes.getPid(index)).append("\",name=\"");
+    escapeLabel(out, processes.getProcessName(index));
+    out.append("\",user=\"");
+    escapeLabel(out, processes.getUserName(index));
+    out.append("\"} ");
+  }
+
+  private static void escapeLabel(StringBuilder out, String value) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '\\':
+          out.append("\\\\");
+          break;
+        case '"':
+          out.append("\\\"");
+          break;
+        case '\n':
+          out.append("\\n");
+          break;
+        default:
+          out.append(c);
+      }
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ - HEADLESS COLLECTOR:
+ - Runs the same metric collectors as the dashboard (MetricScheduler over
+   IPCClient, same names, intervals and -Dsysmon.interval.<name> overrides)
+   without JavaFX, and keeps the latest results as an ExporterSnapshot.
+ - Results are applied one at a time on a single virtual thread, standing
+   in for the FX thread, so process deltas are merged in order.
+ - The backend's self stats are fetched every SELF_STATS_INTERVAL (or
+   -Dsysmon.interval.selfstats) for the exporter's self-latency summaries.
+ - With -Dsysmon.record=<dir> the results are also recorded, exactly as the
+   dashboard would record them.
+*/
+
+package com.sysmon.exporter;
+
+import com.sysmon.model.ProcessDelta;
+import com.sysmon.model.SystemUpdate;
+import com.sysmon.recording.SnapshotRecorder;
+import com.sysmon.service.IPCClient;
+import com.sysmon.service.MetricScheduler;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public final class HeadlessCollector implements AutoCloseable {
+  private static final Duration SELF_STATS_INTERVAL = Duration.ofSeconds(10);
+
+  private final IPCClient ipcClient = new IPCClient();
+  private final ExecutorService applyExecutor = Executors.newSingleThreadExecutor(
+      Thread.ofVirtual().name("sysmon-headless-apply").factory());
+  private final MetricScheduler scheduler = new MetricScheduler(applyExecutor);
+  private final SnapshotRecorder recorder;
+  private volatile ExporterSnapshot snapshot = ExporterSnapshot.EMPTY;
+  private volatile long processGeneration = 0;
+
+  // `recorder` may be null.
+  public HeadlessCollector(SnapshotRecorder recorder) {
+    this.recorder = recorder;
+    scheduler.register("cpu", Duration.ofMillis(500), ipcClient::getCpuStats, this::updateCpu);
+    scheduler.register("cores", Duration.ofSeconds(1), ipcClient::getCoreStats, this::updateCores);
+    scheduler.register("net", Duration.ofMillis(500), ipcClient::getNetStats, this::updateNetwork);
+    scheduler.register("mem", Duration.ofSeconds(1), ipcClient::getMemStats, this::updateMemory);
+    scheduler.register("processes", Duration.ofSeconds(2), () -> ipcClient.getProcessDelta(processGeneration),
+        this::updateProcesses);
+    scheduler.register("disk", Duration.ofSeconds(30), ipcClient::getDiskStats, this::updateDisk);
+    scheduler.register("interfaces", Duration.ofSeconds(1), ipcClient::getInterfaceStats, this::updateInterfaces);
+    scheduler.register("diskio", Duration.ofSeconds(1), ipcClient::getDiskIoStats, this::updateDiskIo);
+    scheduler.register("selfstats", SELF_STATS_INTERVAL, ipcClient::getSelfStats,
+        stats -> snapshot = snapshot.withBackendStats(stats));
+  }
+
+  public void start() {
+    scheduler.start();
+  }
+
+  ExporterSnapshot getSnapshot() {
+    return snapshot;
+  }
+
+  private void updateCpu(SystemUpdate stats) {
+    snapshot = snapshot.withCpu(stats);
+    if (recorder != null) {
+      recorder.recordCpu(stats);
+    }
+  }
+
+  private void updateCores(SystemUpdate stats) {
+    snapshot = snapshot.withCores(stats);
+    if (recorder != null) {
+      recorder.recordCores(stats);
+    }
+  }
+
+  private void updateMemory(SystemUpdate stats) {
+    snapshot = snapshot.withMemory(stats);
+    if (recorder != null) {
+      recorder.recordMemory(stats);
+    }
+  }
+
+  private void updateNetwork(SystemUpdate stats) {
+    snapshot = snapshot.withNetwork(stats);
+    if (recorder != null) {
+      recorder.recordNetwork(stats);
+    }
+  }
+
+  private void updateInterfaces(SystemUpdate stats) {
+    snapshot = snapshot.withInterfaces(stats);
+    if (recorder != null) {
+      recorder.recordInterfaces(stats);
+    }
+  }
+
+  private void updateDiskIo(SystemUpdate stats) {
+    snapshot = snapshot.withDiskIo(stats);
+    if (recorder != null) {
+      recorder.recordDiskIo(stats);
+    }
+  }
+
+  private void updateDisk(SystemUpdate stats) {
+    snapshot = snapshot.withDisk(stats);
+    if (recorder != null) {
+      recorder.recordDisk(stats);
+    }
+  }
+
+  // As in MainController, the generation only advances once the delta is
+  // applied.
+  private void updateProcesses(ProcessDelta delta) {
+    processGeneration = delta.getGeneration();
+    snapshot = snapshot.withProcesses(delta);
+    if (recorder != null) {
+      recorder.recordProcesses(delta);
+    }
+  }
+
+  @Override
+  public void close() {
+    scheduler.close();
+    applyExecutor.shutdown();
+    if (recorder != null) {
+      recorder.close();
+    }
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ - METRICS EXPORTER:
+ - Serves the headless collector's latest snapshot in OpenMetrics text
+   format at http://localhost:<port>/metrics, using the JDK's built-in
+   HttpServer bound to the loopback address only.
+ - A scrape never talks to the backend: it takes the current
+   ExporterSnapshot and writes its already rendered (or, with gzip, already
+   compressed) bytes, so concurrent scrapes of the same snapshot share one
+   rendering. Every request is handled on its own virtual thread.
+*/
+
+package com.sysmon.exporter;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public final class MetricsExporter implements AutoCloseable {
+  private static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+  private final HeadlessCollector collector;
+  private final HttpServer server;
+  private final ExecutorService handlers = Executors.newVirtualThreadPerTaskExecutor();
+
+  public MetricsExporter(HeadlessCollector collector, int port) throws IOException {
+    this.collector = collector;
+    this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    server.setExecutor(handlers);
+    server.createContext("/metrics", this::handleMetrics);
+  }
+
+  public void start() {
+    server.start();
+  }
+
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  private void handleMetrics(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      String method = exchange.getRequestMethod();
+      if (!"GET".equals(method) && !"HEAD".equals(method)) {
+        exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      ExporterSnapshot snapshot = collector.getSnapshot();
+      String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+      boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+      byte[] body = gzip ? snapshot.gzipText() : snapshot.text();
+      exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+      if (gzip) {
+        exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+      }
+      if ("HEAD".equals(method)) {
+        exchange.sendResponseHeaders(200, -1);
+        return;
+      }
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    } catch (IOException | RuntimeException e) {
+      System.err.println("MetricsExporter: scrape failed: " + e.getMessage());
+      e.printStackTrace();
+    }
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    handlers.shutdown();
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ - HISTORY RANGE:
+ - Reusable result buffer for MetricHistory range queries.
+ - It holds up to `capacity` points as parallel primitive arrays (time,
+   min, avg, max); a query overwrites the previous contents, so one
+   instance can be refilled every refresh without allocating.
+*/
+
+package com.sysmon.history;
+
+public class HistoryRange {
+  final long[] times;
+  final double[] min;
+  final double[] avg;
+  final double[] max;
+  int size;
+
+  public HistoryRange(int capacity) {
+    this.times = new long[capacity];
+    this.min = new double[capacity];
+    this.avg = new double[capacity];
+    this.max = new double[capacity];
+  }
+
+  public int capacity() {
+    return times.length;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public long getTime(int index) {
+    return times[index];
+  }
+
+  public double getMin(int index) {
+    return min[index];
+  }
+
+  public double getAvg(int index) {
+    return avg[index];
+  }
+
+  public double getMax(int index) {
+    return max[index];
+  }
+}
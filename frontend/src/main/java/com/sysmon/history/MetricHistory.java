@@ -0,0 +1,335 @@
+/*
+ - METRIC HISTORY:
+ - Fixed-memory history of the system-wide metrics in SystemUpdate, so the
+   dashboard can chart them over time instead of only showing the latest
+   snapshot.
+ - Every metric is one column with three tiers of primitive ring buffers:
+   raw samples, 1-minute and 1-hour rollups (min/avg/max). Raw samples are
+   rolled up into the current minute as they arrive, finished minutes into
+   the current hour, and each tier overwrites its oldest entries once full.
+   All arrays are allocated up front, so memory stays bounded and recording
+   or querying allocates nothing however long SysMon runs.
+ - query() copies a time range from one tier into a reusable HistoryRange,
+   folding neighbouring points together when the range holds more than
+   the buffer can take. The rollup that is still in progress is included
+   as the newest point.
+ - Not thread-safe; the controller records and queries on the FX thread.
+*/
+
+package com.sysmon.history;
+
+import com.sysmon.model.SystemUpdate;
+import java.util.EnumMap;
+import java.util.Map;
+
+public class MetricHistory {
+  public enum Metric {
+    CPU_USAGE,
+    MEM_TOTAL,
+    MEM_FREE,
+    MEM_AVAILABLE,
+    MEM_USED,
+    BUFFERS,
+    CACHED,
+    SWAP_TOTAL,
+    SWAP_FREE,
+    SWAP_USED,
+    NET_DOWN,
+    NET_UP,
+    DISK_USED,
+    DISK_TOTAL,
+  }
+
+  public enum Resolution {
+    RAW(0),
+    MINUTE(60_000),
+    HOUR(3_600_000);
+
+    private final long bucketMillis;
+
+    Resolution(long bucketMillis) {
+      this.bucketMillis = bucketMillis;
+    }
+
+    public long getBucketMillis() {
+      return bucketMillis;
+    }
+  }
+
+  // Raw: 2 hours at the fastest (500ms) refresh; minutes: 2 days;
+  // hours: 5 weeks.
+  private static final int DEFAULT_RAW_CAPACITY = 14_400;
+  private static final int DEFAULT_MINUTE_CAPACITY = 2 * 24 * 60;
+  private static final int DEFAULT_HOUR_CAPACITY = 5 * 7 * 24;
+
+  private final Map<Metric, Column> columns = new EnumMap<>(Metric.class);
+  private long latestTime;
+
+  public MetricHistory() {
+    this(DEFAULT_RAW_CAPACITY, DEFAULT_MINUTE_CAPACITY, DEFAULT_HOUR_CAPACITY);
+  }
+
+  public MetricHistory(int rawCapacity, int minuteCapacity, int hourCapacity) {
+    for (Metric metric : Metric.values()) {
+      columns.put(metric, new Column(rawCapacity, minuteCapacity, hourCapacity));
+    }
+  }
+
+  public void record(Metric metric, long timeMillis, double value) {
+    columns.get(metric).record(timeMillis, value);
+    latestTime = Math.max(latestTime, timeMillis);
+  }
+
+  // Time of the newest sample, or 0 before the first one.
+  public long getLatestTime() {
+    return latestTime;
+  }
+
+  // The record*() helpers below store the fields one metric group fills in
+  // (see IPCClient's single-metric getters and push subscriptions).
+  public void recordCpu(long timeMillis, SystemUpdate stats) {
+    record(Metric.CPU_USAGE, timeMillis, stats.getCpuUsage());
+  }
+
+  public void recordMemory(long timeMillis, SystemUpdate stats) {
+    record(Metric.MEM_TOTAL, timeMillis, stats.getMemTotal());
+    record(Metric.MEM_FREE, timeMillis, stats.getMemFree());
+    record(Metric.MEM_AVAILABLE, timeMillis, stats.getMemAvailable());
+    record(Metric.MEM_USED, timeMillis, stats.getMemTotal() - stats.getMemAvailable());
+    record(Metric.BUFFERS, timeMillis, stats.getBuffers());
+    record(Metric.CACHED, timeMillis, stats.getCached());
+    record(Metric.SWAP_TOTAL, timeMillis, stats.getSwapTotal());
+    record(Metric.SWAP_FREE, timeMillis, stats.getSwapFree());
+    record(Metric.SWAP_USED, timeMillis, stats.getSwapTotal() - stats.getSwapFree());
+  }
+
+  public void recordNetwork(long timeMillis, SystemUpdate stats) {
+    record(Metric.NET_DOWN, timeMillis, stats.getNetDownSpeed());
+    record(Metric.NET_UP, timeMillis, stats.getNetUpSpeed());
+  }
+
+  public void recordDisk(long timeMillis, SystemUpdate stats) {
+    record(Metric.DISK_USED, timeMillis, stats.getDiskUsed());
+    record(Metric.DISK_TOTAL, timeMillis, stats.getDiskTotal());
+  }
+
+  // Fills `out` with the points of [fromMillis, toMillis] at the given
+  // resolution and returns how many there are.
+  public int query(Metric metric, Resolution resolution, long fromMillis, long toMillis, HistoryRange out) {
+    return columns.get(metric).query(resolution, fromMillis, toMillis, out);
+  }
+
+  // The finest resolution whose retained history still covers the range.
+  public Resolution resolutionFor(Metric metric, long fromMillis) {
+    Column column = columns.get(metric);
+    if (column.raw.covers(fromMillis)) {
+      return Resolution.RAW;
+    }
+    return column.minutes.covers(fromMillis) ? Resolution.MINUTE : Resolution.HOUR;
+  }
+
+  private static final class Column {
+    private final Tier raw;
+    private final Tier minutes;
+    private final Tier hours;
+    private final Rollup currentMinute = new Rollup(Resolution.MINUTE.bucketMillis);
+    private final Rollup currentHour = new Rollup(Resolution.HOUR.bucketMillis);
+
+    Column(int rawCapacity, int minuteCapacity, int hourCapacity) {
+      this.raw = new Tier(rawCapacity, true);
+      this.minutes = new Tier(minuteCapacity, false);
+      this.hours = new Tier(hourCapacity, false);
+    }
+
+    // The running minute and hour are flushed as soon as a sample falls past
+    // their end, so the minute in progress always lies in the running hour.
+    void record(long timeMillis, double value) {
+      raw.add(timeMillis, value, value, value);
+      if (currentMinute.isFinishedBy(timeMillis)) {
+        currentMinute.flushInto(minutes);
+        currentHour.add(currentMinute.bucketStart, currentMinute.min, currentMinute.average(), currentMinute.max);
+        currentMinute.reset();
+      }
+      if (currentHour.isFinishedBy(timeMillis)) {
+        currentHour.flushInto(hours);
+        currentHour.reset();
+      }
+      currentMinute.add(timeMillis, value, value, value);
+    }
+
+    int query(Resolution resolution, long fromMillis, long toMillis, HistoryRange out) {
+      switch (resolution) {
+        case RAW:
+          return raw.query(fromMillis, toMillis, null, out);
+        case MINUTE:
+          return minutes.query(fromMillis, toMillis, currentMinute, out);
+        default:
+          // The running hour also has to include the minute in progress.
+          return hours.query(fromMillis, toMillis, currentHour.withPending(currentMinute), out);
+      }
+    }
+  }
+
+  // One resolution of a column: a ring of (time, min, avg, max) entries.
+  // The raw tier shares a single array for all three values.
+  private static final class Tier {
+    private final long[] times;
+    private final double[] min;
+    private final double[] avg;
+    private final double[] max;
+    private int head;
+    private int size;
+
+    Tier(int capacity, boolean singleValue) {
+      this.times = new long[capacity];
+      this.avg = new double[capacity];
+      this.min = singleValue ? avg : new double[capacity];
+      this.max = singleValue ? avg : new double[capacity];
+    }
+
+    void add(long timeMillis, double minValue, double avgValue, double maxValue) {
+      int slot = (head + size) % times.length;
+      if (size == times.length) {
+        head = (head + 1) % times.length;
+      } else {
+        size++;
+      }
+      times[slot] = timeMillis;
+      min[slot] = minValue;
+      max[slot] = maxValue;
+      avg[slot] = avgValue;
+    }
+
+    boolean covers(long timeMillis) {
+      return size < times.length || times[head] <= timeMillis;
+    }
+
+    private int slot(int logical) {
+      return (head + logical) % times.length;
+    }
+
+    // First logical index whose time is >= timeMillis.
+    private int lowerBound(long timeMillis) {
+      int low = 0;
+      int high = size;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (times[slot(mid)] < timeMillis) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    int query(long fromMillis, long toMillis, Rollup pending, HistoryRange out) {
+      int first = lowerBound(fromMillis);
+      int end = lowerBound(toMillis + 1);
+      boolean withPending = pending != null && pending.count > 0 && pending.bucketStart <= toMillis
+          && pending.bucketStart + pending.bucketMillis > fromMillis;
+      int count = end - first + (withPending ? 1 : 0);
+      int capacity = out.capacity();
+      int stride = Math.max(1, (count + capacity - 1) / capacity);
+      out.size = 0;
+      for (int start = 0; start < count; start += stride) {
+        int stop = Math.min(start + stride, count);
+        long time = 0;
+        double low = Double.POSITIVE_INFINITY;
+        double high = Double.NEGATIVE_INFINITY;
+        double sum = 0;
+        for (int i = start; i < stop; i++) {
+          double pointMin;
+          double pointAvg;
+          double pointMax;
+          if (first + i < end) {
+            int slot = slot(first + i);
+            time = times[slot];
+            pointMin = min[slot];
+            pointAvg = avg[slot];
+            pointMax = max[slot];
+          } else {
+            time = pending.bucketStart;
+            pointMin = pending.min;
+            pointAvg = pending.average();
+            pointMax = pending.max;
+          }
+          low = Math.min(low, pointMin);
+          high = Math.max(high, pointMax);
+          sum += pointAvg;
+        }
+        int index = out.size++;
+        out.times[index] = time;
+        out.min[index] = low;
+        out.avg[index] = sum / (stop - start);
+        out.max[index] = high;
+      }
+      return out.size;
+    }
+  }
+
+  // The bucket a tier is currently rolling up.
+  private static final class Rollup {
+    private final long bucketMillis;
+    private long bucketStart;
+    private double min;
+    private double max;
+    private double sum;
+    private int count;
+    private Rollup merged;
+
+    Rollup(long bucketMillis) {
+      this.bucketMillis = bucketMillis;
+    }
+
+    boolean isFinishedBy(long timeMillis) {
+      return count > 0 && timeMillis >= bucketStart + bucketMillis;
+    }
+
+    void add(long timeMillis, double minValue, double avgValue, double maxValue) {
+      if (count == 0) {
+        bucketStart = timeMillis - Math.floorMod(timeMillis, bucketMillis);
+        min = minValue;
+        max = maxValue;
+        sum = 0;
+      } else {
+        min = Math.min(min, minValue);
+        max = Math.max(max, maxValue);
+      }
+      sum += avgValue;
+      count++;
+    }
+
+    double average() {
+      return count > 0 ? sum / count : 0;
+    }
+
+    void flushInto(Tier tier) {
+      if (count > 0) {
+        tier.add(bucketStart, min, average(), max);
+      }
+    }
+
+    void reset() {
+      count = 0;
+    }
+
+    // This rollup with `pending` (the finer bucket in progress, which is not
+    // part of it yet) folded in, for queries; reuses one scratch instance.
+    Rollup withPending(Rollup pending) {
+      if (pending.count == 0) {
+        return this;
+      }
+      if (merged == null) {
+        merged = new Rollup(bucketMillis);
+      }
+      merged.bucketStart = bucketStart;
+      merged.min = min;
+      merged.max = max;
+      merged.sum = sum;
+      merged.count = count;
+      merged.add(pending.bucketStart, pending.min, pending.average(), pending.max);
+      return merged;
+    }
+  }
+}
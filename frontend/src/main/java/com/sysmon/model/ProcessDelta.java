@@ -0,0 +1,224 @@
+/*
+ - PROCESS DELTA:
+ - Data model for one answer to GET_PROCESSES_SINCE (or a full process list).
+ - It holds the processes that were added or changed since the requested
+   generation as parallel primitive columns, plus the pids that went away.
+ - A "full" delta replaces everything the client knew before; the
+   generation is what the next request should ask for changes since.
+ - merge() folds two consecutive deltas into one, for consumers that fall
+   behind a stream of pushed deltas and cannot simply drop one.
+ - The answer to a process query (GET_PROCESSES;<query>) is a full delta of
+   just the rows the query selected. It also carries the CPU % the backend
+   measured for each row, since a row may be new to the client, and how
+   many processes matched before the query's limit.
+ - A request for optional counters (see ProcessField) gets them for every
+   process it returns, as running totals.
+*/
+
+package com.sysmon.model;
+
+import com.sysmon.util.IntLongMap;
+import java.util.Arrays;
+
+public class ProcessDelta {
+  private static final int[] NO_PIDS = new int[0];
+
+  private final long generation;
+  private final boolean full;
+  private int size;
+  private int[] pids;
+  private int[] ppids;
+  private String[] userNames;
+  private String[] states;
+  private String[] processNames;
+  private long[] totalTimes;
+  private long[] memRssKb;
+  private int[] removedPids = NO_PIDS;
+  private int removedCount;
+  private double[] cpuPercents;
+  // ProcessField.COUNTER_COUNT per process, when requested.
+  private long[] counters;
+  private int matchedCount = -1;
+
+  public ProcessDelta(long generation, boolean full, int expectedSize) {
+    this.generation = generation;
+    this.full = full;
+    int capacity = Math.max(expectedSize, 16);
+    this.pids = new int[capacity];
+    this.ppids = new int[capacity];
+    this.userNames = new String[capacity];
+    this.states = new String[capacity];
+    this.processNames = new String[capacity];
+    this.totalTimes = new long[capacity];
+    this.memRssKb = new long[capacity];
+  }
+
+  public void addProcess(int pid, int ppid, String userName, String state, String processName, long totalTime,
+      long memRssKb) {
+    if (size == pids.length) {
+      int capacity = size * 2;
+      pids = Arrays.copyOf(pids, capacity);
+      ppids = Arrays.copyOf(ppids, capacity);
+      userNames = Arrays.copyOf(userNames, capacity);
+      states = Arrays.copyOf(states, capacity);
+      processNames = Arrays.copyOf(processNames, capacity);
+      totalTimes = Arrays.copyOf(totalTimes, capacity);
+      this.memRssKb = Arrays.copyOf(this.memRssKb, capacity);
+      if (cpuPercents != null) {
+        cpuPercents = Arrays.copyOf(cpuPercents, capacity);
+      }
+      if (counters != null) {
+        counters = Arrays.copyOf(counters, capacity * ProcessField.COUNTER_COUNT);
+      }
+    }
+    pids[size] = pid;
+    ppids[size] = ppid;
+    userNames[size] = userName;
+    states[size] = state;
+    processNames[size] = processName;
+    totalTimes[size] = totalTime;
+    this.memRssKb[size] = memRssKb;
+    size++;
+  }
+
+  // The backend's CPU % for the process at `index`; set for query results.
+  public void setCpuPercent(int index, double cpuPercent) {
+    if (cpuPercents == null) {
+      cpuPercents = new double[pids.length];
+    }
+    cpuPercents[index] = cpuPercent;
+  }
+
+  public void setCounter(int index, int counter, long value) {
+    if (counters == null) {
+      counters = new long[pids.length * ProcessField.COUNTER_COUNT];
+    }
+    counters[index * ProcessField.COUNTER_COUNT + counter] = value;
+  }
+
+  public void setMatchedCount(int matchedCount) {
+    this.matchedCount = matchedCount;
+  }
+
+  public void addRemoved(int pid) {
+    if (removedCount == removedPids.length) {
+      removedPids = Arrays.copyOf(removedPids, Math.max(16, removedCount * 2));
+    }
+    removedPids[removedCount++] = pid;
+  }
+
+  // Combines `older` and the delta that directly followed it into one delta
+  // with the same effect as applying both in order.
+  public static ProcessDelta merge(ProcessDelta older, ProcessDelta newer) {
+    if (newer.full) {
+      return newer;
+    }
+    ProcessDelta merged = new ProcessDelta(newer.generation, older.full, older.size + newer.size);
+    IntLongMap touched = new IntLongMap(newer.size + newer.removedCount);
+    for (int i = 0; i < newer.size; i++) {
+      merged.addProcess(newer.pids[i], newer.ppids[i], newer.userNames[i], newer.states[i], newer.processNames[i],
+          newer.totalTimes[i], newer.memRssKb[i]);
+      merged.copyCounters(newer, i);
+      touched.put(newer.pids[i], 1L, 0L);
+    }
+    for (int i = 0; i < newer.removedCount; i++) {
+      touched.put(newer.removedPids[i], 1L, 0L);
+      if (!older.full) {
+        merged.addRemoved(newer.removedPids[i]);
+      }
+    }
+    for (int i = 0; i < older.size; i++) {
+      if (!touched.containsKey(older.pids[i])) {
+        merged.addProcess(older.pids[i], older.ppids[i], older.userNames[i], older.states[i], older.processNames[i],
+            older.totalTimes[i], older.memRssKb[i]);
+        merged.copyCounters(older, i);
+      }
+    }
+    for (int i = 0; i < older.removedCount; i++) {
+      if (!touched.containsKey(older.removedPids[i])) {
+        merged.addRemoved(older.removedPids[i]);
+      }
+    }
+    return merged;
+  }
+
+  // Gives the process just added the counters of `source`'s process at
+  // `index`, if it has any.
+  private void copyCounters(ProcessDelta source, int index) {
+    if (source.counters != null) {
+      for (int counter = 0; counter < ProcessField.COUNTER_COUNT; counter++) {
+        setCounter(size - 1, counter, source.counters[index * ProcessField.COUNTER_COUNT + counter]);
+      }
+    }
+  }
+
+  public long getGeneration() {
+    return generation;
+  }
+
+  public boolean isFull() {
+    return full;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int getPid(int index) {
+    return pids[index];
+  }
+
+  public int getPpid(int index) {
+    return ppids[index];
+  }
+
+  public String getUserName(int index) {
+    return userNames[index];
+  }
+
+  public String getState(int index) {
+    return states[index];
+  }
+
+  public String getProcessName(int index) {
+    return processNames[index];
+  }
+
+  public long getTotalTime(int index) {
+    return totalTimes[index];
+  }
+
+  public long getMemRssKb(int index) {
+    return memRssKb[index];
+  }
+
+  public boolean hasCpuPercents() {
+    return cpuPercents != null;
+  }
+
+  public double getCpuPercent(int index) {
+    return cpuPercents[index];
+  }
+
+  public boolean hasCounters() {
+    return counters != null;
+  }
+
+  public long getCounter(int index, int counter) {
+    return counters[index * ProcessField.COUNTER_COUNT + counter];
+  }
+
+  // How many processes the query matched, of which this holds the first
+  // size(); just size() for anything but a query result.
+  public int getMatchedCount() {
+    return matchedCount >= 0 ? matchedCount : size;
+  }
+
+  public int getRemovedCount() {
+    return removedCount;
+  }
+
+  public int getRemovedPid(int index) {
+    return removedPids[index];
+  }
+}
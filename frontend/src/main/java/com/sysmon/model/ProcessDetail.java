@@ -0,0 +1,21 @@
+/*
+ - PROCESS DETAIL:
+ - The expensive per-process stats the backend reads only on request
+   (GET_PROCESS_DETAIL, see backend/src/procDetail.h): command line, cgroup,
+   thread and open file counts, proportional/unique/swapped memory, I/O
+   totals and resource limits.
+ - Counts and sizes the backend could not read (usually for lack of
+   permission) are -1, strings null.
+*/
+
+package com.sysmon.model;
+
+import java.util.List;
+
+public record ProcessDetail(int pid, String commandLine, String cgroup, int threads, int openFiles, long pssKb,
+    long ussKb, long swapKb, long readBytes, long writeBytes, long readChars, long writeChars, List<Limit> limits) {
+
+  // A soft or hard limit of -1 is unlimited.
+  public record Limit(String name, long soft, long hard) {
+  }
+}
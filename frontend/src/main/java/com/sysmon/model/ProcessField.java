@@ -0,0 +1,39 @@
+/*
+ - PROCESS FIELD:
+ - The optional per-process counter groups a process request can ask the
+   backend for (see backend/src/procParser.h). The backend only reads a
+   group while someone asks for it, so the table requests just the groups
+   of the columns it shows.
+ - Every group is two running totals; in a ProcessDelta group g's are
+   counters 2g and 2g + 1, named by the constants below.
+*/
+
+package com.sysmon.model;
+
+public enum ProcessField {
+  IO("io"),
+  CONTEXT_SWITCHES("ctxsw"),
+  PAGE_FAULTS("faults");
+
+  public static final int READ_BYTES = 0;
+  public static final int WRITE_BYTES = 1;
+  public static final int VOLUNTARY_SWITCHES = 2;
+  public static final int INVOLUNTARY_SWITCHES = 3;
+  public static final int MINOR_FAULTS = 4;
+  public static final int MAJOR_FAULTS = 5;
+  public static final int COUNTER_COUNT = 6;
+
+  private final String wireName;
+
+  ProcessField(String wireName) {
+    this.wireName = wireName;
+  }
+
+  public String wireName() {
+    return wireName;
+  }
+
+  public int firstCounter() {
+    return ordinal() * 2;
+  }
+}
@@ -0,0 +1,36 @@
+/*
+ - PROCESS FILTER:
+ - A parsed search box query. Words are matched as case-insensitive
+   substrings of the command name (all of them must match); "user:<name>"
+   keeps one user's processes and "state:<states>" those in any of the
+   given states, e.g. state:RD.
+*/
+
+package com.sysmon.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+record ProcessFilter(String user, String states, List<String> terms) {
+
+  // Null for a query that filters nothing.
+  static ProcessFilter parse(String text) {
+    String user = null;
+    String states = null;
+    List<String> terms = new ArrayList<>();
+    for (String word : text.trim().split("\\s+")) {
+      if (word.startsWith("user:") && word.length() > 5) {
+        user = word.substring(5);
+      } else if (word.startsWith("state:") && word.length() > 6) {
+        states = word.substring(6).toUpperCase(Locale.ROOT);
+      } else if (!word.isEmpty()) {
+        terms.add(word.toLowerCase(Locale.ROOT));
+      }
+    }
+    if (user == null && states == null && terms.isEmpty()) {
+      return null;
+    }
+    return new ProcessFilter(user, states, List.copyOf(terms));
+  }
+}
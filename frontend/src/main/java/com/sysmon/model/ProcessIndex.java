@@ -0,0 +1,270 @@
+/*
+ - PROCESS INDEX:
+ - Search indexes over ProcessModel's processes, kept up to date as rows are
+   added, changed and removed so a search never has to scan every row.
+ - Every indexed process gets a slot number. Users and states map to a
+   BitSet of slots; command names are split into lower-case trigrams, each
+   with a posting list of the slots whose name contains it.
+ - A name search walks only the shortest posting list among the trigrams of
+   its terms and confirms each candidate with the user/state bits and a
+   plain contains() on its name. Terms shorter than three characters fall
+   back to checking every candidate left by the user/state filters.
+ - Posting lists are append-only: a process that leaves a list (it exited
+   or was renamed) stays in it until the list is compacted, which happens
+   once it holds twice as many entries as live names. Candidates are always
+   checked against the current name anyway.
+*/
+
+package com.sysmon.model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+final class ProcessIndex {
+  private ProcessInfo[] processes = new ProcessInfo[1024];
+  private String[] names = new String[1024];
+  private String[] lowerNames = new String[1024];
+  private String[] users = new String[1024];
+  private String[] states = new String[1024];
+  private int[] freeSlots = new int[64];
+  private int freeCount;
+  private int slotCount;
+  private final BitSet live = new BitSet();
+  private final Map<String, BitSet> byUser = new HashMap<>();
+  private final Map<String, BitSet> byState = new HashMap<>();
+  private final Map<Long, Postings> byTrigram = new HashMap<>();
+
+  // Slots of every process whose name contains one trigram. `liveCount` is
+  // how many of them still do.
+  private static final class Postings {
+    int[] slots = new int[4];
+    int size;
+    int liveCount;
+  }
+
+  ProcessInfo get(int slot) {
+    return processes[slot];
+  }
+
+  BitSet live() {
+    return live;
+  }
+
+  void add(ProcessInfo process) {
+    int slot = freeCount > 0 ? freeSlots[--freeCount] : slotCount++;
+    if (slot == processes.length) {
+      int capacity = slot * 2;
+      processes = Arrays.copyOf(processes, capacity);
+      names = Arrays.copyOf(names, capacity);
+      lowerNames = Arrays.copyOf(lowerNames, capacity);
+      users = Arrays.copyOf(users, capacity);
+      states = Arrays.copyOf(states, capacity);
+    }
+    process.slot = slot;
+    processes[slot] = process;
+    live.set(slot);
+    indexUser(slot, process.getUserName());
+    indexState(slot, process.getState());
+    indexName(slot, process.getProcessName());
+  }
+
+  // Re-indexes whatever of the process's user, state and name changed with
+  // its last update. Returns true if anything did.
+  boolean update(ProcessInfo process) {
+    int slot = process.slot;
+    boolean changed = false;
+    if (!process.getUserName().equals(users[slot])) {
+      byUser.get(users[slot]).clear(slot);
+      indexUser(slot, process.getUserName());
+      changed = true;
+    }
+    if (!process.getState().equals(states[slot])) {
+      byState.get(states[slot]).clear(slot);
+      indexState(slot, process.getState());
+      changed = true;
+    }
+    if (!process.getProcessName().equals(names[slot])) {
+      unindexName(slot);
+      indexName(slot, process.getProcessName());
+      changed = true;
+    }
+    return changed;
+  }
+
+  void remove(ProcessInfo process) {
+    int slot = process.slot;
+    byUser.get(users[slot]).clear(slot);
+    byState.get(states[slot]).clear(slot);
+    unindexName(slot);
+    live.clear(slot);
+    processes[slot] = null;
+    users[slot] = null;
+    states[slot] = null;
+    process.slot = -1;
+    if (freeCount == freeSlots.length) {
+      freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+    }
+    freeSlots[freeCount++] = slot;
+  }
+
+  boolean matches(ProcessFilter filter, int slot) {
+    if (filter.user() != null && !filter.user().equals(users[slot])) {
+      return false;
+    }
+    if (filter.states() != null && filter.states().indexOf(states[slot]) < 0) {
+      return false;
+    }
+    for (String term : filter.terms()) {
+      if (!lowerNames[slot].contains(term)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Sets the slot of every process the filter matches in `result`.
+  void search(ProcessFilter filter, BitSet result) {
+    result.clear();
+    Postings shortest = null;
+    for (String term : filter.terms()) {
+      for (int i = 0; i + 3 <= term.length(); i++) {
+        Postings postings = byTrigram.get(trigram(term, i));
+        if (postings == null) {
+          return;
+        }
+        if (shortest == null || postings.size < shortest.size) {
+          shortest = postings;
+        }
+      }
+    }
+    if (shortest != null) {
+      for (int i = 0; i < shortest.size; i++) {
+        int slot = shortest.slots[i];
+        if (live.get(slot) && matches(filter, slot)) {
+          result.set(slot);
+        }
+      }
+      return;
+    }
+    BitSet candidates = candidates(filter);
+    for (int slot = candidates.nextSetBit(0); slot >= 0; slot = candidates.nextSetBit(slot + 1)) {
+      if (matches(filter, slot)) {
+        result.set(slot);
+      }
+    }
+  }
+
+  // Live slots that pass the user and state filters, without copying a
+  // BitSet when there are none.
+  private BitSet candidates(ProcessFilter filter) {
+    if (filter.user() == null && filter.states() == null) {
+      return live;
+    }
+    BitSet candidates = new BitSet();
+    if (filter.states() != null) {
+      for (int i = 0; i < filter.states().length(); i++) {
+        BitSet inState = byState.get(filter.states().substring(i, i + 1));
+        if (inState != null) {
+          candidates.or(inState);
+        }
+      }
+    } else {
+      candidates.or(live);
+    }
+    if (filter.user() != null) {
+      BitSet ofUser = byUser.get(filter.user());
+      if (ofUser == null) {
+        candidates.clear();
+      } else {
+        candidates.and(ofUser);
+      }
+    }
+    return candidates;
+  }
+
+  private void indexUser(int slot, String user) {
+    users[slot] = user;
+    byUser.computeIfAbsent(user, _ -> new BitSet()).set(slot);
+  }
+
+  private void indexState(int slot, String state) {
+    states[slot] = state;
+    byState.computeIfAbsent(state, _ -> new BitSet()).set(slot);
+  }
+
+  private void indexName(int slot, String name) {
+    String lowerName = name.toLowerCase(Locale.ROOT);
+    names[slot] = name;
+    lowerNames[slot] = lowerName;
+    for (int i = 0; i + 3 <= lowerName.length(); i++) {
+      if (firstOccurrence(lowerName, i)) {
+        Postings postings = byTrigram.computeIfAbsent(trigram(lowerName, i), _ -> new Postings());
+        if (postings.size == postings.slots.length) {
+          if (postings.size >= 2 * postings.liveCount + 16) {
+            compact(trigram(lowerName, i), postings, slot);
+          }
+          if (postings.size == postings.slots.length) {
+            postings.slots = Arrays.copyOf(postings.slots, postings.size * 2);
+          }
+        }
+        postings.slots[postings.size++] = slot;
+        postings.liveCount++;
+      }
+    }
+  }
+
+  private void unindexName(int slot) {
+    String lowerName = lowerNames[slot];
+    for (int i = 0; i + 3 <= lowerName.length(); i++) {
+      if (firstOccurrence(lowerName, i)) {
+        byTrigram.get(trigram(lowerName, i)).liveCount--;
+      }
+    }
+    names[slot] = null;
+    lowerNames[slot] = null;
+  }
+
+  // Drops the entries of slots that no longer (or twice) hold a name with
+  // this trigram, and of `indexing`, which is about to be appended.
+  private void compact(long key, Postings postings, int indexing) {
+    BitSet seen = new BitSet();
+    int kept = 0;
+    for (int i = 0; i < postings.size; i++) {
+      int slot = postings.slots[i];
+      if (slot != indexing && live.get(slot) && lowerNames[slot] != null && !seen.get(slot)
+          && containsTrigram(lowerNames[slot], key)) {
+        seen.set(slot);
+        postings.slots[kept++] = slot;
+      }
+    }
+    postings.size = kept;
+  }
+
+  private static boolean containsTrigram(String lowerName, long key) {
+    for (int i = 0; i + 3 <= lowerName.length(); i++) {
+      if (trigram(lowerName, i) == key) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Whether the trigram at `index` is its first occurrence in the name, so
+  // a name is counted once per distinct trigram.
+  private static boolean firstOccurrence(String lowerName, int index) {
+    long key = trigram(lowerName, index);
+    for (int i = 0; i < index; i++) {
+      if (trigram(lowerName, i) == key) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long trigram(String text, int index) {
+    return (long) text.charAt(index) << 32 | (long) text.charAt(index + 1) << 16 | text.charAt(index + 2);
+  }
+}
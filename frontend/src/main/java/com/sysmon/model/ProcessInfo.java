@@ -5,6 +5,12 @@
    totalTime, memRssKb).
  - It also contains the JavaFX Properties (e.g., cpuPercent, memRssString) that
    the TableView columns bind to for automatic UI updates.
+ - Instances live as long as their pid does: ProcessModel updates them in
+   place on every refresh, so update() only touches the properties whose
+   value actually changed.
+ - The per-second rates of the optional counters (see ProcessField) get
+   their properties only once one is set, so rows cost nothing extra while
+   those columns are hidden.
 */
 
 package com.sysmon.model;
@@ -22,11 +28,16 @@ public class ProcessInfo {
   private final StringProperty userName;
   private final StringProperty state;
   private final StringProperty processName;
-  private final long totalTime;
-  private final long memRssKb;
+  private long totalTime;
+  private long memRssKb;
   private final DoubleProperty cpuPercent;
   private final DoubleProperty memPercent;
   private final StringProperty memRssString;
+  private DoubleProperty[] counterRates;
+  // Position in ProcessModel's row list, kept up to date by the model.
+  int rowIndex = -1;
+  // Slot in ProcessModel's search index, or -1 while not indexed.
+  int slot = -1;
 
   public ProcessInfo(int pid, int ppid, String userName, String state, String processName, long totalTime,
       long memRssKb) {
@@ -42,6 +53,37 @@ public class ProcessInfo {
     this.memRssString = new SimpleStringProperty("0.0 MB");
   }
 
+  // Reuses this instance for a new refresh of the same pid, or for a new pid
+  // when it comes from ProcessModel's pool of released rows.
+  public void update(int pid, int ppid, String userName, String state, String processName, long totalTime,
+      long memRssKb) {
+    this.pid.set(pid);
+    this.ppid.set(ppid);
+    setIfChanged(this.userName, userName);
+    setIfChanged(this.state, state);
+    setIfChanged(this.processName, processName);
+    this.totalTime = totalTime;
+    this.memRssKb = memRssKb;
+  }
+
+  // Resets the derived columns of a pooled instance before it is reused.
+  void reset() {
+    cpuPercent.set(0.0);
+    memPercent.set(0.0);
+    memRssString.set("0.0 MB");
+    if (counterRates != null) {
+      for (DoubleProperty rate : counterRates) {
+        rate.set(0.0);
+      }
+    }
+  }
+
+  private static void setIfChanged(StringProperty property, String value) {
+    if (!value.equals(property.get())) {
+      property.set(value);
+    }
+  }
+
   public int getPid() {
     return pid.get();
   }
@@ -119,10 +161,31 @@ public class ProcessInfo {
   }
 
   public void setMemRssString(String value) {
-    this.memRssString.set(value);
+    setIfChanged(this.memRssString, value);
   }
 
   public StringProperty memRssStringProperty() {
     return memRssString;
   }
+
+  public double getCounterRate(int counter) {
+    return counterRates != null ? counterRates[counter].get() : 0.0;
+  }
+
+  public void setCounterRate(int counter, double value) {
+    if (counterRates != null || value != 0.0) {
+      counterRateProperty(counter).set(value);
+    }
+  }
+
+  // The rate per second of one of ProcessField's counters.
+  public DoubleProperty counterRateProperty(int counter) {
+    if (counterRates == null) {
+      counterRates = new DoubleProperty[ProcessField.COUNTER_COUNT];
+      for (int i = 0; i < counterRates.length; i++) {
+        counterRates[i] = new SimpleDoubleProperty(0.0);
+      }
+    }
+    return counterRates[counter];
+  }
 }
@@ -0,0 +1,340 @@
+/*
+ - PROCESS TABLE MODEL:
+ - Pid-indexed model behind the process TableView.
+ - It applies ProcessDelta updates to one long-lived ObservableList with
+   fine-grained changes instead of replacing the whole list every refresh,
+   so the table only re-lays out the rows that actually changed.
+ - Every pid keeps its ProcessInfo for as long as it lives: refreshes update
+   the existing instance through its properties, which also keeps the table
+   selection on it. Rows of exited pids go back to a small pool and are
+   reused for the next new pids instead of allocating fresh property sets.
+ - The pids each apply() removed stay available until the next call, for
+   views that keep their own per-pid state (see ProcessTree).
+ - Rows whose values changed in place are reported to the list's listeners
+   (the SortedList in front of the table) by rowsUpdated(), as a single
+   update change over the range of rows they span: SortedList re-sorts
+   once per contiguous update, so scattered single-row updates would sort
+   the whole list once per row. An extractor on the sortable columns did
+   the same per property change, after searching the list for the row each
+   time, which made a refresh cost O(changed x rows).
+ - setFilter() narrows the row list to the processes that match a search
+   query (see ProcessFilter). Matching goes through a ProcessIndex kept up
+   to date by every apply(), so a new query costs about the size of its
+   result and a refresh only re-checks the rows whose user, state or name
+   changed. The pid lookups, size() and the returned changes still cover
+   every process.
+*/
+
+package com.sysmon.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import javafx.collections.ModifiableObservableListBase;
+import javafx.collections.ObservableList;
+
+public class ProcessModel {
+  private static final int MAX_POOLED = 1024;
+
+  private final Rows rows = new Rows();
+  private final Map<Integer, ProcessInfo> byPid = new HashMap<>();
+  private final ArrayDeque<ProcessInfo> pool = new ArrayDeque<>();
+  // Scratch collections reused by every apply() call.
+  private final Set<ProcessInfo> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+  private final Predicate<ProcessInfo> isRemoved = removed::contains;
+  private final List<ProcessInfo> upserts = new ArrayList<>();
+  private final List<ProcessInfo> added = new ArrayList<>();
+  private int[] removedPids = new int[64];
+  private int removedCount;
+  private final ProcessIndex index = new ProcessIndex();
+  private ProcessFilter filter;
+  // Slots of the processes in the row list.
+  private final BitSet visible = new BitSet();
+  private final BitSet matching = new BitSet();
+  private final Set<ProcessInfo> hidden = Collections.newSetFromMap(new IdentityHashMap<>());
+  private final Predicate<ProcessInfo> isHidden = hidden::contains;
+
+  // The processes that pass the search filter (all of them without one).
+  public ObservableList<ProcessInfo> getRows() {
+    return rows;
+  }
+
+  // Shows only the processes that match `query` (see ProcessFilter); a
+  // blank query shows all of them again.
+  public void setFilter(String query) {
+    ProcessFilter next = ProcessFilter.parse(query);
+    if (next == null ? filter == null : next.equals(filter)) {
+      return;
+    }
+    filter = next;
+    if (filter == null) {
+      matching.clear();
+      matching.or(index.live());
+    } else {
+      index.search(filter, matching);
+    }
+    List<ProcessInfo> shown = new ArrayList<>(matching.cardinality());
+    for (int slot = matching.nextSetBit(0); slot >= 0; slot = matching.nextSetBit(slot + 1)) {
+      shown.add(index.get(slot));
+    }
+    rows.setRows(shown);
+    visible.clear();
+    visible.or(matching);
+  }
+
+  public ProcessInfo get(int pid) {
+    return byPid.get(pid);
+  }
+
+  public int size() {
+    return byPid.size();
+  }
+
+  // The pids the last apply() removed.
+  public int getRemovedCount() {
+    return removedCount;
+  }
+
+  public int getRemovedPid(int index) {
+    return removedPids[index];
+  }
+
+  // Returns the rows the delta added or updated so the caller can fill in
+  // their derived columns (CPU %, MEM %, RSS text). The list is reused by the
+  // next call.
+  public List<ProcessInfo> apply(ProcessDelta delta) {
+    removed.clear();
+    upserts.clear();
+    added.clear();
+    hidden.clear();
+    removedCount = 0;
+    if (delta.isFull()) {
+      // A full snapshot lists every live pid; everything else has exited.
+      Map<Integer, ProcessInfo> previous = new HashMap<>(byPid);
+      for (int i = 0; i < delta.size(); i++) {
+        previous.remove(delta.getPid(i));
+      }
+      for (ProcessInfo process : previous.values()) {
+        byPid.remove(process.getPid());
+        removed.add(process);
+        addRemovedPid(process.getPid());
+      }
+    } else {
+      for (int i = 0; i < delta.getRemovedCount(); i++) {
+        ProcessInfo process = byPid.remove(delta.getRemovedPid(i));
+        if (process != null) {
+          removed.add(process);
+          addRemovedPid(process.getPid());
+        }
+      }
+    }
+    if (!removed.isEmpty()) {
+      for (ProcessInfo process : removed) {
+        visible.clear(process.slot);
+        index.remove(process);
+      }
+      rows.removeMatching(isRemoved);
+      release();
+    }
+
+    for (int i = 0; i < delta.size(); i++) {
+      int pid = delta.getPid(i);
+      ProcessInfo process = byPid.get(pid);
+      if (process == null) {
+        process = acquire(delta, i);
+        byPid.put(pid, process);
+        index.add(process);
+        if (filter == null || index.matches(filter, process.slot)) {
+          visible.set(process.slot);
+          added.add(process);
+        }
+      } else {
+        process.update(pid, delta.getPpid(i), delta.getUserName(i), delta.getState(i), delta.getProcessName(i),
+            delta.getTotalTime(i), delta.getMemRssKb(i));
+        if (index.update(process) && filter != null) {
+          refilter(process);
+        }
+      }
+      upserts.add(process);
+    }
+    if (!hidden.isEmpty()) {
+      rows.removeMatching(isHidden);
+    }
+    if (!added.isEmpty()) {
+      rows.addAll(added);
+    }
+    return upserts;
+  }
+
+  // Tells the list's listeners that the rows the last apply() added or
+  // updated, and `alsoUpdated`, changed in place. Called once the caller
+  // has set their derived columns.
+  public void rowsUpdated(List<ProcessInfo> alsoUpdated) {
+    rows.updated(upserts, alsoUpdated);
+  }
+
+  // Shows or hides a row whose user, state or name changed.
+  private void refilter(ProcessInfo process) {
+    boolean matches = index.matches(filter, process.slot);
+    if (matches && !visible.get(process.slot)) {
+      visible.set(process.slot);
+      added.add(process);
+    } else if (!matches && visible.get(process.slot)) {
+      visible.clear(process.slot);
+      hidden.add(process);
+    }
+  }
+
+  private void addRemovedPid(int pid) {
+    if (removedCount == removedPids.length) {
+      removedPids = Arrays.copyOf(removedPids, removedCount * 2);
+    }
+    removedPids[removedCount++] = pid;
+  }
+
+  private ProcessInfo acquire(ProcessDelta delta, int i) {
+    ProcessInfo process = pool.poll();
+    if (process == null) {
+      return new ProcessInfo(delta.getPid(i), delta.getPpid(i), delta.getUserName(i), delta.getState(i),
+          delta.getProcessName(i), delta.getTotalTime(i), delta.getMemRssKb(i));
+    }
+    process.update(delta.getPid(i), delta.getPpid(i), delta.getUserName(i), delta.getState(i),
+        delta.getProcessName(i), delta.getTotalTime(i), delta.getMemRssKb(i));
+    return process;
+  }
+
+  private void release() {
+    for (ProcessInfo process : removed) {
+      if (pool.size() >= MAX_POOLED) {
+        return;
+      }
+      process.reset();
+      pool.add(process);
+    }
+  }
+
+  // The row list. Every row knows its own index, so update changes can be
+  // fired without searching for it.
+  private static final class Rows extends ModifiableObservableListBase<ProcessInfo> {
+    private final ArrayList<ProcessInfo> list = new ArrayList<>();
+    // Rows from this index on may have moved since their index was set.
+    private int firstStale;
+
+    @Override
+    public ProcessInfo get(int index) {
+      return list.get(index);
+    }
+
+    @Override
+    public int size() {
+      return list.size();
+    }
+
+    @Override
+    protected void doAdd(int index, ProcessInfo element) {
+      list.add(index, element);
+      if (index == list.size() - 1 && firstStale >= index) {
+        element.rowIndex = index;
+        firstStale = list.size();
+      } else {
+        firstStale = Math.min(firstStale, index);
+      }
+    }
+
+    @Override
+    protected ProcessInfo doSet(int index, ProcessInfo element) {
+      firstStale = Math.min(firstStale, index);
+      return list.set(index, element);
+    }
+
+    @Override
+    protected ProcessInfo doRemove(int index) {
+      firstStale = Math.min(firstStale, index);
+      return list.remove(index);
+    }
+
+    // Replaces every row in a single change.
+    void setRows(List<ProcessInfo> rows) {
+      beginChange();
+      try {
+        if (!list.isEmpty()) {
+          nextRemove(0, new ArrayList<>(list));
+        }
+        list.clear();
+        list.addAll(rows);
+        if (!list.isEmpty()) {
+          nextAdd(0, list.size());
+        }
+      } finally {
+        endChange();
+      }
+      firstStale = 0;
+    }
+
+    // Removes every matching row in a single change.
+    void removeMatching(Predicate<ProcessInfo> predicate) {
+      beginChange();
+      try {
+        for (int i = list.size() - 1; i >= 0; i--) {
+          if (predicate.test(list.get(i))) {
+            remove(i);
+          }
+        }
+      } finally {
+        endChange();
+      }
+    }
+
+    void updated(List<ProcessInfo> updated, List<ProcessInfo> alsoUpdated) {
+      for (int i = firstStale; i < list.size(); i++) {
+        list.get(i).rowIndex = i;
+      }
+      firstStale = list.size();
+      int from = Math.min(firstRow(updated, list.size()), firstRow(alsoUpdated, list.size()));
+      int to = Math.max(lastRow(updated, -1), lastRow(alsoUpdated, -1));
+      if (from > to) {
+        return;
+      }
+      beginChange();
+      try {
+        for (int i = from; i <= to; i++) {
+          nextUpdate(i);
+        }
+      } finally {
+        endChange();
+      }
+    }
+
+    private int firstRow(List<ProcessInfo> updated, int first) {
+      for (int i = 0; i < updated.size(); i++) {
+        if (isRow(updated.get(i))) {
+          first = Math.min(first, updated.get(i).rowIndex);
+        }
+      }
+      return first;
+    }
+
+    private int lastRow(List<ProcessInfo> updated, int last) {
+      for (int i = 0; i < updated.size(); i++) {
+        if (isRow(updated.get(i))) {
+          last = Math.max(last, updated.get(i).rowIndex);
+        }
+      }
+      return last;
+    }
+
+    // Rows removed since (and pooled) keep a stale index.
+    private boolean isRow(ProcessInfo process) {
+      int index = process.rowIndex;
+      return index >= 0 && index < list.size() && list.get(index) == process;
+    }
+  }
+}
@@ -0,0 +1,18 @@
+/*
+ - SYSTEM SNAPSHOT:
+ - One answer to GET_SNAPSHOT: every host metric and the processes, taken by
+   the backend in a single pass (see backend/src/main.c), so the system
+   CPU time in `system` is the one to divide the processes' CPU times by.
+ - `takenMillis` is the backend's monotonic clock at that pass (-1 when an
+   older backend answered the separate commands instead, or for a pushed
+   snapshot); two snapshots with the same value hold the same data.
+ - A push of cpu,processes (see IPCClient.subscribeProcessSnapshots) is one
+   too, with only the CPU fields of `system` set.
+ - `processes` is a delta since the generation asked for, or the result of
+   the process query asked for.
+*/
+
+package com.sysmon.model;
+
+public record SystemSnapshot(long takenMillis, SystemUpdate system, ProcessDelta processes) {
+}
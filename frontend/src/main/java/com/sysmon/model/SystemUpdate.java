@@ -3,8 +3,17 @@
  - Data model for a system-wide statistics snapshot.
  - This class holds all the global data fetched from the C backend (e.g.,
    aggregate CPU usage, memory stats, network speeds, disk usage).
+ - Per-core CPU shares (user, system, iowait and steal, in percent of that
+   core) are kept in parallel primitive arrays indexed 0..coreCount-1, so
+   hosts with hundreds of cores cost no object per core; getCoreId() gives
+   each entry's cpuN number.
+ - Per-interface network rates (from /proc/net/dev) and per-device disk I/O
+   rates (from /proc/diskstats) are kept the same way, indexed
+   0..interfaceCount-1 and 0..diskDeviceCount-1, with the interface or
+   device name alongside.
  - It also holds the raw `systemTotalTime` needed by the MainController
-   to calculate per-process CPU deltas.
+   to calculate per-process CPU deltas, and the wall-clock time the sample
+   was taken (kept when a recording is replayed).
 */
 
 package com.sysmon.model;
@@ -23,6 +32,36 @@ public class SystemUpdate {
   private long diskUsed;
   private long diskTotal;
   private long systemTotalTime;
+  private long sampleTime;
+  private int coreCount;
+  private int[] coreIds = new int[0];
+  private double[] coreUser = new double[0];
+  private double[] coreSystem = new double[0];
+  private double[] coreIowait = new double[0];
+  private double[] coreSteal = new double[0];
+  private int interfaceCount;
+  private String[] interfaceNames = new String[0];
+  private long[] interfaceRxBytes = new long[0];
+  private long[] interfaceTxBytes = new long[0];
+  private long[] interfaceRxPackets = new long[0];
+  private long[] interfaceTxPackets = new long[0];
+  private long[] interfaceRxErrors = new long[0];
+  private long[] interfaceTxErrors = new long[0];
+  private int diskDeviceCount;
+  private String[] diskDeviceNames = new String[0];
+  private long[] diskReadBytes = new long[0];
+  private long[] diskWriteBytes = new long[0];
+  private long[] diskReads = new long[0];
+  private long[] diskWrites = new long[0];
+  private double[] diskUtilization = new double[0];
+
+  public long getSampleTime() {
+    return sampleTime;
+  }
+
+  public void setSampleTime(long sampleTime) {
+    this.sampleTime = sampleTime;
+  }
 
   public long getSystemTotalTime() {
     return systemTotalTime;
@@ -127,4 +166,164 @@ public class SystemUpdate {
   public void setDiskTotal(long diskTotal) {
     this.diskTotal = diskTotal;
   }
+
+  public int getCoreCount() {
+    return coreCount;
+  }
+
+  // Sizes the per-core arrays; fill them in with setCore().
+  public void setCoreCount(int coreCount) {
+    if (coreIds.length != coreCount) {
+      coreIds = new int[coreCount];
+      coreUser = new double[coreCount];
+      coreSystem = new double[coreCount];
+      coreIowait = new double[coreCount];
+      coreSteal = new double[coreCount];
+    }
+    this.coreCount = coreCount;
+  }
+
+  public void setCore(int index, int id, double user, double system, double iowait, double steal) {
+    coreIds[index] = id;
+    coreUser[index] = user;
+    coreSystem[index] = system;
+    coreIowait[index] = iowait;
+    coreSteal[index] = steal;
+  }
+
+  public int getCoreId(int index) {
+    return coreIds[index];
+  }
+
+  public double getCoreUser(int index) {
+    return coreUser[index];
+  }
+
+  public double getCoreSystem(int index) {
+    return coreSystem[index];
+  }
+
+  public double getCoreIowait(int index) {
+    return coreIowait[index];
+  }
+
+  public double getCoreSteal(int index) {
+    return coreSteal[index];
+  }
+
+  // Everything but idle time.
+  public double getCoreBusy(int index) {
+    return coreUser[index] + coreSystem[index] + coreIowait[index] + coreSteal[index];
+  }
+
+  public int getInterfaceCount() {
+    return interfaceCount;
+  }
+
+  // Sizes the per-interface arrays; fill them in with setInterface().
+  public void setInterfaceCount(int interfaceCount) {
+    if (interfaceNames.length != interfaceCount) {
+      interfaceNames = new String[interfaceCount];
+      interfaceRxBytes = new long[interfaceCount];
+      interfaceTxBytes = new long[interfaceCount];
+      interfaceRxPackets = new long[interfaceCount];
+      interfaceTxPackets = new long[interfaceCount];
+      interfaceRxErrors = new long[interfaceCount];
+      interfaceTxErrors = new long[interfaceCount];
+    }
+    this.interfaceCount = interfaceCount;
+  }
+
+  // Bytes and packets are per second; errors are totals since boot.
+  public void setInterface(int index, String name, long rxBytes, long txBytes, long rxPackets, long txPackets,
+      long rxErrors, long txErrors) {
+    interfaceNames[index] = name;
+    interfaceRxBytes[index] = rxBytes;
+    interfaceTxBytes[index] = txBytes;
+    interfaceRxPackets[index] = rxPackets;
+    interfaceTxPackets[index] = txPackets;
+    interfaceRxErrors[index] = rxErrors;
+    interfaceTxErrors[index] = txErrors;
+  }
+
+  public String getInterfaceName(int index) {
+    return interfaceNames[index];
+  }
+
+  public long getInterfaceRxBytes(int index) {
+    return interfaceRxBytes[index];
+  }
+
+  public long getInterfaceTxBytes(int index) {
+    return interfaceTxBytes[index];
+  }
+
+  public long getInterfaceRxPackets(int index) {
+    return interfaceRxPackets[index];
+  }
+
+  public long getInterfaceTxPackets(int index) {
+    return interfaceTxPackets[index];
+  }
+
+  public long getInterfaceRxErrors(int index) {
+    return interfaceRxErrors[index];
+  }
+
+  public long getInterfaceTxErrors(int index) {
+    return interfaceTxErrors[index];
+  }
+
+  public int getDiskDeviceCount() {
+    return diskDeviceCount;
+  }
+
+  // Sizes the per-device arrays; fill them in with setDiskDevice().
+  public void setDiskDeviceCount(int diskDeviceCount) {
+    if (diskDeviceNames.length != diskDeviceCount) {
+      diskDeviceNames = new String[diskDeviceCount];
+      diskReadBytes = new long[diskDeviceCount];
+      diskWriteBytes = new long[diskDeviceCount];
+      diskReads = new long[diskDeviceCount];
+      diskWrites = new long[diskDeviceCount];
+      diskUtilization = new double[diskDeviceCount];
+    }
+    this.diskDeviceCount = diskDeviceCount;
+  }
+
+  // Bytes and operations are per second; utilization is the percentage of
+  // the interval the device was busy.
+  public void setDiskDevice(int index, String name, long readBytes, long writeBytes, long reads, long writes,
+      double utilization) {
+    diskDeviceNames[index] = name;
+    diskReadBytes[index] = readBytes;
+    diskWriteBytes[index] = writeBytes;
+    diskReads[index] = reads;
+    diskWrites[index] = writes;
+    diskUtilization[index] = utilization;
+  }
+
+  public String getDiskDeviceName(int index) {
+    return diskDeviceNames[index];
+  }
+
+  public long getDiskReadBytes(int index) {
+    return diskReadBytes[index];
+  }
+
+  public long getDiskWriteBytes(int index) {
+    return diskWriteBytes[index];
+  }
+
+  public long getDiskReads(int index) {
+    return diskReads[index];
+  }
+
+  public long getDiskWrites(int index) {
+    return diskWrites[index];
+  }
+
+  public double getDiskUtilization(int index) {
+    return diskUtilization[index];
+  }
 }
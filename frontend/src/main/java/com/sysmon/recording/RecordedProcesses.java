@@ -0,0 +1,99 @@
+/*
+ - RECORDED PROCESSES:
+ - The last recorded values of every live pid, which process records are
+   delta-encoded against. The recorder and the replay each keep one and
+   update it the same way, record by record, so both sides always agree on
+   the baseline.
+ - Values live in parallel primitive arrays indexed by a slot; an IntLongMap
+   maps pids to slots and freed slots are reused, so a long recording does
+   not allocate once the table has grown to the process count.
+*/
+
+package com.sysmon.recording;
+
+import com.sysmon.util.IntLongMap;
+import java.util.Arrays;
+
+final class RecordedProcesses {
+  private static final int FREE = -1;
+
+  private final IntLongMap slots = new IntLongMap();
+  int[] pids = new int[0];
+  int[] ppids = new int[0];
+  int[] userIds = new int[0];
+  int[] nameIds = new int[0];
+  byte[] states = new byte[0];
+  long[] totalTimes = new long[0];
+  long[] memRssKb = new long[0];
+  private int[] freeSlots = new int[0];
+  private int freeCount;
+  private int used;
+
+  int size() {
+    return slots.size();
+  }
+
+  // Slots below this bound may be live; see isLive().
+  int slotBound() {
+    return used;
+  }
+
+  boolean isLive(int slot) {
+    return pids[slot] != FREE;
+  }
+
+  // The pid's slot, or -1 if it has no recorded values yet.
+  int slot(int pid) {
+    return (int) slots.get(pid, -1L);
+  }
+
+  // Adds a pid with all values zero and returns its slot.
+  int add(int pid) {
+    int slot;
+    if (freeCount > 0) {
+      slot = freeSlots[--freeCount];
+    } else {
+      if (used == pids.length) {
+        grow(Math.max(256, used * 2));
+      }
+      slot = used++;
+    }
+    pids[slot] = pid;
+    ppids[slot] = 0;
+    userIds[slot] = 0;
+    nameIds[slot] = 0;
+    states[slot] = 0;
+    totalTimes[slot] = 0;
+    memRssKb[slot] = 0;
+    slots.put(pid, slot, -1L);
+    return slot;
+  }
+
+  void remove(int pid) {
+    int slot = slot(pid);
+    if (slot < 0) {
+      return;
+    }
+    slots.remove(pid);
+    pids[slot] = FREE;
+    freeSlots[freeCount++] = slot;
+  }
+
+  void clear() {
+    slots.clear();
+    Arrays.fill(pids, 0, used, FREE);
+    used = 0;
+    freeCount = 0;
+  }
+
+  private void grow(int capacity) {
+    pids = Arrays.copyOf(pids, capacity);
+    ppids = Arrays.copyOf(ppids, capacity);
+    userIds = Arrays.copyOf(userIds, capacity);
+    nameIds = Arrays.copyOf(nameIds, capacity);
+    states = Arrays.copyOf(states, capacity);
+    totalTimes = Arrays.copyOf(totalTimes, capacity);
+    memRssKb = Arrays.copyOf(memRssKb, capacity);
+    freeSlots = Arrays.copyOf(freeSlots, capacity);
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ - RECORDING FORMAT:
+ - Layout of the segment files written by SnapshotRecorder and read back by
+   SnapshotReplay, plus the varint helpers both sides encode with.
+ - A segment starts with a fixed header and a time index of keyframes
+   (time, offset), followed by the records. Every record is a header
+   (length, type, flags, time) and a body; the length is written last, so a
+   zero length marks the end of the data even if the writer died halfway.
+ - SYSTEM records hold the fields of the metric groups in their bitmask
+   (same bits as the backend's SUBSCRIBE metrics); per-core CPU shares are
+   varints in tenths of a percent, and per-interface and per-device rates
+   are varints after the interface or device name (a varint length and
+   its UTF-8 bytes). PROCESSES records hold a
+   process delta whose per-process fields are themselves delta-encoded
+   against the last recorded values of that pid; user and process names
+   are written once per keyframe and referenced by id afterwards.
+ - A keyframe is a full process record: it resets the encoding context, so
+   replay can start decoding at any indexed keyframe.
+*/
+
+package com.sysmon.recording;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+final class RecordingFormat {
+  static final int MAGIC = 0x534d5243; // "SMRC"
+  static final int VERSION = 1;
+  static final String SEGMENT_PREFIX = "segment-";
+  static final String SEGMENT_SUFFIX = ".rec";
+
+  static final int SEGMENT_MAGIC = 0;
+  static final int SEGMENT_VERSION = 4;
+  static final int SEGMENT_START_TIME = 8;
+  static final int SEGMENT_INDEX_CAPACITY = 16;
+  static final int SEGMENT_INDEX_COUNT = 20;
+  static final int SEGMENT_HEADER_SIZE = 24;
+  static final int INDEX_ENTRY_SIZE = 12;
+  static final int INDEX_CAPACITY = 4096;
+  static final int DATA_START = SEGMENT_HEADER_SIZE + INDEX_CAPACITY * INDEX_ENTRY_SIZE;
+
+  static final int RECORD_LENGTH = 0;
+  static final int RECORD_TYPE = 4;
+  static final int RECORD_FLAGS = 5;
+  static final int RECORD_TIME = 6;
+  static final int RECORD_HEADER_SIZE = 14;
+
+  static final byte TYPE_SYSTEM = 1;
+  static final byte TYPE_PROCESSES = 2;
+  // A full process record (backend snapshot or keyframe).
+  static final byte FLAG_FULL = 1;
+  // A keyframe the recorder added on its own; replay only delivers it when
+  // it starts there.
+  static final byte FLAG_KEYFRAME = 2;
+
+  static final int METRIC_CPU = 1;
+  static final int METRIC_MEM = 2;
+  static final int METRIC_NET = 4;
+  static final int METRIC_DISK = 8;
+  static final int METRIC_CORES = 32;
+  static final int METRIC_INTERFACES = 64;
+  static final int METRIC_DISKIO = 128;
+
+  static final int FIELD_PPID = 1;
+  static final int FIELD_USER = 2;
+  static final int FIELD_STATE = 4;
+  static final int FIELD_NAME = 8;
+  static final int FIELD_TOTAL_TIME = 16;
+  static final int FIELD_MEM_RSS = 32;
+  static final int FIELD_ALL = 63;
+
+  static final int MAX_VARINT_SIZE = 10;
+
+  private RecordingFormat() {
+  }
+
+  // Segment names carry their start time, so name order is time order.
+  static Path segmentPath(Path directory, long startMillis) {
+    return directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, startMillis, SEGMENT_SUFFIX));
+  }
+
+  static List<Path> listSegments(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.filter(path -> {
+        String name = path.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+      }).sorted().toList();
+    }
+  }
+
+  static void putVarLong(ByteBuffer buffer, long value) {
+    while ((value & ~0x7FL) != 0) {
+      buffer.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  static long getVarLong(ByteBuffer buffer) {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      byte b = buffer.get();
+      value |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw new IllegalStateException("Malformed varint at " + buffer.position());
+  }
+
+  static void putString(ByteBuffer buffer, String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    putVarLong(buffer, bytes.length);
+    buffer.put(bytes);
+  }
+
+  static String getString(ByteBuffer buffer) {
+    byte[] bytes = new byte[(int) getVarLong(buffer)];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  // Zig-zag so small negative deltas stay small too.
+  static void putSignedVarLong(ByteBuffer buffer, long value) {
+    putVarLong(buffer, (value << 1) ^ (value >> 63));
+  }
+
+  static long getSignedVarLong(ByteBuffer buffer) {
+    long value = getVarLong(buffer);
+    return (value >>> 1) ^ -(value & 1);
+  }
+}
@@ -0,0 +1,521 @@
+/*
+ - SNAPSHOT RECORDER:
+ - Appends every system update and process delta the dashboard applies to
+   memory-mapped segment files (see RecordingFormat), for post-mortem
+   inspection with SnapshotReplay.
+ - The record*() calls only hand the item to a bounded queue; a single
+   writer thread encodes it straight into the mapped segment, so the
+   collection loop never waits for the disk. If the writer falls that far
+   behind, new items are dropped and counted rather than blocking.
+ - Process records are delta-encoded against the last recorded values of
+   each pid. A keyframe with the full process table is written at the start
+   of every segment and once a minute, and its offset goes into the
+   segment's time index, so replay can start close to any point in time.
+ - Segments are created sparse at their full size, forced to disk every few
+   seconds, and only the newest -Dsysmon.record.maxSegments are kept
+   (segment size: -Dsysmon.record.segmentMb).
+*/
+
+package com.sysmon.recording;
+
+import static com.sysmon.recording.RecordingFormat.*;
+
+import com.sysmon.model.ProcessDelta;
+import com.sysmon.model.SystemUpdate;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class SnapshotRecorder implements AutoCloseable {
+  private static final int QUEUE_CAPACITY = 1024;
+  private static final long KEYFRAME_INTERVAL_MS = 60_000;
+  private static final long FORCE_INTERVAL_MS = 5_000;
+  private static final int SYSTEM_RECORD_BOUND = RECORD_HEADER_SIZE + 13 * 8;
+  // A core id and its four shares (each at most 1000, two varint bytes).
+  private static final int CORE_BOUND = 5 + 4 * 2;
+  // Name length, six counters; the name bytes come on top.
+  private static final int INTERFACE_BOUND = 7 * MAX_VARINT_SIZE;
+  // Name length, four counters and the utilization; the name bytes come on top.
+  private static final int DISK_DEVICE_BOUND = 5 * MAX_VARINT_SIZE + 2;
+  // pid, field mask, ppid, state, two string refs with their lengths and the
+  // two counters; the string bytes come on top.
+  private static final int PROCESS_RECORD_BOUND = 5 + 1 + 5 + 1 + 4 * 5 + 2 * MAX_VARINT_SIZE;
+
+  // Queued by close(): the writer stops once it has written everything
+  // before it. (Interrupting the writer instead would close the segment's
+  // FileChannel if it happened to be mapping a new one.)
+  private static final Entry CLOSE = new Entry((byte) 0, (byte) 0, 0, null);
+
+  private record Entry(byte type, byte flags, long timeMillis, Object item) {
+  }
+
+  private final Path directory;
+  private final long segmentBytes;
+  private final int maxSegments;
+  private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+  private final AtomicLong dropped = new AtomicLong();
+  private final Thread writer;
+  private volatile boolean closed;
+
+  // Owned by the writer thread.
+  private final ArrayDeque<Path> segments = new ArrayDeque<>();
+  private final RecordedProcesses processes = new RecordedProcesses();
+  private final List<byte[]> strings = new ArrayList<>();
+  private final Map<String, Integer> stringIds = new HashMap<>();
+  private final BitSet definedStrings = new BitSet();
+  private FileChannel channel;
+  private MappedByteBuffer segment;
+  private int indexCount;
+  private long lastKeyframe;
+  private long lastForce;
+
+  public SnapshotRecorder(Path directory) throws IOException {
+    this(directory, Long.getLong("sysmon.record.segmentMb", 64) << 20,
+        Integer.getInteger("sysmon.record.maxSegments", 16));
+  }
+
+  public SnapshotRecorder(Path directory, long segmentBytes, int maxSegments) throws IOException {
+    this.directory = directory;
+    this.segmentBytes = Math.min(Integer.MAX_VALUE, Math.max(DATA_START + (1 << 20), segmentBytes));
+    this.maxSegments = Math.max(1, maxSegments);
+    Files.createDirectories(directory);
+    segments.addAll(listSegments(directory));
+    this.writer = Thread.ofPlatform().daemon().name("sysmon-recorder").start(this::run);
+  }
+
+  public void recordCpu(SystemUpdate stats) {
+    offer(new Entry(TYPE_SYSTEM, (byte) METRIC_CPU, sampleTime(stats), stats));
+  }
+
+  public void recordMemory(SystemUpdate stats) {
+    offer(new Entry(TYPE_SYSTEM, (byte) METRIC_MEM, sampleTime(stats), stats));
+  }
+
+  public void recordNetwork(SystemUpdate stats) {
+    offer(new Entry(TYPE_SYSTEM, (byte) METRIC_NET, sampleTime(stats), stats));
+  }
+
+  public void recordDisk(SystemUpdate stats) {
+    offer(new Entry(TYPE_SYSTEM, (byte) METRIC_DISK, sampleTime(stats), stats));
+  }
+
+  public void recordCores(SystemUpdate stats) {
+    offer(new Entry(TYPE_SYSTEM, (byte) METRIC_CORES, sampleTime(stats), stats));
+  }
+
+  public void recordInterfaces(SystemUpdate stats) {
+    offer(new Entry(TYPE_SYSTEM, (byte) METRIC_INTERFACES, sampleTime(stats), stats));
+  }
+
+  public void recordDiskIo(SystemUpdate stats) {
+    offer(new Entry(TYPE_SYSTEM, (byte) METRIC_DISKIO, sampleTime(stats), stats));
+  }
+
+  // The delta must directly follow the previously recorded one (or be full).
+  public void recordProcesses(ProcessDelta delta) {
+    offer(new Entry(TYPE_PROCESSES, delta.isFull() ? FLAG_FULL : 0, System.currentTimeMillis(), delta));
+  }
+
+  public long getDroppedCount() {
+    return dropped.get();
+  }
+
+  private static long sampleTime(SystemUpdate stats) {
+    return stats.getSampleTime() > 0 ? stats.getSampleTime() : System.currentTimeMillis();
+  }
+
+  private void offer(Entry entry) {
+    if (closed || !queue.offer(entry)) {
+      if (dropped.getAndIncrement() == 0) {
+        System.err.println("SnapshotRecorder: writer is behind, dropping records");
+      }
+    }
+  }
+
+  // Writes whatever is still queued and flushes the current segment.
+  @Override
+  public void close() {
+    closed = true;
+    try {
+      // A writer that already stopped on an error no longer drains the queue.
+      while (writer.isAlive() && !queue.offer(CLOSE, 100, TimeUnit.MILLISECONDS)) {
+        // The queue is full; the writer is still catching up.
+      }
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void run() {
+    try {
+      while (true) {
+        Entry entry;
+        try {
+          entry = queue.poll(FORCE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          break;
+        }
+        if (entry == CLOSE) {
+          break;
+        }
+        if (entry != null) {
+          write(entry);
+        }
+        if (System.currentTimeMillis() - lastForce >= FORCE_INTERVAL_MS) {
+          force();
+        }
+      }
+      // Anything offered while close() was being called.
+      for (Entry entry = queue.poll(); entry != null; entry = queue.poll()) {
+        if (entry != CLOSE) {
+          write(entry);
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      System.err.println("SnapshotRecorder: recording stopped: " + e.getMessage());
+      e.printStackTrace();
+    } finally {
+      closed = true;
+      force();
+      closeSegment();
+    }
+  }
+
+  private void write(Entry entry) throws IOException {
+    if (entry.type() == TYPE_SYSTEM) {
+      SystemUpdate stats = (SystemUpdate) entry.item();
+      int bound = SYSTEM_RECORD_BOUND;
+      if ((entry.flags() & METRIC_CORES) != 0) {
+        bound += MAX_VARINT_SIZE + stats.getCoreCount() * CORE_BOUND;
+      }
+      if ((entry.flags() & METRIC_INTERFACES) != 0) {
+        bound += MAX_VARINT_SIZE;
+        for (int i = 0; i < stats.getInterfaceCount(); i++) {
+          bound += INTERFACE_BOUND + 3 * stats.getInterfaceName(i).length();
+        }
+      }
+      if ((entry.flags() & METRIC_DISKIO) != 0) {
+        bound += MAX_VARINT_SIZE;
+        for (int i = 0; i < stats.getDiskDeviceCount(); i++) {
+          bound += DISK_DEVICE_BOUND + 3 * stats.getDiskDeviceName(i).length();
+        }
+      }
+      if (ensureSpace(bound, entry.timeMillis())) {
+        writeSystem(entry.flags(), entry.timeMillis(), stats);
+      }
+      return;
+    }
+    ProcessDelta delta = (ProcessDelta) entry.item();
+    if (!ensureSpace(processBound(delta), entry.timeMillis())) {
+      return;
+    }
+    writeProcesses(entry.timeMillis(), delta);
+    if (!delta.isFull() && entry.timeMillis() - lastKeyframe >= KEYFRAME_INTERVAL_MS) {
+      // A new segment starts with a keyframe anyway.
+      if (segment.remaining() > keyframeBound() && indexCount < INDEX_CAPACITY) {
+        writeKeyframe(entry.timeMillis());
+      } else {
+        roll(entry.timeMillis());
+      }
+    }
+  }
+
+  // Starts a new segment when the current one is missing, full, or out of
+  // index entries. Returns false if the record cannot fit at all.
+  private boolean ensureSpace(int bound, long timeMillis) throws IOException {
+    if (segment != null && segment.remaining() > bound && indexCount < INDEX_CAPACITY) {
+      return true;
+    }
+    roll(timeMillis);
+    if (segment.remaining() > bound) {
+      return true;
+    }
+    System.err.println("SnapshotRecorder: record of up to " + bound + " bytes does not fit a segment, skipped");
+    return false;
+  }
+
+  private void roll(long timeMillis) throws IOException {
+    closeSegment();
+    long startMillis = timeMillis;
+    Path path = segmentPath(directory, startMillis);
+    while (Files.exists(path)) {
+      path = segmentPath(directory, ++startMillis);
+    }
+    channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+    segment.putInt(SEGMENT_MAGIC, MAGIC);
+    segment.putInt(SEGMENT_VERSION, VERSION);
+    segment.putLong(SEGMENT_START_TIME, startMillis);
+    segment.putInt(SEGMENT_INDEX_CAPACITY, INDEX_CAPACITY);
+    segment.putInt(SEGMENT_INDEX_COUNT, 0);
+    segment.position(DATA_START);
+    indexCount = 0;
+    segments.addLast(path);
+    while (segments.size() > maxSegments) {
+      Files.deleteIfExists(segments.removeFirst());
+    }
+    // Every segment decodes on its own: string definitions start over, and
+    // the process table is repeated as a keyframe.
+    definedStrings.clear();
+    if (processes.size() > 0 && segment.remaining() > keyframeBound()) {
+      writeKeyframe(timeMillis);
+    } else {
+      processes.clear();
+    }
+  }
+
+  private void closeSegment() {
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        System.err.println("SnapshotRecorder: failed to close segment: " + e.getMessage());
+      }
+    }
+    channel = null;
+    segment = null;
+  }
+
+  private void force() {
+    lastForce = System.currentTimeMillis();
+    if (segment != null) {
+      segment.force();
+    }
+  }
+
+  private int beginRecord(byte type, int flags, long timeMillis) {
+    int start = segment.position();
+    segment.putInt(0);
+    segment.put(type);
+    segment.put((byte) flags);
+    segment.putLong(timeMillis);
+    return start;
+  }
+
+  // The length goes in last, so readers never see a half-written record.
+  private void endRecord(int start) {
+    segment.putInt(start + RECORD_LENGTH, segment.position() - start - RECORD_HEADER_SIZE);
+  }
+
+  private void addIndexEntry(long timeMillis, int offset) {
+    int entry = SEGMENT_HEADER_SIZE + indexCount * INDEX_ENTRY_SIZE;
+    segment.putLong(entry, timeMillis);
+    segment.putInt(entry + 8, offset);
+    segment.putInt(SEGMENT_INDEX_COUNT, ++indexCount);
+    lastKeyframe = timeMillis;
+  }
+
+  private void writeSystem(int metrics, long timeMillis, SystemUpdate stats) {
+    int start = beginRecord(TYPE_SYSTEM, metrics, timeMillis);
+    if ((metrics & METRIC_CPU) != 0) {
+      segment.putDouble(stats.getCpuUsage());
+      segment.putLong(stats.getSystemTotalTime());
+    }
+    if ((metrics & METRIC_MEM) != 0) {
+      segment.putLong(stats.getMemTotal());
+      segment.putLong(stats.getMemFree());
+      segment.putLong(stats.getMemAvailable());
+      segment.putLong(stats.getBuffers());
+      segment.putLong(stats.getCached());
+      segment.putLong(stats.getSwapTotal());
+      segment.putLong(stats.getSwapFree());
+    }
+    if ((metrics & METRIC_NET) != 0) {
+      segment.putLong(stats.getNetDownSpeed());
+      segment.putLong(stats.getNetUpSpeed());
+    }
+    if ((metrics & METRIC_DISK) != 0) {
+      segment.putLong(stats.getDiskUsed());
+      segment.putLong(stats.getDiskTotal());
+    }
+    if ((metrics & METRIC_CORES) != 0) {
+      putVarLong(segment, stats.getCoreCount());
+      for (int i = 0; i < stats.getCoreCount(); i++) {
+        putVarLong(segment, stats.getCoreId(i));
+        putVarLong(segment, Math.round(stats.getCoreUser(i) * 10));
+        putVarLong(segment, Math.round(stats.getCoreSystem(i) * 10));
+        putVarLong(segment, Math.round(stats.getCoreIowait(i) * 10));
+        putVarLong(segment, Math.round(stats.getCoreSteal(i) * 10));
+      }
+    }
+    if ((metrics & METRIC_INTERFACES) != 0) {
+      putVarLong(segment, stats.getInterfaceCount());
+      for (int i = 0; i < stats.getInterfaceCount(); i++) {
+        putString(segment, stats.getInterfaceName(i));
+        putVarLong(segment, stats.getInterfaceRxBytes(i));
+        putVarLong(segment, stats.getInterfaceTxBytes(i));
+        putVarLong(segment, stats.getInterfaceRxPackets(i));
+        putVarLong(segment, stats.getInterfaceTxPackets(i));
+        putVarLong(segment, stats.getInterfaceRxErrors(i));
+        putVarLong(segment, stats.getInterfaceTxErrors(i));
+      }
+    }
+    if ((metrics & METRIC_DISKIO) != 0) {
+      putVarLong(segment, stats.getDiskDeviceCount());
+      for (int i = 0; i < stats.getDiskDeviceCount(); i++) {
+        putString(segment, stats.getDiskDeviceName(i));
+        putVarLong(segment, stats.getDiskReadBytes(i));
+        putVarLong(segment, stats.getDiskWriteBytes(i));
+        putVarLong(segment, stats.getDiskReads(i));
+        putVarLong(segment, stats.getDiskWrites(i));
+        putVarLong(segment, Math.round(stats.getDiskUtilization(i) * 10));
+      }
+    }
+    endRecord(start);
+  }
+
+  private void writeProcesses(long timeMillis, ProcessDelta delta) {
+    int start = beginRecord(TYPE_PROCESSES, delta.isFull() ? FLAG_FULL : 0, timeMillis);
+    if (delta.isFull()) {
+      processes.clear();
+      definedStrings.clear();
+    }
+    putVarLong(segment, delta.getGeneration());
+    putVarLong(segment, delta.size());
+    for (int i = 0; i < delta.size(); i++) {
+      int pid = delta.getPid(i);
+      int slot = processes.slot(pid);
+      boolean added = slot < 0;
+      if (added) {
+        slot = processes.add(pid);
+      }
+      writeProcess(slot, added, delta.getPpid(i), stringId(delta.getUserName(i)), stateByte(delta.getState(i)),
+          stringId(delta.getProcessName(i)), delta.getTotalTime(i), delta.getMemRssKb(i));
+    }
+    putVarLong(segment, delta.getRemovedCount());
+    for (int i = 0; i < delta.getRemovedCount(); i++) {
+      putVarLong(segment, delta.getRemovedPid(i));
+      processes.remove(delta.getRemovedPid(i));
+    }
+    endRecord(start);
+    if (delta.isFull()) {
+      addIndexEntry(timeMillis, start);
+    }
+  }
+
+  private void writeKeyframe(long timeMillis) {
+    int start = beginRecord(TYPE_PROCESSES, FLAG_FULL | FLAG_KEYFRAME, timeMillis);
+    definedStrings.clear();
+    putVarLong(segment, 0);
+    putVarLong(segment, processes.size());
+    for (int slot = 0; slot < processes.slotBound(); slot++) {
+      if (processes.isLive(slot)) {
+        putVarLong(segment, processes.pids[slot]);
+        segment.put((byte) FIELD_ALL);
+        writeFields(FIELD_ALL, processes.ppids[slot], processes.userIds[slot], processes.states[slot],
+            processes.nameIds[slot], processes.totalTimes[slot], processes.memRssKb[slot]);
+      }
+    }
+    putVarLong(segment, 0);
+    endRecord(start);
+    addIndexEntry(timeMillis, start);
+  }
+
+  // Writes only the fields that differ from the pid's last recorded values
+  // (all of them for a new pid) and makes the new values the baseline.
+  private void writeProcess(int slot, boolean added, int ppid, int userId, byte state, int nameId, long totalTime,
+      long memRssKb) {
+    int fields = added ? FIELD_ALL : 0;
+    fields |= ppid != processes.ppids[slot] ? FIELD_PPID : 0;
+    fields |= userId != processes.userIds[slot] ? FIELD_USER : 0;
+    fields |= state != processes.states[slot] ? FIELD_STATE : 0;
+    fields |= nameId != processes.nameIds[slot] ? FIELD_NAME : 0;
+    fields |= totalTime != processes.totalTimes[slot] ? FIELD_TOTAL_TIME : 0;
+    fields |= memRssKb != processes.memRssKb[slot] ? FIELD_MEM_RSS : 0;
+    putVarLong(segment, processes.pids[slot]);
+    segment.put((byte) fields);
+    writeFields(fields, ppid, userId, state, nameId, totalTime - processes.totalTimes[slot],
+        memRssKb - processes.memRssKb[slot]);
+    processes.ppids[slot] = ppid;
+    processes.userIds[slot] = userId;
+    processes.states[slot] = state;
+    processes.nameIds[slot] = nameId;
+    processes.totalTimes[slot] = totalTime;
+    processes.memRssKb[slot] = memRssKb;
+  }
+
+  private void writeFields(int fields, int ppid, int userId, byte state, int nameId, long totalTimeDelta,
+      long memRssKbDelta) {
+    if ((fields & FIELD_PPID) != 0) {
+      putVarLong(segment, ppid);
+    }
+    if ((fields & FIELD_USER) != 0) {
+      writeString(userId);
+    }
+    if ((fields & FIELD_STATE) != 0) {
+      segment.put(state);
+    }
+    if ((fields & FIELD_NAME) != 0) {
+      writeString(nameId);
+    }
+    if ((fields & FIELD_TOTAL_TIME) != 0) {
+      putSignedVarLong(segment, totalTimeDelta);
+    }
+    if ((fields & FIELD_MEM_RSS) != 0) {
+      putSignedVarLong(segment, memRssKbDelta);
+    }
+  }
+
+  // A string is spelled out the first time it is used after a keyframe and
+  // referenced by id after that; the low bit tells the two apart.
+  private void writeString(int id) {
+    if (definedStrings.get(id)) {
+      putVarLong(segment, (long) id << 1);
+      return;
+    }
+    byte[] bytes = strings.get(id);
+    putVarLong(segment, ((long) id << 1) | 1);
+    putVarLong(segment, bytes.length);
+    segment.put(bytes);
+    definedStrings.set(id);
+  }
+
+  private int stringId(String value) {
+    Integer id = stringIds.get(value);
+    if (id == null) {
+      id = strings.size();
+      strings.add(value.getBytes(StandardCharsets.UTF_8));
+      stringIds.put(value, id);
+    }
+    return id;
+  }
+
+  private static byte stateByte(String state) {
+    return state.isEmpty() ? (byte) '?' : (byte) state.charAt(0);
+  }
+
+  private static int processBound(ProcessDelta delta) {
+    long bound = RECORD_HEADER_SIZE + 3 * MAX_VARINT_SIZE + 5L * delta.getRemovedCount();
+    for (int i = 0; i < delta.size(); i++) {
+      bound += PROCESS_RECORD_BOUND + 3L * (delta.getUserName(i).length() + delta.getProcessName(i).length());
+    }
+    return (int) Math.min(Integer.MAX_VALUE, bound);
+  }
+
+  private int keyframeBound() {
+    long bound = RECORD_HEADER_SIZE + 3 * MAX_VARINT_SIZE;
+    for (int slot = 0; slot < processes.slotBound(); slot++) {
+      if (processes.isLive(slot)) {
+        bound += PROCESS_RECORD_BOUND + strings.get(processes.userIds[slot]).length
+            + strings.get(processes.nameIds[slot]).length;
+      }
+    }
+    return (int) Math.min(Integer.MAX_VALUE, bound);
+  }
+}
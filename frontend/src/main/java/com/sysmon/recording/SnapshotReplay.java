@@ -0,0 +1,402 @@
+/*
+ - SNAPSHOT REPLAY:
+ - Plays a directory of SnapshotRecorder segments back through a Listener,
+   which the controller implements with the same update methods it applies
+   live data from IPCClient with.
+ - Records are delivered with their recorded spacing divided by `speed`
+   (0 plays as fast as the listener keeps up). Each one is handed to the
+   apply executor (Platform::runLater in the UI) and the next one waits
+   until it has been applied, so a fast replay never floods the FX thread.
+ - Starting at `from` seeks via the segment's time index to the last
+   keyframe before it; process deltas between the keyframe and `from` are
+   merged into the first delta delivered, so the table starts out exactly
+   as it was at that time.
+*/
+
+package com.sysmon.recording;
+
+import static com.sysmon.recording.RecordingFormat.*;
+
+import com.sysmon.model.ProcessDelta;
+import com.sysmon.model.SystemUpdate;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+public final class SnapshotReplay implements AutoCloseable {
+  // Gaps longer than this (the recorder was not running) are shortened to it.
+  private static final long MAX_GAP_MS = 5_000;
+  private static final String[] STATE_STRINGS = new String[128];
+
+  static {
+    for (int state = 0; state < STATE_STRINGS.length; state++) {
+      STATE_STRINGS[state] = String.valueOf((char) state);
+    }
+  }
+
+  public interface Listener {
+    void onCpu(SystemUpdate stats);
+
+    void onMemory(SystemUpdate stats);
+
+    void onNetwork(SystemUpdate stats);
+
+    void onDisk(SystemUpdate stats);
+
+    void onCores(SystemUpdate stats);
+
+    void onInterfaces(SystemUpdate stats);
+
+    void onDiskIo(SystemUpdate stats);
+
+    void onProcesses(ProcessDelta delta);
+
+    void onFinished();
+  }
+
+  private final Path directory;
+  private final double speed;
+  private final long fromMillis;
+  private final Executor applyExecutor;
+  private final Listener listener;
+  private volatile boolean paused;
+  private volatile boolean closed;
+  private Thread thread;
+
+  // Owned by the replay thread.
+  private final RecordedProcesses processes = new RecordedProcesses();
+  private final List<String> strings = new ArrayList<>();
+  private byte[] stringBytes = new byte[256];
+  private ProcessDelta pendingProcesses;
+  private boolean processesDelivered;
+  private long previousTime = Long.MIN_VALUE;
+
+  // `from` may be null to play the whole recording.
+  public SnapshotReplay(Path directory, double speed, Instant from, Executor applyExecutor, Listener listener) {
+    this.directory = directory;
+    this.speed = speed;
+    this.fromMillis = from != null ? from.toEpochMilli() : Long.MIN_VALUE;
+    this.applyExecutor = applyExecutor;
+    this.listener = listener;
+  }
+
+  public synchronized void start() {
+    if (thread == null) {
+      thread = Thread.ofVirtual().name("sysmon-replay").start(this::run);
+    }
+  }
+
+  public void pause() {
+    paused = true;
+  }
+
+  public void resume() {
+    paused = false;
+    Thread replayThread = thread;
+    if (replayThread != null) {
+      LockSupport.unpark(replayThread);
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    closed = true;
+    if (thread != null) {
+      thread.interrupt();
+    }
+  }
+
+  private void run() {
+    try {
+      List<Path> segments = listSegments(directory);
+      int first = 0;
+      for (int i = 0; i < segments.size(); i++) {
+        if (segmentStart(segments.get(i)) <= fromMillis) {
+          first = i;
+        }
+      }
+      for (int i = first; i < segments.size() && !closed; i++) {
+        replaySegment(segments.get(i));
+      }
+      if (pendingProcesses != null) {
+        deliverProcesses(previousTime, pendingProcesses);
+      }
+      deliver(previousTime, listener::onFinished);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException | RuntimeException e) {
+      System.err.println("SnapshotReplay: failed to replay " + directory + ": " + e.getMessage());
+      e.printStackTrace();
+    }
+  }
+
+  private static long segmentStart(Path path) {
+    String name = path.getFileName().toString();
+    return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+  }
+
+  private void replaySegment(Path path) throws IOException, InterruptedException {
+    MappedByteBuffer segment;
+    try (FileChannel channel = FileChannel.open(path)) {
+      segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    if (segment.limit() < DATA_START || segment.getInt(SEGMENT_MAGIC) != MAGIC
+        || segment.getInt(SEGMENT_VERSION) != VERSION) {
+      System.err.println("SnapshotReplay: skipping " + path + ": not a version " + VERSION + " segment");
+      return;
+    }
+    // Segments decode on their own (see SnapshotRecorder.roll()).
+    processes.clear();
+    int position = seek(segment);
+    while (!closed && position + RECORD_HEADER_SIZE <= segment.limit()) {
+      int length = segment.getInt(position + RECORD_LENGTH);
+      if (length <= 0 || position + RECORD_HEADER_SIZE + length > segment.limit()) {
+        break;
+      }
+      byte type = segment.get(position + RECORD_TYPE);
+      int flags = segment.get(position + RECORD_FLAGS) & 0xFF;
+      long time = segment.getLong(position + RECORD_TIME);
+      segment.position(position + RECORD_HEADER_SIZE);
+      if (type == TYPE_SYSTEM) {
+        SystemUpdate stats = readSystem(segment, flags, time);
+        if (time >= fromMillis) {
+          deliver(time, () -> dispatchSystem(flags, stats));
+        }
+      } else if (type == TYPE_PROCESSES) {
+        ProcessDelta delta = readProcesses(segment, flags);
+        // Keyframes repeat what the listener already has, unless playback
+        // starts there.
+        boolean repeat = (flags & FLAG_KEYFRAME) != 0 && processesDelivered;
+        if (!repeat) {
+          pendingProcesses = pendingProcesses != null ? ProcessDelta.merge(pendingProcesses, delta) : delta;
+          if (time >= fromMillis) {
+            deliverProcesses(time, pendingProcesses);
+          }
+        }
+      }
+      position += RECORD_HEADER_SIZE + length;
+    }
+  }
+
+  // Offset of the last keyframe at or before `fromMillis`, or of the first
+  // record if there is none.
+  private int seek(MappedByteBuffer segment) {
+    int low = 0;
+    int high = Math.min(segment.getInt(SEGMENT_INDEX_COUNT), INDEX_CAPACITY);
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (segment.getLong(SEGMENT_HEADER_SIZE + mid * INDEX_ENTRY_SIZE) <= fromMillis) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    if (low == 0) {
+      return DATA_START;
+    }
+    return segment.getInt(SEGMENT_HEADER_SIZE + (low - 1) * INDEX_ENTRY_SIZE + 8);
+  }
+
+  private void dispatchSystem(int metrics, SystemUpdate stats) {
+    if ((metrics & METRIC_CPU) != 0) {
+      listener.onCpu(stats);
+    }
+    if ((metrics & METRIC_MEM) != 0) {
+      listener.onMemory(stats);
+    }
+    if ((metrics & METRIC_NET) != 0) {
+      listener.onNetwork(stats);
+    }
+    if ((metrics & METRIC_DISK) != 0) {
+      listener.onDisk(stats);
+    }
+    if ((metrics & METRIC_CORES) != 0) {
+      listener.onCores(stats);
+    }
+    if ((metrics & METRIC_INTERFACES) != 0) {
+      listener.onInterfaces(stats);
+    }
+    if ((metrics & METRIC_DISKIO) != 0) {
+      listener.onDiskIo(stats);
+    }
+  }
+
+  private void deliverProcesses(long time, ProcessDelta delta) throws InterruptedException {
+    pendingProcesses = null;
+    processesDelivered = true;
+    deliver(time, () -> listener.onProcesses(delta));
+  }
+
+  // Waits out the recorded gap (and any pause), then applies the record and
+  // waits until it has been applied.
+  private void deliver(long time, Runnable apply) throws InterruptedException {
+    if (previousTime != Long.MIN_VALUE && speed > 0) {
+      long gap = Math.min(MAX_GAP_MS, time - previousTime);
+      if (gap > 0) {
+        TimeUnit.NANOSECONDS.sleep((long) (TimeUnit.MILLISECONDS.toNanos(gap) / speed));
+      }
+    }
+    previousTime = Math.max(previousTime, time);
+    while (paused && !closed) {
+      LockSupport.park(this);
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+    }
+    if (closed) {
+      throw new InterruptedException();
+    }
+    CountDownLatch applied = new CountDownLatch(1);
+    applyExecutor.execute(() -> {
+      try {
+        apply.run();
+      } finally {
+        applied.countDown();
+      }
+    });
+    applied.await();
+  }
+
+  private static SystemUpdate readSystem(MappedByteBuffer segment, int metrics, long time) {
+    SystemUpdate stats = new SystemUpdate();
+    stats.setSampleTime(time);
+    if ((metrics & METRIC_CPU) != 0) {
+      stats.setCpuUsage(segment.getDouble());
+      stats.setSystemTotalTime(segment.getLong());
+    }
+    if ((metrics & METRIC_MEM) != 0) {
+      stats.setMemTotal(segment.getLong());
+      stats.setMemFree(segment.getLong());
+      stats.setMemAvailable(segment.getLong());
+      stats.setBuffers(segment.getLong());
+      stats.setCached(segment.getLong());
+      stats.setSwapTotal(segment.getLong());
+      stats.setSwapFree(segment.getLong());
+    }
+    if ((metrics & METRIC_NET) != 0) {
+      stats.setNetDownSpeed(segment.getLong());
+      stats.setNetUpSpeed(segment.getLong());
+    }
+    if ((metrics & METRIC_DISK) != 0) {
+      stats.setDiskUsed(segment.getLong());
+      stats.setDiskTotal(segment.getLong());
+    }
+    if ((metrics & METRIC_CORES) != 0) {
+      int coreCount = (int) getVarLong(segment);
+      stats.setCoreCount(coreCount);
+      for (int i = 0; i < coreCount; i++) {
+        int id = (int) getVarLong(segment);
+        double user = getVarLong(segment) / 10.0;
+        double system = getVarLong(segment) / 10.0;
+        double iowait = getVarLong(segment) / 10.0;
+        stats.setCore(i, id, user, system, iowait, getVarLong(segment) / 10.0);
+      }
+    }
+    if ((metrics & METRIC_INTERFACES) != 0) {
+      int interfaceCount = (int) getVarLong(segment);
+      stats.setInterfaceCount(interfaceCount);
+      for (int i = 0; i < interfaceCount; i++) {
+        String name = getString(segment);
+        long rxBytes = getVarLong(segment);
+        long txBytes = getVarLong(segment);
+        long rxPackets = getVarLong(segment);
+        long txPackets = getVarLong(segment);
+        long rxErrors = getVarLong(segment);
+        stats.setInterface(i, name, rxBytes, txBytes, rxPackets, txPackets, rxErrors, getVarLong(segment));
+      }
+    }
+    if ((metrics & METRIC_DISKIO) != 0) {
+      int deviceCount = (int) getVarLong(segment);
+      stats.setDiskDeviceCount(deviceCount);
+      for (int i = 0; i < deviceCount; i++) {
+        String name = getString(segment);
+        long readBytes = getVarLong(segment);
+        long writeBytes = getVarLong(segment);
+        long reads = getVarLong(segment);
+        long writes = getVarLong(segment);
+        stats.setDiskDevice(i, name, readBytes, writeBytes, reads, writes, getVarLong(segment) / 10.0);
+      }
+    }
+    return stats;
+  }
+
+  // Mirrors SnapshotRecorder.writeProcesses()/writeProcess().
+  private ProcessDelta readProcesses(MappedByteBuffer segment, int flags) {
+    boolean full = (flags & FLAG_FULL) != 0;
+    if (full) {
+      processes.clear();
+    }
+    long generation = getVarLong(segment);
+    int count = (int) getVarLong(segment);
+    ProcessDelta delta = new ProcessDelta(generation, full, count);
+    for (int i = 0; i < count; i++) {
+      int pid = (int) getVarLong(segment);
+      int fields = segment.get() & 0xFF;
+      int slot = processes.slot(pid);
+      if (slot < 0) {
+        slot = processes.add(pid);
+      }
+      if ((fields & FIELD_PPID) != 0) {
+        processes.ppids[slot] = (int) getVarLong(segment);
+      }
+      if ((fields & FIELD_USER) != 0) {
+        processes.userIds[slot] = readString(segment);
+      }
+      if ((fields & FIELD_STATE) != 0) {
+        processes.states[slot] = segment.get();
+      }
+      if ((fields & FIELD_NAME) != 0) {
+        processes.nameIds[slot] = readString(segment);
+      }
+      if ((fields & FIELD_TOTAL_TIME) != 0) {
+        processes.totalTimes[slot] += getSignedVarLong(segment);
+      }
+      if ((fields & FIELD_MEM_RSS) != 0) {
+        processes.memRssKb[slot] += getSignedVarLong(segment);
+      }
+      delta.addProcess(pid, processes.ppids[slot], strings.get(processes.userIds[slot]),
+          stateString(processes.states[slot]), strings.get(processes.nameIds[slot]), processes.totalTimes[slot],
+          processes.memRssKb[slot]);
+    }
+    int removedCount = (int) getVarLong(segment);
+    for (int i = 0; i < removedCount; i++) {
+      int pid = (int) getVarLong(segment);
+      processes.remove(pid);
+      delta.addRemoved(pid);
+    }
+    return delta;
+  }
+
+  private int readString(MappedByteBuffer segment) {
+    long reference = getVarLong(segment);
+    int id = (int) (reference >>> 1);
+    if ((reference & 1) != 0) {
+      int length = (int) getVarLong(segment);
+      if (length > stringBytes.length) {
+        stringBytes = new byte[Math.max(length, stringBytes.length * 2)];
+      }
+      segment.get(stringBytes, 0, length);
+      while (strings.size() <= id) {
+        strings.add(null);
+      }
+      strings.set(id, new String(stringBytes, 0, length, StandardCharsets.UTF_8));
+    }
+    return id;
+  }
+
+  private static String stateString(byte state) {
+    if (state >= 0) {
+      return STATE_STRINGS[state];
+    }
+    return String.valueOf((char) state);
+  }
+}
@@ -1,99 +1,129 @@
 /*
  - IPC CLIENT:
  - Handles all Inter-Process Communication (IPC) with the C backend.
- - This class connects to the UNIX domain socket using Java NIO.
+ - This class talks to the UNIX domain socket through one shared, pipelined
+   IPCConnection instead of opening a new socket for every call.
  - It sends commands (e.g., "GET_PROCESSES", "GET_CPU_STATS", "KILL") and
    parses the raw text responses into the correct Java data models
    (ProcessInfo, SystemUpdate).
+ - The process list arrives as a binary PLST frame when the connection
+   negotiated it, or as tab-separated text otherwise;
+   -Dsysmon.ipc.binary=false forces text. Either way each record is parsed
+   straight from the reader's buffer as soon as it has arrived.
+ - getProcessDelta() asks only for what changed since the last generation
+   the caller has seen (GET_PROCESSES_SINCE), as a PDLT frame or text.
+   Its rows name their user and process by uid and name id; the client's
+   NameDictionary collects the entries each delta adds.
+ - User and process names are interned in one StringPool, so all rows
+   share a handful of Strings instead of fresh copies every refresh.
+   Process requests can also ask for optional counter groups (see
+   ProcessField); each response's parser knows which ones it asked for.
+ - queryProcesses() lets the backend filter, sort and cut the process list
+   to what the caller shows (GET_PROCESSES;<query>, see ProcessQuery), with
+   the CPU % the backend measured for each row.
+ - getProcessDetail() reads the expensive stats of a single process
+   (GET_PROCESS_DETAIL) on demand; see ProcessDetailCache.
+ - getSnapshot() reads every host metric and the processes in one round
+   trip (GET_SNAPSHOT), taken by the backend in one pass, as a
+   SystemSnapshot; backends without it are asked the separate commands.
+ - getSelfStats() reads the backend's own latency histograms and counters
+   (GET_SELF_STATS) for the diagnostics panel and the exporter.
+ - subscribeSystemUpdates() / subscribeProcesses() expose the backend's
+   SUBSCRIBE push mode as Flow.Publishers (see PushPublisher);
+   subscribeProcessSnapshots() pushes the processes with the CPU sample of
+   the same backend pass, as SystemSnapshots.
+ - The socket is /tmp/SysMon unless -Dsysmon.socket points elsewhere (e.g.
+   at a loadtest FakeBackend).
+ - All methods are thread-safe; the metric collectors and the controller
+   share a single instance.
 */
 
 package com.sysmon.service;
 
+import com.sysmon.diagnostics.LatencyHistogram;
+import com.sysmon.diagnostics.SelfStats;
+import com.sysmon.model.ProcessDelta;
+import com.sysmon.model.ProcessDetail;
+import com.sysmon.model.ProcessField;
 import com.sysmon.model.ProcessInfo;
+import com.sysmon.model.SystemSnapshot;
 import com.sysmon.model.SystemUpdate;
+import com.sysmon.util.StringPool;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import java.io.IOException;
-import java.net.StandardProtocolFamily;
-import java.net.UnixDomainSocketAddress;
 import java.nio.ByteBuffer;
-import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Flow;
+import java.util.function.Supplier;
 
 public class IPCClient {
-  private static final String SOCKET_PATH = "/tmp/SysMon";
+  private static final String SOCKET_PATH = System.getProperty("sysmon.socket", "/tmp/SysMon");
+  private static final boolean BINARY_PROTOCOL =
+      Boolean.parseBoolean(System.getProperty("sysmon.ipc.binary", "true"));
 
-  private SocketChannel connect() throws IOException {
-    UnixDomainSocketAddress address = UnixDomainSocketAddress.of(SOCKET_PATH);
-    SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
-    if (channel.connect(address)) {
-      return channel;
-    } else {
-      throw new IOException("Failed to connect to socket at " + SOCKET_PATH);
+  private static final byte[] BEGIN_PROCESS_LIST = "BEGIN_PROCESS_LIST".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] END_PROCESS_LIST = "END_PROCESS_LIST".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] BEGIN_PROCESS_DELTA = "BEGIN_PROCESS_DELTA;".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] END_PROCESS_DELTA = "END_PROCESS_DELTA".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] BEGIN_PROCESS_QUERY = "BEGIN_PROCESS_QUERY;".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] END_PROCESS_QUERY = "END_PROCESS_QUERY".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] REMOVED = "REMOVED\t".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] USER = "USER;".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] NAME = "NAME;".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] CORES = "CORES;".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] INTERFACES = "INTERFACES;".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] DISKIO = "DISKIO;".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] BEGIN_SNAPSHOT = "BEGIN_SNAPSHOT;".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] END_SNAPSHOT = "END_SNAPSHOT".getBytes(StandardCharsets.US_ASCII);
+  private static final String[] STATE_STRINGS = new String[128];
+  private static final int STRING_POOL_CAPACITY = 4096;
+  private static final StringPool STRINGS = new StringPool(STRING_POOL_CAPACITY);
+  private static final int PUSH_BUFFER_SIZE = 4;
+  // Pushed sections always arrive in this order (see subscription.h).
+  private static final List<String> SYSTEM_METRICS = List.of("cpu", "mem", "net", "disk", "cores", "interfaces",
+      "diskio");
+  private static final List<StatsParser> SYSTEM_METRIC_PARSERS = List.of(IPCClient::parseCpuStats,
+      IPCClient::parseMemStats, IPCClient::parseNetStats, IPCClient::parseDiskStats, IPCClient::parseCoreStats,
+      IPCClient::parseInterfaceStats, IPCClient::parseDiskIoStats);
+  private static final List<String> SYSTEM_METRIC_COMMANDS = List.of("GET_CPU_STATS", "GET_MEM_STATS",
+      "GET_NET_STATS", "GET_DISK_STATS", "GET_CORE_STATS", "GET_INTERFACE_STATS", "GET_DISKIO_STATS");
+
+  static {
+    for (int state = 0; state < STATE_STRINGS.length; state++) {
+      STATE_STRINGS[state] = String.valueOf((char) state);
     }
   }
 
-  private String sendCommand(SocketChannel channel, String command) throws IOException {
-    ByteBuffer writeBuffer = ByteBuffer.wrap((command + "\n").getBytes(StandardCharsets.UTF_8));
-    channel.write(writeBuffer);
-    ByteBuffer readBuffer = ByteBuffer.allocate(4096);
-    channel.read(readBuffer);
-    readBuffer.flip();
-    return StandardCharsets.UTF_8.decode(readBuffer).toString().trim();
+  private final IPCConnection connection;
+  private final NameDictionary names = new NameDictionary(STRINGS);
+  // Cleared once the backend turns a query down, so callers go straight to
+  // their fallback from then on.
+  private volatile boolean processQueries = true;
+  // Cleared once the backend turns GET_SNAPSHOT down as unknown.
+  private volatile boolean snapshots = true;
+
+  public IPCClient() {
+    this(SOCKET_PATH);
+  }
+
+  public IPCClient(String socketPath) {
+    this.connection = new IPCConnection(socketPath, BINARY_PROTOCOL);
   }
 
   public ObservableList<ProcessInfo> getProcessList() {
     List<ProcessInfo> processList = new ArrayList<>();
-    try (SocketChannel channel = connect()) {
-      String command = "GET_PROCESSES\n";
-      ByteBuffer writeBuffer = ByteBuffer.wrap(command.getBytes(StandardCharsets.UTF_8));
-      channel.write(writeBuffer);
-      ByteBuffer readBuffer = ByteBuffer.allocate(131072); // 128KB buffer
-      StringBuilder response = new StringBuilder();
-      while (channel.read(readBuffer) > 0) {
-        readBuffer.flip();
-        response.append(StandardCharsets.UTF_8.decode(readBuffer));
-        readBuffer.clear();
-        if (response.toString().contains("END_PROCESS_LIST")) {
-          break;
-        }
-      }
-      String responseStr = response.toString();
-      String[] lines = responseStr.split("\n");
-      boolean foundBegin = false;
-      for (String line : lines) {
-        line = line.trim();
-        if (line.isEmpty())
-          continue;
-        if ("BEGIN_PROCESS_LIST".equals(line)) {
-          foundBegin = true;
-          continue;
-        }
-        if ("END_PROCESS_LIST".equals(line)) {
-          break;
-        }
-        if (foundBegin) {
-          try {
-            String[] parts = line.split("\t");
-            if (parts.length >= 7) {
-              int pid = Integer.parseInt(parts[0].trim());
-              int ppid = Integer.parseInt(parts[1].trim());
-              String userName = parts[2].trim();
-              String state = parts[3].trim();
-              String processName = parts[4].trim();
-              long totalTime = Long.parseLong(parts[5].trim());
-              long memRssKb = Long.parseLong(parts[6].trim());
-              ProcessInfo processInfo = new ProcessInfo(pid, ppid, userName, state, processName, totalTime, memRssKb);
-              processList.add(processInfo);
-            } else {
-              System.err.println("Invalid line format (expected 7 parts): " + line);
-            }
-          } catch (NumberFormatException e) {
-            System.err.println("Error parsing numbers in line: " + line + " - " + e.getMessage());
-          }
-        }
+    try {
+      ProcessDelta snapshot = connection.execute("GET_PROCESSES", IPCClient::parseProcessList);
+      for (int i = 0; i < snapshot.size(); i++) {
+        processList.add(new ProcessInfo(snapshot.getPid(i), snapshot.getPpid(i), snapshot.getUserName(i),
+            snapshot.getState(i), snapshot.getProcessName(i), snapshot.getTotalTime(i), snapshot.getMemRssKb(i)));
       }
     } catch (Exception e) {
       System.err.println("IPCClient Error (getProcessList): " + e.getMessage());
@@ -102,65 +132,558 @@ public class IPCClient {
     return FXCollections.observableArrayList(processList);
   }
 
-  public SystemUpdate getSystemUpdate() {
+  // Returns the changes since the given generation (0 for a full snapshot),
+  // or null if the backend could not be reached. Backends without
+  // GET_PROCESSES_SINCE are answered with a full GET_PROCESSES snapshot.
+  public ProcessDelta getProcessDelta(long sinceGeneration) {
+    return getProcessDelta(sinceGeneration, Set.of());
+  }
+
+  // The same with the counters of `fields` for every process sent; the
+  // GET_PROCESSES fallback has none.
+  public ProcessDelta getProcessDelta(long sinceGeneration, Set<ProcessField> fields) {
+    try {
+      String command = "GET_PROCESSES_SINCE;" + sinceGeneration
+          + (fields.isEmpty() ? "" : ";" + ProcessQuery.fieldList(fields));
+      ProcessDelta delta = connection.execute(command, reader -> parseProcessDelta(reader, fields));
+      if (delta == null) {
+        delta = connection.execute("GET_PROCESSES", IPCClient::parseProcessList);
+      }
+      return delta;
+    } catch (Exception e) {
+      System.err.println("IPCClient Error (getProcessDelta): " + e.getMessage());
+      e.printStackTrace();
+    }
+    return null;
+  }
+
+  // Returns the processes the query selects, in its order, as a full delta
+  // (generation 0), or null if the backend could not be reached or does not
+  // support queries.
+  public ProcessDelta queryProcesses(ProcessQuery query) {
+    if (!processQueries) {
+      return null;
+    }
+    try {
+      ProcessDelta result = connection.execute("GET_PROCESSES;" + query.toArguments(),
+          reader -> parseProcessQuery(reader, query.fields()));
+      if (result == null) {
+        processQueries = false;
+      }
+      return result;
+    } catch (Exception e) {
+      System.err.println("IPCClient Error (queryProcesses): " + e.getMessage());
+      e.printStackTrace();
+    }
+    return null;
+  }
+
+  // Returns the detail of one process, or null if it does not exist (any
+  // more), the backend could not be reached or does not support it.
+  public ProcessDetail getProcessDetail(int pid) {
+    try {
+      return connection.execute("GET_PROCESS_DETAIL;" + pid, IPCClient::parseProcessDetail);
+    } catch (Exception e) {
+      System.err.println("IPCClient Error (getProcessDetail): " + e.getMessage());
+      e.printStackTrace();
+    }
+    return null;
+  }
+
+  // Every host metric and the processes changed since the given generation
+  // (with the counters of `fields`), taken in one pass; null if the backend
+  // could not be reached.
+  public SystemSnapshot getSnapshot(long sinceGeneration, Set<ProcessField> fields) {
+    String arguments = sinceGeneration + (fields.isEmpty() ? "" : ";fields=" + ProcessQuery.fieldList(fields));
+    return getSnapshot(arguments, reader -> parseProcessDelta(reader, fields),
+        () -> getProcessDelta(sinceGeneration, fields));
+  }
+
+  // The same with the processes `query` selects (see queryProcesses()); also
+  // null if the backend does not support queries.
+  public SystemSnapshot getSnapshot(ProcessQuery query) {
+    if (!processQueries) {
+      return null;
+    }
+    return getSnapshot("0;" + query.toArguments(), reader -> parseProcessQuery(reader, query.fields()),
+        () -> queryProcesses(query));
+  }
+
+  private SystemSnapshot getSnapshot(String arguments, IPCConnection.ResponseParser<ProcessDelta> processParser,
+      Supplier<ProcessDelta> separateProcesses) {
+    if (snapshots) {
+      try {
+        SystemSnapshot snapshot = connection.execute("GET_SNAPSHOT;" + arguments,
+            reader -> parseSnapshot(reader, processParser));
+        if (snapshot != null || snapshots) {
+          return snapshot;
+        }
+      } catch (Exception e) {
+        System.err.println("IPCClient Error (getSnapshot): " + e.getMessage());
+        e.printStackTrace();
+        return null;
+      }
+    }
+    // An older backend: the metrics are pipelined, the processes asked for
+    // after them.
     SystemUpdate stats = new SystemUpdate();
-    try (SocketChannel channel = connect()) {
-      String cpuResponse = sendCommand(channel, "GET_CPU_STATS");
-      if (cpuResponse.startsWith("CPU;")) {
-        String[] parts = cpuResponse.split(";");
-        if (parts.length >= 3) {
-          stats.setCpuUsage(Double.parseDouble(parts[1]));
-          stats.setSystemTotalTime(Long.parseLong(parts[2]));
+    List<IPCConnection.Request<Void>> requests = new ArrayList<>();
+    for (int i = 0; i < SYSTEM_METRIC_COMMANDS.size(); i++) {
+      StatsParser parser = SYSTEM_METRIC_PARSERS.get(i);
+      requests.add(new IPCConnection.Request<>(SYSTEM_METRIC_COMMANDS.get(i), reader -> parser.parse(reader, stats)));
+    }
+    try {
+      connection.submit(requests);
+      for (IPCConnection.Request<Void> request : requests) {
+        connection.await(request);
+      }
+    } catch (Exception e) {
+      System.err.println("IPCClient Error (getSnapshot): " + e.getMessage());
+      e.printStackTrace();
+      return null;
+    }
+    stats.setSampleTime(System.currentTimeMillis());
+    ProcessDelta processes = separateProcesses.get();
+    return processes != null ? new SystemSnapshot(-1, stats, processes) : null;
+  }
+
+  public SelfStats.Report getSelfStats() {
+    try {
+      return connection.execute("GET_SELF_STATS", IPCClient::parseSelfStats);
+    } catch (Exception e) {
+      System.err.println("IPCClient Error (getSelfStats): " + e.getMessage());
+      e.printStackTrace();
+    }
+    return null;
+  }
+
+  // BEGIN_SNAPSHOT;<taken_ms>, the metric sections in push order, the
+  // process section, END_SNAPSHOT. Null if the backend turned the command
+  // or its process section down.
+  private SystemSnapshot parseSnapshot(ResponseReader reader, IPCConnection.ResponseParser<ProcessDelta> processParser)
+      throws IOException {
+    reader.nextLine();
+    if (!reader.lineStartsWith(BEGIN_SNAPSHOT)) {
+      String line = reader.currentLine();
+      System.err.println("Snapshot not supported by backend: " + line);
+      if (line.equals("ERROR;unknown command")) {
+        snapshots = false;
+      }
+      return null;
+    }
+    reader.skipField(';');
+    long takenMillis = reader.nextLongField(';');
+    SystemUpdate stats = new SystemUpdate();
+    for (StatsParser parser : SYSTEM_METRIC_PARSERS) {
+      parser.parse(reader, stats);
+    }
+    stats.setSampleTime(System.currentTimeMillis());
+    ProcessDelta processes = processParser.parse(reader);
+    // Nothing else comes before the end, unless the process section was an
+    // error the parser gave up on early.
+    for (reader.nextLine(); !reader.lineEquals(END_SNAPSHOT); reader.nextLine()) {
+      System.err.println("Unexpected snapshot line: " + reader.currentLine());
+    }
+    return processes != null ? new SystemSnapshot(takenMillis, stats, processes) : null;
+  }
+
+  private static ProcessDelta parseProcessList(ResponseReader reader) throws IOException {
+    if (reader.startsWith(WireFormat.MAGIC_PROCESS_LIST)) {
+      ByteBuffer preamble = reader.readFrame(WireFormat.HEADER_SIZE + WireFormat.PROCESS_LIST_PREAMBLE);
+      int recordCount = preamble.getInt(WireFormat.HEADER_SIZE);
+      int stringTableLength = preamble.getInt(WireFormat.HEADER_SIZE + 4);
+      ProcessDelta snapshot = new ProcessDelta(0, true, recordCount);
+      decodeRecords(reader, recordCount, stringTableLength, snapshot);
+      return snapshot;
+    }
+    ProcessDelta snapshot = new ProcessDelta(0, true, 1024);
+    reader.nextLine();
+    if (!reader.lineEquals(BEGIN_PROCESS_LIST)) {
+      System.err.println("Unexpected process list header: " + reader.currentLine());
+      return snapshot;
+    }
+    for (reader.nextLine(); !reader.lineEquals(END_PROCESS_LIST); reader.nextLine()) {
+      parseProcessLine(reader, snapshot);
+    }
+    return snapshot;
+  }
+
+  private ProcessDelta parseProcessDelta(ResponseReader reader, Set<ProcessField> fields) throws IOException {
+    if (reader.startsWith(WireFormat.MAGIC_PROCESS_DELTA)) {
+      ByteBuffer preamble = reader.readFrame(WireFormat.HEADER_SIZE + WireFormat.PROCESS_DELTA_PREAMBLE);
+      long generation = preamble.getLong(WireFormat.HEADER_SIZE + WireFormat.DELTA_GENERATION);
+      boolean full = (preamble.getInt(WireFormat.HEADER_SIZE + WireFormat.DELTA_FLAGS) & WireFormat.DELTA_FLAG_FULL) != 0;
+      int recordCount = preamble.getInt(WireFormat.HEADER_SIZE + WireFormat.DELTA_RECORD_COUNT);
+      int removedCount = preamble.getInt(WireFormat.HEADER_SIZE + WireFormat.DELTA_REMOVED_COUNT);
+      int userCount = preamble.getInt(WireFormat.HEADER_SIZE + WireFormat.DELTA_USER_COUNT);
+      int nameCount = preamble.getInt(WireFormat.HEADER_SIZE + WireFormat.DELTA_NAME_COUNT);
+      int stringTableLength = preamble.getInt(WireFormat.HEADER_SIZE + WireFormat.DELTA_STRING_TABLE_LENGTH);
+      ProcessDelta delta = new ProcessDelta(generation, full, recordCount);
+      decodeNameEntries(reader, userCount, nameCount, stringTableLength);
+      decodeDeltaRecords(reader, recordCount, delta);
+      decodeCounters(reader, recordCount, fields, delta);
+      for (int remaining = removedCount; remaining > 0;) {
+        ByteBuffer removed = reader.nextRecords(4, remaining);
+        for (int offset = 0; offset < removed.limit(); offset += 4) {
+          delta.addRemoved(removed.getInt(offset));
         }
+        remaining -= removed.limit() / 4;
       }
-      String memResponse = sendCommand(channel, "GET_MEM_STATS");
-      for (String line : memResponse.split("\n")) {
-        String[] parts = line.split(";");
-        if (parts.length < 2)
-          continue;
-        String key = parts[0];
-        long value = Long.parseLong(parts[1]);
-        switch (key) {
-          case "MEM_TOTAL":
-            stats.setMemTotal(value);
-            break;
-          case "MEM_FREE":
-            stats.setMemFree(value);
-            break;
-          case "MEM_AVAIL":
-            stats.setMemAvailable(value);
-            break;
-          case "BUFFERS":
-            stats.setBuffers(value);
-            break;
-          case "CACHED":
-            stats.setCached(value);
-            break;
-          case "SWAP_TOTAL":
-            stats.setSwapTotal(value);
-            break;
-          case "SWAP_FREE":
-            stats.setSwapFree(value);
+      return delta;
+    }
+    reader.nextLine();
+    if (!reader.lineStartsWith(BEGIN_PROCESS_DELTA)) {
+      System.err.println("Process deltas not supported by backend: " + reader.currentLine());
+      return null;
+    }
+    reader.skipField(';');
+    long generation = reader.nextLongField(';');
+    boolean full = "FULL".equals(reader.nextStringField(';'));
+    ProcessDelta delta = new ProcessDelta(generation, full, 256);
+    for (reader.nextLine(); !reader.lineEquals(END_PROCESS_DELTA); reader.nextLine()) {
+      if (reader.lineStartsWith(REMOVED)) {
+        reader.skipField('\t');
+        delta.addRemoved(reader.nextIntField('\t'));
+      } else if (reader.lineStartsWith(USER) || reader.lineStartsWith(NAME)) {
+        parseNameEntry(reader);
+      } else {
+        int index = delta.size();
+        parseDeltaLine(reader, delta);
+        if (delta.size() > index) {
+          parseCounters(reader, index, fields, delta);
+        }
+      }
+    }
+    return delta;
+  }
+
+  private static ProcessDelta parseProcessQuery(ResponseReader reader, Set<ProcessField> fields)
+      throws IOException {
+    if (reader.startsWith(WireFormat.MAGIC_PROCESS_QUERY)) {
+      ByteBuffer preamble = reader.readFrame(WireFormat.HEADER_SIZE + WireFormat.PROCESS_QUERY_PREAMBLE);
+      int matchedCount = preamble.getInt(WireFormat.HEADER_SIZE + WireFormat.QUERY_MATCHED_COUNT);
+      int recordCount = preamble.getInt(WireFormat.HEADER_SIZE + WireFormat.QUERY_RECORD_COUNT);
+      int stringTableLength = preamble.getInt(WireFormat.HEADER_SIZE + WireFormat.QUERY_STRING_TABLE_LENGTH);
+      ProcessDelta result = new ProcessDelta(0, true, recordCount);
+      result.setMatchedCount(matchedCount);
+      decodeRecords(reader, recordCount, stringTableLength, result);
+      decodeCounters(reader, recordCount, fields, result);
+      for (int index = 0; index < recordCount;) {
+        ByteBuffer cpu = reader.nextRecords(4, recordCount - index);
+        for (int offset = 0; offset < cpu.limit(); offset += 4) {
+          result.setCpuPercent(index++, Integer.toUnsignedLong(cpu.getInt(offset)) / 100.0);
+        }
+      }
+      return result;
+    }
+    reader.nextLine();
+    if (!reader.lineStartsWith(BEGIN_PROCESS_QUERY)) {
+      System.err.println("Process queries not supported by backend: " + reader.currentLine());
+      return null;
+    }
+    reader.skipField(';');
+    ProcessDelta result = new ProcessDelta(0, true, 256);
+    result.setMatchedCount(reader.nextIntField(';'));
+    for (reader.nextLine(); !reader.lineEquals(END_PROCESS_QUERY); reader.nextLine()) {
+      if (reader.lineIsBlank()) {
+        continue;
+      }
+      if (reader.fieldCount('\t') < 8) {
+        System.err.println("Invalid line format (expected 8 parts): " + reader.currentLine());
+        continue;
+      }
+      int index = result.size();
+      parseProcessLine(reader, result);
+      if (result.size() > index) {
+        result.setCpuPercent(index, reader.nextLongField('\t') / 100.0);
+        parseCounters(reader, index, fields, result);
+      }
+    }
+    return result;
+  }
+
+  // BEGIN_PROCESS_DETAIL;<pid>, one KEY;<value> line per stat the backend
+  // could read, END_PROCESS_DETAIL. The command line may contain ';'.
+  private static ProcessDetail parseProcessDetail(ResponseReader reader) throws IOException {
+    String line = reader.readLine();
+    if (!line.startsWith("BEGIN_PROCESS_DETAIL;")) {
+      return null;
+    }
+    int pid = Integer.parseInt(line.substring(21));
+    String commandLine = null;
+    String cgroup = null;
+    int threads = -1;
+    int openFiles = -1;
+    long pssKb = -1;
+    long ussKb = -1;
+    long swapKb = -1;
+    long[] io = {-1, -1, -1, -1};
+    List<ProcessDetail.Limit> limits = new ArrayList<>();
+    while (!(line = reader.readLine()).equals("END_PROCESS_DETAIL")) {
+      String[] parts = line.split(";", 2);
+      if (parts.length < 2) {
+        continue;
+      }
+      switch (parts[0]) {
+        case "CMDLINE":
+          commandLine = parts[1];
+          break;
+        case "CGROUP":
+          cgroup = parts[1];
+          break;
+        case "THREADS":
+          threads = Integer.parseInt(parts[1]);
+          break;
+        case "FDS":
+          openFiles = Integer.parseInt(parts[1]);
+          break;
+        case "PSS":
+          pssKb = Long.parseLong(parts[1]);
+          break;
+        case "USS":
+          ussKb = Long.parseLong(parts[1]);
+          break;
+        case "SWAP":
+          swapKb = Long.parseLong(parts[1]);
+          break;
+        case "IO":
+          String[] counters = parts[1].split(";");
+          for (int i = 0; i < io.length && i < counters.length; i++) {
+            io[i] = Long.parseLong(counters[i]);
+          }
+          break;
+        case "LIMIT":
+          String[] limit = parts[1].split(";");
+          if (limit.length >= 3) {
+            limits.add(new ProcessDetail.Limit(limit[0], Long.parseLong(limit[1]), Long.parseLong(limit[2])));
+          }
+          break;
+      }
+    }
+    return new ProcessDetail(pid, commandLine, cgroup, threads, openFiles, pssKb, ussKb, swapKb, io[0], io[1], io[2],
+        io[3], List.copyOf(limits));
+  }
+
+  // STAGE;<name>;<count>;<sumNs>;<maxNs>;<bucket>:<count>,... and
+  // COUNTER;<name>;<value> lines; see backend/src/selfStats.h.
+  private static SelfStats.Report parseSelfStats(ResponseReader reader) throws IOException {
+    String line = reader.readLine();
+    if (!line.startsWith("BEGIN_SELF_STATS;")) {
+      return null;
+    }
+    long uptimeMillis = Long.parseLong(line.substring(17));
+    Map<String, LatencyHistogram.Snapshot> stages = new TreeMap<>();
+    Map<String, Long> counters = new TreeMap<>();
+    while (!(line = reader.readLine()).equals("END_SELF_STATS")) {
+      String[] parts = line.split(";", -1);
+      switch (parts[0]) {
+        case "STAGE":
+          if (parts.length < 6) {
             break;
+          }
+          long[] buckets = new long[LatencyHistogram.BUCKETS];
+          for (String bucket : parts[5].split(",")) {
+            int colon = bucket.indexOf(':');
+            if (colon > 0) {
+              int index = Integer.parseInt(bucket.substring(0, colon));
+              if (index < buckets.length) {
+                buckets[index] = Long.parseLong(bucket.substring(colon + 1));
+              }
+            }
+          }
+          stages.put(parts[1], new LatencyHistogram.Snapshot(Long.parseLong(parts[2]), Long.parseLong(parts[3]),
+              Long.parseLong(parts[4]), buckets));
+          break;
+        case "COUNTER":
+          if (parts.length >= 3) {
+            counters.put(parts[1], Long.parseLong(parts[2]));
+          }
+          break;
+      }
+    }
+    return new SelfStats.Report(uptimeMillis, stages, counters);
+  }
+
+  private static void parseProcessLine(ResponseReader reader, ProcessDelta delta) {
+    if (reader.lineIsBlank())
+      return;
+    try {
+      if (reader.fieldCount('\t') >= 7) {
+        int pid = reader.nextIntField('\t');
+        int ppid = reader.nextIntField('\t');
+        String userName = STRINGS.intern(reader.nextStringField('\t'));
+        String state = STRINGS.intern(reader.nextStringField('\t'));
+        String processName = STRINGS.intern(reader.nextStringField('\t'));
+        long totalTime = reader.nextLongField('\t');
+        long memRssKb = reader.nextLongField('\t');
+        delta.addProcess(pid, ppid, userName, state, processName, totalTime, memRssKb);
+      } else {
+        System.err.println("Invalid line format (expected 7 parts): " + reader.currentLine());
+      }
+    } catch (NumberFormatException e) {
+      System.err.println("Error parsing numbers in line: " + reader.currentLine() + " - " + e.getMessage());
+    }
+  }
+
+  // A delta row: like a process line, but with the uid and name id in place
+  // of the user and process names.
+  private void parseDeltaLine(ResponseReader reader, ProcessDelta delta) {
+    if (reader.lineIsBlank()) {
+      return;
+    }
+    try {
+      if (reader.fieldCount('\t') >= 7) {
+        int pid = reader.nextIntField('\t');
+        int ppid = reader.nextIntField('\t');
+        String userName = names.user((int) reader.nextLongField('\t'));
+        String state = STRINGS.intern(reader.nextStringField('\t'));
+        String processName = names.name(reader.nextIntField('\t'));
+        long totalTime = reader.nextLongField('\t');
+        long memRssKb = reader.nextLongField('\t');
+        delta.addProcess(pid, ppid, userName, state, processName, totalTime, memRssKb);
+      } else {
+        System.err.println("Invalid line format (expected 7 parts): " + reader.currentLine());
+      }
+    } catch (NumberFormatException e) {
+      System.err.println("Error parsing numbers in line: " + reader.currentLine() + " - " + e.getMessage());
+    }
+  }
+
+  // USER;<uid>;<name> or NAME;<id>;<name>; the name may contain ';'.
+  private void parseNameEntry(ResponseReader reader) {
+    String[] parts = reader.currentLine().split(";", 3);
+    try {
+      if (parts.length < 3) {
+        System.err.println("Invalid dictionary entry: " + reader.currentLine());
+      } else if (parts[0].equals("USER")) {
+        names.putUser(Integer.parseUnsignedInt(parts[1]), parts[2]);
+      } else {
+        names.putName(Integer.parseInt(parts[1]), parts[2]);
+      }
+    } catch (NumberFormatException e) {
+      System.err.println("Invalid dictionary entry: " + reader.currentLine());
+    }
+  }
+
+  // The user entries, then the name entries, of a PDLT frame.
+  private void decodeNameEntries(ResponseReader reader, int userCount, int nameCount, int stringTableLength)
+      throws IOException {
+    byte[] strings = reader.readStringTable(stringTableLength);
+    for (int index = 0; index < userCount + nameCount;) {
+      ByteBuffer entries = reader.nextRecords(WireFormat.NAME_ENTRY_SIZE, userCount + nameCount - index);
+      for (int entry = 0; entry < entries.limit(); entry += WireFormat.NAME_ENTRY_SIZE) {
+        int id = entries.getInt(entry + WireFormat.ENTRY_ID);
+        String text = new String(strings, entries.getInt(entry + WireFormat.ENTRY_OFFSET),
+            entries.getInt(entry + WireFormat.ENTRY_LENGTH), StandardCharsets.UTF_8);
+        if (index++ < userCount) {
+          names.putUser(id, text);
+        } else {
+          names.putName(id, text);
         }
       }
-      String netResponse = sendCommand(channel, "GET_NET_STATS");
-      if (netResponse.startsWith("NET;")) {
-        String[] parts = netResponse.split(";");
-        if (parts.length >= 3) {
-          stats.setNetDownSpeed(Long.parseLong(parts[1]));
-          stats.setNetUpSpeed(Long.parseLong(parts[2]));
+    }
+  }
+
+  private void decodeDeltaRecords(ResponseReader reader, int recordCount, ProcessDelta delta) throws IOException {
+    for (int remaining = recordCount; remaining > 0;) {
+      ByteBuffer records = reader.nextRecords(WireFormat.DELTA_RECORD_SIZE, remaining);
+      for (int record = 0; record < records.limit(); record += WireFormat.DELTA_RECORD_SIZE) {
+        delta.addProcess(
+            records.getInt(record + WireFormat.RECORD_PID),
+            records.getInt(record + WireFormat.RECORD_PPID),
+            names.user(records.getInt(record + WireFormat.DELTA_RECORD_UID)),
+            stateString(records.get(record + WireFormat.DELTA_RECORD_STATE)),
+            names.name(records.getInt(record + WireFormat.DELTA_RECORD_NAME_ID)),
+            records.getLong(record + WireFormat.RECORD_TOTAL_TIME),
+            records.getLong(record + WireFormat.RECORD_MEM_RSS));
+      }
+      remaining -= records.limit() / WireFormat.DELTA_RECORD_SIZE;
+    }
+  }
+
+  // Decodes records in whatever chunks they arrive in, so decoding overlaps
+  // with the rest of the frame still being transferred.
+  private static void decodeRecords(ResponseReader reader, int recordCount, int stringTableLength,
+      ProcessDelta delta) throws IOException {
+    byte[] strings = reader.readStringTable(stringTableLength);
+    for (int remaining = recordCount; remaining > 0;) {
+      ByteBuffer records = reader.nextRecords(WireFormat.PROCESS_RECORD_SIZE, remaining);
+      for (int record = 0; record < records.limit(); record += WireFormat.PROCESS_RECORD_SIZE) {
+        String userName = STRINGS.intern(new String(strings, records.getInt(record + WireFormat.RECORD_USER_OFFSET),
+            Short.toUnsignedInt(records.getShort(record + WireFormat.RECORD_USER_LENGTH)), StandardCharsets.UTF_8));
+        String processName = STRINGS.intern(new String(strings, records.getInt(record + WireFormat.RECORD_NAME_OFFSET),
+            Short.toUnsignedInt(records.getShort(record + WireFormat.RECORD_NAME_LENGTH)), StandardCharsets.UTF_8));
+        delta.addProcess(
+            records.getInt(record + WireFormat.RECORD_PID),
+            records.getInt(record + WireFormat.RECORD_PPID),
+            userName,
+            stateString(records.get(record + WireFormat.RECORD_STATE)),
+            processName,
+            records.getLong(record + WireFormat.RECORD_TOTAL_TIME),
+            records.getLong(record + WireFormat.RECORD_MEM_RSS));
+      }
+      remaining -= records.limit() / WireFormat.PROCESS_RECORD_SIZE;
+    }
+  }
+
+  // The counters that follow the records, two per requested field.
+  private static void decodeCounters(ResponseReader reader, int recordCount, Set<ProcessField> fields,
+      ProcessDelta delta) throws IOException {
+    if (fields.isEmpty()) {
+      return;
+    }
+    int recordSize = fields.size() * 16;
+    for (int index = 0; index < recordCount;) {
+      ByteBuffer counters = reader.nextRecords(recordSize, recordCount - index);
+      for (int record = 0; record < counters.limit(); record += recordSize) {
+        int offset = record;
+        for (ProcessField field : ProcessField.values()) {
+          if (fields.contains(field)) {
+            delta.setCounter(index, field.firstCounter(), counters.getLong(offset));
+            delta.setCounter(index, field.firstCounter() + 1, counters.getLong(offset + 8));
+            offset += 16;
+          }
         }
+        index++;
       }
-      String diskResponse = sendCommand(channel, "GET_DISK_STATS");
-      if (diskResponse.startsWith("DISK;")) {
-        String[] parts = diskResponse.split(";");
-        if (parts.length >= 3) {
-          stats.setDiskUsed(Long.parseLong(parts[1]));
-          stats.setDiskTotal(Long.parseLong(parts[2]));
+    }
+  }
+
+  // The counters at the end of a text process line; a line without them
+  // leaves them at zero.
+  private static void parseCounters(ResponseReader reader, int index, Set<ProcessField> fields, ProcessDelta delta) {
+    try {
+      for (ProcessField field : ProcessField.values()) {
+        if (fields.contains(field)) {
+          delta.setCounter(index, field.firstCounter(), reader.nextLongField('\t'));
+          delta.setCounter(index, field.firstCounter() + 1, reader.nextLongField('\t'));
         }
       }
+    } catch (NumberFormatException e) {
+      System.err.println("Missing process counters in line: " + reader.currentLine());
+    }
+  }
 
+  private static String stateString(byte state) {
+    if (state >= 0) {
+      return STATE_STRINGS[state];
+    }
+    return String.valueOf((char) state);
+  }
+
+  public SystemUpdate getSystemUpdate() {
+    SystemUpdate stats = new SystemUpdate();
+    List<IPCConnection.Request<Void>> requests = List.of(
+        new IPCConnection.Request<>("GET_CPU_STATS", reader -> parseCpuStats(reader, stats)),
+        new IPCConnection.Request<>("GET_MEM_STATS", reader -> parseMemStats(reader, stats)),
+        new IPCConnection.Request<>("GET_NET_STATS", reader -> parseNetStats(reader, stats)),
+        new IPCConnection.Request<>("GET_DISK_STATS", reader -> parseDiskStats(reader, stats)));
+    try {
+      connection.submit(requests);
+      for (IPCConnection.Request<Void> request : requests) {
+        connection.await(request);
+      }
+      stats.setSampleTime(System.currentTimeMillis());
     } catch (Exception e) {
       System.err.println("Failed to get system update: " + e.getMessage());
       e.printStackTrace();
@@ -168,21 +691,288 @@ public class IPCClient {
     return stats;
   }
 
-  public boolean killProcess(int pid, int signal) {
-    UnixDomainSocketAddress address = UnixDomainSocketAddress.of(SOCKET_PATH);
-    try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
-      if (channel.connect(address)) {
-        String command = "KILL;" + pid + ";" + signal + "\n";
-        ByteBuffer writeBuffer = ByteBuffer.wrap(command.getBytes(StandardCharsets.UTF_8));
-        channel.write(writeBuffer);
-        System.out.println("Sent command: " + command.trim());
-        ByteBuffer readBuffer = ByteBuffer.allocate(256);
-        channel.read(readBuffer);
-        readBuffer.flip();
-        String response = StandardCharsets.UTF_8.decode(readBuffer).toString().trim();
-        System.out.println("Kill response: " + response);
-        return response.startsWith("OK");
+  // The single-metric getters below fill only their own fields of the
+  // returned SystemUpdate and return null on error, so each metric can be
+  // refreshed on its own schedule.
+  public SystemUpdate getCpuStats() {
+    return getStats("GET_CPU_STATS", IPCClient::parseCpuStats);
+  }
+
+  public SystemUpdate getMemStats() {
+    return getStats("GET_MEM_STATS", IPCClient::parseMemStats);
+  }
+
+  public SystemUpdate getNetStats() {
+    return getStats("GET_NET_STATS", IPCClient::parseNetStats);
+  }
+
+  public SystemUpdate getDiskStats() {
+    return getStats("GET_DISK_STATS", IPCClient::parseDiskStats);
+  }
+
+  // Per-core CPU shares of the monitored host (see SystemUpdate).
+  public SystemUpdate getCoreStats() {
+    return getStats("GET_CORE_STATS", IPCClient::parseCoreStats);
+  }
+
+  // Per-interface network rates (see SystemUpdate).
+  public SystemUpdate getInterfaceStats() {
+    return getStats("GET_INTERFACE_STATS", IPCClient::parseInterfaceStats);
+  }
+
+  // Per-block-device disk I/O rates (see SystemUpdate).
+  public SystemUpdate getDiskIoStats() {
+    return getStats("GET_DISKIO_STATS", IPCClient::parseDiskIoStats);
+  }
+
+  @FunctionalInterface
+  private interface StatsParser {
+    Void parse(ResponseReader reader, SystemUpdate stats) throws IOException;
+  }
+
+  // Pushes of the given system metrics (any of "cpu", "mem", "net", "disk",
+  // "cores", "interfaces", "diskio", comma separated) every interval. Fields
+  // of metrics that were not asked for stay zero; a subscriber that falls
+  // behind loses the oldest updates.
+  public Flow.Publisher<SystemUpdate> subscribeSystemUpdates(String metrics, Duration interval) {
+    List<StatsParser> parsers = new ArrayList<>();
+    List<String> requested = List.of(metrics.split(","));
+    for (int i = 0; i < SYSTEM_METRICS.size(); i++) {
+      if (requested.contains(SYSTEM_METRICS.get(i))) {
+        parsers.add(SYSTEM_METRIC_PARSERS.get(i));
       }
+    }
+    if (parsers.size() != requested.size()) {
+      throw new IllegalArgumentException("Unknown system metric in: " + metrics);
+    }
+    return new PushPublisher<>(connection, "SUBSCRIBE;" + metrics + ";" + interval.toMillis(), reader -> {
+      SystemUpdate stats = new SystemUpdate();
+      for (StatsParser parser : parsers) {
+        parser.parse(reader, stats);
+      }
+      stats.setSampleTime(System.currentTimeMillis());
+      return stats;
+    }, PUSH_BUFFER_SIZE, null);
+  }
+
+  // Pushes a process delta every interval, starting with a full snapshot.
+  // Deltas a subscriber has not taken yet are merged, never dropped.
+  public Flow.Publisher<ProcessDelta> subscribeProcesses(Duration interval) {
+    return subscribeProcesses(interval, Set.<ProcessField>of());
+  }
+
+  // The same with the counters of `fields` for every process sent.
+  public Flow.Publisher<ProcessDelta> subscribeProcesses(Duration interval, Set<ProcessField> fields) {
+    String command = "SUBSCRIBE;processes;" + interval.toMillis()
+        + (fields.isEmpty() ? "" : ";fields=" + ProcessQuery.fieldList(fields));
+    return new PushPublisher<>(connection, command, reader -> parseProcessDelta(reader, fields), PUSH_BUFFER_SIZE,
+        ProcessDelta::merge);
+  }
+
+  // Pushes the result of `query` every interval, as queryProcesses() would
+  // return it. Each push replaces the last, so a slow subscriber only gets
+  // the newest.
+  public Flow.Publisher<ProcessDelta> subscribeProcesses(Duration interval, ProcessQuery query) {
+    return new PushPublisher<>(connection, "SUBSCRIBE;processes;" + interval.toMillis() + ";" + query.toArguments(),
+        reader -> parseProcessQuery(reader, query.fields()), PUSH_BUFFER_SIZE, null);
+  }
+
+  // Pushes the processes as subscribeProcesses() does, each with the CPU
+  // sample the backend took in the same pass (SUBSCRIBE;cpu,processes), so
+  // the system CPU time to divide their CPU times by comes with them. Only
+  // the CPU fields of `system` are set, and `takenMillis` is -1.
+  public Flow.Publisher<SystemSnapshot> subscribeProcessSnapshots(Duration interval, Set<ProcessField> fields) {
+    String command = "SUBSCRIBE;cpu,processes;" + interval.toMillis()
+        + (fields.isEmpty() ? "" : ";fields=" + ProcessQuery.fieldList(fields));
+    return new PushPublisher<>(connection, command, reader -> parseProcessSnapshot(reader,
+        r -> parseProcessDelta(r, fields)), PUSH_BUFFER_SIZE, (older, newer) -> new SystemSnapshot(
+        newer.takenMillis(), newer.system(), ProcessDelta.merge(older.processes(), newer.processes())));
+  }
+
+  // The same with the result of `query`; each push replaces the last.
+  public Flow.Publisher<SystemSnapshot> subscribeProcessSnapshots(Duration interval, ProcessQuery query) {
+    return new PushPublisher<>(connection, "SUBSCRIBE;cpu,processes;" + interval.toMillis() + ";"
+        + query.toArguments(), reader -> parseProcessSnapshot(reader, r -> parseProcessQuery(r, query.fields())),
+        PUSH_BUFFER_SIZE, null);
+  }
+
+  private static SystemSnapshot parseProcessSnapshot(ResponseReader reader,
+      IPCConnection.ResponseParser<ProcessDelta> processParser) throws IOException {
+    SystemUpdate stats = new SystemUpdate();
+    parseCpuStats(reader, stats);
+    stats.setSampleTime(System.currentTimeMillis());
+    ProcessDelta processes = processParser.parse(reader);
+    return processes != null ? new SystemSnapshot(-1, stats, processes) : null;
+  }
+
+  private SystemUpdate getStats(String command, StatsParser parser) {
+    SystemUpdate stats = new SystemUpdate();
+    try {
+      connection.execute(command, reader -> parser.parse(reader, stats));
+      stats.setSampleTime(System.currentTimeMillis());
+      return stats;
+    } catch (Exception e) {
+      System.err.println("Failed to execute " + command + ": " + e.getMessage());
+      e.printStackTrace();
+      return null;
+    }
+  }
+
+  private static Void parseCpuStats(ResponseReader reader, SystemUpdate stats) throws IOException {
+    String cpuResponse = reader.readLine();
+    if (cpuResponse.startsWith("CPU;")) {
+      String[] parts = cpuResponse.split(";");
+      if (parts.length >= 3) {
+        stats.setCpuUsage(Double.parseDouble(parts[1]));
+        stats.setSystemTotalTime(Long.parseLong(parts[2]));
+      }
+    }
+    return null;
+  }
+
+  private static Void parseMemStats(ResponseReader reader, SystemUpdate stats) throws IOException {
+    String line;
+    do {
+      line = reader.readLine();
+      String[] parts = line.split(";");
+      if (parts.length < 2 || line.startsWith("ERROR;"))
+        continue;
+      String key = parts[0];
+      long value = Long.parseLong(parts[1]);
+      switch (key) {
+        case "MEM_TOTAL":
+          stats.setMemTotal(value);
+          break;
+        case "MEM_FREE":
+          stats.setMemFree(value);
+          break;
+        case "MEM_AVAIL":
+          stats.setMemAvailable(value);
+          break;
+        case "BUFFERS":
+          stats.setBuffers(value);
+          break;
+        case "CACHED":
+          stats.setCached(value);
+          break;
+        case "SWAP_TOTAL":
+          stats.setSwapTotal(value);
+          break;
+        case "SWAP_FREE":
+          stats.setSwapFree(value);
+          break;
+      }
+    } while (!line.startsWith("SWAP_FREE;") && !line.startsWith("ERROR;"));
+    return null;
+  }
+
+  private static Void parseNetStats(ResponseReader reader, SystemUpdate stats) throws IOException {
+    String netResponse = reader.readLine();
+    if (netResponse.startsWith("NET;")) {
+      String[] parts = netResponse.split(";");
+      if (parts.length >= 3) {
+        stats.setNetDownSpeed(Long.parseLong(parts[1]));
+        stats.setNetUpSpeed(Long.parseLong(parts[2]));
+      }
+    }
+    return null;
+  }
+
+  private static Void parseDiskStats(ResponseReader reader, SystemUpdate stats) throws IOException {
+    String diskResponse = reader.readLine();
+    if (diskResponse.startsWith("DISK;")) {
+      String[] parts = diskResponse.split(";");
+      if (parts.length >= 3) {
+        stats.setDiskUsed(Long.parseLong(parts[1]));
+        stats.setDiskTotal(Long.parseLong(parts[2]));
+      }
+    }
+    return null;
+  }
+
+  // CORES;<count>, then CORE;<id>;<user>;<system>;<iowait>;<steal> per core,
+  // the shares in tenths of a percent.
+  private static Void parseCoreStats(ResponseReader reader, SystemUpdate stats) throws IOException {
+    reader.nextLine();
+    if (!reader.lineStartsWith(CORES)) {
+      System.err.println("Unexpected core stats header: " + reader.currentLine());
+      return null;
+    }
+    reader.skipField(';');
+    int coreCount = reader.nextIntField(';');
+    stats.setCoreCount(coreCount);
+    for (int i = 0; i < coreCount; i++) {
+      reader.nextLine();
+      reader.skipField(';');
+      int id = reader.nextIntField(';');
+      int user = reader.nextIntField(';');
+      int system = reader.nextIntField(';');
+      int iowait = reader.nextIntField(';');
+      int steal = reader.nextIntField(';');
+      stats.setCore(i, id, user / 10.0, system / 10.0, iowait / 10.0, steal / 10.0);
+    }
+    return null;
+  }
+
+  // INTERFACES;<count>, then
+  // IF;<name>;<rxBytes>;<txBytes>;<rxPackets>;<txPackets>;<rxErrors>;<txErrors>
+  // per interface.
+  private static Void parseInterfaceStats(ResponseReader reader, SystemUpdate stats) throws IOException {
+    reader.nextLine();
+    if (!reader.lineStartsWith(INTERFACES)) {
+      System.err.println("Unexpected interface stats header: " + reader.currentLine());
+      return null;
+    }
+    reader.skipField(';');
+    int interfaceCount = reader.nextIntField(';');
+    stats.setInterfaceCount(interfaceCount);
+    for (int i = 0; i < interfaceCount; i++) {
+      reader.nextLine();
+      reader.skipField(';');
+      String name = reader.nextStringField(';');
+      long rxBytes = reader.nextLongField(';');
+      long txBytes = reader.nextLongField(';');
+      long rxPackets = reader.nextLongField(';');
+      long txPackets = reader.nextLongField(';');
+      long rxErrors = reader.nextLongField(';');
+      long txErrors = reader.nextLongField(';');
+      stats.setInterface(i, name, rxBytes, txBytes, rxPackets, txPackets, rxErrors, txErrors);
+    }
+    return null;
+  }
+
+  // DISKIO;<count>, then DEV;<name>;<readBytes>;<writeBytes>;<reads>;<writes>;<util>
+  // per device, the utilization in tenths of a percent.
+  private static Void parseDiskIoStats(ResponseReader reader, SystemUpdate stats) throws IOException {
+    reader.nextLine();
+    if (!reader.lineStartsWith(DISKIO)) {
+      System.err.println("Unexpected disk I/O stats header: " + reader.currentLine());
+      return null;
+    }
+    reader.skipField(';');
+    int deviceCount = reader.nextIntField(';');
+    stats.setDiskDeviceCount(deviceCount);
+    for (int i = 0; i < deviceCount; i++) {
+      reader.nextLine();
+      reader.skipField(';');
+      String name = reader.nextStringField(';');
+      long readBytes = reader.nextLongField(';');
+      long writeBytes = reader.nextLongField(';');
+      long reads = reader.nextLongField(';');
+      long writes = reader.nextLongField(';');
+      int utilization = reader.nextIntField(';');
+      stats.setDiskDevice(i, name, readBytes, writeBytes, reads, writes, utilization / 10.0);
+    }
+    return null;
+  }
+
+  public boolean killProcess(int pid, int signal) {
+    try {
+      String command = "KILL;" + pid + ";" + signal;
+      System.out.println("Sent command: " + command);
+      String response = connection.execute(command, ResponseReader::readLine);
+      System.out.println("Kill response: " + response);
+      return response.startsWith("OK");
     } catch (Exception e) {
       System.err.println("Error in killProcess: " + e.getMessage());
       e.printStackTrace();
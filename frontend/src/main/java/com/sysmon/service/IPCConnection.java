@@ -0,0 +1,491 @@
+/*
+ - PIPELINED CONNECTION:
+ - A single long-lived connection to the C backend, shared by every caller of
+   IPCClient.
+ - Commands are written in batches and queued in the order they were sent;
+   one reader thread reads the responses back in that same order and hands
+   each one to the parser of the request it belongs to.
+ - A new session first negotiates the binary wire format (SET_FORMAT;BINARY)
+   unless it is disabled; a backend that rejects it keeps answering in text,
+   and the response parsers accept either.
+ - If the socket breaks (or a response takes too long) the session is closed,
+   every request still in flight fails, and the next submit() reconnects.
+ - Push subscriptions (SUBSCRIBE) share the same connection: the reader tells
+   a push (first byte '>') from the next response and hands it to the
+   subscription's parser and sink. Subscriptions outlive sessions; while any
+   are active a broken connection is re-established in the background and
+   every subscription is sent again. setInterval() reschedules one in place
+   (SET_INTERVAL); a backend without that command gets it again instead.
+ - Every response is timed into the ipc.* stages of SelfStats: the wait
+   from sending its command until its first byte, then the socket reads
+   and the parsing of the rest.
+*/
+
+package com.sysmon.service;
+
+import com.sysmon.diagnostics.LatencyHistogram;
+import com.sysmon.diagnostics.SelfStats;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+class IPCConnection {
+  private static final long RESPONSE_TIMEOUT_MS = 10_000;
+  private static final long RECONNECT_DELAY_MS = 1_000;
+  private static final byte PUSH_MARKER = '>';
+  private static final String SUBSCRIBED_PREFIX = "OK;SUBSCRIBED;";
+  private static final LatencyHistogram WAIT = SelfStats.stage("ipc.wait");
+  private static final LatencyHistogram TRANSFER = SelfStats.stage("ipc.transfer");
+  private static final LatencyHistogram PARSE = SelfStats.stage("ipc.parse");
+
+  @FunctionalInterface
+  interface ResponseParser<T> {
+    T parse(ResponseReader reader) throws IOException;
+  }
+
+  static final class Request<T> {
+    private final String command;
+    private final ResponseParser<T> parser;
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+    private volatile Session session;
+    private volatile long sentNanos;
+
+    Request(String command, ResponseParser<T> parser) {
+      this.command = command;
+      this.parser = parser;
+    }
+
+    CompletableFuture<T> future() {
+      return future;
+    }
+
+    private void complete(ResponseReader reader) throws IOException {
+      future.complete(parser.parse(reader));
+    }
+  }
+
+  // A push subscription; `parser` reads one push (without its >PUSH line)
+  // and `sink` receives the result on the connection's reader thread, so it
+  // must not block.
+  static final class Subscription<T> {
+    private volatile String command;
+    private final ResponseParser<T> parser;
+    private final Consumer<T> sink;
+    private final Consumer<IOException> onError;
+    private volatile boolean cancelled;
+    private volatile Session session;
+    private volatile int serverId;
+
+    Subscription(String command, ResponseParser<T> parser, Consumer<T> sink, Consumer<IOException> onError) {
+      this.command = command;
+      this.parser = parser;
+      this.sink = sink;
+      this.onError = onError;
+    }
+
+    private void deliver(ResponseReader reader) throws IOException {
+      T value = parser.parse(reader);
+      if (!cancelled && value != null) {
+        try {
+          sink.accept(value);
+        } catch (RuntimeException e) {
+          System.err.println("IPCConnection: push subscriber failed: " + e.getMessage());
+          e.printStackTrace();
+        }
+      }
+    }
+  }
+
+  private final String socketPath;
+  private final boolean binaryProtocol;
+  private final List<Subscription<?>> subscriptions = new CopyOnWriteArrayList<>();
+  private Session session;
+  private boolean reconnecting;
+
+  IPCConnection(String socketPath, boolean binaryProtocol) {
+    this.socketPath = socketPath;
+    this.binaryProtocol = binaryProtocol;
+  }
+
+  <T> T execute(String command, ResponseParser<T> parser) throws IOException {
+    Request<T> request = new Request<>(command, parser);
+    submit(List.of(request));
+    return await(request);
+  }
+
+  void submit(List<? extends Request<?>> requests) throws IOException {
+    synchronized (this) {
+      currentSession().send(requests);
+    }
+  }
+
+  <T> Subscription<T> subscribe(String command, ResponseParser<T> parser, Consumer<T> sink,
+      Consumer<IOException> onError) throws IOException {
+    Subscription<T> subscription = new Subscription<>(command, parser, sink, onError);
+    synchronized (this) {
+      subscriptions.add(subscription);
+      Session current = session;
+      if (current == null || current.isClosed()) {
+        // A new session subscribes everything in the list, this one included.
+        currentSession();
+      } else {
+        current.send(List.of(subscribeRequest(subscription, current)));
+      }
+    }
+    return subscription;
+  }
+
+  void unsubscribe(Subscription<?> subscription) {
+    subscription.cancelled = true;
+    subscriptions.remove(subscription);
+    Session owner = subscription.session;
+    int serverId = subscription.serverId;
+    if (owner == null || owner.isClosed() || serverId == 0) {
+      return;
+    }
+    try {
+      synchronized (this) {
+        owner.send(List.of(new Request<>("UNSUBSCRIBE;" + serverId, reader -> {
+          reader.readLine();
+          owner.pushHandlers.remove(serverId);
+          return null;
+        })));
+      }
+    } catch (IOException e) {
+      System.err.println("IPCConnection: failed to unsubscribe: " + e.getMessage());
+    }
+  }
+
+  // Keeps the backend's subscription, and with it the generation a process
+  // subscription has reached, rather than subscribing again from scratch.
+  void setInterval(Subscription<?> subscription, long intervalMs) {
+    subscription.command = withInterval(subscription.command, intervalMs);
+    sendInterval(subscription);
+  }
+
+  private void sendInterval(Subscription<?> subscription) {
+    Session owner = subscription.session;
+    int serverId = subscription.serverId;
+    // A SUBSCRIBE still in flight, or the next session's, sends the new
+    // command itself.
+    if (subscription.cancelled || owner == null || owner.isClosed() || serverId == 0) {
+      return;
+    }
+    String command = subscription.command;
+    try {
+      synchronized (this) {
+        owner.send(List.of(new Request<>("SET_INTERVAL;" + serverId + ";" + intervalOf(command), reader -> {
+          String reply = reader.readLine();
+          if (!reply.equals("OK") && subscription.serverId == serverId && !subscription.cancelled) {
+            System.err.println("IPCConnection: " + reply + ", subscribing again at the new interval");
+            // The reader thread must not block on the connection lock.
+            Thread.ofVirtual().start(() -> resubscribe(subscription, owner, serverId));
+          }
+          return null;
+        })));
+      }
+    } catch (IOException e) {
+      System.err.println("IPCConnection: failed to change interval: " + e.getMessage());
+    }
+  }
+
+  private void resubscribe(Subscription<?> subscription, Session owner, int serverId) {
+    try {
+      synchronized (this) {
+        if (owner.isClosed() || subscription.cancelled) {
+          return;
+        }
+        subscription.serverId = 0;
+        owner.send(List.of(new Request<>("UNSUBSCRIBE;" + serverId, reader -> {
+          reader.readLine();
+          owner.pushHandlers.remove(serverId);
+          return null;
+        }), subscribeRequest(subscription, owner)));
+      }
+    } catch (IOException e) {
+      System.err.println("IPCConnection: failed to subscribe again: " + e.getMessage());
+    }
+  }
+
+  // SUBSCRIBE;<metrics>;<interval_ms>[;<query>] with another interval.
+  private static String withInterval(String command, long intervalMs) {
+    String[] parts = command.split(";", 4);
+    parts[2] = Long.toString(intervalMs);
+    return String.join(";", parts);
+  }
+
+  private static String intervalOf(String command) {
+    return command.split(";", 4)[2];
+  }
+
+  private Session currentSession() throws IOException {
+    Session current = session;
+    if (current == null || current.isClosed()) {
+      current = openSession();
+      session = current;
+    }
+    return current;
+  }
+
+  <T> T await(Request<T> request) throws IOException {
+    try {
+      return request.future.get(RESPONSE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      IOException timeout = new IOException("Timed out waiting for response to " + request.command, e);
+      Session owner = request.session;
+      if (owner != null) {
+        owner.close(timeout);
+      }
+      throw timeout;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted waiting for response to " + request.command, e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException ioException) {
+        throw ioException;
+      }
+      throw new IOException("Request " + request.command + " failed", e.getCause());
+    }
+  }
+
+  private Session openSession() throws IOException {
+    Session opened = new Session(this, connect());
+    List<Request<?>> setup = new ArrayList<>();
+    if (binaryProtocol) {
+      setup.add(new Request<>("SET_FORMAT;BINARY", IPCConnection::parseFormatReply));
+    }
+    for (Subscription<?> subscription : subscriptions) {
+      setup.add(subscribeRequest(subscription, opened));
+    }
+    if (!setup.isEmpty()) {
+      opened.send(setup);
+    }
+    return opened;
+  }
+
+  private Request<Void> subscribeRequest(Subscription<?> subscription, Session target) {
+    String command = subscription.command;
+    return new Request<>(command, reader -> {
+      String reply = reader.readLine();
+      if (!reply.startsWith(SUBSCRIBED_PREFIX)) {
+        subscriptions.remove(subscription);
+        subscription.onError.accept(new IOException("Backend rejected " + command + ": " + reply));
+        return null;
+      }
+      int serverId = Integer.parseInt(reply.substring(SUBSCRIBED_PREFIX.length()).trim());
+      subscription.session = target;
+      subscription.serverId = serverId;
+      target.pushHandlers.put(serverId, subscription);
+      if (subscription.cancelled) {
+        // Cancelled while the SUBSCRIBE was in flight; the reader thread must
+        // not block on the connection lock, so unsubscribe from elsewhere.
+        Thread.ofVirtual().start(() -> unsubscribe(subscription));
+      } else if (!command.equals(subscription.command)) {
+        // The interval changed while the SUBSCRIBE was in flight.
+        Thread.ofVirtual().start(() -> sendInterval(subscription));
+      }
+      return null;
+    });
+  }
+
+  // Keeps trying to reopen the connection while push subscriptions need it;
+  // without subscriptions the next submit() reconnects on demand.
+  private void sessionClosed() {
+    synchronized (this) {
+      if (reconnecting || subscriptions.isEmpty()) {
+        return;
+      }
+      reconnecting = true;
+    }
+    Thread.ofVirtual().name("sysmon-ipc-reconnect").start(() -> {
+      while (true) {
+        try {
+          Thread.sleep(RECONNECT_DELAY_MS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+        synchronized (this) {
+          if (subscriptions.isEmpty() || (session != null && !session.isClosed())) {
+            break;
+          }
+          try {
+            currentSession();
+            break;
+          } catch (IOException e) {
+            System.err.println("IPCConnection: reconnect failed: " + e.getMessage());
+          }
+        }
+      }
+      synchronized (this) {
+        reconnecting = false;
+      }
+    });
+  }
+
+  private static Void parseFormatReply(ResponseReader reader) throws IOException {
+    String reply = reader.readLine();
+    if (!reply.startsWith("OK;")) {
+      System.err.println("Backend does not support the binary format, using text: " + reply);
+    }
+    return null;
+  }
+
+  private SocketChannel connect() throws IOException {
+    UnixDomainSocketAddress address = UnixDomainSocketAddress.of(socketPath);
+    SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+    try {
+      if (channel.connect(address)) {
+        return channel;
+      }
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+    channel.close();
+    throw new IOException("Failed to connect to socket at " + socketPath);
+  }
+
+  private static final class Session implements Runnable {
+    private final IPCConnection owner;
+    private final SocketChannel channel;
+    private final ResponseReader reader;
+    private final LinkedBlockingQueue<Request<?>> pending = new LinkedBlockingQueue<>();
+    // Only touched by the reader thread (from run() and response parsers).
+    private final Map<Integer, Subscription<?>> pushHandlers = new HashMap<>();
+    private final Thread readerThread;
+    private boolean closed;
+
+    Session(IPCConnection owner, SocketChannel channel) {
+      this.owner = owner;
+      this.channel = channel;
+      this.reader = new ResponseReader(channel);
+      this.readerThread = new Thread(this, "sysmon-ipc-reader");
+      readerThread.setDaemon(true);
+      readerThread.start();
+    }
+
+    synchronized boolean isClosed() {
+      return closed;
+    }
+
+    void send(List<? extends Request<?>> requests) throws IOException {
+      StringBuilder commands = new StringBuilder();
+      for (Request<?> request : requests) {
+        commands.append(request.command).append('\n');
+      }
+      ByteBuffer writeBuffer = ByteBuffer.wrap(commands.toString().getBytes(StandardCharsets.UTF_8));
+      enqueue(requests);
+      try {
+        while (writeBuffer.hasRemaining()) {
+          channel.write(writeBuffer);
+        }
+      } catch (IOException e) {
+        close(e);
+        throw e;
+      }
+    }
+
+    private synchronized void enqueue(List<? extends Request<?>> requests) throws IOException {
+      if (closed) {
+        throw new IOException("Connection closed");
+      }
+      long now = System.nanoTime();
+      for (Request<?> request : requests) {
+        request.session = this;
+        request.sentNanos = now;
+        pending.add(request);
+      }
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (!isClosed()) {
+          byte first = reader.peekByte();
+          long start = System.nanoTime();
+          long readBefore = reader.readNanos();
+          if (first == PUSH_MARKER) {
+            readPush();
+            recordRead(start, readBefore);
+            continue;
+          }
+          Request<?> request = pending.poll();
+          if (request == null) {
+            throw new IOException("Unexpected data from backend");
+          }
+          WAIT.record(start - request.sentNanos);
+          try {
+            request.complete(reader);
+          } catch (IOException | RuntimeException e) {
+            request.future.completeExceptionally(e);
+            throw e;
+          }
+          recordRead(start, readBefore);
+        }
+      } catch (IOException e) {
+        close(e);
+      } catch (RuntimeException e) {
+        close(new IOException("Malformed response from backend", e));
+      }
+    }
+
+    private void recordRead(long start, long readBefore) {
+      long transfer = reader.readNanos() - readBefore;
+      TRANSFER.record(transfer);
+      PARSE.record(System.nanoTime() - start - transfer);
+    }
+
+    private void readPush() throws IOException {
+      String header = reader.readLine();
+      int serverId;
+      try {
+        serverId = Integer.parseInt(header.substring(header.indexOf(';') + 1));
+      } catch (RuntimeException e) {
+        throw new IOException("Malformed push header: " + header, e);
+      }
+      Subscription<?> subscription = pushHandlers.get(serverId);
+      if (subscription == null) {
+        throw new IOException("Push for unknown subscription " + serverId);
+      }
+      subscription.deliver(reader);
+    }
+
+    void close(IOException reason) {
+      List<Request<?>> failed = new ArrayList<>();
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+        closed = true;
+        pending.drainTo(failed);
+      }
+      try {
+        channel.close();
+      } catch (IOException e) {
+        System.err.println("IPCConnection: error closing socket: " + e.getMessage());
+      }
+      if (Thread.currentThread() != readerThread) {
+        readerThread.interrupt();
+      }
+      for (Request<?> request : failed) {
+        request.future.completeExceptionally(reason);
+      }
+      owner.sessionClosed();
+    }
+  }
+}
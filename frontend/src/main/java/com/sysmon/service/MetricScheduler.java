@@ -0,0 +1,218 @@
+/*
+ - METRIC SCHEDULER:
+ - Runs each metric collector (CPU, memory, network, disk, processes) on its
+   own interval instead of fetching everything together on one timer, so
+   cheap metrics can refresh quickly without paying for a full /proc walk at
+   the same rate.
+ - One virtual thread keeps the deadlines; every run of a collector gets its
+   own virtual thread, so a slow backend call never delays other metrics.
+ - Deadlines carry a small random jitter so collectors with related
+   intervals drift apart instead of all hitting the backend in the same
+   instant. A collector whose previous run is still in flight skips its
+   turn instead of piling up runs, and missed deadlines are not caught up.
+ - setIntervalScale() stretches every interval by a factor (see
+   RefreshPolicy); going back to a smaller one pulls the deadlines in at
+   once instead of waiting out the long ones.
+ - Results are handed to the publish executor (Platform::runLater in the
+   UI) as one coalesced batch: everything that finished since the last batch
+   is applied together, in registration order, keeping only the latest
+   result of each collector.
+ - Every applied result is timed into SelfStats: refresh.<name> from the
+   run's start until it was applied, and fx.queue for the wait between
+   being ready and the publish executor getting to it.
+*/
+
+package com.sysmon.service;
+
+import com.sysmon.diagnostics.LatencyHistogram;
+import com.sysmon.diagnostics.SelfStats;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+public class MetricScheduler implements AutoCloseable {
+  private static final double JITTER = 0.1;
+  private static final LatencyHistogram FX_QUEUE = SelfStats.stage("fx.queue");
+
+  private final Executor publishExecutor;
+  private final List<Collector<?>> collectors = new CopyOnWriteArrayList<>();
+  private final AtomicBoolean publishScheduled = new AtomicBoolean();
+  private volatile double intervalScale = 1;
+  private volatile boolean paused;
+  private volatile boolean closed;
+  private Thread schedulerThread;
+
+  public MetricScheduler(Executor publishExecutor) {
+    this.publishExecutor = publishExecutor;
+  }
+
+  // The interval can be overridden with -Dsysmon.interval.<name>=<millis>.
+  public <T> void register(String name, Duration interval, Callable<T> fetch, Consumer<T> apply) {
+    collectors.add(new Collector<>(name, interval(name, interval).toNanos(), fetch, apply));
+  }
+
+  public static Duration interval(String name, Duration fallback) {
+    long millis = Long.getLong("sysmon.interval." + name, fallback.toMillis());
+    return Duration.ofMillis(Math.max(1, millis));
+  }
+
+  public synchronized void start() {
+    if (schedulerThread == null) {
+      schedulerThread = Thread.ofVirtual().name("sysmon-scheduler").start(this::schedule);
+    }
+  }
+
+  public void pause() {
+    paused = true;
+  }
+
+  public void resume() {
+    paused = false;
+    runNow();
+  }
+
+  public void setIntervalScale(double scale) {
+    double previous = intervalScale;
+    intervalScale = scale;
+    if (scale < previous) {
+      long now = System.nanoTime();
+      for (Collector<?> collector : collectors) {
+        long deadline = now + (long) (collector.intervalNanos * scale);
+        if (collector.deadline - deadline > 0) {
+          collector.deadline = deadline;
+        }
+      }
+      Thread thread = schedulerThread;
+      if (thread != null) {
+        LockSupport.unpark(thread);
+      }
+    }
+  }
+
+  // Makes every collector due immediately (e.g. after killing a process).
+  public void runNow() {
+    long now = System.nanoTime();
+    for (Collector<?> collector : collectors) {
+      collector.deadline = now;
+    }
+    Thread thread = schedulerThread;
+    if (thread != null) {
+      LockSupport.unpark(thread);
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    closed = true;
+    if (schedulerThread != null) {
+      schedulerThread.interrupt();
+    }
+  }
+
+  private void schedule() {
+    while (!closed && !Thread.currentThread().isInterrupted()) {
+      if (paused) {
+        // Deadlines do not move while paused, so waiting for them would
+        // spin; resume() unparks this thread.
+        LockSupport.park(this);
+        continue;
+      }
+      long now = System.nanoTime();
+      long nextDeadline = now + Duration.ofSeconds(1).toNanos();
+      for (Collector<?> collector : collectors) {
+        if (collector.deadline - now <= 0) {
+          collector.trigger(now);
+        }
+        if (collector.deadline - nextDeadline < 0) {
+          nextDeadline = collector.deadline;
+        }
+      }
+      long wait = nextDeadline - System.nanoTime();
+      if (wait > 0) {
+        LockSupport.parkNanos(this, wait);
+      }
+    }
+  }
+
+  private void publish() {
+    if (publishScheduled.compareAndSet(false, true)) {
+      publishExecutor.execute(this::applyBatch);
+    }
+  }
+
+  private void applyBatch() {
+    publishScheduled.set(false);
+    for (Collector<?> collector : collectors) {
+      collector.applyLatest();
+    }
+  }
+
+  private final class Collector<T> {
+    private final String name;
+    private final long intervalNanos;
+    private final Callable<T> fetch;
+    private final Consumer<T> apply;
+    private final LatencyHistogram refresh;
+    private final AtomicBoolean inFlight = new AtomicBoolean();
+    private final AtomicReference<Result<T>> latest = new AtomicReference<>();
+    private volatile long deadline = System.nanoTime();
+
+    Collector(String name, long intervalNanos, Callable<T> fetch, Consumer<T> apply) {
+      this.name = name;
+      this.intervalNanos = intervalNanos;
+      this.fetch = fetch;
+      this.apply = apply;
+      this.refresh = SelfStats.stage("refresh." + name);
+    }
+
+    void trigger(long now) {
+      deadline = now + jittered((long) (intervalNanos * intervalScale));
+      if (!inFlight.compareAndSet(false, true)) {
+        return;
+      }
+      Thread.ofVirtual().name("sysmon-collector-" + name).start(() -> run(now));
+    }
+
+    private void run(long startNanos) {
+      try {
+        T result = fetch.call();
+        if (result != null) {
+          latest.set(new Result<>(result, startNanos, System.nanoTime()));
+          publish();
+        }
+      } catch (Exception e) {
+        System.err.println("MetricScheduler: " + name + " collector failed: " + e.getMessage());
+        e.printStackTrace();
+      } finally {
+        inFlight.set(false);
+      }
+    }
+
+    void applyLatest() {
+      Result<T> result = latest.getAndSet(null);
+      if (result != null) {
+        FX_QUEUE.recordSince(result.readyNanos);
+        apply.accept(result.value);
+        refresh.recordSince(result.startNanos);
+      }
+    }
+  }
+
+  private record Result<T>(T value, long startNanos, long readyNanos) {
+  }
+
+  private static long jittered(long intervalNanos) {
+    long spread = (long) (intervalNanos * JITTER);
+    if (spread <= 0) {
+      return intervalNanos;
+    }
+    return intervalNanos + ThreadLocalRandom.current().nextLong(-spread, spread + 1);
+  }
+}
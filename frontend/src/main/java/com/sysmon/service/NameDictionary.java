@@ -0,0 +1,69 @@
+/*
+ - NAME DICTIONARY:
+ - The user and process names that GET_PROCESSES_SINCE rows refer to by
+   uid and name id (see backend/src/procTable.h). Each delta only carries
+   the entries added since the generation it answers, so the dictionary
+   accumulates them across deltas; a full delta carries every entry and
+   overwrites whatever an id meant before (e.g. in an earlier backend run).
+ - Entries are interned in a StringPool, so resolving a row never
+   allocates and all rows of a user share one String.
+ - Thread-safe: the polling and push parsers of one IPCClient share it.
+*/
+
+package com.sysmon.service;
+
+import com.sysmon.util.IntLongMap;
+import com.sysmon.util.StringPool;
+import java.util.Arrays;
+
+final class NameDictionary {
+  private static final String UNKNOWN_NAME = "?";
+
+  private final StringPool pool;
+  // uid -> index into users.
+  private final IntLongMap userSlots = new IntLongMap(64);
+  private String[] users = new String[16];
+  private int userCount;
+  private String[] names = new String[256];
+
+  NameDictionary(StringPool pool) {
+    this.pool = pool;
+  }
+
+  synchronized void putUser(int uid, String name) {
+    int slot = (int) userSlots.get(uid, -1L);
+    if (slot < 0) {
+      if (userCount == users.length) {
+        users = Arrays.copyOf(users, userCount * 2);
+      }
+      slot = userCount++;
+      userSlots.put(uid, slot, -1L);
+    }
+    users[slot] = pool.intern(name);
+  }
+
+  synchronized void putName(int id, String name) {
+    if (id < 0) {
+      return;
+    }
+    if (id >= names.length) {
+      names = Arrays.copyOf(names, Math.max(id + 1, names.length * 2));
+    }
+    names[id] = pool.intern(name);
+  }
+
+  // A uid the backend never named is shown as the number, as the backend
+  // itself does for uids without a passwd entry.
+  synchronized String user(int uid) {
+    int slot = (int) userSlots.get(uid, -1L);
+    if (slot < 0) {
+      return pool.intern(Integer.toUnsignedString(uid));
+    }
+    return users[slot];
+  }
+
+  synchronized String name(int id) {
+    String name = id >= 0 && id < names.length ? names[id] : null;
+    return name != null ? name : UNKNOWN_NAME;
+  }
+}
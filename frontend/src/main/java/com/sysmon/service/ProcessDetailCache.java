@@ -0,0 +1,67 @@
+/*
+ - PROCESS DETAIL CACHE:
+ - Keeps recently fetched ProcessDetails so that re-selecting a process, or
+   a refresh tick while it stays selected, does not make the backend walk
+   its smaps again.
+ - An entry is served for `timeToLive` after it was fetched and fetched
+   again after that; at most `capacity` entries are kept, the least
+   recently used one going first.
+ - Entries of processes that exited are dropped with invalidate().
+ - get() blocks on the fetch, so it must not be called on the FX thread.
+   Concurrent misses for the same pid may both fetch; the later one wins.
+*/
+
+package com.sysmon.service;
+
+import com.sysmon.model.ProcessDetail;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+public class ProcessDetailCache {
+  private final IntFunction<ProcessDetail> fetch;
+  private final long timeToLiveNanos;
+  private final Map<Integer, Entry> entries;
+
+  private record Entry(ProcessDetail detail, long fetchedAt) {
+  }
+
+  public ProcessDetailCache(IntFunction<ProcessDetail> fetch, int capacity, Duration timeToLive) {
+    this.fetch = fetch;
+    this.timeToLiveNanos = timeToLive.toNanos();
+    this.entries = new LinkedHashMap<>(capacity * 2, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  // The process's detail, fetched only if there is no fresh entry, or null
+  // if the process does not exist.
+  public ProcessDetail get(int pid) {
+    long now = System.nanoTime();
+    synchronized (entries) {
+      Entry entry = entries.get(pid);
+      if (entry != null && now - entry.fetchedAt < timeToLiveNanos) {
+        return entry.detail;
+      }
+    }
+    ProcessDetail detail = fetch.apply(pid);
+    synchronized (entries) {
+      if (detail != null) {
+        entries.put(pid, new Entry(detail, now));
+      } else {
+        entries.remove(pid);
+      }
+    }
+    return detail;
+  }
+
+  public void invalidate(int pid) {
+    synchronized (entries) {
+      entries.remove(pid);
+    }
+  }
+}
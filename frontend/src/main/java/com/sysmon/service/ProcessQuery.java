@@ -0,0 +1,96 @@
+/*
+ - PROCESS QUERY:
+ - A filter, sort order and row limit the backend applies to the process
+   table before answering (GET_PROCESSES;<query>, see
+   backend/src/procQuery.h), so only the rows a client shows are sent and
+   parsed.
+ - Empty or null filters match everything; a limit of 0 means no limit.
+ - `fields` asks for optional counters with every row (see ProcessField).
+ - Values cannot contain ';' or line breaks, which delimit the protocol.
+*/
+
+package com.sysmon.service;
+
+import com.sysmon.model.ProcessField;
+import java.util.Set;
+
+public record ProcessQuery(String user, String states, String namePrefix, long minRssKb, SortKey sortKey,
+    boolean descending, int limit, Set<ProcessField> fields) {
+
+  public enum SortKey {
+    PID("pid"),
+    PPID("ppid"),
+    USER("user"),
+    STATE("state"),
+    NAME("name"),
+    CPU("cpu"),
+    RSS("rss");
+
+    private final String wireName;
+
+    SortKey(String wireName) {
+      this.wireName = wireName;
+    }
+  }
+
+  public ProcessQuery {
+    for (String value : new String[] {user, states, namePrefix}) {
+      if (value != null && (value.indexOf(';') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0)) {
+        throw new IllegalArgumentException("Invalid process query value: " + value);
+      }
+    }
+    if (minRssKb < 0 || limit < 0) {
+      throw new IllegalArgumentException("Negative process query bound");
+    }
+    if (sortKey == null) {
+      sortKey = SortKey.PID;
+    }
+    fields = fields == null ? Set.of() : Set.copyOf(fields);
+  }
+
+  // Every process, in the given order, cut to `limit` rows.
+  public static ProcessQuery sorted(SortKey sortKey, boolean descending, int limit) {
+    return new ProcessQuery(null, null, null, 0, sortKey, descending, limit, null);
+  }
+
+  public ProcessQuery withFields(Set<ProcessField> fields) {
+    return new ProcessQuery(user, states, namePrefix, minRssKb, sortKey, descending, limit, fields);
+  }
+
+  // The arguments of GET_PROCESSES;<query>, without the command.
+  String toArguments() {
+    StringBuilder arguments = new StringBuilder(64);
+    append(arguments, "user", user);
+    append(arguments, "state", states);
+    append(arguments, "name", namePrefix);
+    if (minRssKb > 0) {
+      append(arguments, "minrss", String.valueOf(minRssKb));
+    }
+    append(arguments, "sort", sortKey.wireName);
+    append(arguments, "order", descending ? "desc" : "asc");
+    append(arguments, "limit", String.valueOf(limit));
+    append(arguments, "fields", fieldList(fields));
+    return arguments.toString();
+  }
+
+  // The fields as the backend names them, comma separated in group order.
+  static String fieldList(Set<ProcessField> fields) {
+    StringBuilder list = new StringBuilder();
+    for (ProcessField field : ProcessField.values()) {
+      if (fields.contains(field)) {
+        list.append(list.isEmpty() ? "" : ",").append(field.wireName());
+      }
+    }
+    return list.toString();
+  }
+
+  private static void append(StringBuilder arguments, String key, String value) {
+    if (value == null || value.isEmpty()) {
+      return;
+    }
+    if (!arguments.isEmpty()) {
+      arguments.append(';');
+    }
+    arguments.append(key).append('=').append(value);
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ - PUSH PUBLISHER:
+ - A Flow.Publisher over backend push subscriptions. Every subscriber gets
+   its own SUBSCRIBE (withdrawn again when it cancels), so a late subscriber
+   still starts with a full process snapshot; the backend collects each
+   metric once for all subscriptions that are due together.
+ - Every subscriber has its own bounded buffer. Items are delivered on a
+   virtual thread as the subscriber requests them; when a slow subscriber's
+   buffer is full the oldest item gives way to the new one. With a merge
+   function the oldest item is folded into the next one instead of being
+   dropped (process deltas cannot just be skipped).
+ - The connection's reader thread only ever enqueues, so a slow subscriber
+   never holds up the socket.
+ - Subscribers get a PushSubscription, whose setInterval() reschedules
+   their SUBSCRIBE without starting it over.
+*/
+
+package com.sysmon.service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BinaryOperator;
+
+final class PushPublisher<T> implements Flow.Publisher<T> {
+  private static final Executor DELIVERY = Executors.newThreadPerTaskExecutor(
+      Thread.ofVirtual().name("sysmon-push-", 0).factory());
+
+  private final IPCConnection connection;
+  private final String command;
+  private final IPCConnection.ResponseParser<T> parser;
+  private final int bufferSize;
+  private final BinaryOperator<T> merge;
+
+  // A null merge function means the oldest item is simply dropped.
+  PushPublisher(IPCConnection connection, String command, IPCConnection.ResponseParser<T> parser, int bufferSize,
+      BinaryOperator<T> merge) {
+    this.connection = connection;
+    this.command = command;
+    this.parser = parser;
+    this.bufferSize = bufferSize;
+    this.merge = merge;
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super T> subscriber) {
+    Delivery delivery = new Delivery(subscriber);
+    subscriber.onSubscribe(delivery);
+    try {
+      delivery.upstream = connection.subscribe(command, parser, delivery::offer, delivery::error);
+      if (delivery.isCancelled()) {
+        delivery.withdraw();
+      }
+    } catch (IOException e) {
+      delivery.error(e);
+    }
+  }
+
+  private final class Delivery implements PushSubscription {
+    private final Flow.Subscriber<? super T> subscriber;
+    private final ArrayDeque<T> buffer = new ArrayDeque<>();
+    private final AtomicInteger pendingDrains = new AtomicInteger();
+    private volatile IPCConnection.Subscription<T> upstream;
+    private long demand;
+    private boolean cancelled;
+    private Throwable error;
+
+    Delivery(Flow.Subscriber<? super T> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      synchronized (this) {
+        if (cancelled) {
+          return;
+        }
+        if (n <= 0) {
+          error = new IllegalArgumentException("Non-positive request: " + n);
+          buffer.clear();
+        } else {
+          demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+        }
+      }
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      synchronized (this) {
+        if (cancelled) {
+          return;
+        }
+        cancelled = true;
+        buffer.clear();
+      }
+      withdraw();
+    }
+
+    @Override
+    public void setInterval(Duration interval) {
+      IPCConnection.Subscription<T> subscription = upstream;
+      if (subscription != null && !isCancelled()) {
+        connection.setInterval(subscription, interval.toMillis());
+      }
+    }
+
+    synchronized boolean isCancelled() {
+      return cancelled;
+    }
+
+    private void withdraw() {
+      IPCConnection.Subscription<T> subscription = upstream;
+      if (subscription != null) {
+        connection.unsubscribe(subscription);
+      }
+    }
+
+    void offer(T item) {
+      synchronized (this) {
+        if (cancelled || error != null) {
+          return;
+        }
+        if (buffer.size() >= bufferSize) {
+          T oldest = buffer.pollFirst();
+          if (merge != null && !buffer.isEmpty()) {
+            buffer.addFirst(merge.apply(oldest, buffer.pollFirst()));
+          } else if (merge != null) {
+            item = merge.apply(oldest, item);
+          }
+        }
+        buffer.addLast(item);
+      }
+      drain();
+    }
+
+    void error(Throwable failure) {
+      synchronized (this) {
+        if (cancelled) {
+          return;
+        }
+        error = failure;
+      }
+      drain();
+    }
+
+    private void drain() {
+      if (pendingDrains.getAndIncrement() == 0) {
+        DELIVERY.execute(this::deliver);
+      }
+    }
+
+    // Runs on one virtual thread at a time per subscriber, so onNext calls
+    // never overlap.
+    private void deliver() {
+      int missed = 1;
+      do {
+        while (true) {
+          T item;
+          Throwable failure = null;
+          synchronized (this) {
+            if (cancelled) {
+              return;
+            }
+            if (error != null && (buffer.isEmpty() || error instanceof IllegalArgumentException)) {
+              failure = error;
+              cancelled = true;
+              item = null;
+            } else if (demand > 0 && !buffer.isEmpty()) {
+              item = buffer.pollFirst();
+              demand--;
+            } else {
+              break;
+            }
+          }
+          if (failure != null) {
+            withdraw();
+            subscriber.onError(failure);
+            return;
+          }
+          try {
+            subscriber.onNext(item);
+          } catch (RuntimeException e) {
+            System.err.println("PushPublisher: subscriber failed: " + e.getMessage());
+            e.printStackTrace();
+            cancel();
+            return;
+          }
+        }
+        missed = pendingDrains.addAndGet(-missed);
+      } while (missed != 0);
+    }
+  }
+}
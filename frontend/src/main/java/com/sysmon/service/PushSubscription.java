@@ -0,0 +1,16 @@
+/*
+ - PUSH SUBSCRIPTION:
+ - The Flow.Subscription a PushPublisher gives its subscribers. On top of
+   request() and cancel() it can move the backend subscription to another
+   interval in place, so a process subscription keeps sending deltas instead
+   of starting over with a full snapshot.
+*/
+
+package com.sysmon.service;
+
+import java.time.Duration;
+import java.util.concurrent.Flow;
+
+public interface PushSubscription extends Flow.Subscription {
+  void setInterval(Duration interval);
+}
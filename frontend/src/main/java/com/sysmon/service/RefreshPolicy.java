@@ -0,0 +1,129 @@
+/*
+ - REFRESH POLICY:
+ - Decides how many times slower than their configured intervals the
+   dashboard's metrics refresh, so idle or hidden windows stop loading the
+   host they watch. The factor is a power of two, at most MAX_FACTOR, and
+   the largest of:
+   - HIDDEN_FACTOR while the window is iconified or not showing;
+   - the idle factor: every IDLE_SAMPLES CPU samples in a row that moved
+     less than IDLE_CPU_CHANGE points, while few processes changed, double
+     it, up to MAX_IDLE_FACTOR;
+   - the cost factor: whatever keeps one process refresh within
+     REFRESH_BUDGET of its interval. It grows as soon as a refresh is too
+     slow but shrinks only one step per refresh that fits.
+ - Activity (a CPU jump of SPIKE_CPU_CHANGE points or SPIKE_PROCESS_SHARE
+   of the processes changing) or user input resets the idle factor at once.
+ - Not thread-safe: the controller feeds it on the FX thread, and the
+   listener is called there, only when the factor changes.
+*/
+
+package com.sysmon.service;
+
+import java.time.Duration;
+import java.util.function.IntConsumer;
+
+public class RefreshPolicy {
+  public static final int MAX_FACTOR = 16;
+  private static final int HIDDEN_FACTOR = 8;
+  private static final int MAX_IDLE_FACTOR = 4;
+  private static final int IDLE_SAMPLES = 10;
+  private static final double IDLE_CPU_CHANGE = 2.0;
+  private static final double SPIKE_CPU_CHANGE = 10.0;
+  private static final double IDLE_PROCESS_SHARE = 0.05;
+  private static final double SPIKE_PROCESS_SHARE = 0.25;
+  private static final double REFRESH_BUDGET = 0.25;
+
+  private final IntConsumer listener;
+  private boolean hidden;
+  private int idleFactor = 1;
+  private int idleSamples;
+  private boolean processesQuiet = true;
+  private double lastCpu = Double.NaN;
+  private int costFactor = 1;
+  private int factor = 1;
+
+  public RefreshPolicy(IntConsumer listener) {
+    this.listener = listener;
+  }
+
+  public int factor() {
+    return factor;
+  }
+
+  // What the current factor is due to, or null at full speed.
+  public String reason() {
+    if (factor == 1) {
+      return null;
+    }
+    if (hidden && HIDDEN_FACTOR >= Math.max(idleFactor, costFactor)) {
+      return "hidden";
+    }
+    return costFactor >= idleFactor ? "slow refresh" : "idle";
+  }
+
+  public void setHidden(boolean hidden) {
+    this.hidden = hidden;
+    update();
+  }
+
+  public void userActive() {
+    resetIdle();
+    update();
+  }
+
+  public void sampleCpu(double usagePercent) {
+    double change = Double.isNaN(lastCpu) ? 0 : Math.abs(usagePercent - lastCpu);
+    lastCpu = usagePercent;
+    if (change >= SPIKE_CPU_CHANGE) {
+      resetIdle();
+    } else if (change < IDLE_CPU_CHANGE && processesQuiet) {
+      if (++idleSamples >= IDLE_SAMPLES && idleFactor < MAX_IDLE_FACTOR) {
+        idleFactor *= 2;
+        idleSamples = 0;
+      }
+    } else {
+      idleSamples = 0;
+    }
+    update();
+  }
+
+  // `changed` of `total` processes were added, changed or removed since the
+  // previous refresh.
+  public void processesChanged(int changed, int total) {
+    double share = total > 0 ? (double) changed / total : 0;
+    processesQuiet = share <= IDLE_PROCESS_SHARE;
+    if (share >= SPIKE_PROCESS_SHARE) {
+      resetIdle();
+    }
+    update();
+  }
+
+  // One process refresh (fetch and apply) took `nanos`; `interval` is its
+  // configured interval.
+  public void refreshCost(long nanos, Duration interval) {
+    double budget = interval.toNanos() * REFRESH_BUDGET;
+    int needed = 1;
+    while (needed < MAX_FACTOR && nanos > budget * needed) {
+      needed *= 2;
+    }
+    if (needed > costFactor) {
+      costFactor = needed;
+    } else if (needed < costFactor) {
+      costFactor /= 2;
+    }
+    update();
+  }
+
+  private void resetIdle() {
+    idleFactor = 1;
+    idleSamples = 0;
+  }
+
+  private void update() {
+    int next = Math.min(MAX_FACTOR, Math.max(hidden ? HIDDEN_FACTOR : 1, Math.max(idleFactor, costFactor)));
+    if (next != factor) {
+      factor = next;
+      listener.accept(next);
+    }
+  }
+}
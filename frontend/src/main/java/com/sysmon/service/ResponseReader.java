@@ -0,0 +1,300 @@
+/*
+ - RESPONSE READER:
+ - Streams backend responses from a socket through one reused direct
+   ByteBuffer, handing each complete record to the parser as soon as it has
+   arrived instead of waiting for the whole response.
+ - Text responses are walked line by line with nextLine(); the fields of the
+   current line are parsed straight from the buffer (nextIntField(), ...)
+   without building a String per line or splitting it.
+ - Binary frames are consumed in pieces: small fixed parts with readFrame(),
+   string tables with readStringTable(), and fixed-width records in chunks of
+   whatever is already buffered with nextRecords().
+ - A record split across two socket reads is kept (compacted to the front of
+   the buffer) until the rest arrives; the buffer only grows when a single
+   record or line does not fit.
+ - It keeps the time it spent blocked in socket reads, which tells the
+   transfer of a response apart from its parsing (see SelfStats).
+*/
+
+package com.sysmon.service;
+
+import com.sysmon.diagnostics.SelfStats;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+
+class ResponseReader {
+  private static final int INITIAL_CAPACITY = 256 * 1024;
+  private static final LongAdder BYTES_RECEIVED = SelfStats.counter("ipc.bytes_received");
+
+  private final ReadableByteChannel channel;
+  private ByteBuffer buffer;
+  private byte[] scratch = new byte[256];
+  private byte[] stringTable = new byte[4096];
+  private int lineEnd = -1;
+  private int fieldStart;
+  private long readNanos;
+
+  ResponseReader(ReadableByteChannel channel) {
+    this.channel = channel;
+    this.buffer = ByteBuffer.allocateDirect(INITIAL_CAPACITY).order(ByteOrder.LITTLE_ENDIAN);
+    this.buffer.flip();
+  }
+
+  // Total time spent waiting in socket reads so far.
+  long readNanos() {
+    return readNanos;
+  }
+
+  String readLine() throws IOException {
+    nextLine();
+    return currentLine();
+  }
+
+  // Moves the line cursor to the next complete line, reading more from the
+  // socket only if it has not fully arrived yet. Bytes already scanned are
+  // not scanned again after a read.
+  void nextLine() throws IOException {
+    consumeLine();
+    int scanned = 0;
+    while (true) {
+      int start = buffer.position();
+      int limit = buffer.limit();
+      for (int i = start + scanned; i < limit; i++) {
+        if (buffer.get(i) == '\n') {
+          lineEnd = i;
+          fieldStart = start;
+          return;
+        }
+      }
+      scanned = limit - start;
+      fill(scanned + 1);
+    }
+  }
+
+  String currentLine() {
+    return decode(buffer, buffer.position(), lineEnd - buffer.position()).trim();
+  }
+
+  boolean lineEquals(byte[] text) {
+    int length = lineEnd - buffer.position();
+    while (length > 0 && isSpace(buffer.get(buffer.position() + length - 1))) {
+      length--;
+    }
+    return length == text.length && lineStartsWith(text);
+  }
+
+  boolean lineStartsWith(byte[] prefix) {
+    int position = buffer.position();
+    if (lineEnd - position < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (buffer.get(position + i) != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  boolean lineIsBlank() {
+    for (int i = buffer.position(); i < lineEnd; i++) {
+      if (!isSpace(buffer.get(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  int fieldCount(char separator) {
+    int count = 1;
+    for (int i = buffer.position(); i < lineEnd; i++) {
+      if (buffer.get(i) == separator) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  void skipField(char separator) {
+    fieldStart = Math.min(fieldEnd(separator) + 1, lineEnd);
+  }
+
+  long nextLongField(char separator) {
+    int end = fieldEnd(separator);
+    int i = fieldStart;
+    while (i < end && isSpace(buffer.get(i))) {
+      i++;
+    }
+    boolean negative = i < end && buffer.get(i) == '-';
+    if (negative) {
+      i++;
+    }
+    int digits = 0;
+    long value = 0;
+    while (i < end) {
+      byte b = buffer.get(i);
+      if (b < '0' || b > '9') {
+        break;
+      }
+      value = value * 10 + (b - '0');
+      digits++;
+      i++;
+    }
+    while (i < end && isSpace(buffer.get(i))) {
+      i++;
+    }
+    if (digits == 0 || i != end) {
+      throw new NumberFormatException("For input string: \"" + decode(buffer, fieldStart, end - fieldStart) + "\"");
+    }
+    fieldStart = Math.min(end + 1, lineEnd);
+    return negative ? -value : value;
+  }
+
+  int nextIntField(char separator) {
+    long value = nextLongField(separator);
+    if (value != (int) value) {
+      throw new NumberFormatException("Value out of int range: " + value);
+    }
+    return (int) value;
+  }
+
+  String nextStringField(char separator) {
+    int end = fieldEnd(separator);
+    int start = fieldStart;
+    int stop = end;
+    while (start < stop && isSpace(buffer.get(start))) {
+      start++;
+    }
+    while (stop > start && isSpace(buffer.get(stop - 1))) {
+      stop--;
+    }
+    fieldStart = Math.min(end + 1, lineEnd);
+    return decode(buffer, start, stop - start);
+  }
+
+  // Waits for at least one more byte and returns it without consuming it.
+  byte peekByte() throws IOException {
+    consumeLine();
+    ensure(1);
+    return buffer.get(buffer.position());
+  }
+
+  boolean startsWith(byte[] prefix) throws IOException {
+    consumeLine();
+    ensure(prefix.length);
+    int position = buffer.position();
+    for (int i = 0; i < prefix.length; i++) {
+      if (buffer.get(position + i) != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // The returned slice shares the reader's buffer and is only valid until the
+  // next read call.
+  ByteBuffer readFrame(int length) throws IOException {
+    consumeLine();
+    ensure(length);
+    ByteBuffer frame = buffer.slice(buffer.position(), length).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.position(buffer.position() + length);
+    return frame;
+  }
+
+  void readBytes(byte[] destination, int length) throws IOException {
+    consumeLine();
+    int copied = 0;
+    while (copied < length) {
+      if (!buffer.hasRemaining()) {
+        fill(1);
+      }
+      int chunk = Math.min(length - copied, buffer.remaining());
+      buffer.get(destination, copied, chunk);
+      copied += chunk;
+    }
+  }
+
+  // Copies a frame's string table into a reused heap array, so records that
+  // arrive later can still be decoded after the buffer has been compacted.
+  byte[] readStringTable(int length) throws IOException {
+    if (stringTable.length < length) {
+      stringTable = new byte[Math.max(length, stringTable.length * 2)];
+    }
+    readBytes(stringTable, length);
+    return stringTable;
+  }
+
+  // Returns a slice with between 1 and maxRecords complete records: whatever
+  // is already buffered, or exactly one record after waiting for it. Like
+  // readFrame(), the slice is only valid until the next read call.
+  ByteBuffer nextRecords(int recordSize, int maxRecords) throws IOException {
+    consumeLine();
+    ensure(recordSize);
+    int count = Math.min(maxRecords, buffer.remaining() / recordSize);
+    ByteBuffer records = buffer.slice(buffer.position(), count * recordSize).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.position(buffer.position() + count * recordSize);
+    return records;
+  }
+
+  String decode(ByteBuffer source, int index, int length) {
+    if (scratch.length < length) {
+      scratch = new byte[Math.max(length, scratch.length * 2)];
+    }
+    source.get(index, scratch, 0, length);
+    return new String(scratch, 0, length, StandardCharsets.UTF_8);
+  }
+
+  private int fieldEnd(char separator) {
+    for (int i = fieldStart; i < lineEnd; i++) {
+      if (buffer.get(i) == separator) {
+        return i;
+      }
+    }
+    return lineEnd;
+  }
+
+  private void consumeLine() {
+    if (lineEnd >= 0) {
+      buffer.position(lineEnd + 1);
+      lineEnd = -1;
+    }
+  }
+
+  private static boolean isSpace(byte b) {
+    return b == ' ' || b == '\r' || b == '\t';
+  }
+
+  private void ensure(int length) throws IOException {
+    while (buffer.remaining() < length) {
+      fill(length);
+    }
+  }
+
+  private void fill(int wanted) throws IOException {
+    buffer.compact();
+    if (buffer.capacity() < wanted) {
+      int capacity = buffer.capacity();
+      while (capacity < wanted) {
+        capacity *= 2;
+      }
+      ByteBuffer grown = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+      buffer.flip();
+      grown.put(buffer);
+      buffer = grown;
+    }
+    long start = System.nanoTime();
+    int read = channel.read(buffer);
+    readNanos += System.nanoTime() - start;
+    if (read < 0) {
+      buffer.flip();
+      throw new EOFException("Backend closed the connection");
+    }
+    BYTES_RECEIVED.add(read);
+    buffer.flip();
+  }
+}
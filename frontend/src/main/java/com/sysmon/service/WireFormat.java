@@ -0,0 +1,63 @@
+/*
+ - WIRE FORMAT:
+ - Constants for the binary frames the C backend sends once a connection has
+   negotiated SET_FORMAT;BINARY (mirrors backend/src/wireFormat.h).
+ - Every frame starts with a 4 byte magic and a little-endian uint32 payload
+   length; the process list (PLST), process delta (PDLT) and process query
+   (PQRY) payloads hold a string table with the user and process names
+   followed by fixed-width records, so records can be decoded as they
+   stream in. PDLT records are shorter: they refer to the user by uid and
+   to the process name by id, resolved through the dictionary entries that
+   precede them.
+*/
+
+package com.sysmon.service;
+
+import java.nio.charset.StandardCharsets;
+
+final class WireFormat {
+  static final int HEADER_SIZE = 8;
+  static final byte[] MAGIC_PROCESS_LIST = "PLST".getBytes(StandardCharsets.US_ASCII);
+  static final byte[] MAGIC_PROCESS_DELTA = "PDLT".getBytes(StandardCharsets.US_ASCII);
+  static final byte[] MAGIC_PROCESS_QUERY = "PQRY".getBytes(StandardCharsets.US_ASCII);
+
+  static final int PROCESS_LIST_PREAMBLE = 8;
+  static final int PROCESS_DELTA_PREAMBLE = 32;
+  static final int DELTA_GENERATION = 0;
+  static final int DELTA_FLAGS = 8;
+  static final int DELTA_RECORD_COUNT = 12;
+  static final int DELTA_REMOVED_COUNT = 16;
+  static final int DELTA_USER_COUNT = 20;
+  static final int DELTA_NAME_COUNT = 24;
+  static final int DELTA_STRING_TABLE_LENGTH = 28;
+  static final int DELTA_FLAG_FULL = 1;
+  static final int PROCESS_QUERY_PREAMBLE = 12;
+  static final int QUERY_MATCHED_COUNT = 0;
+  static final int QUERY_RECORD_COUNT = 4;
+  static final int QUERY_STRING_TABLE_LENGTH = 8;
+
+  static final int PROCESS_RECORD_SIZE = 40;
+  static final int RECORD_PID = 0;
+  static final int RECORD_PPID = 4;
+  static final int RECORD_TOTAL_TIME = 8;
+  static final int RECORD_MEM_RSS = 16;
+  static final int RECORD_USER_OFFSET = 24;
+  static final int RECORD_NAME_OFFSET = 28;
+  static final int RECORD_USER_LENGTH = 32;
+  static final int RECORD_NAME_LENGTH = 34;
+  static final int RECORD_STATE = 36;
+
+  static final int NAME_ENTRY_SIZE = 12;
+  static final int ENTRY_ID = 0;
+  static final int ENTRY_OFFSET = 4;
+  static final int ENTRY_LENGTH = 8;
+
+  // Same pid, ppid, total time and RSS offsets as PROCESS_RECORD_SIZE.
+  static final int DELTA_RECORD_SIZE = 36;
+  static final int DELTA_RECORD_UID = 24;
+  static final int DELTA_RECORD_NAME_ID = 28;
+  static final int DELTA_RECORD_STATE = 32;
+
+  private WireFormat() {
+  }
+}
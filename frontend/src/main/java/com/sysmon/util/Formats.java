@@ -0,0 +1,36 @@
+/*
+ - FORMATS:
+ - Human-readable sizes and transfer rates for the dashboard labels and the
+   process table's RSS column.
+*/
+
+package com.sysmon.util;
+
+public final class Formats {
+  private Formats() {
+  }
+
+  public static String formatSpeed(long bytesPerSecond) {
+    if (bytesPerSecond < 1024) {
+      return bytesPerSecond + " B/s";
+    }
+    double kib = bytesPerSecond / 1024.0;
+    if (kib < 1024) {
+      return String.format("%.1f KiB/s", kib);
+    }
+    double mib = kib / 1024.0;
+    return String.format("%.1f MiB/s", mib);
+  }
+
+  public static String formatRss(long rssKb) {
+    if (rssKb < 1024) {
+      return rssKb + " KB";
+    }
+    double mib = rssKb / 1024.0;
+    if (mib < 1024) {
+      return String.format("%.2f MB", mib);
+    }
+    double gib = mib / 1024.0;
+    return String.format("%.2f GB", gib);
+  }
+}
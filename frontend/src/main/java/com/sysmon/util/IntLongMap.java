@@ -0,0 +1,178 @@
+/*
+ - INT TO LONG MAP:
+ - Open-addressing hash map from int keys (pids) to long values, for per-pid
+   counters that are read and rewritten every refresh (CPU time now, I/O or
+   context-switch counters later).
+ - Keys and values live in two parallel primitive arrays, so lookups and
+   updates never box and, once the table has grown to the process count,
+   never allocate.
+ - Linear probing with backward-shift deletion: removing a pid leaves no
+   tombstone behind, so a long-running table does not degrade as pids come
+   and go.
+ - Every int is a legal key: the one that marks empty slots
+   (Integer.MIN_VALUE, e.g. uid 2147483648 read as an int) is kept in a
+   slot of its own.
+ - Not thread-safe; it is meant to be owned by the FX thread.
+*/
+
+package com.sysmon.util;
+
+import java.util.Arrays;
+
+public class IntLongMap {
+  private static final int EMPTY = Integer.MIN_VALUE;
+  private static final int DEFAULT_CAPACITY = 1024;
+
+  private int[] keys;
+  private long[] values;
+  private int size;
+  private int mask;
+  private boolean hasEmptyKey;
+  private long emptyKeyValue;
+
+  public IntLongMap() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public IntLongMap(int expectedSize) {
+    int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+    allocate(capacity);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean containsKey(int key) {
+    if (key == EMPTY) {
+      return hasEmptyKey;
+    }
+    return keys[slot(key)] != EMPTY;
+  }
+
+  public long get(int key, long missing) {
+    if (key == EMPTY) {
+      return hasEmptyKey ? emptyKeyValue : missing;
+    }
+    int slot = slot(key);
+    return keys[slot] != EMPTY ? values[slot] : missing;
+  }
+
+  // Returns the previous value, or missing if the key was not present.
+  public long put(int key, long value, long missing) {
+    if (key == EMPTY) {
+      long previous = hasEmptyKey ? emptyKeyValue : missing;
+      if (!hasEmptyKey) {
+        hasEmptyKey = true;
+        size++;
+      }
+      emptyKeyValue = value;
+      return previous;
+    }
+    int slot = slot(key);
+    if (keys[slot] != EMPTY) {
+      long previous = values[slot];
+      values[slot] = value;
+      return previous;
+    }
+    keys[slot] = key;
+    values[slot] = value;
+    if (++size * 2 > keys.length) {
+      rehash(keys.length * 2);
+    }
+    return missing;
+  }
+
+  public boolean remove(int key) {
+    if (key == EMPTY) {
+      if (!hasEmptyKey) {
+        return false;
+      }
+      hasEmptyKey = false;
+      size--;
+      return true;
+    }
+    int slot = slot(key);
+    if (keys[slot] == EMPTY) {
+      return false;
+    }
+    // Shift later entries of the probe run back into the gap.
+    int gap = slot;
+    for (int i = (gap + 1) & mask; keys[i] != EMPTY; i = (i + 1) & mask) {
+      int home = hash(keys[i]) & mask;
+      if (((i - home) & mask) >= ((i - gap) & mask)) {
+        keys[gap] = keys[i];
+        values[gap] = values[i];
+        gap = i;
+      }
+    }
+    keys[gap] = EMPTY;
+    size--;
+    return true;
+  }
+
+  public void clear() {
+    if (size > 0) {
+      Arrays.fill(keys, EMPTY);
+      size = 0;
+      hasEmptyKey = false;
+    }
+  }
+
+  // Exchanges the contents of the two maps without copying, for
+  // double-buffered use: fill a scratch map with this refresh's values,
+  // then swap it with the live one and clear the scratch map.
+  public void swap(IntLongMap other) {
+    int[] otherKeys = other.keys;
+    long[] otherValues = other.values;
+    int otherSize = other.size;
+    int otherMask = other.mask;
+    boolean otherHasEmptyKey = other.hasEmptyKey;
+    long otherEmptyKeyValue = other.emptyKeyValue;
+    other.keys = keys;
+    other.values = values;
+    other.size = size;
+    other.mask = mask;
+    other.hasEmptyKey = hasEmptyKey;
+    other.emptyKeyValue = emptyKeyValue;
+    keys = otherKeys;
+    values = otherValues;
+    size = otherSize;
+    mask = otherMask;
+    hasEmptyKey = otherHasEmptyKey;
+    emptyKeyValue = otherEmptyKeyValue;
+  }
+
+  private int slot(int key) {
+    int slot = hash(key) & mask;
+    while (keys[slot] != EMPTY && keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private static int hash(int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  private void allocate(int capacity) {
+    keys = new int[capacity];
+    values = new long[capacity];
+    Arrays.fill(keys, EMPTY);
+    mask = capacity - 1;
+  }
+
+  private void rehash(int capacity) {
+    int[] oldKeys = keys;
+    long[] oldValues = values;
+    allocate(capacity);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != EMPTY) {
+        int slot = slot(oldKeys[i]);
+        keys[slot] = oldKeys[i];
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+}
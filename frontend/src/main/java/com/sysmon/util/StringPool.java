@@ -0,0 +1,42 @@
+/*
+ - STRING POOL:
+ - Canonical instances of the strings that repeat across processes and
+   refreshes (user names, process names), so every row of user "root"
+   holds the same String rather than its own copy decoded from the latest
+   response.
+ - Like String.intern() but owned by the caller and bounded: once it holds
+   `capacity` strings it starts over, which only costs some duplicates until
+   the common strings have been seen again.
+ - Thread-safe; the parsers of every connection share one pool.
+*/
+
+package com.sysmon.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class StringPool {
+  private final int capacity;
+  private final Map<String, String> strings;
+
+  public StringPool(int capacity) {
+    this.capacity = capacity;
+    this.strings = new HashMap<>(capacity * 2);
+  }
+
+  public synchronized String intern(String value) {
+    String canonical = strings.get(value);
+    if (canonical != null) {
+      return canonical;
+    }
+    if (strings.size() >= capacity) {
+      strings.clear();
+    }
+    strings.put(value, value);
+    return value;
+  }
+
+  public synchronized int size() {
+    return strings.size();
+  }
+}
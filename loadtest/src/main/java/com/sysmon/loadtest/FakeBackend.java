@@ -0,0 +1,281 @@
+/*
+ - FAKE BACKEND:
+ - A Java stand-in for the C backend that speaks the same protocol on any
+   UNIX socket path (GET_PROCESSES, GET_PROCESSES_SINCE, GET_CPU_STATS,
+   GET_CORE_STATS, GET_MEM_STATS, GET_NET_STATS, GET_DISK_STATS,
+   GET_INTERFACE_STATS, GET_DISKIO_STATS, KILL, SET_FORMAT), backed by
+   a SyntheticProcessTable instead of /proc. It lets the frontend and the
+   LoadDriver run against 100k processes on any machine.
+ - Every process request is one scan of the table, as in the C backend.
+   Each client is served on its own thread, and every reply can be delayed
+   by a fixed latency plus a random jitter to imitate a slow or busy host.
+ - SUBSCRIBE is not supported; clients fall back to polling.
+ - Run on its own with
+     java -cp loadtest.jar com.sysmon.loadtest.FakeBackend
+   and the -Dsysmon.loadtest.* properties below; the frontend finds it with
+   -Dsysmon.socket=<path> (or at the default /tmp/SysMon).
+*/
+
+package com.sysmon.loadtest;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class FakeBackend implements AutoCloseable {
+  private static final long MEM_TOTAL_KB = 64L * 1024 * 1024;
+  private static final String[] INTERFACES = {"lo", "eth0", "eth1", "docker0"};
+  private static final String[] DISK_DEVICES = {"nvme0n1", "nvme1n1", "sda"};
+
+  private final Path socketPath;
+  private final SyntheticProcessTable table;
+  private final boolean binary;
+  private final long latencyMillis;
+  private final long jitterMillis;
+  private final int cores;
+  private final long startNanos = System.nanoTime();
+  private final AtomicLong requests = new AtomicLong();
+  private ServerSocketChannel server;
+  private volatile boolean closed;
+
+  // binary=false refuses SET_FORMAT;BINARY, so clients use the text protocol.
+  public FakeBackend(Path socketPath, int processCount, double churnPercent, double exitPercent, boolean binary,
+      long latencyMillis, long jitterMillis, int cores) {
+    this.socketPath = socketPath;
+    this.table = new SyntheticProcessTable(processCount, churnPercent, exitPercent);
+    this.binary = binary;
+    this.latencyMillis = latencyMillis;
+    this.jitterMillis = jitterMillis;
+    this.cores = cores;
+  }
+
+  // Configured from -Dsysmon.loadtest.processes, .churnPercent,
+  // .exitPercent, .binary, .latencyMs, .jitterMs and .cores (default: this
+  // machine's).
+  public static FakeBackend fromProperties(Path socketPath) {
+    return new FakeBackend(socketPath,
+        Integer.getInteger("sysmon.loadtest.processes", 10_000),
+        Double.parseDouble(System.getProperty("sysmon.loadtest.churnPercent", "10")),
+        Double.parseDouble(System.getProperty("sysmon.loadtest.exitPercent", "1")),
+        Boolean.parseBoolean(System.getProperty("sysmon.loadtest.binary", "true")),
+        Long.getLong("sysmon.loadtest.latencyMs", 0L),
+        Long.getLong("sysmon.loadtest.jitterMs", 0L),
+        Integer.getInteger("sysmon.loadtest.cores", Runtime.getRuntime().availableProcessors()));
+  }
+
+  public static void main(String[] args) throws IOException {
+    Path socketPath = Path.of(System.getProperty("sysmon.loadtest.socket", "/tmp/SysMon"));
+    FakeBackend backend = fromProperties(socketPath);
+    Runtime.getRuntime().addShutdownHook(new Thread(backend::close));
+    backend.start();
+    System.out.println("Fake backend with " + backend.table.size() + " processes listening on " + socketPath);
+  }
+
+  public void start() throws IOException {
+    // Replaces a socket file left behind by an earlier run, like main.c.
+    Files.deleteIfExists(socketPath);
+    server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+    server.bind(UnixDomainSocketAddress.of(socketPath));
+    Thread.ofPlatform().name("fake-backend").start(this::accept);
+  }
+
+  public Path getSocketPath() {
+    return socketPath;
+  }
+
+  public long getRequestCount() {
+    return requests.get();
+  }
+
+  private void accept() {
+    while (!closed) {
+      try {
+        SocketChannel client = server.accept();
+        Thread.ofPlatform().daemon().name("fake-backend-client").start(() -> serve(client));
+      } catch (IOException e) {
+        if (!closed) {
+          System.err.println("FakeBackend: accept failed: " + e.getMessage());
+          e.printStackTrace();
+        }
+        return;
+      }
+    }
+  }
+
+  private void serve(SocketChannel client) {
+    ByteBuffer input = ByteBuffer.allocate(4096);
+    StringBuilder line = new StringBuilder();
+    boolean binaryMode = false;
+    try (client) {
+      while (client.read(input) >= 0) {
+        input.flip();
+        while (input.hasRemaining()) {
+          char c = (char) input.get();
+          if (c != '\n') {
+            line.append(c);
+            continue;
+          }
+          String command = line.toString();
+          line.setLength(0);
+          requests.incrementAndGet();
+          byte[] response;
+          if (command.startsWith("SET_FORMAT;")) {
+            String format = command.substring(11);
+            if (format.equals("BINARY") && binary) {
+              binaryMode = true;
+              response = ascii("OK;BINARY\n");
+            } else if (format.equals("TEXT")) {
+              binaryMode = false;
+              response = ascii("OK;TEXT\n");
+            } else {
+              response = ascii("ERROR;unknown format\n");
+            }
+          } else {
+            response = respond(command, binaryMode);
+          }
+          delay();
+          write(client, response);
+        }
+        input.clear();
+      }
+    } catch (IOException e) {
+      // The client went away.
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private byte[] respond(String command, boolean binaryMode) {
+    if (command.equals("GET_PROCESSES")) {
+      table.scan();
+      return table.processList(binaryMode);
+    } else if (command.startsWith("GET_PROCESSES_SINCE;")) {
+      long since;
+      try {
+        since = Long.parseLong(command.substring(20));
+      } catch (NumberFormatException e) {
+        return ascii("ERROR;invalid generation\n");
+      }
+      table.scan();
+      return table.processDelta(since, binaryMode);
+    } else if (command.startsWith("KILL")) {
+      String[] parts = command.split(";");
+      if (parts.length != 3) {
+        return ascii("ERROR;invalid kill format\n");
+      }
+      try {
+        int pid = Integer.parseInt(parts[1]);
+        Integer.parseInt(parts[2]); // Any valid signal ends the process.
+        return ascii(table.kill(pid) ? "OK\n" : "ERROR;kill failed\n");
+      } catch (NumberFormatException e) {
+        return ascii("ERROR;invalid kill format\n");
+      }
+    } else if (command.equals("GET_CPU_STATS")) {
+      // USER_HZ is 100, so every core adds 100 ticks a second.
+      long totalTime = (System.nanoTime() - startNanos) / 10_000_000L * cores;
+      double usage = 5.0 + ThreadLocalRandom.current().nextDouble(60.0);
+      return ascii(String.format(Locale.ROOT, "CPU;%.1f;%d\n", usage, totalTime));
+    } else if (command.equals("GET_CORE_STATS")) {
+      return coreStats();
+    } else if (command.equals("GET_MEM_STATS")) {
+      long free = MEM_TOTAL_KB / 4 + ThreadLocalRandom.current().nextLong(MEM_TOTAL_KB / 4);
+      return ascii("MEM_TOTAL;" + MEM_TOTAL_KB + "\nMEM_FREE;" + free + "\nMEM_AVAIL;" + (free + MEM_TOTAL_KB / 8)
+          + "\nBUFFERS;524288\nCACHED;8388608\nSWAP_TOTAL;8388604\nSWAP_FREE;8388604\n");
+    } else if (command.equals("GET_NET_STATS")) {
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      return ascii("NET;" + random.nextLong(50_000_000) + ";" + random.nextLong(5_000_000) + ";\n");
+    } else if (command.equals("GET_DISK_STATS")) {
+      return ascii("DISK;412316860416;1000204886016\n");
+    } else if (command.equals("GET_INTERFACE_STATS")) {
+      return interfaceStats();
+    } else if (command.equals("GET_DISKIO_STATS")) {
+      return diskIoStats();
+    } else if (command.startsWith("SUBSCRIBE;")) {
+      return ascii("ERROR;subscriptions not supported\n");
+    }
+    return ascii("ERROR;unknown command\n");
+  }
+
+  // A few saturated cores among mostly idle ones, in tenths of a percent.
+  private byte[] coreStats() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    StringBuilder text = new StringBuilder(16 + cores * 24).append("CORES;").append(cores).append('\n');
+    for (int core = 0; core < cores; core++) {
+      int busy = core % 17 == 3 ? 950 + random.nextInt(31) : random.nextInt(400);
+      int system = busy / 4;
+      int iowait = random.nextInt(20);
+      text.append("CORE;").append(core).append(';').append(busy - system).append(';').append(system).append(';')
+          .append(iowait).append(";0\n");
+    }
+    return ascii(text.toString());
+  }
+
+  private byte[] interfaceStats() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    StringBuilder text = new StringBuilder(256).append("INTERFACES;").append(INTERFACES.length).append('\n');
+    for (String name : INTERFACES) {
+      long rxBytes = random.nextLong(50_000_000);
+      long txBytes = random.nextLong(5_000_000);
+      text.append("IF;").append(name).append(';').append(rxBytes).append(';').append(txBytes).append(';')
+          .append(rxBytes / 1400).append(';').append(txBytes / 1400).append(";0;0\n");
+    }
+    return ascii(text.toString());
+  }
+
+  // Utilization in tenths of a percent.
+  private byte[] diskIoStats() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    StringBuilder text = new StringBuilder(256).append("DISKIO;").append(DISK_DEVICES.length).append('\n');
+    for (String name : DISK_DEVICES) {
+      long reads = random.nextLong(2_000);
+      long writes = random.nextLong(1_000);
+      text.append("DEV;").append(name).append(';').append(reads * 16_384).append(';').append(writes * 32_768)
+          .append(';').append(reads).append(';').append(writes).append(';').append(random.nextInt(1001))
+          .append('\n');
+    }
+    return ascii(text.toString());
+  }
+
+  private void delay() throws InterruptedException {
+    long millis = latencyMillis;
+    if (jitterMillis > 0) {
+      millis += ThreadLocalRandom.current().nextLong(jitterMillis + 1);
+    }
+    if (millis > 0) {
+      Thread.sleep(millis);
+    }
+  }
+
+  private static void write(SocketChannel client, byte[] response) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(response);
+    while (buffer.hasRemaining()) {
+      client.write(buffer);
+    }
+  }
+
+  private static byte[] ascii(String text) {
+    return text.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    try {
+      if (server != null) {
+        server.close();
+      }
+      Files.deleteIfExists(socketPath);
+    } catch (IOException e) {
+      System.err.println("FakeBackend: close failed: " + e.getMessage());
+    }
+  }
+}
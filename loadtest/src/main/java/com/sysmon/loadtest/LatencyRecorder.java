@@ -0,0 +1,53 @@
+/*
+ - LATENCY RECORDER:
+ - Collects the durations of one refresh stage and reports percentiles over
+   all of them. Every sample is kept (a load run produces at most a few
+   million), so the percentiles are exact rather than bucketed.
+ - Each client thread records into its own instances; merge() combines them
+   once the run is over. Not thread-safe.
+*/
+
+package com.sysmon.loadtest;
+
+import java.util.Arrays;
+
+final class LatencyRecorder {
+  private long[] samples = new long[1024];
+  private int count;
+  private boolean sorted;
+
+  void record(long nanos) {
+    if (count == samples.length) {
+      samples = Arrays.copyOf(samples, count * 2);
+    }
+    samples[count++] = nanos;
+    sorted = false;
+  }
+
+  void merge(LatencyRecorder other) {
+    for (int i = 0; i < other.count; i++) {
+      record(other.samples[i]);
+    }
+  }
+
+  int count() {
+    return count;
+  }
+
+  // The sample at the given percentile (0-100), nearest-rank, in nanos.
+  long percentile(double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    if (!sorted) {
+      Arrays.sort(samples, 0, count);
+      sorted = true;
+    }
+    int rank = (int) Math.ceil(percentile / 100.0 * count);
+    return samples[Math.clamp(rank - 1, 0, count - 1)];
+  }
+
+  long max() {
+    return percentile(100);
+  }
+}
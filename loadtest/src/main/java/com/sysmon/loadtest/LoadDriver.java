@@ -0,0 +1,180 @@
+/*
+ - LOAD DRIVER:
+ - Measures end-to-end refresh latency the way the frontend experiences it.
+   Each simulated client has its own IPCClient (its own connection), its own
+   ProcessModel and ProcessTableUpdater, and repeats the poll-mode refresh:
+   getSystemUpdate(), then getProcessDelta() since the last generation
+   applied to the table. The table update runs on the client's thread in
+   place of the FX thread.
+ - Reports p50/p90/p99/p99.9/max per stage (system stats, process fetch,
+   table apply) and for the whole refresh. With an interval set, a refresh
+   is timed from when it was due rather than when it started, so a stall
+   also counts against the refreshes queued behind it.
+ - By default it starts a FakeBackend on a temporary socket; with
+   -Dsysmon.loadtest.socket=<path> it drives that backend instead (e.g. the
+   real C backend at /tmp/SysMon). Options (-Dsysmon.loadtest.*):
+     clients (1), durationSeconds (30), warmupSeconds (5), intervalMs (0,
+     back to back), maxP99Ms (0, no limit), plus FakeBackend's processes,
+     churnPercent, exitPercent, binary, latencyMs and jitterMs.
+ - Exits with status 1 if any refresh failed or the refresh p99 is above
+   maxP99Ms, so CI can fail on a scaling cliff.
+*/
+
+package com.sysmon.loadtest;
+
+import com.sysmon.controller.ProcessTableUpdater;
+import com.sysmon.model.ProcessDelta;
+import com.sysmon.model.ProcessModel;
+import com.sysmon.model.SystemUpdate;
+import com.sysmon.service.IPCClient;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class LoadDriver {
+  private static final String[] STAGES = {"system stats", "process fetch", "table apply", "refresh"};
+
+  private final String socketPath;
+  private final long warmupNanos;
+  private final long durationNanos;
+  private final long intervalNanos;
+  private final AtomicLong errors = new AtomicLong();
+
+  private LoadDriver(String socketPath, long warmupNanos, long durationNanos, long intervalNanos) {
+    this.socketPath = socketPath;
+    this.warmupNanos = warmupNanos;
+    this.durationNanos = durationNanos;
+    this.intervalNanos = intervalNanos;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int clients = Integer.getInteger("sysmon.loadtest.clients", 1);
+    long warmupSeconds = Long.getLong("sysmon.loadtest.warmupSeconds", 5L);
+    long durationSeconds = Long.getLong("sysmon.loadtest.durationSeconds", 30L);
+    long intervalMs = Long.getLong("sysmon.loadtest.intervalMs", 0L);
+    long maxP99Ms = Long.getLong("sysmon.loadtest.maxP99Ms", 0L);
+    String externalSocket = System.getProperty("sysmon.loadtest.socket");
+
+    FakeBackend backend = null;
+    String socketPath = externalSocket;
+    if (externalSocket == null) {
+      backend = FakeBackend.fromProperties(Files.createTempDirectory("sysmon-loadtest").resolve("SysMon"));
+      backend.start();
+      socketPath = backend.getSocketPath().toString();
+      System.out.println("Started fake backend: " + Integer.getInteger("sysmon.loadtest.processes", 10_000)
+          + " processes, " + System.getProperty("sysmon.loadtest.churnPercent", "10") + "% churn, "
+          + System.getProperty("sysmon.loadtest.exitPercent", "1") + "% exits per scan");
+    } else {
+      System.out.println("Using backend at " + externalSocket);
+    }
+
+    LoadDriver driver = new LoadDriver(socketPath, warmupSeconds * 1_000_000_000L,
+        durationSeconds * 1_000_000_000L, intervalMs * 1_000_000L);
+    LatencyRecorder[] results;
+    try {
+      results = driver.run(clients);
+    } finally {
+      if (backend != null) {
+        backend.close();
+        Files.deleteIfExists(backend.getSocketPath().getParent());
+      }
+    }
+
+    long refreshes = results[STAGES.length - 1].count();
+    System.out.printf(Locale.ROOT, "%d client(s), %d refreshes in %ds (%.1f/s), %d failed%n", clients, refreshes,
+        durationSeconds, refreshes / (double) Math.max(1, durationSeconds), driver.errors.get());
+    System.out.printf(Locale.ROOT, "%-14s %9s %9s %9s %9s %9s   (ms)%n", "stage", "p50", "p90", "p99", "p99.9", "max");
+    for (int stage = 0; stage < STAGES.length; stage++) {
+      LatencyRecorder recorder = results[stage];
+      System.out.printf(Locale.ROOT, "%-14s %9.2f %9.2f %9.2f %9.2f %9.2f%n", STAGES[stage],
+          millis(recorder.percentile(50)), millis(recorder.percentile(90)), millis(recorder.percentile(99)),
+          millis(recorder.percentile(99.9)), millis(recorder.max()));
+    }
+
+    double refreshP99 = millis(results[STAGES.length - 1].percentile(99));
+    boolean failed = driver.errors.get() > 0;
+    if (maxP99Ms > 0 && refreshP99 > maxP99Ms) {
+      System.err.printf(Locale.ROOT, "Refresh p99 %.2f ms is above the %d ms limit%n", refreshP99, maxP99Ms);
+      failed = true;
+    }
+    System.exit(failed ? 1 : 0);
+  }
+
+  private LatencyRecorder[] run(int clients) throws InterruptedException {
+    List<LatencyRecorder[]> perClient = new ArrayList<>();
+    List<Thread> threads = new ArrayList<>();
+    long start = System.nanoTime();
+    for (int i = 0; i < clients; i++) {
+      LatencyRecorder[] recorders = new LatencyRecorder[STAGES.length];
+      for (int stage = 0; stage < STAGES.length; stage++) {
+        recorders[stage] = new LatencyRecorder();
+      }
+      perClient.add(recorders);
+      threads.add(Thread.ofPlatform().name("load-client-" + i).start(() -> runClient(start, recorders)));
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    LatencyRecorder[] merged = perClient.get(0);
+    for (int i = 1; i < perClient.size(); i++) {
+      for (int stage = 0; stage < STAGES.length; stage++) {
+        merged[stage].merge(perClient.get(i)[stage]);
+      }
+    }
+    return merged;
+  }
+
+  private void runClient(long start, LatencyRecorder[] recorders) {
+    IPCClient client = new IPCClient(socketPath);
+    ProcessTableUpdater updater = new ProcessTableUpdater(new ProcessModel());
+    long generation = 0;
+    long measureFrom = start + warmupNanos;
+    long end = measureFrom + durationNanos;
+    long due = start;
+    while (due < end) {
+      long now = System.nanoTime();
+      if (due > now) {
+        sleepNanos(due - now);
+      }
+      long begin = System.nanoTime();
+      SystemUpdate stats = client.getSystemUpdate();
+      long statsDone = System.nanoTime();
+      ProcessDelta delta = client.getProcessDelta(generation);
+      long fetchDone = System.nanoTime();
+      if (stats.getSampleTime() == 0 || delta == null) {
+        if (begin >= measureFrom) {
+          errors.incrementAndGet();
+        }
+      } else {
+        updater.setSystemTotalTime(stats.getSystemTotalTime());
+        updater.setMemTotalKb(stats.getMemTotal());
+        updater.apply(delta);
+        generation = delta.getGeneration();
+        long applyDone = System.nanoTime();
+        if (begin >= measureFrom) {
+          recorders[0].record(statsDone - begin);
+          recorders[1].record(fetchDone - statsDone);
+          recorders[2].record(applyDone - fetchDone);
+          recorders[3].record(applyDone - (intervalNanos > 0 ? due : begin));
+        }
+      }
+      due = intervalNanos > 0 ? due + intervalNanos : System.nanoTime();
+    }
+  }
+
+  private static void sleepNanos(long nanos) {
+    try {
+      Thread.sleep(nanos / 1_000_000L, (int) (nanos % 1_000_000L));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static double millis(long nanos) {
+    return nanos / 1_000_000.0;
+  }
+}
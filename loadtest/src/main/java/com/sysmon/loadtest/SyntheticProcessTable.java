@@ -0,0 +1,341 @@
+/*
+ - SYNTHETIC PROCESS TABLE:
+ - A made-up process table of any size that FakeBackend serves in place of
+   /proc. Every scan() is one backend refresh: it bumps the generation, lets
+   `churnPercent` of the processes use some CPU time and memory, and replaces
+   `exitPercent` of them with newly started ones (and any that were KILLed).
+ - Like the C backend's procTable it remembers the generation each process
+   last changed in and keeps exited pids as tombstones for HISTORY
+   generations, so it can answer GET_PROCESSES_SINCE with a real delta, or
+   with a full snapshot for clients that fell further behind.
+ - Responses are encoded as PLST/PDLT frames or as text, byte for byte what
+   the C backend would send. Deltas refer to users by uid and to names by
+   id, with the dictionary entries added since the requested generation,
+   as procTable.h describes. Thread-safe (all methods are synchronized).
+*/
+
+package com.sysmon.loadtest;
+
+import com.sysmon.util.IntLongMap;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+final class SyntheticProcessTable {
+  private static final int HISTORY = 64;
+  private static final String[] USERS = {"root", "www-data", "postgres", "systemd-resolve", "alice", "bob"};
+  private static final int[] UIDS = {0, 33, 108, 101, 1000, 1001};
+  private static final String[] NAMES = {"java", "postgres", "nginx", "bash", "kworker/0:1", "python3", "sshd",
+      "chrome", "node", "containerd-shim"};
+  private static final byte[] STATES = {'S', 'S', 'S', 'S', 'R', 'I', 'D'};
+
+  private final Random random = new Random(42);
+  private final double churnPercent;
+  private final double exitPercent;
+
+  // Live processes, packed into slots 0..count-1.
+  private final IntLongMap slots;
+  private int count;
+  private int[] pids;
+  private int[] ppids;
+  private int[] users;
+  private int[] names;
+  private byte[] states;
+  private long[] totalTimes;
+  private long[] memRssKb;
+  private long[] changedGens;
+
+  // Exited pids, oldest first.
+  private int[] removedPids = new int[256];
+  private long[] removedGens = new long[256];
+  private int removedCount;
+
+  private int[] killed = new int[16];
+  private int killedCount;
+
+  private int nextPid = 1;
+  private long generation;
+  private long validSince;
+  private final long usersAddedGen;
+
+  // The name dictionary: names by id, the generation each was added in.
+  private final List<String> nameList = new ArrayList<>();
+  private final Map<String, Integer> nameIds = new HashMap<>();
+  private long[] nameGens = new long[256];
+
+  SyntheticProcessTable(int processCount, double churnPercent, double exitPercent) {
+    this.churnPercent = churnPercent;
+    this.exitPercent = exitPercent;
+    int capacity = Math.max(16, processCount);
+    slots = new IntLongMap(capacity);
+    pids = new int[capacity];
+    ppids = new int[capacity];
+    users = new int[capacity];
+    names = new int[capacity];
+    states = new byte[capacity];
+    totalTimes = new long[capacity];
+    memRssKb = new long[capacity];
+    changedGens = new long[capacity];
+    // Same starting point as procTableInit(), so generations never repeat
+    // across restarts.
+    generation = (System.currentTimeMillis() / 1000) << 24;
+    validSince = generation;
+    usersAddedGen = generation;
+    for (int i = 0; i < processCount; i++) {
+      spawn();
+    }
+  }
+
+  synchronized int size() {
+    return count;
+  }
+
+  synchronized long getGeneration() {
+    return generation;
+  }
+
+  // Exits on the next scan, as a real process would after the signal.
+  synchronized boolean kill(int pid) {
+    if (!slots.containsKey(pid)) {
+      return false;
+    }
+    if (killedCount == killed.length) {
+      killed = Arrays.copyOf(killed, killedCount * 2);
+    }
+    killed[killedCount++] = pid;
+    return true;
+  }
+
+  synchronized void scan() {
+    generation++;
+    for (int i = 0; i < killedCount; i++) {
+      int slot = (int) slots.get(killed[i], -1L);
+      if (slot >= 0) {
+        exit(slot);
+      }
+    }
+    killedCount = 0;
+    int exits = (int) Math.round(count * exitPercent / 100.0);
+    for (int i = 0; i < exits && count > 1; i++) {
+      exit(1 + random.nextInt(count - 1));
+      spawn();
+    }
+    int changes = (int) Math.round(count * churnPercent / 100.0);
+    for (int i = 0; i < changes && count > 0; i++) {
+      int slot = random.nextInt(count);
+      totalTimes[slot] += 1 + random.nextInt(50);
+      memRssKb[slot] = Math.max(4, memRssKb[slot] + random.nextInt(2049) - 1024);
+      states[slot] = STATES[random.nextInt(STATES.length)];
+      changedGens[slot] = generation;
+    }
+    long expireBefore = generation - HISTORY;
+    int expired = 0;
+    while (expired < removedCount && removedGens[expired] <= expireBefore) {
+      validSince = Math.max(validSince, removedGens[expired]);
+      expired++;
+    }
+    if (expired > 0) {
+      removedCount -= expired;
+      System.arraycopy(removedPids, expired, removedPids, 0, removedCount);
+      System.arraycopy(removedGens, expired, removedGens, 0, removedCount);
+    }
+  }
+
+  private void spawn() {
+    if (count == pids.length) {
+      int capacity = count * 2;
+      pids = Arrays.copyOf(pids, capacity);
+      ppids = Arrays.copyOf(ppids, capacity);
+      users = Arrays.copyOf(users, capacity);
+      names = Arrays.copyOf(names, capacity);
+      states = Arrays.copyOf(states, capacity);
+      totalTimes = Arrays.copyOf(totalTimes, capacity);
+      memRssKb = Arrays.copyOf(memRssKb, capacity);
+      changedGens = Arrays.copyOf(changedGens, capacity);
+    }
+    int slot = count++;
+    int pid = nextPid++;
+    pids[slot] = pid;
+    ppids[slot] = slot == 0 ? 0 : pids[random.nextInt(slot)];
+    users[slot] = random.nextInt(USERS.length);
+    names[slot] = nameId(NAMES[random.nextInt(NAMES.length)] + "-" + (pid % 512));
+    states[slot] = STATES[random.nextInt(STATES.length)];
+    totalTimes[slot] = random.nextInt(100_000);
+    memRssKb[slot] = 4 + random.nextInt(2 * 1024 * 1024);
+    changedGens[slot] = generation;
+    slots.put(pid, slot, -1L);
+  }
+
+  // Moves the last live process into the freed slot.
+  private void exit(int slot) {
+    int pid = pids[slot];
+    slots.remove(pid);
+    int last = --count;
+    if (slot != last) {
+      pids[slot] = pids[last];
+      ppids[slot] = ppids[last];
+      users[slot] = users[last];
+      names[slot] = names[last];
+      states[slot] = states[last];
+      totalTimes[slot] = totalTimes[last];
+      memRssKb[slot] = memRssKb[last];
+      changedGens[slot] = changedGens[last];
+      slots.put(pids[slot], slot, -1L);
+    }
+    if (removedCount == removedPids.length) {
+      removedPids = Arrays.copyOf(removedPids, removedCount * 2);
+      removedGens = Arrays.copyOf(removedGens, removedCount * 2);
+    }
+    removedPids[removedCount] = pid;
+    removedGens[removedCount] = generation;
+    removedCount++;
+  }
+
+  private int nameId(String name) {
+    Integer id = nameIds.get(name);
+    if (id == null) {
+      id = nameList.size();
+      nameList.add(name);
+      nameIds.put(name, id);
+      if (id == nameGens.length) {
+        nameGens = Arrays.copyOf(nameGens, id * 2);
+      }
+      nameGens[id] = generation;
+    }
+    return id;
+  }
+
+  synchronized byte[] processList(boolean binary) {
+    int[] selected = select(Long.MIN_VALUE);
+    if (binary) {
+      return encodeProcessList(selected);
+    }
+    StringBuilder text = new StringBuilder(64 + selected.length * 48).append("BEGIN_PROCESS_LIST\n");
+    appendLines(text, selected);
+    return text.append("END_PROCESS_LIST\n").toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  synchronized byte[] processDelta(long since, boolean binary) {
+    boolean full = since < validSince || since > generation;
+    int[] selected = select(full ? Long.MIN_VALUE : since);
+    // A full snapshot lists only the live processes.
+    int firstRemoved = full ? removedCount : 0;
+    while (firstRemoved < removedCount && removedGens[firstRemoved] <= since) {
+      firstRemoved++;
+    }
+    boolean newUsers = full || usersAddedGen > since;
+    int firstName = 0;
+    while (!full && firstName < nameList.size() && nameGens[firstName] <= since) {
+      firstName++;
+    }
+    if (binary) {
+      return encodeDelta(full, selected, firstRemoved, newUsers, firstName);
+    }
+    StringBuilder text = new StringBuilder(64 + selected.length * 40)
+        .append("BEGIN_PROCESS_DELTA;").append(generation).append(full ? ";FULL\n" : ";DELTA\n");
+    for (int i = 0; newUsers && i < USERS.length; i++) {
+      text.append("USER;").append(UIDS[i]).append(';').append(USERS[i]).append('\n');
+    }
+    for (int id = firstName; id < nameList.size(); id++) {
+      text.append("NAME;").append(id).append(';').append(nameList.get(id)).append('\n');
+    }
+    for (int slot : selected) {
+      text.append(pids[slot]).append('\t').append(ppids[slot]).append('\t').append(UIDS[users[slot]]).append('\t')
+          .append((char) states[slot]).append('\t').append(names[slot]).append('\t').append(totalTimes[slot])
+          .append('\t').append(memRssKb[slot]).append('\n');
+    }
+    for (int i = firstRemoved; i < removedCount; i++) {
+      text.append("REMOVED\t").append(removedPids[i]).append('\n');
+    }
+    return text.append("END_PROCESS_DELTA\n").toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private int[] select(long since) {
+    int[] selected = new int[count];
+    int selectedCount = 0;
+    for (int slot = 0; slot < count; slot++) {
+      if (changedGens[slot] > since) {
+        selected[selectedCount++] = slot;
+      }
+    }
+    return selectedCount == count ? selected : Arrays.copyOf(selected, selectedCount);
+  }
+
+  private void appendLines(StringBuilder text, int[] selected) {
+    for (int slot : selected) {
+      text.append(pids[slot]).append('\t').append(ppids[slot]).append('\t').append(USERS[users[slot]]).append('\t')
+          .append((char) states[slot]).append('\t').append(nameList.get(names[slot])).append('\t')
+          .append(totalTimes[slot]).append('\t').append(memRssKb[slot]).append('\n');
+    }
+  }
+
+  // Same layouts as backend/src/wireFormat.h.
+  private byte[] encodeProcessList(int[] selected) {
+    ByteArrayOutputStream strings = new ByteArrayOutputStream();
+    int[] userOffsets = new int[selected.length];
+    int[] nameOffsets = new int[selected.length];
+    byte[][] userBytes = new byte[selected.length][];
+    byte[][] nameBytes = new byte[selected.length][];
+    for (int i = 0; i < selected.length; i++) {
+      userBytes[i] = USERS[users[selected[i]]].getBytes(StandardCharsets.UTF_8);
+      userOffsets[i] = strings.size();
+      strings.writeBytes(userBytes[i]);
+      nameBytes[i] = nameList.get(names[selected[i]]).getBytes(StandardCharsets.UTF_8);
+      nameOffsets[i] = strings.size();
+      strings.writeBytes(nameBytes[i]);
+    }
+    int payload = 8 + strings.size() + selected.length * 40;
+    ByteBuffer frame = ByteBuffer.allocate(8 + payload).order(ByteOrder.LITTLE_ENDIAN);
+    frame.put("PLST".getBytes(StandardCharsets.US_ASCII)).putInt(payload);
+    frame.putInt(selected.length).putInt(strings.size());
+    frame.put(strings.toByteArray());
+    for (int i = 0; i < selected.length; i++) {
+      int slot = selected[i];
+      frame.putInt(pids[slot]).putInt(ppids[slot]).putLong(totalTimes[slot]).putLong(memRssKb[slot]);
+      frame.putInt(userOffsets[i]).putInt(nameOffsets[i]);
+      frame.putShort((short) userBytes[i].length).putShort((short) nameBytes[i].length);
+      frame.put(states[slot]).put((byte) 0).put((byte) 0).put((byte) 0);
+    }
+    return frame.array();
+  }
+
+  private byte[] encodeDelta(boolean full, int[] selected, int firstRemoved, boolean newUsers, int firstName) {
+    ByteArrayOutputStream strings = new ByteArrayOutputStream();
+    int userCount = newUsers ? USERS.length : 0;
+    int nameCount = nameList.size() - firstName;
+    ByteBuffer entries = ByteBuffer.allocate((userCount + nameCount) * 12).order(ByteOrder.LITTLE_ENDIAN);
+    for (int i = 0; i < userCount; i++) {
+      byte[] bytes = USERS[i].getBytes(StandardCharsets.UTF_8);
+      entries.putInt(UIDS[i]).putInt(strings.size()).putInt(bytes.length);
+      strings.writeBytes(bytes);
+    }
+    for (int id = firstName; id < nameList.size(); id++) {
+      byte[] bytes = nameList.get(id).getBytes(StandardCharsets.UTF_8);
+      entries.putInt(id).putInt(strings.size()).putInt(bytes.length);
+      strings.writeBytes(bytes);
+    }
+    int removed = removedCount - firstRemoved;
+    int payload = 32 + strings.size() + entries.capacity() + selected.length * 36 + removed * 4;
+    ByteBuffer frame = ByteBuffer.allocate(8 + payload).order(ByteOrder.LITTLE_ENDIAN);
+    frame.put("PDLT".getBytes(StandardCharsets.US_ASCII)).putInt(payload);
+    frame.putLong(generation).putInt(full ? 1 : 0).putInt(selected.length).putInt(removed);
+    frame.putInt(userCount).putInt(nameCount).putInt(strings.size());
+    frame.put(strings.toByteArray()).put(entries.array());
+    for (int slot : selected) {
+      frame.putInt(pids[slot]).putInt(ppids[slot]).putLong(totalTimes[slot]).putLong(memRssKb[slot]);
+      frame.putInt(UIDS[users[slot]]).putInt(names[slot]);
+      frame.put(states[slot]).put((byte) 0).put((byte) 0).put((byte) 0);
+    }
+    for (int i = firstRemoved; i < removedCount; i++) {
+      frame.putInt(removedPids[i]);
+    }
+    return frame.array();
+  }
+}